@@ -48,6 +48,7 @@ public class MenuFragment extends Fragment implements ProductAdapter.OnProductAc
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
         middleware = Middleware.getInstance();
+        middleware.startScreenLoad(TAG, view);
 
         recyclerView = view.findViewById(R.id.recycler_products);
         progressBar = view.findViewById(R.id.progress_bar);
@@ -89,6 +90,7 @@ public class MenuFragment extends Fragment implements ProductAdapter.OnProductAc
                     adapter.setProducts(products);
                     middleware.d(TAG, "Displayed " + products.size() + " products");
                 }
+                middleware.reportFullyDrawn(TAG);
             });
         });
     }
@@ -24,6 +24,8 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -34,7 +36,9 @@ import java.util.function.Function;
 import io.middleware.android.sdk.builders.MiddlewareBuilder;
 import io.middleware.android.sdk.core.RumInitializer;
 import io.middleware.android.sdk.core.RumSetup;
+import io.middleware.android.sdk.core.instrumentations.screen.ScreenLoadInstrumentation;
 import io.middleware.android.sdk.core.models.NativeRumSessionId;
+import io.middleware.android.sdk.core.replay.ErrorReplayTrigger;
 import io.middleware.android.sdk.core.replay.MiddlewareRecorder;
 import io.middleware.android.sdk.core.replay.ReplayRecording;
 import io.middleware.android.sdk.core.replay.SessionRecorder;
@@ -123,6 +127,15 @@ public class Middleware implements IMiddleware {
         if (builder.isRecordingEnabled()) {
             Log.d(LOG_TAG, "Session recording enabled; applying session sampling.");
             sessionRecorder = createSessionRecorder(builder, lifecycleManager, context);
+            ErrorReplayTrigger errorReplayTrigger = initialized.getMiddlewareRum().getErrorReplayTrigger();
+            if (errorReplayTrigger != null) {
+                errorReplayTrigger.setListener((reason, fatal) -> {
+                    SessionRecorder recorder = sessionRecorder;
+                    if (recorder != null) {
+                        recorder.onError(reason, fatal);
+                    }
+                });
+            }
             syncSessionRecordingWithSampler();
             startRecordingSessionWatcher(builder, lifecycleManager, context);
         }
@@ -246,6 +259,17 @@ public class Middleware implements IMiddleware {
         return false;
     }
 
+    /**
+     * @return session recording counters, e.g. replay storage usage and evictions; empty when
+     * recording is disabled.
+     */
+    public Map<String, Long> getSessionRecordingStats() {
+        if (sessionRecorder != null) {
+            return sessionRecorder.getStats();
+        }
+        return Collections.emptyMap();
+    }
+
     /**
      * Wrap the provided {@link OkHttpClient} with OpenTelemetry and RUM instrumentation. Since
      * {@link Call.Factory} is the primary useful interface implemented by the OkHttpClient, this
@@ -400,6 +424,58 @@ public class Middleware implements IMiddleware {
                 .end();
     }
 
+    /**
+     * Marks the given activity as fully drawn, e.g. once its content has finished loading. The
+     * time since the activity was created is reported as the time to full display
+     * ({@code screen.ttfd_ms}) on the activity's {@code screen_load} span.
+     *
+     * <p>Call this in addition to (not instead of) {@link Activity#reportFullyDrawn()} if you
+     * already use it. It is safe to call from any thread.
+     *
+     * @param activity The activity whose content is now fully displayed.
+     */
+    @Override
+    public void reportFullyDrawn(Activity activity) {
+        ScreenLoadInstrumentation screenLoad = getScreenLoadInstrumentation();
+        if (screenLoad != null) {
+            screenLoad.reportFullyDrawn(activity);
+        }
+    }
+
+    /**
+     * Marks a screen started with {@link #startScreenLoad(String, View)} as fully drawn.
+     *
+     * @param screenName The name passed to {@link #startScreenLoad(String, View)}.
+     */
+    @Override
+    public void reportFullyDrawn(String screenName) {
+        ScreenLoadInstrumentation screenLoad = getScreenLoadInstrumentation();
+        if (screenLoad != null) {
+            screenLoad.reportFullyDrawn(screenName);
+        }
+    }
+
+    /**
+     * Starts measuring the load of a screen that is not an activity, typically a fragment. Call
+     * it from {@code onViewCreated}; the first draw of {@code view} is reported as the time to
+     * initial display, and {@link #reportFullyDrawn(String)} as the time to full display.
+     *
+     * @param screenName The name reported as {@code screen.name}.
+     * @param view       The root view of the screen.
+     */
+    @Override
+    public void startScreenLoad(String screenName, View view) {
+        ScreenLoadInstrumentation screenLoad = getScreenLoadInstrumentation();
+        if (screenLoad != null) {
+            screenLoad.startScreenLoad(screenName, view);
+        }
+    }
+
+    @Nullable
+    private ScreenLoadInstrumentation getScreenLoadInstrumentation() {
+        return middlewareRum != null ? middlewareRum.getScreenLoadInstrumentation() : null;
+    }
+
     Tracer getTracer() {
         return getOpenTelemetry().getTracer(RUM_TRACER_NAME);
     }
@@ -189,6 +189,46 @@ public final class MiddlewareBuilder {
         return this;
     }
 
+    /**
+     * Disables screen load instrumentation. When enabled (the default), each activity emits a
+     * {@code screen_load} span carrying its time to initial display (first frame drawn) and, if
+     * the app calls {@link Middleware#reportFullyDrawn(android.app.Activity)}, its time to full
+     * display.
+     *
+     * @return {@code this}
+     */
+    public MiddlewareBuilder disableScreenLoadInstrumentation() {
+        configFlags.disableScreenLoadInstrumentation();
+        return this;
+    }
+
+    /**
+     * Enables per-screen session summaries. While an activity is in the foreground the SDK
+     * accumulates HTTP calls and bytes, errors, taps, slow/frozen frames and main-thread busy
+     * time, and emits them as a single {@code screen_session} span when the user leaves the
+     * screen. Individual spans are still exported.
+     *
+     * <p>This feature is disabled by default.
+     *
+     * @return {@code this}
+     */
+    public MiddlewareBuilder enableScreenSessionSummary() {
+        configFlags.enableScreenSessionSummary();
+        return this;
+    }
+
+    /**
+     * Enables process resource metrics. The SDK then samples the app's CPU time, PSS and heap
+     * usage, GC count and time, thread count and open file descriptors every 10 seconds in the
+     * foreground (every minute in the background) and exports them as metrics. Off by default.
+     *
+     * @return {@code this}
+     */
+    public MiddlewareBuilder enableProcessMetrics() {
+        configFlags.enableProcessMetrics();
+        return this;
+    }
+
     /**
      * Configures the rate at which frame render durations are polled.
      *
@@ -299,6 +339,18 @@ public final class MiddlewareBuilder {
         return configFlags.isUIInstrumentationEnabled();
     }
 
+    public boolean isScreenLoadInstrumentationEnabled() {
+        return configFlags.isScreenLoadInstrumentationEnabled();
+    }
+
+    public boolean isScreenSessionSummaryEnabled() {
+        return configFlags.isScreenSessionSummaryEnabled();
+    }
+
+    public boolean isProcessMetricsEnabled() {
+        return configFlags.isProcessMetricsEnabled();
+    }
+
     public ConfigFlags getConfigFlags() {
         return configFlags;
     }
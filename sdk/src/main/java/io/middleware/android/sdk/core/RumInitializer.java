@@ -82,6 +82,11 @@ public class RumInitializer implements IRum {
         initializerEvent.emit("tracesInitialized");
         rumSetup.setLogs();
         initializerEvent.emit("logsInitialized");
+        if (builder.isProcessMetricsEnabled()) {
+            // the process sampler is the only metrics source; without it there is nothing to export
+            rumSetup.setMetrics();
+            initializerEvent.emit("metricsInitialized");
+        }
         if (builder.isDebugEnabled()) {
             rumSetup.setLoggingSpanExporter();
             initializerEvent.emit("loggingSpanExporterInitialized");
@@ -113,6 +118,23 @@ public class RumInitializer implements IRum {
             rumSetup.setUIInstrumentation();
             initializerEvent.emit("uiInstrumentationInitialized");
         }
+
+        if (builder.isScreenLoadInstrumentationEnabled()) {
+            rumSetup.setScreenLoadInstrumentation();
+            initializerEvent.emit("screenLoadInstrumentationInitialized");
+        }
+        if (builder.isScreenSessionSummaryEnabled()) {
+            rumSetup.setScreenSessionSummary();
+            initializerEvent.emit("screenSessionSummaryInitialized");
+        }
+        if (builder.isProcessMetricsEnabled()) {
+            rumSetup.setProcessMetrics();
+            initializerEvent.emit("processMetricsInitialized");
+        }
+        if (builder.isRecordingEnabled() && builder.recordingOptions.isErrorTriggered()) {
+            rumSetup.setErrorReplayTrigger();
+            initializerEvent.emit("errorReplayTriggerInitialized");
+        }
         final OpenTelemetryRum openTelemetryRum = rumSetup.build();
         rumSetup.bindSessionProvider(openTelemetryRum);
         initializerEvent.recordInitializationSpans(
@@ -32,7 +32,11 @@ import java.util.concurrent.atomic.AtomicReference;
 import io.middleware.android.sdk.builders.MiddlewareBuilder;
 import io.middleware.android.sdk.core.instrumentations.crash.CrashAttributesExtractor;
 import io.middleware.android.sdk.core.instrumentations.crash.CrashInstrumentation;
+import io.middleware.android.sdk.core.instrumentations.process.ProcessMetricsInstrumentation;
+import io.middleware.android.sdk.core.instrumentations.screen.ScreenLoadInstrumentation;
+import io.middleware.android.sdk.core.instrumentations.screen.ScreenSessionAggregator;
 import io.middleware.android.sdk.core.instrumentations.ui.UIInstrumentation;
+import io.middleware.android.sdk.core.replay.ErrorReplayTrigger;
 import io.middleware.android.sdk.exporters.MiddlewareLogsExporter;
 import io.middleware.android.sdk.exporters.MiddlewareMetricsExporter;
 import io.middleware.android.sdk.exporters.MiddlewareSpanExporter;
@@ -51,8 +55,10 @@ import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.context.propagation.TextMapPropagator;
 import io.opentelemetry.exporter.logging.LoggingSpanExporter;
 import io.opentelemetry.exporter.otlp.http.logs.OtlpHttpLogRecordExporter;
+import io.opentelemetry.exporter.otlp.http.metrics.OtlpHttpMetricExporter;
 import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
 import io.opentelemetry.sdk.logs.export.SimpleLogRecordProcessor;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
 import io.opentelemetry.sdk.resources.Resource;
 import io.opentelemetry.sdk.resources.ResourceBuilder;
 import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
@@ -67,6 +73,8 @@ public class RumSetup implements IRumSetup {
     private MiddlewareLogsExporter middlewareLogsExporter;
     private MiddlewareMetricsExporter middlewareMetricsExporter;
     private String resourceAttributes;
+    private ScreenLoadInstrumentation screenLoadInstrumentation;
+    private ErrorReplayTrigger errorReplayTrigger;
     private final MiddlewareBuilder builder;
     /**
      * Bound to {@link OpenTelemetryRum#getRumSessionId()} after {@link #build()} so
@@ -175,6 +183,30 @@ public class RumSetup implements IRumSetup {
         });
     }
 
+    @Override
+    public void setMetrics() {
+        this.middlewareMetricsExporter = new MiddlewareMetricsExporter(
+                OtlpHttpMetricExporter
+                        .builder()
+                        .setEndpoint(builder.target + "/v1/metrics")
+                        .setTimeout(Duration.ofMillis(10000))
+                        .addHeader("Authorization", builder.rumAccessToken)
+                        .addHeader("Origin", BASE_ORIGIN)
+                        .addHeader("Content-Type", "application/json")
+                        .addHeader("Access-Control-Allow-Headers", "*")
+                        .build()
+        );
+        openTelemetryRumBuilder.addMeterProviderCustomizer((sdkMeterProviderBuilder, application1) -> {
+            sdkMeterProviderBuilder.setResource(resource);
+            sdkMeterProviderBuilder.registerMetricReader(
+                    PeriodicMetricReader
+                            .builder(middlewareMetricsExporter)
+                            .setInterval(Duration.ofSeconds(60))
+                            .build());
+            return sdkMeterProviderBuilder;
+        });
+    }
+
     @Override
     public void setLoggingSpanExporter() {
         openTelemetryRumBuilder.addTracerProviderCustomizer((sdkTracerProviderBuilder, application1) -> {
@@ -231,6 +263,48 @@ public class RumSetup implements IRumSetup {
         openTelemetryRumBuilder.addInstrumentation(new UIInstrumentation());
     }
 
+    @Override
+    public void setScreenLoadInstrumentation() {
+        screenLoadInstrumentation = new ScreenLoadInstrumentation();
+        openTelemetryRumBuilder.addInstrumentation(screenLoadInstrumentation);
+    }
+
+    @Override
+    public void setProcessMetrics() {
+        openTelemetryRumBuilder.addInstrumentation(new ProcessMetricsInstrumentation());
+    }
+
+    @Override
+    public void setScreenSessionSummary() {
+        ScreenSessionAggregator screenSessionAggregator = new ScreenSessionAggregator();
+        openTelemetryRumBuilder.addTracerProviderCustomizer(
+                (tracerProviderBuilder, app) ->
+                        tracerProviderBuilder.addSpanProcessor(screenSessionAggregator));
+        openTelemetryRumBuilder.addInstrumentation(screenSessionAggregator);
+    }
+
+    @Override
+    public void setErrorReplayTrigger() {
+        final ErrorReplayTrigger trigger = new ErrorReplayTrigger();
+        errorReplayTrigger = trigger;
+        openTelemetryRumBuilder.addTracerProviderCustomizer(
+                (tracerProviderBuilder, app) -> tracerProviderBuilder.addSpanProcessor(trigger));
+    }
+
+    /**
+     * @return the error span watcher for error-triggered replay, or {@code null} when it is off.
+     */
+    public ErrorReplayTrigger getErrorReplayTrigger() {
+        return errorReplayTrigger;
+    }
+
+    /**
+     * @return the installed screen load instrumentation, or {@code null} when it is disabled.
+     */
+    public ScreenLoadInstrumentation getScreenLoadInstrumentation() {
+        return screenLoadInstrumentation;
+    }
+
     @Override
     public void setResource(Resource resource) {
         this.resource = resource;
@@ -0,0 +1,220 @@
+package io.middleware.android.sdk.core.instrumentations.process;
+
+import static io.middleware.android.sdk.utils.Constants.LOG_TAG;
+import static io.middleware.android.sdk.utils.Constants.RUM_TRACER_NAME;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.opentelemetry.android.instrumentation.AndroidInstrumentation;
+import io.opentelemetry.android.instrumentation.InstallationContext;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongHistogram;
+import io.opentelemetry.api.metrics.Meter;
+
+/**
+ * Periodically samples process CPU, memory, GC, thread and file descriptor usage with
+ * {@link ProcessResourceSampler} and reports it as metrics:
+ *
+ * <ul>
+ *     <li>gauges for the latest reading ({@code process.memory.pss}, {@code process.memory.heap.used},
+ *     {@code process.thread.count}, ...), read at export time;</li>
+ *     <li>histograms recorded on every sample ({@code process.cpu.utilization},
+ *     {@code process.gc.time_delta}) and for the sampler's own cost ({@code mw.sampler.duration}).</li>
+ * </ul>
+ *
+ * <p>Samples every {@link #FOREGROUND_INTERVAL_MS} while an activity is started and every
+ * {@link #BACKGROUND_INTERVAL_MS} otherwise. If a sample costs more than
+ * {@link #OVERHEAD_BUDGET} of the interval, the interval is stretched until it fits.
+ */
+public class ProcessMetricsInstrumentation implements AndroidInstrumentation {
+
+    static final long FOREGROUND_INTERVAL_MS = TimeUnit.SECONDS.toMillis(10);
+    static final long BACKGROUND_INTERVAL_MS = TimeUnit.SECONDS.toMillis(60);
+    static final long MAX_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+    /** Share of wall time the sampler may spend sampling (0.1%). */
+    static final double OVERHEAD_BUDGET = 0.001;
+
+    private final ProcessResourceSampler sampler = new ProcessResourceSampler();
+    @Nullable
+    private volatile ProcessResourceSampler.Sample latest;
+    private ScheduledExecutorService executor;
+    @Nullable
+    private ScheduledFuture<?> nextSample;
+    private DoubleHistogram cpuUtilization;
+    private LongHistogram gcTimeDelta;
+    private DoubleHistogram samplerDuration;
+    private int startedActivities;
+    private long lastCostNanos;
+
+    @Override
+    public void install(@NonNull InstallationContext installationContext) {
+        final Meter meter = installationContext.getOpenTelemetry().getMeter(RUM_TRACER_NAME);
+        registerInstruments(meter);
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mw-process-sampler");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        installationContext.getApplication().registerActivityLifecycleCallbacks(new ForegroundTracker());
+        schedule(0);
+    }
+
+    /**
+     * @return how long to wait before the next sample: the foreground or background interval,
+     * stretched so that a sample costing {@code lastCostNanos} stays within {@link #OVERHEAD_BUDGET}.
+     */
+    static long nextIntervalMs(boolean foreground, long lastCostNanos) {
+        final long baseMs = foreground ? FOREGROUND_INTERVAL_MS : BACKGROUND_INTERVAL_MS;
+        final long withinBudgetMs = Math.round(TimeUnit.NANOSECONDS.toMillis(lastCostNanos) / OVERHEAD_BUDGET);
+        return Math.min(MAX_INTERVAL_MS, Math.max(baseMs, withinBudgetMs));
+    }
+
+    private void registerInstruments(Meter meter) {
+        meter.gaugeBuilder("process.cpu.time").ofLongs().setUnit("ms")
+                .setDescription("CPU time consumed by the process since it started")
+                .buildWithCallback(m -> {
+                    ProcessResourceSampler.Sample sample = latest;
+                    if (sample != null) m.record(sample.cpuTimeMs);
+                });
+        meter.gaugeBuilder("process.memory.pss").ofLongs().setUnit("KiBy")
+                .setDescription("Proportional set size of the process")
+                .buildWithCallback(m -> {
+                    ProcessResourceSampler.Sample sample = latest;
+                    if (sample != null && sample.pssKb >= 0) m.record(sample.pssKb);
+                });
+        meter.gaugeBuilder("process.memory.heap.used").ofLongs().setUnit("By")
+                .setDescription("Java heap in use")
+                .buildWithCallback(m -> {
+                    ProcessResourceSampler.Sample sample = latest;
+                    if (sample != null) m.record(sample.heapUsedBytes);
+                });
+        meter.gaugeBuilder("process.memory.heap.max").ofLongs().setUnit("By")
+                .setDescription("Maximum Java heap size")
+                .buildWithCallback(m -> {
+                    ProcessResourceSampler.Sample sample = latest;
+                    if (sample != null) m.record(sample.heapMaxBytes);
+                });
+        meter.gaugeBuilder("process.memory.native_heap.used").ofLongs().setUnit("By")
+                .setDescription("Native heap in use")
+                .buildWithCallback(m -> {
+                    ProcessResourceSampler.Sample sample = latest;
+                    if (sample != null) m.record(sample.nativeHeapUsedBytes);
+                });
+        meter.gaugeBuilder("process.gc.count").ofLongs().setUnit("{collection}")
+                .setDescription("Garbage collections since the process started")
+                .buildWithCallback(m -> {
+                    ProcessResourceSampler.Sample sample = latest;
+                    if (sample != null && sample.gcCount >= 0) m.record(sample.gcCount);
+                });
+        meter.gaugeBuilder("process.gc.time").ofLongs().setUnit("ms")
+                .setDescription("Time spent in garbage collection since the process started")
+                .buildWithCallback(m -> {
+                    ProcessResourceSampler.Sample sample = latest;
+                    if (sample != null && sample.gcTimeMs >= 0) m.record(sample.gcTimeMs);
+                });
+        meter.gaugeBuilder("process.thread.count").ofLongs().setUnit("{thread}")
+                .setDescription("Threads in the process")
+                .buildWithCallback(m -> {
+                    ProcessResourceSampler.Sample sample = latest;
+                    if (sample != null && sample.threadCount >= 0) m.record(sample.threadCount);
+                });
+        meter.gaugeBuilder("process.open_file_descriptor.count").ofLongs().setUnit("{fd}")
+                .setDescription("Open file descriptors")
+                .buildWithCallback(m -> {
+                    ProcessResourceSampler.Sample sample = latest;
+                    if (sample != null && sample.openFileDescriptors >= 0) m.record(sample.openFileDescriptors);
+                });
+        cpuUtilization = meter.histogramBuilder("process.cpu.utilization").setUnit("1")
+                .setDescription("Share of one core used between two samples")
+                .build();
+        gcTimeDelta = meter.histogramBuilder("process.gc.time_delta").ofLongs().setUnit("ms")
+                .setDescription("Total garbage collection time between two samples, not single pauses")
+                .build();
+        samplerDuration = meter.histogramBuilder("mw.sampler.duration").setUnit("ms")
+                .setDescription("Time spent taking one process resource sample")
+                .build();
+    }
+
+    private void sampleAndReschedule() {
+        try {
+            final ProcessResourceSampler.Sample sample = sampler.sample();
+            latest = sample;
+            if (sample.cpuUtilization >= 0) {
+                cpuUtilization.record(sample.cpuUtilization);
+            }
+            if (sample.gcTimeDeltaMs >= 0) {
+                gcTimeDelta.record(sample.gcTimeDeltaMs);
+            }
+            samplerDuration.record(sample.costNanos / 1_000_000.0);
+            synchronized (this) {
+                lastCostNanos = sample.costNanos;
+            }
+        } catch (Exception e) {
+            Log.w(LOG_TAG, "Process resource sampling failed", e);
+        }
+        synchronized (this) {
+            schedule(nextIntervalMs(startedActivities > 0, lastCostNanos));
+        }
+    }
+
+    private synchronized void schedule(long delayMs) {
+        if (nextSample != null) {
+            nextSample.cancel(false);
+        }
+        nextSample = executor.schedule(this::sampleAndReschedule, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Switches between the foreground and background interval. Main thread callbacks. */
+    private class ForegroundTracker implements Application.ActivityLifecycleCallbacks {
+
+        @Override
+        public void onActivityStarted(@NonNull Activity activity) {
+            synchronized (ProcessMetricsInstrumentation.this) {
+                startedActivities++;
+                if (startedActivities == 1) {
+                    // coming back from the background: don't wait out the long interval
+                    schedule(nextIntervalMs(true, lastCostNanos) / 2);
+                }
+            }
+        }
+
+        @Override
+        public void onActivityStopped(@NonNull Activity activity) {
+            synchronized (ProcessMetricsInstrumentation.this) {
+                startedActivities = Math.max(0, startedActivities - 1);
+            }
+        }
+
+        @Override
+        public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityResumed(@NonNull Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(@NonNull Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(@NonNull Activity activity) {
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package io.middleware.android.sdk.core.instrumentations.process;
+
+import static io.middleware.android.sdk.utils.Constants.LOG_TAG;
+
+import android.os.Build;
+import android.os.Debug;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Reads a snapshot of the current process' resource usage. Every read is a cheap syscall or
+ * a small {@code /proc/self} file, except PSS which walks the process' memory maps and is
+ * therefore only refreshed every {@link #PSS_EVERY_N_SAMPLES} samples.
+ *
+ * <p>Not thread safe: a sampler is owned by a single sampling thread.
+ */
+public class ProcessResourceSampler {
+
+    /** {@link Debug#getPss()} costs milliseconds on large heaps, so it is read less often. */
+    static final int PSS_EVERY_N_SAMPLES = 6;
+
+    private static final String GC_COUNT_STAT = "art.gc.gc-count";
+    private static final String GC_TIME_STAT = "art.gc.gc-time";
+    private static final String PROC_STATUS = "/proc/self/status";
+    private static final String PROC_FD = "/proc/self/fd";
+
+    interface Ticker {
+        long nanoTime();
+    }
+
+    private final Ticker ticker;
+    private int sampleCount;
+    private long lastPssKb = -1;
+    private Sample previous;
+
+    public ProcessResourceSampler() {
+        this(System::nanoTime);
+    }
+
+    ProcessResourceSampler(Ticker ticker) {
+        this.ticker = ticker;
+    }
+
+    public Sample sample() {
+        final long startNanos = ticker.nanoTime();
+        final Runtime runtime = Runtime.getRuntime();
+        final Sample sample = new Sample();
+        sample.wallTimeMs = System.currentTimeMillis();
+        sample.cpuTimeMs = Process.getElapsedCpuTime();
+        sample.heapUsedBytes = runtime.totalMemory() - runtime.freeMemory();
+        sample.heapMaxBytes = runtime.maxMemory();
+        sample.nativeHeapUsedBytes = Debug.getNativeHeapAllocatedSize();
+        if (sampleCount % PSS_EVERY_N_SAMPLES == 0) {
+            lastPssKb = Debug.getPss();
+        }
+        sample.pssKb = lastPssKb;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            sample.gcCount = parseLong(Debug.getRuntimeStat(GC_COUNT_STAT));
+            sample.gcTimeMs = parseLong(Debug.getRuntimeStat(GC_TIME_STAT));
+        }
+        sample.threadCount = readThreadCount();
+        sample.openFileDescriptors = countOpenFileDescriptors();
+
+        if (previous != null) {
+            final long wallDeltaMs = sample.wallTimeMs - previous.wallTimeMs;
+            if (wallDeltaMs > 0) {
+                sample.cpuUtilization = (sample.cpuTimeMs - previous.cpuTimeMs) / (double) wallDeltaMs;
+            }
+            if (sample.gcTimeMs >= 0 && previous.gcTimeMs >= 0) {
+                sample.gcTimeDeltaMs = sample.gcTimeMs - previous.gcTimeMs;
+            }
+        }
+        previous = sample;
+        sampleCount++;
+        sample.costNanos = ticker.nanoTime() - startNanos;
+        return sample;
+    }
+
+    private static long readThreadCount() {
+        try (BufferedReader reader = new BufferedReader(new FileReader(PROC_STATUS))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("Threads:")) {
+                    return parseLong(line.substring("Threads:".length()).trim());
+                }
+            }
+        } catch (IOException e) {
+            Log.d(LOG_TAG, "Unable to read " + PROC_STATUS, e);
+        }
+        return -1;
+    }
+
+    private static long countOpenFileDescriptors() {
+        final String[] fds = new File(PROC_FD).list();
+        return fds != null ? fds.length : -1;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** One reading. Values that could not be read are {@code -1}. */
+    public static final class Sample {
+        public long wallTimeMs;
+        public long cpuTimeMs;
+        /** Share of one core used since the previous sample, or -1 for the first sample. */
+        public double cpuUtilization = -1;
+        public long pssKb = -1;
+        public long heapUsedBytes;
+        public long heapMaxBytes;
+        public long nativeHeapUsedBytes;
+        public long gcCount = -1;
+        public long gcTimeMs = -1;
+        /** GC time since the previous sample, or -1 when unknown. */
+        public long gcTimeDeltaMs = -1;
+        public long threadCount = -1;
+        public long openFileDescriptors = -1;
+        /** Wall time spent taking this sample. */
+        public long costNanos;
+    }
+}
@@ -0,0 +1,291 @@
+package io.middleware.android.sdk.core.instrumentations.screen
+
+import android.app.Activity
+import android.app.Application
+import android.os.Bundle
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import android.util.Log
+import android.view.View
+import android.view.ViewTreeObserver
+import io.middleware.android.sdk.utils.Constants.COMPONENT_KEY
+import io.middleware.android.sdk.utils.Constants.COMPONENT_UI
+import io.middleware.android.sdk.utils.Constants.EVENT_TYPE
+import io.middleware.android.sdk.utils.Constants.LOG_TAG
+import io.middleware.android.sdk.utils.Constants.RUM_TRACER_NAME
+import io.opentelemetry.android.instrumentation.AndroidInstrumentation
+import io.opentelemetry.android.instrumentation.InstallationContext
+import io.opentelemetry.api.trace.Span
+import io.opentelemetry.api.trace.Tracer
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures how long each screen takes to become visible and to become usable, and reports
+ * both as a single `screen_load` span per screen visit:
+ *
+ *  - **TTID** (time to initial display): from activity creation (`onActivityPreCreated` on
+ *    API 29+, `onActivityCreated` below) to the first frame drawn by the window's decor view,
+ *    observed with a one-shot [ViewTreeObserver.OnDrawListener] — the same draw hook the v3
+ *    replay recorder uses.
+ *  - **TTFD** (time to full display): from the same start point to the app's explicit
+ *    `Middleware.reportFullyDrawn(...)` call, e.g. once the screen's content has loaded.
+ *
+ * The span starts at screen creation and ends at TTFD. Screens that never report fully drawn
+ * end at TTID once the screen stops or [FULLY_DRAWN_TIMEOUT_MS] passes, with
+ * `screen.fully_drawn` = false.
+ *
+ * Activities are tracked automatically and keyed by instance, so two instances of the same
+ * activity class (or two classes with the same simple name) are measured separately. Fragments (or any other screen backed by a view) are
+ * tracked by calling `Middleware.startScreenLoad(name, view)` when their view is created.
+ *
+ * Enabled by default; opt out via `MiddlewareBuilder.disableScreenLoadInstrumentation()`.
+ */
+class ScreenLoadInstrumentation : AndroidInstrumentation {
+
+    @Volatile
+    private var tracker: ScreenLoadTracker? = null
+
+    override fun install(installationContext: InstallationContext) {
+        install(installationContext.application, installationContext.openTelemetry.getTracer(RUM_TRACER_NAME))
+    }
+
+    internal fun install(application: Application, tracer: Tracer) {
+        val screenLoadTracker = ScreenLoadTracker(tracer)
+        application.registerActivityLifecycleCallbacks(screenLoadTracker)
+        tracker = screenLoadTracker
+    }
+
+    /** Marks the given activity's screen as fully drawn. Safe to call from any thread. */
+    fun reportFullyDrawn(activity: Activity) {
+        tracker?.reportFullyDrawn(activity)
+    }
+
+    /** Marks the screen started with [startScreenLoad] as fully drawn. Safe to call from any thread. */
+    fun reportFullyDrawn(screenName: String) {
+        tracker?.reportFullyDrawn(screenName)
+    }
+
+    /**
+     * Starts measuring a screen that is not an activity (typically a fragment). TTID is taken
+     * from the first draw of [view].
+     */
+    fun startScreenLoad(screenName: String, view: View) {
+        tracker?.startScreenLoad(screenName, view)
+    }
+
+    /**
+     * Tracks in-progress screen loads, keyed by the [Activity] instance or, for other screens,
+     * by the name passed to [startScreenLoad]. All state is confined to the main thread.
+     */
+    private class ScreenLoadTracker(
+        private val tracer: Tracer,
+    ) : Application.ActivityLifecycleCallbacks {
+
+        private val mainHandler = Handler(Looper.getMainLooper())
+        private val loads = HashMap<Any, ScreenLoad>()
+
+        fun startScreenLoad(screenName: String, view: View) {
+            runOnMain {
+                val load = begin(screenName, screenName, SCREEN_TYPE_FRAGMENT)
+                awaitFirstDraw(view, load)
+            }
+        }
+
+        /** @param key the [Activity] or the name a screen was started with */
+        fun reportFullyDrawn(key: Any) {
+            runOnMain {
+                val load = loads[key] ?: return@runOnMain
+                load.fullyDrawnNanos = SystemClock.elapsedRealtimeNanos()
+                if (load.initialDisplayNanos >= 0) {
+                    finish(load)
+                }
+                // otherwise the span ends as soon as the first frame is drawn
+            }
+        }
+
+        override fun onActivityPreCreated(activity: Activity, savedInstanceState: Bundle?) {
+            begin(activity, activity.javaClass.simpleName, SCREEN_TYPE_ACTIVITY)
+        }
+
+        override fun onActivityCreated(activity: Activity, savedInstanceState: Bundle?) {
+            // below API 29 there is no pre-created callback, so the load starts here
+            val load = loads[activity]?.takeIf { it.initialDisplayNanos < 0 && !it.ended }
+                ?: begin(activity, activity.javaClass.simpleName, SCREEN_TYPE_ACTIVITY)
+            val decorView = activity.window?.decorView ?: return
+            awaitFirstDraw(decorView, load)
+        }
+
+        override fun onActivityStopped(activity: Activity) {
+            val load = loads[activity] ?: return
+            if (load.initialDisplayNanos >= 0) {
+                finish(load)
+            }
+        }
+
+        override fun onActivityDestroyed(activity: Activity) {
+            val load = loads[activity] ?: return
+            // destroyed before anything was drawn: nothing meaningful to report
+            if (load.initialDisplayNanos < 0) {
+                loads.remove(load.key)
+                abandon(load)
+            } else {
+                finish(load)
+            }
+        }
+
+        override fun onActivityStarted(activity: Activity) {}
+        override fun onActivityResumed(activity: Activity) {}
+        override fun onActivityPaused(activity: Activity) {}
+        override fun onActivitySaveInstanceState(activity: Activity, outState: Bundle) {}
+
+        private fun begin(key: Any, screenName: String, screenType: String): ScreenLoad {
+            // a new visit replaces an unfinished one for the same screen
+            loads[key]?.let { previous ->
+                if (previous.initialDisplayNanos >= 0) finish(previous) else abandon(previous)
+            }
+            val startEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis())
+            val span = tracer.spanBuilder(SPAN_NAME)
+                .setStartTimestamp(startEpochNanos, TimeUnit.NANOSECONDS)
+                .setAttribute(COMPONENT_KEY, COMPONENT_UI)
+                .setAttribute(EVENT_TYPE, SPAN_NAME)
+                .setAttribute("screen.name", screenName)
+                .setAttribute("screen.type", screenType)
+                .startSpan()
+            val load = ScreenLoad(key, span, startEpochNanos, SystemClock.elapsedRealtimeNanos())
+            load.timeout = Runnable { finish(load) }
+            loads[key] = load
+            return load
+        }
+
+        private fun awaitFirstDraw(view: View, load: ScreenLoad) {
+            FirstDrawListener.register(view, mainHandler) {
+                if (load.ended || load.initialDisplayNanos >= 0) {
+                    return@register
+                }
+                load.initialDisplayNanos = SystemClock.elapsedRealtimeNanos()
+                if (load.fullyDrawnNanos >= 0) {
+                    finish(load)
+                } else {
+                    mainHandler.postDelayed(load.timeout, FULLY_DRAWN_TIMEOUT_MS)
+                }
+            }
+        }
+
+        private fun finish(load: ScreenLoad) {
+            if (load.ended) {
+                return
+            }
+            load.ended = true
+            // the pending timeout would keep the activity reachable for its full duration
+            mainHandler.removeCallbacks(load.timeout)
+            if (loads[load.key] === load) {
+                loads.remove(load.key)
+            }
+            val ttidNanos = load.initialDisplayNanos - load.startNanos
+            val fullyDrawn = load.fullyDrawnNanos >= 0
+            // reported before the first frame: the screen is fully drawn when it is first displayed
+            val ttfdNanos = if (fullyDrawn) {
+                maxOf(load.fullyDrawnNanos, load.initialDisplayNanos) - load.startNanos
+            } else {
+                ttidNanos
+            }
+            load.span.setAttribute("screen.ttid_ms", TimeUnit.NANOSECONDS.toMillis(ttidNanos))
+            if (fullyDrawn) {
+                load.span.setAttribute("screen.ttfd_ms", TimeUnit.NANOSECONDS.toMillis(ttfdNanos))
+            }
+            load.span.setAttribute("screen.fully_drawn", fullyDrawn)
+            load.span.end(load.startEpochNanos + ttfdNanos, TimeUnit.NANOSECONDS)
+        }
+
+        private fun abandon(load: ScreenLoad) {
+            load.ended = true
+            load.span.setAttribute("screen.abandoned", true)
+            load.span.end()
+        }
+
+        private inline fun runOnMain(crossinline block: () -> Unit) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                block()
+            } else {
+                mainHandler.post { block() }
+            }
+        }
+    }
+
+    private class ScreenLoad(
+        /** The [Activity] instance, or the screen name for other screens; held until the load ends. */
+        val key: Any,
+        val span: Span,
+        val startEpochNanos: Long,
+        /** [SystemClock.elapsedRealtimeNanos] at creation; all durations are measured from it. */
+        val startNanos: Long,
+    ) {
+        var initialDisplayNanos = -1L
+        var fullyDrawnNanos = -1L
+        var ended = false
+        lateinit var timeout: Runnable
+    }
+
+    /**
+     * One-shot draw listener. The timestamp is taken in a message posted to the front of the
+     * main queue, i.e. right after the frame that triggered [onDraw] has been handed off.
+     * Listeners can't be removed from inside `onDraw`, so removal is posted as well.
+     */
+    private class FirstDrawListener private constructor(
+        private val view: View,
+        private val handler: Handler,
+        private val onFirstDraw: () -> Unit,
+    ) : ViewTreeObserver.OnDrawListener {
+
+        private var fired = false
+
+        override fun onDraw() {
+            if (fired) {
+                return
+            }
+            fired = true
+            handler.postAtFrontOfQueue { onFirstDraw() }
+            handler.post {
+                if (view.viewTreeObserver.isAlive) {
+                    view.viewTreeObserver.removeOnDrawListener(this)
+                }
+            }
+        }
+
+        companion object {
+            fun register(view: View, handler: Handler, onFirstDraw: () -> Unit) {
+                val listener = FirstDrawListener(view, handler, onFirstDraw)
+                try {
+                    // Before API 26 draw listeners added to a detached view's floating
+                    // ViewTreeObserver are never merged, so wait for the attach.
+                    if (view.isAttachedToWindow) {
+                        view.viewTreeObserver.addOnDrawListener(listener)
+                    } else {
+                        view.addOnAttachStateChangeListener(object : View.OnAttachStateChangeListener {
+                            override fun onViewAttachedToWindow(v: View) {
+                                v.viewTreeObserver.addOnDrawListener(listener)
+                                v.removeOnAttachStateChangeListener(this)
+                            }
+
+                            override fun onViewDetachedFromWindow(v: View) {
+                                v.removeOnAttachStateChangeListener(this)
+                            }
+                        })
+                    }
+                } catch (e: Exception) {
+                    Log.w(LOG_TAG, "Failed to observe first draw", e)
+                }
+            }
+        }
+    }
+
+    companion object {
+        private const val SPAN_NAME = "screen_load"
+        private const val SCREEN_TYPE_ACTIVITY = "activity"
+        private const val SCREEN_TYPE_FRAGMENT = "fragment"
+
+        /** How long after the first frame a screen may still report fully drawn. */
+        private const val FULLY_DRAWN_TIMEOUT_MS = 30_000L
+    }
+}
@@ -0,0 +1,287 @@
+package io.middleware.android.sdk.core.instrumentations.screen
+
+import android.app.Activity
+import android.app.Application
+import android.os.Build
+import android.os.Bundle
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.SystemClock
+import android.util.Log
+import android.view.FrameMetrics
+import android.view.Window
+import androidx.annotation.RequiresApi
+import io.middleware.android.sdk.utils.Constants.COMPONENT_CRASH
+import io.middleware.android.sdk.utils.Constants.COMPONENT_ERROR
+import io.middleware.android.sdk.utils.Constants.COMPONENT_KEY
+import io.middleware.android.sdk.utils.Constants.COMPONENT_UI
+import io.middleware.android.sdk.utils.Constants.ERROR_TYPE_KEY
+import io.middleware.android.sdk.utils.Constants.EVENT_TYPE
+import io.middleware.android.sdk.utils.Constants.LOG_TAG
+import io.middleware.android.sdk.utils.Constants.RUM_TRACER_NAME
+import io.opentelemetry.android.instrumentation.AndroidInstrumentation
+import io.opentelemetry.android.instrumentation.InstallationContext
+import io.opentelemetry.api.common.AttributeKey
+import io.opentelemetry.api.trace.SpanKind
+import io.opentelemetry.api.trace.Tracer
+import io.opentelemetry.context.Context
+import io.opentelemetry.sdk.common.CompletableResultCode
+import io.opentelemetry.sdk.trace.ReadWriteSpan
+import io.opentelemetry.sdk.trace.ReadableSpan
+import io.opentelemetry.sdk.trace.SpanProcessor
+import java.lang.ref.WeakReference
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Rolls everything that happens while a screen is in the foreground into one `screen_session`
+ * span, emitted when the user leaves the screen (activity paused). Dashboards can read the
+ * per-screen totals from that span instead of scanning every tap, HTTP and render span.
+ *
+ * A visit lasts from `onActivityResumed` to `onActivityPaused`. During it:
+ *
+ *  - spans ending anywhere in the app are counted as a [SpanProcessor] (HTTP client calls and
+ *    their request/response body bytes, error/crash spans and spans carrying `error.type`,
+ *    taps), reading only the attributes it needs rather than copying each span's data;
+ *  - on API 24+ a [Window.OnFrameMetricsAvailableListener] counts slow and frozen frames and
+ *    sums the main-thread part of each frame (input, animation, measure/layout, draw, sync)
+ *    as main-thread busy time.
+ *
+ * Frame metrics are delivered on one `mw-screen-frames` thread, quit when the tracer provider
+ * shuts down. Individual spans are still exported unchanged. Opt in via
+ * `MiddlewareBuilder.enableScreenSessionSummary()`.
+ */
+class ScreenSessionAggregator : AndroidInstrumentation, SpanProcessor {
+
+    @Volatile
+    private var current: ScreenSession? = null
+
+    private var frameMetricsThread: HandlerThread? = null
+    private var frameMetricsHandler: Handler? = null
+    private var isShutdown = false
+
+    override fun install(installationContext: InstallationContext) {
+        install(installationContext.application, installationContext.openTelemetry.getTracer(RUM_TRACER_NAME))
+    }
+
+    internal fun install(application: Application, tracer: Tracer) {
+        application.registerActivityLifecycleCallbacks(SessionCallbacks(tracer))
+    }
+
+    override fun onStart(parentContext: Context, span: ReadWriteSpan) {}
+
+    override fun isStartRequired(): Boolean = false
+
+    override fun onEnd(span: ReadableSpan) {
+        val session = current ?: return
+        val eventType = span.getAttribute(EVENT_TYPE)
+        if (eventType == SPAN_NAME) {
+            return
+        }
+        val component = span.getAttribute(COMPONENT_KEY)
+        if (isHttp(span)) {
+            session.httpCalls.incrementAndGet()
+            session.httpBytes.addAndGet(
+                (span.getAttribute(HTTP_REQUEST_BODY_SIZE) ?: 0L) +
+                        (span.getAttribute(HTTP_RESPONSE_BODY_SIZE) ?: 0L)
+            )
+        }
+        // The HTTP instrumentation sets error.type alongside an ERROR status; the status itself
+        // is only reachable through toSpanData(), which copies every span.
+        if (component == COMPONENT_ERROR || component == COMPONENT_CRASH ||
+            span.getAttribute(ERROR_TYPE_KEY) != null
+        ) {
+            session.errors.incrementAndGet()
+        }
+        if (eventType == "tap") {
+            session.taps.incrementAndGet()
+        }
+    }
+
+    override fun isEndRequired(): Boolean = true
+
+    override fun shutdown(): CompletableResultCode {
+        synchronized(this) {
+            isShutdown = true
+            frameMetricsThread?.quitSafely()
+            frameMetricsThread = null
+            frameMetricsHandler = null
+        }
+        return CompletableResultCode.ofSuccess()
+    }
+
+    /** @return the handler frame metrics are delivered on, or null once shut down. */
+    @Synchronized
+    private fun frameMetricsHandler(): Handler? {
+        if (isShutdown) {
+            return null
+        }
+        return frameMetricsHandler ?: HandlerThread("mw-screen-frames").let { thread ->
+            thread.start()
+            frameMetricsThread = thread
+            Handler(thread.looper).also { frameMetricsHandler = it }
+        }
+    }
+
+    private fun isHttp(span: ReadableSpan): Boolean {
+        return span.kind == SpanKind.CLIENT &&
+                (span.getAttribute(HTTP_REQUEST_METHOD) != null || span.getAttribute(HTTP_METHOD_LEGACY) != null)
+    }
+
+    /** Opens a session on resume and emits its summary on pause. Main thread only. */
+    private inner class SessionCallbacks(
+        private val tracer: Tracer,
+    ) : Application.ActivityLifecycleCallbacks {
+
+        override fun onActivityResumed(activity: Activity) {
+            current?.let { close(it) }
+            val session = ScreenSession(
+                WeakReference(activity),
+                activity.javaClass.simpleName,
+                TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()),
+                SystemClock.elapsedRealtimeNanos(),
+            )
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                session.frameListener = registerFrameMetrics(activity.window, session)
+                session.window = WeakReference(activity.window)
+            }
+            current = session
+        }
+
+        override fun onActivityPaused(activity: Activity) {
+            val session = current ?: return
+            // another instance of the same screen may have resumed since (multi-window)
+            if (session.activity.get() !== activity) {
+                return
+            }
+            close(session)
+        }
+
+        override fun onActivityCreated(activity: Activity, savedInstanceState: Bundle?) {}
+        override fun onActivityStarted(activity: Activity) {}
+        override fun onActivityStopped(activity: Activity) {}
+        override fun onActivitySaveInstanceState(activity: Activity, outState: Bundle) {}
+        override fun onActivityDestroyed(activity: Activity) {}
+
+        private fun close(session: ScreenSession) {
+            current = null
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                unregisterFrameMetrics(session)
+            }
+            emit(session)
+        }
+
+        private fun emit(session: ScreenSession) {
+            val durationNanos = SystemClock.elapsedRealtimeNanos() - session.startNanos
+            val spanBuilder = tracer.spanBuilder(SPAN_NAME)
+                .setStartTimestamp(session.startEpochNanos, TimeUnit.NANOSECONDS)
+                .setAttribute(COMPONENT_KEY, COMPONENT_UI)
+                .setAttribute(EVENT_TYPE, SPAN_NAME)
+                .setAttribute("screen.name", session.screenName)
+                .setAttribute("screen.time_on_screen_ms", TimeUnit.NANOSECONDS.toMillis(durationNanos))
+                .setAttribute("screen.http.count", session.httpCalls.get())
+                .setAttribute("screen.http.bytes", session.httpBytes.get())
+                .setAttribute("screen.error.count", session.errors.get())
+                .setAttribute("screen.tap.count", session.taps.get())
+            if (session.frameListener != null) {
+                spanBuilder
+                    .setAttribute("screen.frames.total", session.totalFrames.get())
+                    .setAttribute("screen.frames.slow", session.slowFrames.get())
+                    .setAttribute("screen.frames.frozen", session.frozenFrames.get())
+                    .setAttribute(
+                        "screen.main_thread_busy_ms",
+                        TimeUnit.NANOSECONDS.toMillis(session.mainThreadBusyNanos.get())
+                    )
+            }
+            spanBuilder.startSpan()
+                .end(session.startEpochNanos + durationNanos, TimeUnit.NANOSECONDS)
+        }
+
+        @RequiresApi(Build.VERSION_CODES.N)
+        private fun registerFrameMetrics(window: Window?, session: ScreenSession): Any? {
+            if (window == null) {
+                return null
+            }
+            val handler = frameMetricsHandler() ?: return null
+            val listener = Window.OnFrameMetricsAvailableListener { _, frameMetrics, _ ->
+                session.onFrame(frameMetrics)
+            }
+            return try {
+                window.addOnFrameMetricsAvailableListener(listener, handler)
+                listener
+            } catch (e: Exception) {
+                Log.w(LOG_TAG, "Failed to observe frame metrics", e)
+                null
+            }
+        }
+
+        @RequiresApi(Build.VERSION_CODES.N)
+        private fun unregisterFrameMetrics(session: ScreenSession) {
+            val listener = session.frameListener as? Window.OnFrameMetricsAvailableListener ?: return
+            try {
+                session.window?.get()?.removeOnFrameMetricsAvailableListener(listener)
+            } catch (e: Exception) {
+                // the window already dropped the listener
+            }
+        }
+    }
+
+    /** Counters for a single screen visit; updated from any thread. */
+    private class ScreenSession(
+        val activity: WeakReference<Activity>,
+        val screenName: String,
+        val startEpochNanos: Long,
+        val startNanos: Long,
+    ) {
+        val httpCalls = AtomicLong()
+        val httpBytes = AtomicLong()
+        val errors = AtomicLong()
+        val taps = AtomicLong()
+        val totalFrames = AtomicLong()
+        val slowFrames = AtomicLong()
+        val frozenFrames = AtomicLong()
+        val mainThreadBusyNanos = AtomicLong()
+
+        /** The registered frame metrics listener, or null when frame metrics are unavailable. */
+        var frameListener: Any? = null
+        var window: WeakReference<Window>? = null
+
+        @RequiresApi(Build.VERSION_CODES.N)
+        fun onFrame(frameMetrics: FrameMetrics) {
+            val totalNanos = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION)
+            totalFrames.incrementAndGet()
+            if (totalNanos >= FROZEN_FRAME_NANOS) {
+                frozenFrames.incrementAndGet()
+            } else if (totalNanos >= SLOW_FRAME_NANOS) {
+                slowFrames.incrementAndGet()
+            }
+            var busyNanos = 0L
+            for (metric in MAIN_THREAD_METRICS) {
+                busyNanos += frameMetrics.getMetric(metric)
+            }
+            mainThreadBusyNanos.addAndGet(busyNanos)
+        }
+    }
+
+    companion object {
+        private const val SPAN_NAME = "screen_session"
+
+        // Same thresholds as the slow/frozen render detection.
+        private val SLOW_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(16)
+        private val FROZEN_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(700)
+
+        private val MAIN_THREAD_METRICS = intArrayOf(
+            FrameMetrics.UNKNOWN_DELAY_DURATION,
+            FrameMetrics.INPUT_HANDLING_DURATION,
+            FrameMetrics.ANIMATION_DURATION,
+            FrameMetrics.LAYOUT_MEASURE_DURATION,
+            FrameMetrics.DRAW_DURATION,
+            FrameMetrics.SYNC_DURATION,
+        )
+
+        private val HTTP_REQUEST_METHOD = AttributeKey.stringKey("http.request.method")
+        private val HTTP_METHOD_LEGACY = AttributeKey.stringKey("http.method")
+        private val HTTP_REQUEST_BODY_SIZE = AttributeKey.longKey("http.request.body.size")
+        private val HTTP_RESPONSE_BODY_SIZE = AttributeKey.longKey("http.response.body.size")
+    }
+}
@@ -13,6 +13,9 @@ public class ConfigFlags {
     private boolean recordingEnabled = true;
     private boolean recordingV3Enabled = true;
     private boolean uiInstrumentationEnabled = true;
+    private boolean screenLoadInstrumentationEnabled = true;
+    private boolean screenSessionSummaryEnabled = false;
+    private boolean processMetricsEnabled = false;
 
     public void enableDebug() {
         debugEnabled = true;
@@ -22,6 +25,14 @@ public class ConfigFlags {
         reactNativeSupportEnabled = true;
     }
 
+    public void enableScreenSessionSummary() {
+        screenSessionSummaryEnabled = true;
+    }
+
+    public void enableProcessMetrics() {
+        processMetricsEnabled = true;
+    }
+
     public void disableCrashReporting() {
         crashReportingEnabled = false;
     }
@@ -54,6 +65,10 @@ public class ConfigFlags {
         uiInstrumentationEnabled = false;
     }
 
+    public void disableScreenLoadInstrumentation() {
+        screenLoadInstrumentationEnabled = false;
+    }
+
     public boolean isDebugEnabled() {
         return debugEnabled;
     }
@@ -70,6 +85,18 @@ public class ConfigFlags {
         return uiInstrumentationEnabled;
     }
 
+    public boolean isScreenLoadInstrumentationEnabled() {
+        return screenLoadInstrumentationEnabled;
+    }
+
+    public boolean isScreenSessionSummaryEnabled() {
+        return screenSessionSummaryEnabled;
+    }
+
+    public boolean isProcessMetricsEnabled() {
+        return processMetricsEnabled;
+    }
+
     public boolean isActivityLifecycleEnabled() {
         return activityLifecycleEnabled;
     }
@@ -120,6 +147,15 @@ public class ConfigFlags {
                 + ","
                 + "uiInstrumentation:"
                 + uiInstrumentationEnabled
+                + ","
+                + "screenLoad:"
+                + screenLoadInstrumentationEnabled
+                + ","
+                + "screenSessionSummary:"
+                + screenSessionSummaryEnabled
+                + ","
+                + "processMetrics:"
+                + processMetricsEnabled
                 + "]";
     }
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+package io.middleware.android.sdk.core.replay;
+
+/**
+ * Picks the capture interval from recent UI activity instead of a fixed frequency.
+ * <p>
+ * A touch, scroll or navigation starts a boost window of {@link #BOOST_WINDOW_MS} during which
+ * frames are captured at the configured (active) interval. After the window the interval
+ * doubles every {@link #DECAY_STEP_MS} until it reaches the idle interval, so a screen nobody
+ * touches is sampled only every few seconds.
+ * <p>
+ * On top of that, captured bytes are held to a per-minute budget: the interval is never shorter
+ * than what the average frame size allows to sustain, and once the last minute's budget is spent
+ * capture falls back to the idle rate until it frees up.
+ * <p>
+ * Time is passed in by the caller ({@code SystemClock.uptimeMillis()} in production). Thread
+ * safe: signals arrive on the main thread while the recorder asks for intervals from its own
+ * threads.
+ */
+public final class AdaptiveCaptureScheduler {
+
+    public enum Signal {
+        TOUCH,
+        SCROLL,
+        NAVIGATION
+    }
+
+    public static final long DEFAULT_IDLE_INTERVAL_MS = 5_000L;
+    public static final long DEFAULT_BUDGET_BYTES_PER_MINUTE = 1024L * 1024;
+
+    static final long BOOST_WINDOW_MS = 3_000L;
+    static final long DECAY_STEP_MS = 1_000L;
+    /** Budget-derived intervals are capped so one oversized frame cannot stall capture. */
+    static final long MAX_BUDGET_INTERVAL_MS = 60_000L;
+
+    private static final int BUDGET_BUCKETS = 60;
+    private static final long BUDGET_BUCKET_MS = 1_000L;
+    private static final double FRAME_BYTES_ALPHA = 0.2;
+
+    private final long activeIntervalMs;
+    private final long idleIntervalMs;
+    private final long budgetBytesPerMinute;
+
+    private final long[] bucketBytes = new long[BUDGET_BUCKETS];
+    private final long[] bucketIndex = new long[BUDGET_BUCKETS];
+    private double avgFrameBytes;
+    private long lastSignalMs = Long.MIN_VALUE / 2;
+
+    /**
+     * @param activeIntervalMs     interval during the boost window.
+     * @param idleIntervalMs       interval the decay ends at; raised to {@code activeIntervalMs} if lower.
+     * @param budgetBytesPerMinute captured bytes allowed per minute; {@code 0} for no budget.
+     */
+    public AdaptiveCaptureScheduler(long activeIntervalMs, long idleIntervalMs, long budgetBytesPerMinute) {
+        this.activeIntervalMs = activeIntervalMs;
+        this.idleIntervalMs = Math.max(idleIntervalMs, activeIntervalMs);
+        this.budgetBytesPerMinute = budgetBytesPerMinute;
+    }
+
+    /**
+     * Starts a new boost window.
+     *
+     * @return {@code true} if capture was slower than the active rate, i.e. a pending capture
+     * should be pulled forward.
+     */
+    public synchronized boolean onSignal(Signal signal, long nowMs) {
+        final boolean wasSlow = activityIntervalMs(nowMs) > activeIntervalMs;
+        lastSignalMs = nowMs;
+        return wasSlow;
+    }
+
+    /**
+     * Accounts an encoded frame against the budget.
+     */
+    public synchronized void onFrameCaptured(long bytes, long nowMs) {
+        final long index = nowMs / BUDGET_BUCKET_MS;
+        final int slot = (int) (index % BUDGET_BUCKETS);
+        if (bucketIndex[slot] != index) {
+            bucketIndex[slot] = index;
+            bucketBytes[slot] = 0;
+        }
+        bucketBytes[slot] += bytes;
+        avgFrameBytes = avgFrameBytes == 0
+                ? bytes
+                : avgFrameBytes + FRAME_BYTES_ALPHA * (bytes - avgFrameBytes);
+    }
+
+    /**
+     * @return delay until the next capture.
+     */
+    public synchronized long nextIntervalMs(long nowMs) {
+        long interval = activityIntervalMs(nowMs);
+        if (budgetBytesPerMinute > 0 && avgFrameBytes > 0) {
+            final long sustainable = (long) (avgFrameBytes * 60_000L / budgetBytesPerMinute);
+            interval = Math.max(interval, Math.min(sustainable, MAX_BUDGET_INTERVAL_MS));
+            if (bytesInLastMinute(nowMs) >= budgetBytesPerMinute) {
+                interval = Math.max(interval, idleIntervalMs);
+            }
+        }
+        return interval;
+    }
+
+    public long getActiveIntervalMs() {
+        return activeIntervalMs;
+    }
+
+    synchronized long bytesInLastMinute(long nowMs) {
+        final long current = nowMs / BUDGET_BUCKET_MS;
+        long total = 0;
+        for (int i = 0; i < BUDGET_BUCKETS; i++) {
+            if (current - bucketIndex[i] < BUDGET_BUCKETS) {
+                total += bucketBytes[i];
+            }
+        }
+        return total;
+    }
+
+    private long activityIntervalMs(long nowMs) {
+        final long sinceSignal = nowMs - lastSignalMs;
+        if (sinceSignal < BOOST_WINDOW_MS) {
+            return activeIntervalMs;
+        }
+        final long steps = (sinceSignal - BOOST_WINDOW_MS) / DECAY_STEP_MS + 1;
+        // 2^20 times any interval is far past the idle interval
+        return steps > 20 ? idleIntervalMs : Math.min(activeIntervalMs << steps, idleIntervalMs);
+    }
+}
@@ -0,0 +1,201 @@
+package io.middleware.android.sdk.core.replay;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds encoded replay frames to a bytes-per-minute target by picking the encode quality and
+ * output resolution frame by frame.
+ * <p>
+ * Settings form a ladder from the best (highest quality, full resolution) to the cheapest:
+ * quality is lowered first down to {@link #MIN_PREFERRED_QUALITY}, then resolution and quality
+ * take turns, ending at {@link #MIN_SCALE} and {@link #MIN_QUALITY}. After each encoded frame
+ * the recent average frame size and frame interval project the rate per minute; when it is off
+ * the target by more than {@link #DEADBAND} the controller moves down as many rungs as the
+ * nominal cost model says are needed, and up one rung at a time.
+ * <p>
+ * A token bucket tracks the actual spend. Debt (more bytes sent than the target allowed so far)
+ * pushes the projection down, and at the bottom rung {@link #admit(long)} refuses frames until
+ * the debt is paid, so the target holds even for content the cheapest setting can't fit.
+ * <p>
+ * Time is passed in by the caller. Thread safe.
+ */
+public final class BitrateController {
+
+    static final int MIN_QUALITY = 10;
+    static final int MIN_PREFERRED_QUALITY = 40;
+    static final float MIN_SCALE = 0.5f;
+    static final double DEADBAND = 0.15;
+
+    private static final int QUALITY_STEP = 5;
+    private static final float SCALE_STEP = 0.1f;
+    private static final double BYTES_ALPHA = 0.3;
+    private static final double INTERVAL_ALPHA = 0.2;
+    /** Spend the bucket may save up for later bursts. */
+    private static final long BUCKET_CAP_MS = 10_000L;
+
+    public static final String STAT_RUNG = "bitrate.rung";
+    public static final String STAT_QUALITY = "bitrate.quality";
+    public static final String STAT_SCALE_PERCENT = "bitrate.scale_percent";
+    public static final String STAT_SKIPPED_FRAMES = "bitrate.skipped_frames";
+
+    static final class Rung {
+        final int quality;
+        final float scale;
+        final double cost;
+
+        Rung(int quality, float scale) {
+            this.quality = quality;
+            this.scale = scale;
+            this.cost = scale * scale * (0.25 + quality / 100.0);
+        }
+    }
+
+    private final long targetBytesPerMinute;
+    private final List<Rung> ladder;
+
+    private int rung;
+    private double avgFrameBytes;
+    private double avgIntervalMs;
+    private long lastFrameMs = Long.MIN_VALUE;
+    private double bucketBytes;
+    private long bucketAtMs = Long.MIN_VALUE;
+    private long skippedFrames;
+
+    /**
+     * @param targetBytesPerMinute encoded bytes allowed per minute.
+     * @param maxQuality           quality of the top rung, where the controller starts.
+     */
+    public BitrateController(long targetBytesPerMinute, int maxQuality) {
+        this.targetBytesPerMinute = targetBytesPerMinute;
+        this.ladder = buildLadder(Math.max(maxQuality, MIN_QUALITY));
+    }
+
+    static List<Rung> buildLadder(int maxQuality) {
+        List<Rung> ladder = new ArrayList<>();
+        int quality = maxQuality;
+        float scale = 1f;
+        ladder.add(new Rung(quality, scale));
+        boolean scaleNext = true;
+        while (quality > MIN_QUALITY || scale > MIN_SCALE + 1e-3f) {
+            final boolean canScale = scale > MIN_SCALE + 1e-3f;
+            final boolean canLowerQuality = quality > MIN_QUALITY;
+            if (canLowerQuality && (quality > MIN_PREFERRED_QUALITY || !canScale || !scaleNext)) {
+                quality = Math.max(MIN_QUALITY, quality - QUALITY_STEP);
+            } else {
+                scale = Math.max(MIN_SCALE, scale - SCALE_STEP);
+            }
+            if (quality <= MIN_PREFERRED_QUALITY) {
+                scaleNext = !scaleNext;
+            }
+            ladder.add(new Rung(quality, scale));
+        }
+        return ladder;
+    }
+
+    public synchronized int getQuality() {
+        return ladder.get(rung).quality;
+    }
+
+    public synchronized float getScale() {
+        return ladder.get(rung).scale;
+    }
+
+    /**
+     * @return {@code configured} short-edge resolution scaled to the current rung.
+     */
+    public int shortEdgePx(int configured) {
+        return Math.max(1, Math.round(configured * getScale()));
+    }
+
+    /**
+     * @return {@code false} if the next frame should be skipped: the controller is at the
+     * cheapest setting and still over budget.
+     */
+    public synchronized boolean admit(long nowMs) {
+        refill(nowMs);
+        if (rung == ladder.size() - 1 && bucketBytes < 0) {
+            skippedFrames++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Accounts an encoded frame and picks the setting for the next one.
+     */
+    public synchronized void onFrameEncoded(long bytes, long nowMs) {
+        refill(nowMs);
+        bucketBytes -= bytes;
+        if (lastFrameMs != Long.MIN_VALUE) {
+            final long interval = Math.max(1, nowMs - lastFrameMs);
+            avgIntervalMs = avgIntervalMs == 0
+                    ? interval
+                    : avgIntervalMs + INTERVAL_ALPHA * (interval - avgIntervalMs);
+        }
+        lastFrameMs = nowMs;
+        avgFrameBytes = avgFrameBytes == 0
+                ? bytes
+                : avgFrameBytes + BYTES_ALPHA * (bytes - avgFrameBytes);
+        if (avgIntervalMs == 0) {
+            return; // no rate yet
+        }
+
+        double projected = avgFrameBytes * 60_000.0 / avgIntervalMs;
+        if (bucketBytes < 0) {
+            // pay back the debt over the next bucket period on top of the steady rate
+            projected += -bucketBytes * 60_000.0 / BUCKET_CAP_MS;
+        }
+        final double ratio = targetBytesPerMinute / Math.max(projected, 1);
+        if (ratio < 1 - DEADBAND) {
+            final double wantedCost = ladder.get(rung).cost * ratio;
+            int next = rung;
+            while (next < ladder.size() - 1 && ladder.get(next).cost > wantedCost) {
+                next++;
+            }
+            moveTo(next);
+        } else if (ratio > 1 + DEADBAND && rung > 0
+                && ladder.get(rung - 1).cost <= ladder.get(rung).cost * ratio) {
+            moveTo(rung - 1);
+        }
+    }
+
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put(STAT_RUNG, (long) rung);
+        stats.put(STAT_QUALITY, (long) ladder.get(rung).quality);
+        stats.put(STAT_SCALE_PERCENT, (long) Math.round(ladder.get(rung).scale * 100));
+        stats.put(STAT_SKIPPED_FRAMES, skippedFrames);
+        return stats;
+    }
+
+    synchronized int getRung() {
+        return rung;
+    }
+
+    int getLadderSize() {
+        return ladder.size();
+    }
+
+    private void moveTo(int next) {
+        if (next == rung) {
+            return;
+        }
+        // the average was measured at the old setting; carry it over with the nominal cost ratio
+        avgFrameBytes *= ladder.get(next).cost / ladder.get(rung).cost;
+        rung = next;
+    }
+
+    private void refill(long nowMs) {
+        if (bucketAtMs == Long.MIN_VALUE) {
+            bucketAtMs = nowMs;
+            return;
+        }
+        final long elapsed = Math.max(0, nowMs - bucketAtMs);
+        bucketAtMs = nowMs;
+        final double cap = targetBytesPerMinute * (double) BUCKET_CAP_MS / 60_000.0;
+        bucketBytes = Math.min(cap, bucketBytes + targetBytesPerMinute * (double) elapsed / 60_000.0);
+    }
+}
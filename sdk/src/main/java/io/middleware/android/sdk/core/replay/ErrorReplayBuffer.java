@@ -0,0 +1,192 @@
+package io.middleware.android.sdk.core.replay;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rolling in-memory buffer of replay events for error-triggered recording: events are held here
+ * instead of being uploaded, and only handed out by {@link #drain()} when an error fires.
+ * <p>
+ * The buffer covers at most the last {@code windowMs} of events and never holds more than
+ * {@code maxBytes} of event data or {@code maxFrames} frames; the oldest events go first. A
+ * replay has to open with a keyframe, so after evicting the oldest events everything up to the
+ * next keyframe goes too, and a non-keyframe arriving at an empty buffer is dropped. Recorders
+ * keep the buffer playable by emitting a keyframe whenever {@link #needsKeyframe(long)} says so,
+ * i.e. every {@link #CHECKPOINT_INTERVAL_MS} and whenever the buffer ran empty.
+ * <p>
+ * Byte sizes are an estimate of the serialized event: the length of every string in the event
+ * data (frames are dominated by their base64 image) plus a fixed cost per value, plus any
+ * {@link RREvent#getAttachedBytes() attached} binary frame.
+ * <p>
+ * Thread safe.
+ */
+public final class ErrorReplayBuffer {
+
+    public enum Kind {
+        /** Starts a playable stream (rrweb Meta, followed by a full snapshot). */
+        KEYFRAME,
+        /** Carries a screen image. */
+        FRAME,
+        /** Touches, custom events. */
+        OTHER
+    }
+
+    public static final long DEFAULT_WINDOW_MS = 60_000L;
+    public static final long DEFAULT_POST_WINDOW_MS = 10_000L;
+    public static final long DEFAULT_MAX_BYTES = 2L * 1024 * 1024;
+    public static final int DEFAULT_MAX_FRAMES = 120;
+
+    public static final String STAT_BYTES = "error_buffer.bytes";
+    public static final String STAT_FRAMES = "error_buffer.frames";
+    public static final String STAT_EVICTED_EVENTS = "error_buffer.evicted_events";
+    public static final String STAT_DRAINS = "error_buffer.drains";
+
+    static final long CHECKPOINT_INTERVAL_MS = 10_000L;
+
+    private static final int VALUE_OVERHEAD_BYTES = 16;
+
+    private static final class Entry {
+        final RREvent event;
+        final String sessionId;
+        final Kind kind;
+        final long bytes;
+
+        Entry(RREvent event, String sessionId, Kind kind, long bytes) {
+            this.event = event;
+            this.sessionId = sessionId;
+            this.kind = kind;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * An event handed out by {@link #drain()} with the session it was recorded under.
+     */
+    public static final class Buffered {
+        public final RREvent event;
+        public final String sessionId;
+
+        Buffered(RREvent event, String sessionId) {
+            this.event = event;
+            this.sessionId = sessionId;
+        }
+    }
+
+    private final long windowMs;
+    private final long maxBytes;
+    private final int maxFrames;
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private long bytes;
+    private int frames;
+    private long lastKeyframeMs = Long.MIN_VALUE / 2;
+
+    private long evictedEvents;
+    private long drains;
+
+    public ErrorReplayBuffer(long windowMs, long maxBytes, int maxFrames) {
+        this.windowMs = windowMs;
+        this.maxBytes = maxBytes;
+        this.maxFrames = maxFrames;
+    }
+
+    /**
+     * Buffers {@code event}, evicting the oldest events to stay within the window and caps.
+     *
+     * @return {@code false} if the event was dropped because it can't start a stream or alone
+     * exceeds the caps.
+     */
+    public synchronized boolean add(RREvent event, String sessionId, Kind kind) {
+        if (entries.isEmpty() && kind != Kind.KEYFRAME) {
+            evictedEvents++;
+            return false;
+        }
+        final long size = sizeOf(event.getData()) + event.getAttachedBytes();
+        entries.addLast(new Entry(event, sessionId, kind, size));
+        bytes += size;
+        if (kind == Kind.FRAME) {
+            frames++;
+        } else if (kind == Kind.KEYFRAME) {
+            lastKeyframeMs = event.getTimestamp();
+        }
+        evict(event.getTimestamp());
+        return !entries.isEmpty();
+    }
+
+    /**
+     * @return {@code true} if the next frame should be recorded as a keyframe.
+     */
+    public synchronized boolean needsKeyframe(long nowMs) {
+        return entries.isEmpty() || nowMs - lastKeyframeMs >= CHECKPOINT_INTERVAL_MS;
+    }
+
+    /**
+     * Removes and returns everything buffered, oldest first.
+     */
+    public synchronized List<Buffered> drain() {
+        List<Buffered> out = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            out.add(new Buffered(entry.event, entry.sessionId));
+        }
+        entries.clear();
+        bytes = 0;
+        frames = 0;
+        drains++;
+        return out;
+    }
+
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put(STAT_BYTES, bytes);
+        stats.put(STAT_FRAMES, (long) frames);
+        stats.put(STAT_EVICTED_EVENTS, evictedEvents);
+        stats.put(STAT_DRAINS, drains);
+        return stats;
+    }
+
+    private void evict(long newestMs) {
+        while (!entries.isEmpty()
+                && (bytes > maxBytes || frames > maxFrames
+                || newestMs - entries.peekFirst().event.getTimestamp() > windowMs)) {
+            removeFirst();
+            // the stream has to open with a keyframe; what came before the next one is unplayable
+            while (!entries.isEmpty() && entries.peekFirst().kind != Kind.KEYFRAME) {
+                removeFirst();
+            }
+        }
+    }
+
+    private void removeFirst() {
+        Entry entry = entries.removeFirst();
+        bytes -= entry.bytes;
+        if (entry.kind == Kind.FRAME) {
+            frames--;
+        }
+        evictedEvents++;
+    }
+
+    static long sizeOf(Object value) {
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() + VALUE_OVERHEAD_BYTES;
+        }
+        if (value instanceof Map) {
+            long size = VALUE_OVERHEAD_BYTES;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            long size = VALUE_OVERHEAD_BYTES;
+            for (Object item : (Collection<?>) value) {
+                size += sizeOf(item);
+            }
+            return size;
+        }
+        return VALUE_OVERHEAD_BYTES;
+    }
+}
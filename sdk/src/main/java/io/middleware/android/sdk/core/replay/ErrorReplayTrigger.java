@@ -0,0 +1,64 @@
+package io.middleware.android.sdk.core.replay;
+
+import static io.middleware.android.sdk.utils.Constants.COMPONENT_CRASH;
+import static io.middleware.android.sdk.utils.Constants.COMPONENT_ERROR;
+import static io.middleware.android.sdk.utils.Constants.COMPONENT_KEY;
+
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+
+/**
+ * Tells the session recorder when an error is reported so an error-triggered replay can upload
+ * its buffer. Watches ended spans rather than hooking each error source: uncaught exceptions
+ * ({@code component=crash}), ANRs and {@code Middleware.addException} ({@code component=error})
+ * all end up as spans.
+ * <p>
+ * The crash span ends on the crashing thread before the process dies, so the listener is
+ * called synchronously and may block briefly to get the replay out.
+ */
+public final class ErrorReplayTrigger implements SpanProcessor {
+
+    public interface Listener {
+        /**
+         * @param reason span name of the error, e.g. the exception class or {@code ANR}.
+         * @param fatal  {@code true} for an uncaught exception.
+         */
+        void onError(String reason, boolean fatal);
+    }
+
+    private volatile Listener listener;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+        final Listener l = listener;
+        if (l == null) {
+            return;
+        }
+        final String component = span.getAttribute(COMPONENT_KEY);
+        if (COMPONENT_CRASH.equals(component)) {
+            l.onError(span.getName(), true);
+        } else if (COMPONENT_ERROR.equals(component)) {
+            l.onError(span.getName(), false);
+        }
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+}
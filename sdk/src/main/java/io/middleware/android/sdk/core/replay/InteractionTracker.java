@@ -0,0 +1,150 @@
+package io.middleware.android.sdk.core.replay;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.Window;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Feeds UI activity of the resumed activity into an {@link AdaptiveCaptureScheduler}: activity
+ * resumes count as navigation, {@code OnScrollChangedListener} callbacks as scrolls and, when
+ * enabled, touch down/move events as touches.
+ * <p>
+ * Touch tracking wraps the window callback; recorders that already wrap it for their own touch
+ * events pass {@code trackTouches = false} and forward touches themselves.
+ * <p>
+ * All callbacks run on the main thread.
+ */
+public final class InteractionTracker implements Application.ActivityLifecycleCallbacks {
+
+    /**
+     * Notified when a signal pulls capture forward from a slower rate.
+     */
+    public interface Listener {
+        void onWake();
+    }
+
+    private final AdaptiveCaptureScheduler scheduler;
+    private final boolean trackTouches;
+    private final Listener listener;
+    private final ViewTreeObserver.OnScrollChangedListener scrollListener =
+            () -> signal(AdaptiveCaptureScheduler.Signal.SCROLL);
+
+    private WeakReference<Activity> attached = new WeakReference<>(null);
+
+    public InteractionTracker(AdaptiveCaptureScheduler scheduler, boolean trackTouches, Listener listener) {
+        this.scheduler = scheduler;
+        this.trackTouches = trackTouches;
+        this.listener = listener;
+    }
+
+    public void signal(AdaptiveCaptureScheduler.Signal signal) {
+        if (scheduler.onSignal(signal, SystemClock.uptimeMillis()) && listener != null) {
+            listener.onWake();
+        }
+    }
+
+    /**
+     * Starts tracking {@code activity}, detaching from the previous one.
+     */
+    public void attach(Activity activity) {
+        if (attached.get() == activity) {
+            return;
+        }
+        detach();
+        Window window = activity.getWindow();
+        View decorView = window != null ? window.peekDecorView() : null;
+        if (decorView == null) {
+            return;
+        }
+        decorView.getViewTreeObserver().addOnScrollChangedListener(scrollListener);
+        if (trackTouches && !(window.getCallback() instanceof TouchCallback)) {
+            window.setCallback(new TouchCallback(window.getCallback()));
+        }
+        attached = new WeakReference<>(activity);
+    }
+
+    public void detach() {
+        Activity activity = attached.get();
+        attached = new WeakReference<>(null);
+        if (activity == null) {
+            return;
+        }
+        Window window = activity.getWindow();
+        if (window == null) {
+            return;
+        }
+        View decorView = window.peekDecorView();
+        if (decorView != null && decorView.getViewTreeObserver().isAlive()) {
+            decorView.getViewTreeObserver().removeOnScrollChangedListener(scrollListener);
+        }
+        // only unwrap if nobody wrapped the callback after us
+        if (window.getCallback() instanceof TouchCallback) {
+            window.setCallback(((TouchCallback) window.getCallback()).original);
+        }
+    }
+
+    @Override
+    public void onActivityResumed(@NonNull Activity activity) {
+        signal(AdaptiveCaptureScheduler.Signal.NAVIGATION);
+        attach(activity);
+    }
+
+    @Override
+    public void onActivityPaused(@NonNull Activity activity) {
+        if (attached.get() == activity) {
+            detach();
+        }
+    }
+
+    @Override
+    public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityStarted(@NonNull Activity activity) {
+    }
+
+    @Override
+    public void onActivityStopped(@NonNull Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(@NonNull Activity activity) {
+    }
+
+    private final class TouchCallback extends WindowCallbackDelegate {
+        final Window.Callback original;
+
+        TouchCallback(Window.Callback original) {
+            super(original);
+            this.original = original;
+        }
+
+        @Override
+        public boolean dispatchTouchEvent(MotionEvent event) {
+            if (event != null) {
+                final int action = event.getActionMasked();
+                if (action == MotionEvent.ACTION_DOWN) {
+                    signal(AdaptiveCaptureScheduler.Signal.TOUCH);
+                } else if (action == MotionEvent.ACTION_MOVE) {
+                    signal(AdaptiveCaptureScheduler.Signal.SCROLL);
+                }
+            }
+            return super.dispatchTouchEvent(event);
+        }
+    }
+}
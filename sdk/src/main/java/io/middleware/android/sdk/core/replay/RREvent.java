@@ -25,4 +25,12 @@ public class RREvent {
     public Map<String, Object> getData() {
         return data;
     }
+
+    /**
+     * Bytes shipped alongside the event instead of inside its data, such as a frame image
+     * uploaded as a binary blob.
+     */
+    public long getAttachedBytes() {
+        return 0;
+    }
 }
@@ -0,0 +1,271 @@
+package io.middleware.android.sdk.core.replay;
+
+import static io.middleware.android.sdk.utils.Constants.LOG_TAG;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+
+/**
+ * Steps session recording down while the device is hot, low on battery or in power saver.
+ * <p>
+ * Inputs are the {@link PowerManager} thermal status (API 29+), the battery level and charging
+ * state from the sticky {@link Intent#ACTION_BATTERY_CHANGED} broadcast, and power-save mode.
+ * They map to a {@link Level} that stretches the capture interval, caps the encode quality,
+ * shrinks the output resolution or pauses capture altogether. Leaving a battery-driven level
+ * requires the battery to clear the threshold by {@link #BATTERY_HYSTERESIS_PCT} so recording
+ * doesn't flap around a threshold; the thermal status has its own hysteresis in the platform.
+ * <p>
+ * Recorders read {@link #getLevel()} on their capture path and report each
+ * {@link Listener#onLevelChanged transition} into the replay. Transitions are reported on the
+ * main thread, except one found by {@link #start()} itself, which is reported on its caller.
+ */
+public final class RecordingGovernor {
+
+    public enum Level {
+        NORMAL(1, RecordingQuality.HIGH, 1f),
+        REDUCED(2, RecordingQuality.MEDIUM, 0.75f),
+        CONSTRAINED(4, RecordingQuality.LOW, 0.5f),
+        PAUSED(4, RecordingQuality.LOW, 0.5f);
+
+        private final int intervalMultiplier;
+        private final RecordingQuality maxQuality;
+        private final float resolutionScale;
+
+        Level(int intervalMultiplier, RecordingQuality maxQuality, float resolutionScale) {
+            this.intervalMultiplier = intervalMultiplier;
+            this.maxQuality = maxQuality;
+            this.resolutionScale = resolutionScale;
+        }
+
+        /**
+         * @return how many configured capture intervals pass between two frames.
+         */
+        public int getIntervalMultiplier() {
+            return intervalMultiplier;
+        }
+
+        public boolean isPaused() {
+            return this == PAUSED;
+        }
+
+        /**
+         * @return {@code configured} capped at this level's quality.
+         */
+        public int quality(int configured) {
+            return Math.min(configured, maxQuality.getValue());
+        }
+
+        /**
+         * @return {@code configured} short-edge resolution scaled down for this level.
+         */
+        public int shortEdgePx(int configured) {
+            return Math.max(1, Math.round(configured * resolutionScale));
+        }
+    }
+
+    /**
+     * Device state a level was picked from.
+     */
+    public static final class Conditions {
+        /** {@code PowerManager.THERMAL_STATUS_*}; {@code THERMAL_STATUS_NONE} below API 29. */
+        public final int thermalStatus;
+        /** 0–100, or -1 when unknown. */
+        public final int batteryPercent;
+        public final boolean charging;
+        public final boolean powerSave;
+
+        public Conditions(int thermalStatus, int batteryPercent, boolean charging, boolean powerSave) {
+            this.thermalStatus = thermalStatus;
+            this.batteryPercent = batteryPercent;
+            this.charging = charging;
+            this.powerSave = powerSave;
+        }
+
+        @Override
+        public String toString() {
+            return "thermal=" + thermalStatus + " battery=" + batteryPercent + "%"
+                    + (charging ? " charging" : "") + (powerSave ? " power-save" : "");
+        }
+    }
+
+    public interface Listener {
+        void onLevelChanged(Level from, Level to, Conditions conditions);
+    }
+
+    static final int BATTERY_REDUCED_PCT = 30;
+    static final int BATTERY_CONSTRAINED_PCT = 15;
+    static final int BATTERY_PAUSED_PCT = 5;
+    static final int BATTERY_HYSTERESIS_PCT = 5;
+
+    private final Context context;
+    private final Listener listener;
+
+    private volatile Level level = Level.NORMAL;
+
+    private int thermalStatus = PowerManager.THERMAL_STATUS_NONE;
+    private int batteryPercent = -1;
+    private boolean charging;
+    private boolean powerSave;
+
+    private BroadcastReceiver receiver;
+    private Object thermalListener;
+
+    public RecordingGovernor(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+    }
+
+    /**
+     * Picks the level for {@code conditions} without hysteresis.
+     *
+     * @param batteryMarginPct added to every battery threshold.
+     */
+    static Level evaluate(Conditions conditions, int batteryMarginPct) {
+        final boolean onBattery = !conditions.charging && conditions.batteryPercent >= 0;
+        final int battery = conditions.batteryPercent;
+        if (conditions.thermalStatus >= PowerManager.THERMAL_STATUS_CRITICAL
+                || (onBattery && battery <= BATTERY_PAUSED_PCT + batteryMarginPct)) {
+            return Level.PAUSED;
+        }
+        if (conditions.thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE
+                || (onBattery && battery <= BATTERY_CONSTRAINED_PCT + batteryMarginPct)) {
+            return Level.CONSTRAINED;
+        }
+        if (conditions.thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE
+                || conditions.powerSave
+                || (onBattery && battery <= BATTERY_REDUCED_PCT + batteryMarginPct)) {
+            return Level.REDUCED;
+        }
+        return Level.NORMAL;
+    }
+
+    /**
+     * @return the level to move to from {@code current}: stepping down is immediate, stepping
+     * up only goes as far as the battery clears the thresholds by the hysteresis margin.
+     */
+    static Level next(Level current, Conditions conditions) {
+        final Level target = evaluate(conditions, 0);
+        if (target.ordinal() >= current.ordinal()) {
+            return target;
+        }
+        final Level withMargin = evaluate(conditions, BATTERY_HYSTERESIS_PCT);
+        return withMargin.ordinal() < current.ordinal() ? withMargin : current;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public void start() {
+        final Intent sticky;
+        synchronized (this) {
+            if (receiver != null) {
+                return;
+            }
+            receiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+                        onBatteryChanged(intent);
+                    } else {
+                        onPowerSaveChanged();
+                    }
+                }
+            };
+            IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+            filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+            sticky = context.registerReceiver(receiver, filter);
+
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            if (powerManager != null) {
+                powerSave = powerManager.isPowerSaveMode();
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                    thermalStatus = powerManager.getCurrentThermalStatus();
+                    PowerManager.OnThermalStatusChangedListener thermal = this::onThermalStatusChanged;
+                    powerManager.addThermalStatusListener(context.getMainExecutor(), thermal);
+                    thermalListener = thermal;
+                }
+            }
+        }
+        if (sticky != null) {
+            onBatteryChanged(sticky);
+        } else {
+            update();
+        }
+    }
+
+    public synchronized void stop() {
+        if (receiver == null) {
+            return;
+        }
+        try {
+            context.unregisterReceiver(receiver);
+        } catch (IllegalArgumentException e) {
+            // already unregistered
+        }
+        receiver = null;
+        if (thermalListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            if (powerManager != null) {
+                powerManager.removeThermalStatusListener(
+                        (PowerManager.OnThermalStatusChangedListener) thermalListener);
+            }
+        }
+        thermalListener = null;
+    }
+
+    private void onBatteryChanged(Intent intent) {
+        final int levelRaw = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        final int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        final int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        synchronized (this) {
+            batteryPercent = levelRaw >= 0 && scale > 0 ? levelRaw * 100 / scale : -1;
+            charging = status == BatteryManager.BATTERY_STATUS_CHARGING
+                    || status == BatteryManager.BATTERY_STATUS_FULL;
+        }
+        update();
+    }
+
+    private void onPowerSaveChanged() {
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager == null) {
+            return;
+        }
+        synchronized (this) {
+            powerSave = powerManager.isPowerSaveMode();
+        }
+        update();
+    }
+
+    private void onThermalStatusChanged(int status) {
+        synchronized (this) {
+            thermalStatus = status;
+        }
+        update();
+    }
+
+    private void update() {
+        final Level from;
+        final Level to;
+        final Conditions conditions;
+        synchronized (this) {
+            conditions = new Conditions(thermalStatus, batteryPercent, charging, powerSave);
+            from = level;
+            to = next(from, conditions);
+            if (to == from) {
+                return;
+            }
+            level = to;
+        }
+        Log.i(LOG_TAG, "Recording " + from + " -> " + to + " (" + conditions + ")");
+        if (listener != null) {
+            listener.onLevelChanged(from, to, conditions);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package io.middleware.android.sdk.core.replay;
+
+import static io.middleware.android.sdk.utils.Constants.LOG_TAG;
+
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps on-disk replay artifacts (frames, open segments, archives waiting for upload) under a
+ * byte quota.
+ * <p>
+ * Each watched folder is registered with the file extensions it is expected to contain. Files
+ * are attributed to a session by the {@code <sessionId>-<ts>.<ext>} naming the recorders use;
+ * files without a session (frames written by older SDK versions) are treated as the oldest.
+ * <p>
+ * {@link #enforceQuota(String)} deletes the oldest files first until usage is back under the
+ * quota. Files of the newest session on disk and of the active session are never evicted, so
+ * an offline device keeps its most recent recording rather than a random slice of several.
+ * {@link #removeOrphans()} runs once at startup and deletes leftovers no recorder will ever
+ * pick up again: empty files, temp files and files with an unexpected extension.
+ * <p>
+ * Thread safe; meant to be called from the recorder's IO thread.
+ */
+public final class ReplayStorageManager {
+
+    public static final long DEFAULT_QUOTA_BYTES = 50L * 1024 * 1024;
+
+    public static final String STAT_USAGE_BYTES = "storage.usage_bytes";
+    public static final String STAT_QUOTA_BYTES = "storage.quota_bytes";
+    public static final String STAT_EVICTED_FILES = "storage.evicted_files";
+    public static final String STAT_EVICTED_BYTES = "storage.evicted_bytes";
+    public static final String STAT_ORPHANS_REMOVED = "storage.orphans_removed";
+
+    private static final class Folder {
+        final File dir;
+        final String[] extensions;
+
+        Folder(File dir, String[] extensions) {
+            this.dir = dir;
+            this.extensions = extensions;
+        }
+    }
+
+    private static final class Entry {
+        final File file;
+        final long size;
+        final long modified;
+        final String sessionId;
+
+        Entry(File file, long size, long modified, String sessionId) {
+            this.file = file;
+            this.size = size;
+            this.modified = modified;
+            this.sessionId = sessionId;
+        }
+    }
+
+    private final long quotaBytes;
+    private final List<Folder> folders = new ArrayList<>();
+
+    private long usageBytes;
+    private long evictedFiles;
+    private long evictedBytes;
+    private long orphansRemoved;
+
+    public ReplayStorageManager(long quotaBytes) {
+        this.quotaBytes = quotaBytes;
+    }
+
+    /**
+     * Adds {@code dir} to the managed folders.
+     *
+     * @param extensions file name suffixes that belong in {@code dir}; anything else is an orphan.
+     */
+    public synchronized ReplayStorageManager watch(File dir, String... extensions) {
+        folders.add(new Folder(dir, extensions));
+        return this;
+    }
+
+    /**
+     * Deletes empty files, temp files and files with an unexpected extension from the watched
+     * folders.
+     *
+     * @return number of files removed.
+     */
+    public synchronized int removeOrphans() {
+        int removed = 0;
+        for (Folder folder : folders) {
+            File[] files = folder.dir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (file.isDirectory() || (file.length() > 0 && hasExtension(file.getName(), folder.extensions))) {
+                    continue;
+                }
+                if (file.delete()) {
+                    removed++;
+                }
+            }
+        }
+        orphansRemoved += removed;
+        if (removed > 0) {
+            Log.d(LOG_TAG, "Removed " + removed + " orphaned replay files");
+        }
+        return removed;
+    }
+
+    /**
+     * Evicts the oldest files until the watched folders fit in the quota, keeping every file of
+     * the newest session on disk and of {@code activeSessionId}.
+     *
+     * @return bytes evicted.
+     */
+    public synchronized long enforceQuota(String activeSessionId) {
+        List<Entry> entries = scan();
+        long usage = 0;
+        Entry newest = null;
+        for (Entry entry : entries) {
+            usage += entry.size;
+            if (newest == null || entry.modified > newest.modified) {
+                newest = entry;
+            }
+        }
+        long evicted = 0;
+        if (usage > quotaBytes) {
+            final String newestSession = newest.sessionId;
+            Collections.sort(entries, (a, b) -> Long.compare(a.modified, b.modified));
+            for (Entry entry : entries) {
+                if (usage <= quotaBytes) {
+                    break;
+                }
+                if (entry.sessionId != null
+                        && (entry.sessionId.equals(newestSession) || entry.sessionId.equals(activeSessionId))) {
+                    continue;
+                }
+                if (entry.file.delete()) {
+                    usage -= entry.size;
+                    evicted += entry.size;
+                    evictedFiles++;
+                }
+            }
+            evictedBytes += evicted;
+            if (usage > quotaBytes) {
+                Log.w(LOG_TAG, "Replay storage " + usage + " B over quota " + quotaBytes
+                        + " B; only the newest session is left");
+            } else {
+                Log.d(LOG_TAG, "Evicted " + evicted + " B of replay data to stay under quota");
+            }
+        }
+        usageBytes = usage;
+        return evicted;
+    }
+
+    /**
+     * @return usage as of the last {@link #enforceQuota(String)}, the quota and the eviction
+     * and orphan counters, keyed by the {@code STAT_*} constants.
+     */
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put(STAT_USAGE_BYTES, usageBytes);
+        stats.put(STAT_QUOTA_BYTES, quotaBytes);
+        stats.put(STAT_EVICTED_FILES, evictedFiles);
+        stats.put(STAT_EVICTED_BYTES, evictedBytes);
+        stats.put(STAT_ORPHANS_REMOVED, orphansRemoved);
+        return stats;
+    }
+
+    private List<Entry> scan() {
+        List<Entry> entries = new ArrayList<>();
+        for (Folder folder : folders) {
+            File[] files = folder.dir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (file.isFile()) {
+                    entries.add(new Entry(file, file.length(), file.lastModified(), sessionIdOf(file.getName())));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static String sessionIdOf(String name) {
+        final int dash = name.lastIndexOf('-');
+        return dash > 0 ? name.substring(0, dash) : null;
+    }
+
+    private static boolean hasExtension(String name, String[] extensions) {
+        for (String extension : extensions) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -2,6 +2,9 @@ package io.middleware.android.sdk.core.replay;
 
 import android.view.View;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * Common contract for session recorders (v2 screenshot archives, v3 rrweb
  * events) so recorder wiring — sampling sync, session watcher, sanitize API —
@@ -24,4 +27,20 @@ public interface SessionRecorder {
      * Removes a view previously registered with {@link #setViewForBlur(View)}.
      */
     void removeSanitizedElement(View element);
+
+    /**
+     * Recorder counters such as disk usage and evictions, keyed by stable names.
+     */
+    default Map<String, Long> getStats() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * An error was reported in the session. Recorders holding back replay until an error
+     * happens upload it now; others ignore it.
+     *
+     * @param fatal {@code true} if the process is about to die.
+     */
+    default void onError(String reason, boolean fatal) {
+    }
 }
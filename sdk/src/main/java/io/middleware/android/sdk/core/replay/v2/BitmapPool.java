@@ -0,0 +1,137 @@
+package io.middleware.android.sdk.core.replay.v2;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Small pool of mutable ARGB_8888 bitmaps keyed by size, so the capture pipeline does not
+ * allocate a full-screen bitmap (~8 MB at 1080x1920) plus a scaled one on every tick.
+ * <p>
+ * Bitmaps are acquired on the main thread (capture) and released on the IO thread once the
+ * frame is encoded, so all methods are synchronized.
+ * <p>
+ * {@link #invalidate()} drops every idle bitmap and forgets the sizes seen so far; it is called
+ * on rotation so bitmaps of the old orientation still in flight are recycled when released
+ * instead of lingering in the pool.
+ * <p>
+ * Also keeps allocation counters, which {@link RecordingBench} reports.
+ */
+final class BitmapPool {
+
+    private final int maxPerSize;
+    private final Map<Long, ArrayDeque<Bitmap>> idle = new HashMap<>();
+    /**
+     * Sizes acquired since the last {@link #invalidate()}; only these are kept on release.
+     */
+    private final Set<Long> activeSizes = new HashSet<>();
+
+    private long allocatedBytes;
+    private int allocations;
+    private int reuses;
+    private long liveBytes;
+    private long peakLiveBytes;
+
+    /**
+     * @param maxPerSize idle bitmaps kept per size. {@code 0} disables pooling (every acquire
+     *                   allocates, every release recycles) while keeping the counters.
+     */
+    BitmapPool(int maxPerSize) {
+        this.maxPerSize = maxPerSize;
+    }
+
+    /**
+     * @return a mutable bitmap of exactly {@code width x height}. Contents are undefined.
+     */
+    synchronized Bitmap acquire(int width, int height) {
+        final long key = key(width, height);
+        activeSizes.add(key);
+        final ArrayDeque<Bitmap> queue = idle.get(key);
+        while (queue != null && !queue.isEmpty()) {
+            Bitmap bitmap = queue.pollFirst();
+            if (!bitmap.isRecycled()) {
+                reuses++;
+                return bitmap;
+            }
+            liveBytes -= byteCount(width, height);
+        }
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        final long bytes = byteCount(width, height);
+        allocations++;
+        allocatedBytes += bytes;
+        liveBytes += bytes;
+        peakLiveBytes = Math.max(peakLiveBytes, liveBytes);
+        return bitmap;
+    }
+
+    /**
+     * Returns a bitmap obtained from {@link #acquire(int, int)}. It is recycled if the pool for
+     * its size is full or its size was invalidated.
+     */
+    synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        final long key = key(bitmap.getWidth(), bitmap.getHeight());
+        if (activeSizes.contains(key)) {
+            ArrayDeque<Bitmap> queue = idle.get(key);
+            if (queue == null) {
+                queue = new ArrayDeque<>(maxPerSize);
+                idle.put(key, queue);
+            }
+            if (queue.size() < maxPerSize) {
+                queue.addLast(bitmap);
+                return;
+            }
+        }
+        recycle(bitmap);
+    }
+
+    /**
+     * Recycles idle bitmaps and forgets the active sizes, e.g. after a rotation.
+     */
+    synchronized void invalidate() {
+        for (ArrayDeque<Bitmap> queue : idle.values()) {
+            for (Bitmap bitmap : queue) {
+                recycle(bitmap);
+            }
+        }
+        idle.clear();
+        activeSizes.clear();
+    }
+
+    synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    synchronized int getAllocations() {
+        return allocations;
+    }
+
+    synchronized int getReuses() {
+        return reuses;
+    }
+
+    synchronized long getPeakLiveBytes() {
+        return peakLiveBytes;
+    }
+
+    private void recycle(Bitmap bitmap) {
+        if (!bitmap.isRecycled()) {
+            liveBytes -= byteCount(bitmap.getWidth(), bitmap.getHeight());
+            bitmap.recycle();
+        }
+    }
+
+    private static long key(int width, int height) {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    }
+
+    private static long byteCount(int width, int height) {
+        return (long) width * height * 4;
+    }
+}
@@ -0,0 +1,119 @@
+package io.middleware.android.sdk.core.replay.v2;
+
+import android.graphics.Bitmap;
+
+import java.util.Arrays;
+
+/**
+ * Cheap perceptual fingerprint used to drop frames that look the same as the last encoded one
+ * before paying for the WebP/JPEG encode.
+ * <p>
+ * The (already downscaled) frame is divided into {@link #CELL_PX}-pixel cells and the mean
+ * luma of each cell is taken from every {@link #SAMPLE_STEP}th pixel. Two frames match when no
+ * cell's mean luma differs by more than {@link #LUMA_TOLERANCE}, which absorbs scaling and
+ * anti-aliasing noise but still catches a changed label or a scrolled list.
+ * <p>
+ * {@link #matches} fingerprints a frame and compares it with the reference; only
+ * {@link #commit} makes it the new reference, so callers commit the frames they actually encode.
+ * A slow fade or progress bar that changes a little per frame then still drifts past the
+ * tolerance and gets encoded.
+ * <p>
+ * Not thread safe; owned by the thread that encodes (the IO thread in v2, the capture executor
+ * in v3). All buffers are reused between frames.
+ */
+public final class FrameFingerprint {
+
+    static final int CELL_PX = 8;
+    static final int SAMPLE_STEP = 2;
+    static final int LUMA_TOLERANCE = 3;
+
+    private int width;
+    private int height;
+    private int cols;
+    private int[] row = new int[0];
+    private int[] samplesPerCell = new int[0];
+    private int[] current = new int[0];
+    private int[] reference = new int[0];
+    private boolean hasCurrent;
+    private boolean hasReference;
+
+    /**
+     * Fingerprints {@code bitmap}; {@link #commit} makes it the reference.
+     *
+     * @return {@code true} if it matches the reference frame.
+     */
+    public boolean matches(Bitmap bitmap) {
+        final int w = bitmap.getWidth();
+        final int h = bitmap.getHeight();
+        if (w != width || h != height) {
+            resize(w, h);
+        }
+        final int[] sums = current;
+        Arrays.fill(sums, 0);
+        final int[] line = row;
+        for (int y = 0; y < h; y += SAMPLE_STEP) {
+            bitmap.getPixels(line, 0, w, 0, y, w, 1);
+            final int rowOffset = (y / CELL_PX) * cols;
+            for (int x = 0; x < w; x += SAMPLE_STEP) {
+                final int p = line[x];
+                // integer BT.601 luma
+                sums[rowOffset + x / CELL_PX] +=
+                        (((p >> 16) & 0xff) * 77 + ((p >> 8) & 0xff) * 150 + (p & 0xff) * 29) >> 8;
+            }
+        }
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] /= samplesPerCell[i];
+        }
+
+        hasCurrent = true;
+        if (!hasReference) {
+            return false;
+        }
+        for (int i = 0; i < sums.length; i++) {
+            if (Math.abs(sums[i] - reference[i]) > LUMA_TOLERANCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes the frame last passed to {@link #matches} the reference, once it has been encoded.
+     */
+    public void commit() {
+        if (!hasCurrent) {
+            return;
+        }
+        final int[] committed = current;
+        current = reference;
+        reference = committed;
+        hasCurrent = false;
+        hasReference = true;
+    }
+
+    /**
+     * Forgets the reference frame so the next one never matches.
+     */
+    public void reset() {
+        hasCurrent = false;
+        hasReference = false;
+    }
+
+    private void resize(int w, int h) {
+        width = w;
+        height = h;
+        cols = (w + CELL_PX - 1) / CELL_PX;
+        final int rows = (h + CELL_PX - 1) / CELL_PX;
+        row = new int[w];
+        current = new int[cols * rows];
+        reference = new int[cols * rows];
+        samplesPerCell = new int[cols * rows];
+        for (int y = 0; y < h; y += SAMPLE_STEP) {
+            for (int x = 0; x < w; x += SAMPLE_STEP) {
+                samplesPerCell[(y / CELL_PX) * cols + x / CELL_PX]++;
+            }
+        }
+        hasCurrent = false;
+        hasReference = false;
+    }
+}
@@ -0,0 +1,20 @@
+package io.middleware.android.sdk.core.replay.v2;
+
+import java.io.IOException;
+
+/**
+ * A request that reached the server and got a non-2xx response.
+ */
+final class HttpStatusException extends IOException {
+
+    private final int statusCode;
+
+    HttpStatusException(int statusCode) {
+        super("Error in call: " + statusCode);
+        this.statusCode = statusCode;
+    }
+
+    int getStatusCode() {
+        return statusCode;
+    }
+}
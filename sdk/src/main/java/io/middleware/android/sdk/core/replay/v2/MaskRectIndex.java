@@ -0,0 +1,188 @@
+package io.middleware.android.sdk.core.replay.v2;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Screen rects of the views to mask in the current window, kept between captures.
+ * <p>
+ * The set of masked views (explicitly sanitized views plus every {@link SanitizableViewGroup}
+ * in the tree) is only walked for again after an {@code OnGlobalLayoutListener} or
+ * {@code OnScrollChangedListener} callback: a view added to the tree is laid out before the
+ * frame it appears in, and RecyclerView and ListView report a scroll when they attach rows
+ * without one. Their positions and visibility are re-read on every {@link #snapshot}, which
+ * is cheap, so translation animations and views that turn visible are masked in the very
+ * frame they move or appear in.
+ * <p>
+ * Main thread only, except {@link #invalidate()}. Snapshots are read-only and reuse their
+ * arrays every other call; the capture in flight is done with a snapshot before then.
+ */
+final class MaskRectIndex {
+
+    private final List<WeakReference<View>> sanitizedElements;
+    private final ViewTreeObserver.OnGlobalLayoutListener layoutListener = this::invalidate;
+    private final ViewTreeObserver.OnScrollChangedListener scrollListener = this::invalidate;
+
+    private WeakReference<View> root = new WeakReference<>(null);
+    /** Weak so a destroyed activity isn't kept alive until the next capture. */
+    private final List<WeakReference<View>> maskedViews = new ArrayList<>();
+    private List<int[]> snapshot = Collections.emptyList();
+    private final int[] location = new int[2];
+
+    /** Two snapshot lists, filled in turn from their own pools of {x, y, width, height} arrays. */
+    private final List<List<int[]>> rectBuffers = new ArrayList<>(2);
+    private final List<List<int[]>> rectViews = new ArrayList<>(2);
+    private final List<List<int[]>> rectPools = new ArrayList<>(2);
+    private int nextBuffer;
+
+    private volatile boolean structureDirty = true;
+
+    private int rebuilds;
+    private int refreshes;
+
+    /**
+     * @param sanitizedElements views registered through {@code setViewForBlur}; dead references
+     *                          are pruned from it on rebuild.
+     */
+    MaskRectIndex(List<WeakReference<View>> sanitizedElements) {
+        this.sanitizedElements = sanitizedElements;
+        for (int i = 0; i < 2; i++) {
+            List<int[]> buffer = new ArrayList<>();
+            rectBuffers.add(buffer);
+            rectViews.add(Collections.unmodifiableList(buffer));
+            rectPools.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Marks the masked view set stale, e.g. after a view was added to or removed from the
+     * sanitized elements.
+     */
+    void invalidate() {
+        structureDirty = true;
+    }
+
+    /**
+     * @return the mask rects of {@code rootView}'s tree as {@code {x, y, width, height}} in screen
+     * coordinates. Starts tracking {@code rootView} if it isn't the tracked root yet.
+     */
+    List<int[]> snapshot(View rootView) {
+        if (root.get() != rootView) {
+            attach(rootView);
+        }
+        if (structureDirty) {
+            structureDirty = false;
+            rebuild(rootView);
+        } else {
+            refreshPositions();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Stops tracking the current root.
+     */
+    void detach() {
+        View view = root.get();
+        root = new WeakReference<>(null);
+        maskedViews.clear();
+        snapshot = Collections.emptyList();
+        structureDirty = true;
+        if (view != null) {
+            ViewTreeObserver observer = view.getViewTreeObserver();
+            if (observer.isAlive()) {
+                observer.removeOnGlobalLayoutListener(layoutListener);
+                observer.removeOnScrollChangedListener(scrollListener);
+            }
+        }
+    }
+
+    int getRebuildCount() {
+        return rebuilds;
+    }
+
+    int getRefreshCount() {
+        return refreshes;
+    }
+
+    private void attach(View rootView) {
+        detach();
+        ViewTreeObserver observer = rootView.getViewTreeObserver();
+        observer.addOnGlobalLayoutListener(layoutListener);
+        observer.addOnScrollChangedListener(scrollListener);
+        root = new WeakReference<>(rootView);
+    }
+
+    private void rebuild(View rootView) {
+        rebuilds++;
+        maskedViews.clear();
+        List<WeakReference<View>> deadRefs = null;
+        for (WeakReference<View> ref : sanitizedElements) {
+            View v = ref.get();
+            if (v == null) {
+                if (deadRefs == null) {
+                    deadRefs = new ArrayList<>();
+                }
+                deadRefs.add(ref);
+            } else {
+                maskedViews.add(ref);
+            }
+        }
+        if (deadRefs != null) {
+            sanitizedElements.removeAll(deadRefs);
+        }
+        collectSanitizableGroups(rootView);
+        snapshot = readPositions();
+    }
+
+    private void refreshPositions() {
+        refreshes++;
+        snapshot = readPositions();
+    }
+
+    private void collectSanitizableGroups(View view) {
+        if (!(view instanceof ViewGroup))
+            return;
+        ViewGroup group = (ViewGroup) view;
+        for (int i = 0; i < group.getChildCount(); i++) {
+            View child = group.getChildAt(i);
+            if (child instanceof SanitizableViewGroup) {
+                maskedViews.add(new WeakReference<>(child));
+            } else {
+                collectSanitizableGroups(child);
+            }
+        }
+    }
+
+    private List<int[]> readPositions() {
+        final List<int[]> rects = rectBuffers.get(nextBuffer);
+        final List<int[]> pool = rectPools.get(nextBuffer);
+        final List<int[]> view = rectViews.get(nextBuffer);
+        nextBuffer ^= 1;
+        rects.clear();
+        int used = 0;
+        for (WeakReference<View> ref : maskedViews) {
+            View v = ref.get();
+            // explicitly sanitized views may live in another window or be hidden for now
+            if (v != null && v.getVisibility() == View.VISIBLE && v.isAttachedToWindow()) {
+                v.getLocationOnScreen(location);
+                if (used == pool.size()) {
+                    pool.add(new int[4]);
+                }
+                final int[] rect = pool.get(used++);
+                rect[0] = location[0];
+                rect[1] = location[1];
+                rect[2] = v.getWidth();
+                rect[3] = v.getHeight();
+                rects.add(rect);
+            }
+        }
+        return view;
+    }
+}
@@ -3,6 +3,7 @@ package io.middleware.android.sdk.core.replay.v2;
 import static io.middleware.android.sdk.utils.Constants.LOG_TAG;
 
 import android.app.Activity;
+import android.app.Application;
 import android.content.Context;
 import android.content.res.Configuration;
 import android.graphics.Bitmap;
@@ -10,14 +11,15 @@ import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.Shader;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.PixelCopy;
 import android.view.View;
-import android.view.ViewGroup;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
@@ -28,20 +30,29 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.middleware.android.sdk.Middleware;
 import io.middleware.android.sdk.builders.MiddlewareBuilder;
+import io.middleware.android.sdk.core.replay.AdaptiveCaptureScheduler;
+import io.middleware.android.sdk.core.replay.BitrateController;
+import io.middleware.android.sdk.core.replay.InteractionTracker;
+import io.middleware.android.sdk.core.replay.RecordingGovernor;
+import io.middleware.android.sdk.core.replay.ReplayStorageManager;
 import io.middleware.android.sdk.core.replay.SessionRecorder;
+import io.opentelemetry.api.common.Attributes;
 
 public class MiddlewareScreenshotManager implements SessionRecorder {
 
@@ -49,7 +60,7 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
     // Configuration
     // -------------------------------------------------------------------------
     /**
-     * Maximum number of screenshots kept in the screenshots/ folder before archiving.
+     * Number of frames per recording segment; a full segment is sealed into an archive.
      */
     private static final int ARCHIVE_CHUNK_SIZE = 10;
 
@@ -63,6 +74,23 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
      */
     private static final int IO_BUFFER_SIZE = 8192;
 
+    /**
+     * Idle bitmaps kept per size. Only one capture is in flight at a time, so two per size
+     * (the one being encoded and the next capture) avoid all steady-state allocations.
+     */
+    private static final int BITMAP_POOL_SIZE = 2;
+
+    /**
+     * Unchanged frames are dropped, but at least one frame is encoded this often so the
+     * replay timeline keeps moving on a static screen.
+     */
+    private static final long MAX_UNCHANGED_INTERVAL_MS = 10_000L;
+
+    /**
+     * Retry state of {@link UploadQueue}, next to the archives folder.
+     */
+    private static final String UPLOAD_STATE_FILE = "archives-upload-state.json";
+
     /**
      * Guard against concurrent screenshot attempts piling up.
      * If a capture is still in flight we skip the next tick rather than queuing.
@@ -99,6 +127,12 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
      */
     private final CopyOnWriteArrayList<WeakReference<View>> sanitizedElements = new CopyOnWriteArrayList<>();
 
+    /**
+     * Mask rects of the current window, updated from layout and scroll callbacks rather than
+     * recomputed per capture. Main thread only.
+     */
+    private final MaskRectIndex maskRectIndex = new MaskRectIndex(sanitizedElements);
+
     /**
      * Dedicated single-thread executor for all file / network I/O.
      */
@@ -138,6 +172,62 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
      */
     private volatile NetworkManager networkManager;
 
+    /**
+     * Reusable full-resolution capture bitmaps and scaled output bitmaps.
+     */
+    private final BitmapPool bitmapPool = new BitmapPool(BITMAP_POOL_SIZE);
+
+    /**
+     * Scaling state, only touched on ioExecutor.
+     */
+    private final Canvas scaleCanvas = new Canvas();
+    private final Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect scaleDst = new Rect();
+
+    /**
+     * Fingerprint of the last encoded frame, only touched on ioExecutor.
+     */
+    private final FrameFingerprint frameFingerprint = new FrameFingerprint();
+    private long lastEncodedFrameMs;
+    private int unchangedFramesSkipped;
+
+    /**
+     * Append-only segment store for encoded frames, only touched on ioExecutor.
+     */
+    private SegmentWriter segmentWriter;
+
+    /**
+     * Uploads sealed archives; kept across stop/start so uploads still in flight from the
+     * previous run are not started again. Polled on ioExecutor.
+     */
+    private volatile UploadQueue uploadQueue;
+
+    /**
+     * Byte quota over screenshots/, segments/ and archives/; created with the upload queue.
+     */
+    private volatile ReplayStorageManager storageManager;
+
+    /**
+     * Adaptive capture state; all null unless {@link RecordingOptions#isAdaptiveCapture()}.
+     */
+    private volatile AdaptiveCaptureScheduler adaptiveScheduler;
+    private volatile InteractionTracker interactionTracker;
+    private volatile ScheduledFuture<?> nextCapture;
+
+    /**
+     * Thermal/battery governor; null unless {@link RecordingOptions#isPowerAware()}.
+     * {@code governorTicks} counts capture ticks on the scheduler thread so a level can skip
+     * all but every n-th one.
+     */
+    private volatile RecordingGovernor governor;
+    private long governorTicks;
+
+    /**
+     * Picks quality and resolution per frame; null unless
+     * {@link RecordingOptions#getTargetBytesPerMinute()} is set.
+     */
+    private volatile BitrateController bitrateController;
+
     // -------------------------------------------------------------------------
     // Constructor
     // -------------------------------------------------------------------------
@@ -170,25 +260,63 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
             return t;
         });
 
-        // Pre-warm the mask paint and the network client off the UI thread.
+        // Pre-warm the mask paint and the network client off the UI thread, and seal
+        // whatever a previous process left behind so it gets uploaded.
         ioExecutor.execute(() -> {
             getMaskPaint();
             networkManager = new NetworkManager(builder.target, builder.rumAccessToken);
+            try {
+                if (storageManager == null) {
+                    storageManager = new ReplayStorageManager(builder.recordingOptions.getMaxStorageBytes())
+                            .watch(getScreenshotFolder(), ".jpeg")
+                            .watch(getSegmentFolder(), SegmentWriter.SEGMENT_EXTENSION)
+                            .watch(getArchiveFolder(), SegmentWriter.ARCHIVE_EXTENSION);
+                    storageManager.removeOrphans();
+                }
+                if (segmentWriter != null) {
+                    segmentWriter.close();
+                }
+                segmentWriter = new SegmentWriter(getSegmentFolder(), getArchiveFolder(), ARCHIVE_CHUNK_SIZE);
+                segmentWriter.recover();
+                if (uploadQueue == null) {
+                    File archives = getArchiveFolder();
+                    uploadQueue = new UploadQueue(archives,
+                            new File(archives.getParentFile(), UPLOAD_STATE_FILE), this::uploadArchive,
+                            this::runUploadCleanup);
+                }
+                // frames stored one file each by earlier SDK versions
+                archivateFolder(getScreenshotFolder());
+                storageManager.enforceQuota(Middleware.getInstance().getRumSessionId());
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Error preparing recording storage: " + e.getMessage());
+            }
         });
 
         checkAndReportOrientationChange();
 
+        if (builder.recordingOptions.isErrorTriggered()) {
+            Log.w(LOG_TAG, "Error-triggered replay needs v3 recording; recording continuously");
+        }
+
+        if (builder.recordingOptions.isPowerAware()) {
+            governorTicks = 0;
+            governor = new RecordingGovernor(lifecycleManager.getContext(), this::onGovernorLevelChanged);
+            governor.start();
+        }
+
+        final long targetBytesPerMinute = builder.recordingOptions.getTargetBytesPerMinute();
+        bitrateController = targetBytesPerMinute > 0
+                ? new BitrateController(targetBytesPerMinute, builder.recordingOptions.getQualityValue())
+                : null;
+
         long intervalMillis = builder.recordingOptions.getScreenshotInterval();
 
         // Capture task --------------------------------------------------------
-        scheduler.scheduleWithFixedDelay(() -> {
-            if (captureInFlight.compareAndSet(false, true)) {
-                takeScreenshotAsync();
-                // captureInFlight is reset inside takeScreenshotAsync callbacks.
-            } else {
-                Log.d(LOG_TAG, "Screenshot skipped – previous capture still in flight");
-            }
-        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        if (builder.recordingOptions.isAdaptiveCapture()) {
+            startAdaptiveCapture(intervalMillis);
+        } else {
+            scheduler.scheduleWithFixedDelay(this::captureTick, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        }
 
         // Send task -----------------------------------------------------------
         scheduler.scheduleWithFixedDelay(
@@ -196,6 +324,127 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
                 intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
     }
 
+    private void captureTick() {
+        final RecordingGovernor.Level level = governorLevel();
+        if (level.isPaused() || governorTicks++ % level.getIntervalMultiplier() != 0) {
+            return;
+        }
+        final BitrateController bitrate = bitrateController;
+        if (bitrate != null && !bitrate.admit(SystemClock.uptimeMillis())) {
+            return;
+        }
+        if (captureInFlight.compareAndSet(false, true)) {
+            takeScreenshotAsync();
+            // captureInFlight is reset inside takeScreenshotAsync callbacks.
+        } else {
+            Log.d(LOG_TAG, "Screenshot skipped – previous capture still in flight");
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Adaptive capture – the capture task reschedules itself with the interval
+    // the AdaptiveCaptureScheduler picks from recent touches, scrolls and
+    // navigation; a signal after an idle stretch pulls the pending capture in.
+    // -------------------------------------------------------------------------
+    private void startAdaptiveCapture(long activeIntervalMs) {
+        final AdaptiveCaptureScheduler adaptive = new AdaptiveCaptureScheduler(
+                activeIntervalMs,
+                AdaptiveCaptureScheduler.DEFAULT_IDLE_INTERVAL_MS,
+                builder.recordingOptions.getCaptureBudgetBytesPerMinute());
+        adaptiveScheduler = adaptive;
+        final InteractionTracker tracker = new InteractionTracker(adaptive, true, this::wakeCapture);
+        interactionTracker = tracker;
+        getApplication().registerActivityLifecycleCallbacks(tracker);
+        mainHandler.post(() -> {
+            Activity activity = lifecycleManager.getCurrentActivity();
+            if (activity != null && !stopped.get()) {
+                tracker.signal(AdaptiveCaptureScheduler.Signal.NAVIGATION);
+                tracker.attach(activity);
+            }
+        });
+        scheduleAdaptiveCapture(0);
+    }
+
+    private void scheduleAdaptiveCapture(long delayMs) {
+        final ScheduledExecutorService s = scheduler;
+        final AdaptiveCaptureScheduler adaptive = adaptiveScheduler;
+        if (s == null || s.isShutdown() || adaptive == null) {
+            return;
+        }
+        try {
+            nextCapture = s.schedule(() -> {
+                captureTick();
+                scheduleAdaptiveCapture(adaptive.nextIntervalMs(SystemClock.uptimeMillis()));
+            }, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // stopped concurrently
+        }
+    }
+
+    /**
+     * Main thread: a signal arrived while capture was running slower than the active rate.
+     */
+    private void wakeCapture() {
+        final ScheduledExecutorService s = scheduler;
+        if (s == null || s.isShutdown()) {
+            return;
+        }
+        try {
+            s.execute(() -> {
+                ScheduledFuture<?> pending = nextCapture;
+                // if the capture task is already running it reschedules itself at the new rate
+                if (pending != null && pending.cancel(false)) {
+                    scheduleAdaptiveCapture(0);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // stopped concurrently
+        }
+    }
+
+    private void stopAdaptiveCapture() {
+        final InteractionTracker tracker = interactionTracker;
+        interactionTracker = null;
+        adaptiveScheduler = null;
+        nextCapture = null;
+        if (tracker != null) {
+            getApplication().unregisterActivityLifecycleCallbacks(tracker);
+            mainHandler.post(tracker::detach);
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Governor – thermal, battery and power-save state step capture down; each
+    // transition goes into the session as a RUM event next to the frames.
+    // -------------------------------------------------------------------------
+    private RecordingGovernor.Level governorLevel() {
+        final RecordingGovernor g = governor;
+        return g != null ? g.getLevel() : RecordingGovernor.Level.NORMAL;
+    }
+
+    private void onGovernorLevelChanged(RecordingGovernor.Level from, RecordingGovernor.Level to,
+                                        RecordingGovernor.Conditions conditions) {
+        if (stopped.get()) {
+            return;
+        }
+        try {
+            Middleware.getInstance().addEvent("recording_governor", Attributes.builder()
+                    .put("recording.level.from", from.name())
+                    .put("recording.level.to", to.name())
+                    .put("device.thermal_status", conditions.thermalStatus)
+                    .put("device.battery_percent", conditions.batteryPercent)
+                    .put("device.charging", conditions.charging)
+                    .put("device.power_save", conditions.powerSave)
+                    .build());
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Failed to record governor transition: " + e.getMessage());
+        }
+    }
+
+    private Application getApplication() {
+        return (Application) lifecycleManager.getContext().getApplicationContext();
+    }
+
     public boolean isRunning() {
         return scheduler != null && !scheduler.isShutdown();
     }
@@ -211,6 +460,12 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
             scheduler.shutdownNow();
             scheduler = null;
         }
+        stopAdaptiveCapture();
+        final RecordingGovernor g = governor;
+        governor = null;
+        if (g != null) {
+            g.stop();
+        }
 
         // Queue the terminal flush as the last task on ioExecutor, then shut down.
         // ioExecutor.shutdown() does not cancel already-queued tasks — terminateFlush
@@ -224,6 +479,7 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
         }
 
         sanitizedElements.clear();
+        mainHandler.post(maskRectIndex::detach);
         lastOrientation = -1;
 
         // NOTE: maskPatternBitmap is NOT recycled here.
@@ -245,13 +501,24 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
      */
     private void terminateFlush() {
         try {
-            archivateFolder(getScreenshotFolder());
+            if (segmentWriter != null) {
+                SegmentWriter writer = segmentWriter;
+                segmentWriter = null;
+                writer.close();
+            }
             sendScreenshots();
         } catch (Exception e) {
             Log.e(LOG_TAG, "Error during termination: " + e.getMessage());
         }
 
+        if (unchangedFramesSkipped > 0) {
+            Log.d(LOG_TAG, "Skipped " + unchangedFramesSkipped + " unchanged frames");
+        }
+        frameFingerprint.reset();
+        unchangedFramesSkipped = 0;
+
         // Safe to recycle here — all prior processBitmapAsync tasks are done.
+        bitmapPool.invalidate();
         maskPaint = null;
         Bitmap pattern = maskPatternBitmap;
         if (pattern != null && !pattern.isRecycled()) {
@@ -305,41 +572,39 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
                 checkAndReportOrientationChange();
 
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                    Bitmap bitmap = Bitmap.createBitmap(
-                            decorView.getWidth(), decorView.getHeight(), Bitmap.Config.ARGB_8888);
+                    Bitmap bitmap = bitmapPool.acquire(decorView.getWidth(), decorView.getHeight());
 
                     PixelCopy.request(activity.getWindow(), bitmap, copyResult -> {
                         // Guard again inside the PixelCopy callback — the GPU copy is async and
                         // this callback can fire well after stop() has already been called.
                         if (stopped.get()) {
-                            bitmap.recycle();
+                            bitmapPool.release(bitmap);
                             captureInFlight.set(false);
                             return;
                         }
 
                         if (activity.isFinishing() || activity.isDestroyed()) {
-                            bitmap.recycle();
+                            bitmapPool.release(bitmap);
                             captureInFlight.set(false);
                             return;
                         }
 
                         if (copyResult == PixelCopy.SUCCESS) {
-                            List<int[]> maskRects = collectMaskRects(decorView);
+                            List<int[]> maskRects = maskRectIndex.snapshot(decorView);
                             if (ioExecutor != null && !ioExecutor.isShutdown()) {
                                 ioExecutor.execute(() -> processBitmapAsync(bitmap, maskRects));
                             } else {
-                                bitmap.recycle();
+                                bitmapPool.release(bitmap);
                                 captureInFlight.set(false);
                             }
                         } else {
                             Log.e(LOG_TAG, "PixelCopy failed (" + copyResult + "), using fallback");
-                            bitmap.recycle();
+                            bitmapPool.release(bitmap);
                             Bitmap fallback = drawViewToBitmap(decorView);
                             if (fallback != null && ioExecutor != null && !ioExecutor.isShutdown()) {
                                 ioExecutor.execute(() -> processBitmapAsync(fallback, null));
                             } else {
-                                if (fallback != null)
-                                    fallback.recycle();
+                                bitmapPool.release(fallback);
                                 captureInFlight.set(false);
                             }
                         }
@@ -351,8 +616,7 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
                     if (fallback != null && ioExecutor != null && !ioExecutor.isShutdown()) {
                         ioExecutor.execute(() -> processBitmapAsync(fallback, null));
                     } else {
-                        if (fallback != null)
-                            fallback.recycle();
+                        bitmapPool.release(fallback);
                         captureInFlight.set(false);
                     }
                 }
@@ -363,52 +627,6 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
         });
     }
 
-    /**
-     * Called on the UI thread to snapshot the screen coordinates of all sanitized
-     * views.
-     * Also prunes dead WeakReferences to prevent accumulation over long sessions.
-     */
-    private List<int[]> collectMaskRects(View rootView) {
-        List<int[]> rects = new ArrayList<>();
-        List<WeakReference<View>> deadRefs = new ArrayList<>();
-
-        int[] rootLoc = new int[2];
-        rootView.getLocationOnScreen(rootLoc);
-
-        for (WeakReference<View> ref : sanitizedElements) {
-            View v = ref.get();
-            if (v == null) {
-                deadRefs.add(ref);
-                continue;
-            }
-            if (v.getVisibility() == View.VISIBLE && v.isAttachedToWindow()) {
-                int[] loc = new int[2];
-                v.getLocationOnScreen(loc);
-                rects.add(new int[]{loc[0], loc[1], v.getWidth(), v.getHeight()});
-            }
-        }
-
-        sanitizedElements.removeAll(deadRefs);
-        collectSanitizableGroups(rootView, rootLoc, rects);
-        return rects;
-    }
-
-    private void collectSanitizableGroups(View view, int[] rootLoc, List<int[]> out) {
-        if (!(view instanceof ViewGroup))
-            return;
-        ViewGroup group = (ViewGroup) view;
-        for (int i = 0; i < group.getChildCount(); i++) {
-            View child = group.getChildAt(i);
-            if (child instanceof SanitizableViewGroup) {
-                int[] loc = new int[2];
-                child.getLocationOnScreen(loc);
-                out.add(new int[]{loc[0], loc[1], child.getWidth(), child.getHeight()});
-            } else {
-                collectSanitizableGroups(child, rootLoc, out);
-            }
-        }
-    }
-
     // -------------------------------------------------------------------------
     // IO-thread: mask → scale → compress → save
     // -------------------------------------------------------------------------
@@ -417,13 +635,11 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
         try {
             Bitmap masked = applyMasks(bitmap, maskRects);
             byte[] compressed = compress(masked);
-            saveScreenshot(compressed);
-
-            File folder = getScreenshotFolder();
-            File[] files = folder.listFiles();
-            if (files != null && files.length >= ARCHIVE_CHUNK_SIZE) {
-                archivateFolder(folder);
+            if (compressed == null) {
+                // same as the previous frame: nothing to encode, write or archive
+                return;
             }
+            saveScreenshot(compressed);
         } catch (Exception e) {
             Log.e(LOG_TAG, "Error processing screenshot: " + e.getMessage());
         } finally {
@@ -431,14 +647,14 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
         }
     }
 
+    /**
+     * Draws the masks directly onto the captured bitmap, which is always a mutable pool bitmap.
+     */
     private Bitmap applyMasks(Bitmap bitmap, List<int[]> maskRects) {
         if (maskRects == null || maskRects.isEmpty())
             return bitmap;
 
-        Bitmap mutable = bitmap.copy(Bitmap.Config.ARGB_8888, true);
-        bitmap.recycle();
-
-        Canvas canvas = new Canvas(mutable);
+        Canvas canvas = new Canvas(bitmap);
         Paint paint = getMaskPaint();
         for (int[] r : maskRects) {
             canvas.save();
@@ -446,15 +662,36 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
             canvas.drawRect(0f, 0f, r[2], r[3], paint);
             canvas.restore();
         }
-        return mutable;
+        return bitmap;
     }
 
+    /**
+     * Appends the frame to the current segment; a full segment is sealed straight into the
+     * archives folder.
+     */
     private void saveScreenshot(byte[] data) {
+        final String sessionId = Middleware.getInstance().getRumSessionId();
+        if (sessionId.isEmpty()) {
+            Log.d(LOG_TAG, "SessionId is empty – dropping frame");
+            return;
+        }
+        if (segmentWriter == null) {
+            return;
+        }
         try {
-            File folder = getScreenshotFolder();
-            File file = new File(folder, System.currentTimeMillis() + ".jpeg");
-            try (FileOutputStream out = new FileOutputStream(file)) {
-                out.write(data);
+            long ts = System.currentTimeMillis();
+            File sealed = segmentWriter.append(sessionId, firstTs + "_1_" + ts + ".jpeg", ts, data);
+            AdaptiveCaptureScheduler adaptive = adaptiveScheduler;
+            if (adaptive != null) {
+                adaptive.onFrameCaptured(data.length, SystemClock.uptimeMillis());
+            }
+            BitrateController bitrate = bitrateController;
+            if (bitrate != null) {
+                bitrate.onFrameEncoded(data.length, SystemClock.uptimeMillis());
+            }
+            ReplayStorageManager storage = storageManager;
+            if (sealed != null && storage != null) {
+                storage.enforceQuota(sessionId);
             }
         } catch (Exception e) {
             Log.e(LOG_TAG, "Error saving screenshot: " + e.getMessage());
@@ -464,6 +701,11 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
     // -------------------------------------------------------------------------
     // Compression (runs on IO thread)
     // -------------------------------------------------------------------------
+    /**
+     * Scales and encodes the frame.
+     *
+     * @return the encoded frame, or {@code null} if it looks the same as the previous one.
+     */
     private byte[] compress(Bitmap originalBitmap) throws Exception {
         try (java.io.ByteArrayOutputStream outputStream = new java.io.ByteArrayOutputStream()) {
             if (originalBitmap.getWidth() <= 0 || originalBitmap.getHeight() <= 0) {
@@ -471,25 +713,35 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
                         + originalBitmap.getWidth() + "x" + originalBitmap.getHeight());
             }
 
+            final RecordingGovernor.Level level = governorLevel();
+            final BitrateController bitrate = bitrateController;
+            final int shortEdge = level.shortEdgePx(bitrate != null
+                    ? bitrate.shortEdgePx(MIN_RESOLUTION_PX)
+                    : MIN_RESOLUTION_PX);
             int origW = originalBitmap.getWidth();
             int origH = originalBitmap.getHeight();
             float aspect = (float) origW / origH;
 
             int newW, newH;
             if (origW < origH) { // portrait
-                newW = Math.max(MIN_RESOLUTION_PX, 1);
+                newW = shortEdge;
                 newH = Math.max((int) (newW / aspect), 1);
             } else { // landscape / square
-                newH = Math.max(MIN_RESOLUTION_PX, 1);
+                newH = shortEdge;
                 newW = Math.max((int) (newH * aspect), 1);
             }
 
             Bitmap scaled = (origW == newW && origH == newH)
                     ? originalBitmap
-                    : Bitmap.createScaledBitmap(originalBitmap, newW, newH, true);
+                    : scaleInto(originalBitmap, newW, newH);
 
             try {
-                int quality = builder.recordingOptions.getQualityValue();
+                if (isUnchangedFrame(scaled)) {
+                    return null;
+                }
+                int quality = level.quality(bitrate != null
+                        ? bitrate.getQuality()
+                        : builder.recordingOptions.getQualityValue());
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
                     // WEBP_LOSSY produces smaller files than WEBP_LOSSLESS with no
                     // perceptible quality difference for screen recordings.
@@ -500,20 +752,50 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
                 return outputStream.toByteArray();
             } finally {
                 if (scaled != originalBitmap)
-                    scaled.recycle();
+                    bitmapPool.release(scaled);
             }
         } finally {
-            originalBitmap.recycle();
+            bitmapPool.release(originalBitmap);
         }
     }
 
+    /**
+     * Fingerprints the scaled frame (the cheapest copy available before encoding) against the
+     * last encoded one.
+     */
+    private boolean isUnchangedFrame(Bitmap scaled) {
+        final long now = SystemClock.elapsedRealtime();
+        final boolean same = frameFingerprint.matches(scaled);
+        if (same && now - lastEncodedFrameMs < MAX_UNCHANGED_INTERVAL_MS) {
+            unchangedFramesSkipped++;
+            return true;
+        }
+        frameFingerprint.commit();
+        lastEncodedFrameMs = now;
+        return false;
+    }
+
+    /**
+     * Bilinear downscale into a pooled bitmap; the same filtering as createScaledBitmap without
+     * allocating a new bitmap per frame.
+     */
+    private Bitmap scaleInto(Bitmap source, int width, int height) {
+        Bitmap scaled = bitmapPool.acquire(width, height);
+        scaleDst.set(0, 0, width, height);
+        scaleCanvas.setBitmap(scaled);
+        scaleCanvas.drawBitmap(source, null, scaleDst, scalePaint);
+        scaleCanvas.setBitmap(null);
+        return scaled;
+    }
+
     // -------------------------------------------------------------------------
     // Fallback: View.draw() – used pre-API 26 or when PixelCopy fails
     // -------------------------------------------------------------------------
     private Bitmap drawViewToBitmap(View view) {
         try {
-            Bitmap bitmap = Bitmap.createBitmap(
-                    view.getWidth(), view.getHeight(), Bitmap.Config.ARGB_8888);
+            Bitmap bitmap = bitmapPool.acquire(view.getWidth(), view.getHeight());
+            // pooled bitmaps keep the previous frame's pixels
+            bitmap.eraseColor(Color.TRANSPARENT);
             Canvas canvas = new Canvas(bitmap);
             view.draw(canvas);
             return bitmap;
@@ -567,7 +849,9 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
     }
 
     // -------------------------------------------------------------------------
-    // Archiving (runs on IO thread)
+    // Legacy archiving (runs on IO thread)
+    // Only used to pick up per-frame files written by earlier SDK versions; new
+    // frames go through SegmentWriter.
     // Streams directly to FileOutputStream – never buffers the full archive in RAM.
     // lastTs is set once from the final sorted element, not inside the loop.
     // -------------------------------------------------------------------------
@@ -625,48 +909,85 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
     // Network send (runs on IO thread)
     // -------------------------------------------------------------------------
     public void sendScreenshots() {
-        final String sessionId = Middleware.getInstance().getRumSessionId();
-        final String resourceAttributes = Middleware.getInstance().getMiddlewareRum().getResourceAttributes();
-        if (sessionId.isEmpty()) {
-            Log.d(LOG_TAG, "SessionId is empty – skipping send");
+        UploadQueue queue = uploadQueue;
+        if (queue == null) {
             return;
         }
         try {
-            File archiveFolder = getArchiveFolder();
-            File[] archives = archiveFolder.listFiles();
-            if (archives == null || archives.length == 0)
-                return;
+            queue.poll();
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Error sending screenshot archives: " + e.getMessage());
+        }
+    }
 
-            NetworkManager nm = networkManager;
-            if (nm == null) {
-                nm = new NetworkManager(builder.target, builder.rumAccessToken);
-                networkManager = nm;
+    /**
+     * Runs archive deletes for the upload queue on the IO thread; upload callbacks arrive on the
+     * main thread. Uploads can outlive a stopped recording, so once the IO executor is gone the
+     * delete gets a thread of its own.
+     */
+    private void runUploadCleanup(Runnable task) {
+        ExecutorService io = ioExecutor;
+        if (io != null) {
+            try {
+                io.execute(task);
+                return;
+            } catch (RejectedExecutionException e) {
+                // shut down by stop() between the check and the call
             }
-            final NetworkManager finalNm = nm;
+        }
+        new Thread(task, "mw-upload-cleanup").start();
+    }
 
-            for (File archive : archives) {
-                finalNm.sendImages(sessionId, resourceAttributes, archive, archive.getName(), new NetworkCallback() {
-                    @Override
-                    public void onSuccess(String response) {
-                        deleteSafely(archive);
-                    }
+    /**
+     * Archives are named {@code <sessionId>-<lastFrameTs>.tar.gz}, so one left over from an
+     * earlier session is uploaded under that session rather than the current one.
+     */
+    private void uploadArchive(File archive, NetworkCallback callback) {
+        final String name = archive.getName();
+        final int dash = name.lastIndexOf('-');
+        final String sessionId = dash > 0 ? name.substring(0, dash) : Middleware.getInstance().getRumSessionId();
+        if (sessionId.isEmpty()) {
+            callback.onError(new IOException("SessionId is empty"));
+            return;
+        }
+        final String resourceAttributes = Middleware.getInstance().getMiddlewareRum().getResourceAttributes();
 
-                    @Override
-                    public void onError(Exception e) {
-                        Log.e(LOG_TAG, "Send failed for " + archive.getName() + ": " + e.getMessage());
-                    }
-                });
-            }
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "Error sending screenshot archives: " + e.getMessage());
+        NetworkManager nm = networkManager;
+        if (nm == null) {
+            nm = new NetworkManager(builder.target, builder.rumAccessToken);
+            networkManager = nm;
         }
+        nm.sendImages(sessionId, resourceAttributes, archive, name, callback);
     }
 
     // -------------------------------------------------------------------------
     // Public API
     // -------------------------------------------------------------------------
+    /**
+     * Storage usage and eviction counters, the number of uploads in flight and the bitrate
+     * controller's current setting.
+     */
+    @Override
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        ReplayStorageManager storage = storageManager;
+        if (storage != null) {
+            stats.putAll(storage.getStats());
+        }
+        UploadQueue queue = uploadQueue;
+        if (queue != null) {
+            stats.put("upload.in_flight", (long) queue.getInFlightCount());
+        }
+        BitrateController bitrate = bitrateController;
+        if (bitrate != null) {
+            stats.putAll(bitrate.getStats());
+        }
+        return stats;
+    }
+
     public void setViewForBlur(View view) {
         sanitizedElements.add(new WeakReference<>(view));
+        maskRectIndex.invalidate();
     }
 
     public void removeSanitizedElement(View element) {
@@ -676,6 +997,7 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
             View v = ref.get();
             return v == null || v == element;
         });
+        maskRectIndex.invalidate();
     }
 
     // -------------------------------------------------------------------------
@@ -688,6 +1010,10 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
                 return;
             int orientation = ctx.getResources().getConfiguration().orientation;
             if (orientation != lastOrientation) {
+                if (lastOrientation != -1) {
+                    // capture and scaled sizes both flip; don't keep the old ones around
+                    bitmapPool.invalidate();
+                }
                 lastOrientation = orientation;
                 String name;
                 if (orientation == Configuration.ORIENTATION_PORTRAIT) {
@@ -714,6 +1040,16 @@ public class MiddlewareScreenshotManager implements SessionRecorder {
         return folder;
     }
 
+    private File getSegmentFolder() {
+        Context ctx = uiContext.get();
+        if (ctx == null)
+            throw new IllegalStateException("No context");
+        File folder = new File(ctx.getFilesDir(), "segments");
+        // noinspection ResultOfMethodCallIgnored
+        folder.mkdirs();
+        return folder;
+    }
+
     private File getArchiveFolder() {
         Context ctx = uiContext.get();
         if (ctx == null)
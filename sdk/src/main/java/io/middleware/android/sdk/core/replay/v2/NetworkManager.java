@@ -66,7 +66,7 @@ public class NetworkManager {
                     if (statusCode >= 200 && statusCode < 300) {
                         callback.onSuccess(responseData);
                     } else {
-                        callback.onError(new IOException("Error in call: " + statusCode));
+                        callback.onError(new HttpStatusException(statusCode));
                     }
                 });
             }
@@ -120,12 +120,24 @@ public class NetworkManager {
         });
     }
 
+    /**
+     * Gzips request bodies, except multipart bodies that are mostly already compressed.
+     * <p>
+     * Each part is classified by its content type: archives and images are already compressed,
+     * form fields and other text are not. The request is only gzipped when the compressible
+     * parts are both large enough to be worth it and at least as large as the precompressed
+     * ones; otherwise it is sent as-is. The replay upload is a {@code .tar.gz} plus two short
+     * form fields, so gzipping it again only burns CPU and adds a few bytes.
+     */
     static class GzipRequestInterceptor implements Interceptor {
+        static final long MIN_COMPRESSIBLE_BYTES = 1024;
+
         @NonNull
         @Override
         public Response intercept(Chain chain) throws IOException {
             Request originalRequest = chain.request();
-            if (originalRequest.body() == null || originalRequest.header("Content-Encoding") != null) {
+            if (originalRequest.body() == null || originalRequest.header("Content-Encoding") != null
+                    || !shouldCompress(originalRequest.body())) {
                 return chain.proceed(originalRequest);
             }
 
@@ -136,6 +148,45 @@ public class NetworkManager {
             return chain.proceed(compressedRequest);
         }
 
+        static boolean shouldCompress(RequestBody body) throws IOException {
+            if (!(body instanceof MultipartBody)) {
+                return true;
+            }
+            long compressible = 0;
+            long precompressed = 0;
+            for (MultipartBody.Part part : ((MultipartBody) body).parts()) {
+                final long length = part.body().contentLength();
+                if (length < 0) {
+                    return true;
+                }
+                if (isPrecompressed(part.body().contentType())) {
+                    precompressed += length;
+                } else {
+                    compressible += length;
+                }
+            }
+            return compressible >= MIN_COMPRESSIBLE_BYTES && compressible >= precompressed;
+        }
+
+        static boolean isPrecompressed(MediaType type) {
+            if (type == null) {
+                return false;
+            }
+            if ("image".equals(type.type())) {
+                return !"svg+xml".equals(type.subtype());
+            }
+            switch (type.subtype()) {
+                case "gzip":
+                case "x-gzip":
+                case "zip":
+                case "zstd":
+                case "x-tar+gzip":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
         private RequestBody gzip(final RequestBody body) {
             return new RequestBody() {
                 @Override
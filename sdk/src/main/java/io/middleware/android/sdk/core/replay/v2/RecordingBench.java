@@ -4,6 +4,7 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.os.Build;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
@@ -11,14 +12,29 @@ import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
 
+import io.middleware.android.sdk.core.replay.BitrateController;
 import io.middleware.android.sdk.core.replay.RecordingFrequency;
 import io.middleware.android.sdk.core.replay.RecordingQuality;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
 
 /**
  * Offline session-recording micro-benchmark mirroring
@@ -47,6 +63,13 @@ public final class RecordingBench {
         public final long intervalMs;
         public final int qualityValue;
         public final boolean sanitizeEnabled;
+        public final boolean bitmapPoolEnabled;
+        /** Bitmap bytes allocated over the run (capture + scaled). */
+        public final long bitmapAllocatedBytes;
+        /** Highest amount of bitmap memory alive at once. */
+        public final long peakBitmapBytes;
+        /** Bitmap allocation rate at the scenario's capture frequency. */
+        public final double bitmapAllocMbPerSec;
 
         Metrics(
                 String scenario,
@@ -62,7 +85,11 @@ public final class RecordingBench {
                 double uploadMbPerMin,
                 long intervalMs,
                 int qualityValue,
-                boolean sanitizeEnabled
+                boolean sanitizeEnabled,
+                boolean bitmapPoolEnabled,
+                long bitmapAllocatedBytes,
+                long peakBitmapBytes,
+                double bitmapAllocMbPerSec
         ) {
             this.scenario = scenario;
             this.frequency = frequency;
@@ -78,9 +105,138 @@ public final class RecordingBench {
             this.intervalMs = intervalMs;
             this.qualityValue = qualityValue;
             this.sanitizeEnabled = sanitizeEnabled;
+            this.bitmapPoolEnabled = bitmapPoolEnabled;
+            this.bitmapAllocatedBytes = bitmapAllocatedBytes;
+            this.peakBitmapBytes = peakBitmapBytes;
+            this.bitmapAllocMbPerSec = bitmapAllocMbPerSec;
         }
     }
 
+    /** Frame storage cost: per-frame files + tar.gz archiving vs the append-only segment store. */
+    public static final class StorageMetrics {
+        public final int frames;
+        public final long legacyIoOps;
+        public final long segmentIoOps;
+        public final double legacyMsPerFrame;
+        public final double segmentMsPerFrame;
+
+        StorageMetrics(int frames, long legacyIoOps, long segmentIoOps,
+                       double legacyMsPerFrame, double segmentMsPerFrame) {
+            this.frames = frames;
+            this.legacyIoOps = legacyIoOps;
+            this.segmentIoOps = segmentIoOps;
+            this.legacyMsPerFrame = legacyMsPerFrame;
+            this.segmentMsPerFrame = segmentMsPerFrame;
+        }
+    }
+
+    /**
+     * Upload compression cost: frames deflated into the tar.gz and the multipart body gzipped
+     * again, vs frames stored by {@link SegmentWriter} and the body sent as-is.
+     */
+    public static final class CompressionMetrics {
+        public final int frames;
+        public final long encodedBytes;
+        public final long legacyUploadBytes;
+        public final long storedUploadBytes;
+        public final double legacyCpuMs;
+        public final double storedCpuMs;
+        /** What {@link NetworkManager.GzipRequestInterceptor} decided for the stored upload. */
+        public final boolean storedRequestGzipped;
+        /** Frames found byte for byte in the stored archive, each right behind a stored block header. */
+        public final int verbatimFrames;
+
+        CompressionMetrics(int frames, long encodedBytes, long legacyUploadBytes, long storedUploadBytes,
+                           double legacyCpuMs, double storedCpuMs, boolean storedRequestGzipped,
+                           int verbatimFrames) {
+            this.frames = frames;
+            this.encodedBytes = encodedBytes;
+            this.legacyUploadBytes = legacyUploadBytes;
+            this.storedUploadBytes = storedUploadBytes;
+            this.legacyCpuMs = legacyCpuMs;
+            this.storedCpuMs = storedCpuMs;
+            this.storedRequestGzipped = storedRequestGzipped;
+            this.verbatimFrames = verbatimFrames;
+        }
+    }
+
+    /** Bytes per minute a {@link BitrateController} held over a simulated recording. */
+    public static final class BitrateMetrics {
+        public final String scenario;
+        public final long targetBytesPerMinute;
+        public final long bytesPerMinute;
+        public final int frames;
+        public final long skippedFrames;
+        public final int finalQuality;
+        public final int finalScalePercent;
+
+        BitrateMetrics(String scenario, long targetBytesPerMinute, long bytesPerMinute, int frames,
+                       long skippedFrames, int finalQuality, int finalScalePercent) {
+            this.scenario = scenario;
+            this.targetBytesPerMinute = targetBytesPerMinute;
+            this.bytesPerMinute = bytesPerMinute;
+            this.frames = frames;
+            this.skippedFrames = skippedFrames;
+            this.finalQuality = finalQuality;
+            this.finalScalePercent = finalScalePercent;
+        }
+    }
+
+    /**
+     * Encoded size of a frame of some screen content at a quality and output size. The JVM test
+     * runtime's encoder doesn't react to content, so bitrate scenarios model it instead.
+     */
+    public interface FrameEncoder {
+        long encodedBytes(int frame, int quality, int width, int height);
+    }
+
+    /**
+     * Content costing {@code bitsPerPixel} at quality 50, growing exponentially with quality
+     * (steeper than the controller's own cost model) and varying ±20% frame to frame.
+     */
+    public static FrameEncoder content(double bitsPerPixel, long seed) {
+        final Random random = new Random(seed);
+        return (frame, quality, width, height) -> Math.max(200, Math.round(
+                (double) width * height * bitsPerPixel / 8
+                        * Math.exp((quality - 50) / 35.0)
+                        * (0.8 + 0.4 * random.nextDouble())));
+    }
+
+    /**
+     * Records {@code durationMs} of simulated time at {@code frequency} through a
+     * {@link BitrateController} the way {@link MiddlewareScreenshotManager} drives it: admit,
+     * encode at the controller's quality and short edge, report the size.
+     */
+    public static BitrateMetrics runBitrate(String scenario, long targetBytesPerMinute,
+                                            RecordingFrequency frequency, RecordingQuality quality,
+                                            long durationMs, FrameEncoder encoder) {
+        BitrateController controller = new BitrateController(targetBytesPerMinute, quality.getValue());
+        long totalBytes = 0;
+        int frames = 0;
+        int tick = 0;
+        for (long now = 0; now < durationMs; now += frequency.getIntervalMs(), tick++) {
+            if (!controller.admit(now)) {
+                continue;
+            }
+            int shortEdge = controller.shortEdgePx(MIN_RESOLUTION_PX);
+            int longEdge = Math.round(shortEdge * 16f / 9f); // portrait phone
+            long bytes = encoder.encodedBytes(tick, controller.getQuality(), shortEdge, longEdge);
+            controller.onFrameEncoded(bytes, now);
+            totalBytes += bytes;
+            frames++;
+        }
+        Map<String, Long> stats = controller.getStats();
+        return new BitrateMetrics(
+                scenario,
+                targetBytesPerMinute,
+                Math.round(totalBytes * 60_000.0 / durationMs),
+                frames,
+                stats.get(BitrateController.STAT_SKIPPED_FRAMES),
+                controller.getQuality(),
+                stats.get(BitrateController.STAT_SCALE_PERCENT).intValue()
+        );
+    }
+
     public static Metrics run(
             String scenario,
             int frames,
@@ -89,20 +245,39 @@ public final class RecordingBench {
             boolean sanitize,
             int width,
             int height
+    ) throws Exception {
+        return run(scenario, frames, frequency, quality, sanitize, width, height, true);
+    }
+
+    /**
+     * @param pooled reuse capture and scaled bitmaps through a {@link BitmapPool} like
+     *               {@link MiddlewareScreenshotManager}; {@code false} allocates them per frame as
+     *               the pipeline did before pooling.
+     */
+    public static Metrics run(
+            String scenario,
+            int frames,
+            RecordingFrequency frequency,
+            RecordingQuality quality,
+            boolean sanitize,
+            int width,
+            int height,
+            boolean pooled
     ) throws Exception {
         RecordingOptions options = new RecordingOptions.Builder()
                 .setFrequency(frequency)
                 .setQuality(quality)
                 .build();
 
+        BitmapPool pool = new BitmapPool(pooled ? 2 : 0);
         List<Double> samples = new ArrayList<>();
         List<byte[]> batch = new ArrayList<>();
         long t0 = System.nanoTime();
 
         for (int i = 0; i < frames; i++) {
             long frameStart = System.nanoTime();
-            Bitmap screen = synthesizeScreen(width, height, i, sanitize);
-            byte[] encoded = compress(screen, options.getQualityValue());
+            Bitmap screen = synthesizeScreen(pool, width, height, i, sanitize);
+            byte[] encoded = compress(pool, screen, options.getQualityValue());
             samples.add((System.nanoTime() - frameStart) / 1_000_000.0);
             batch.add(encoded);
         }
@@ -120,6 +295,8 @@ public final class RecordingBench {
         double framesPerMin = 60_000.0 / Math.max(intervalMs, 1);
         double bytesPerFrame = (double) gzip.length / Math.max(frames, 1);
         double uploadMbPerMin = (bytesPerFrame * framesPerMin) / (1024.0 * 1024.0);
+        double allocBytesPerFrame = (double) pool.getAllocatedBytes() / Math.max(frames, 1);
+        double bitmapAllocMbPerSec = (allocBytesPerFrame * framesPerMin / 60.0) / (1024.0 * 1024.0);
 
         return new Metrics(
                 scenario,
@@ -135,12 +312,16 @@ public final class RecordingBench {
                 round3(uploadMbPerMin),
                 intervalMs,
                 options.getQualityValue(),
-                sanitize
+                sanitize,
+                pooled,
+                pool.getAllocatedBytes(),
+                pool.getPeakLiveBytes(),
+                round1(bitmapAllocMbPerSec)
         );
     }
 
-    private static Bitmap synthesizeScreen(int width, int height, int frame, boolean sanitize) {
-        Bitmap bmp = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    private static Bitmap synthesizeScreen(BitmapPool pool, int width, int height, int frame, boolean sanitize) {
+        Bitmap bmp = pool.acquire(width, height);
         Canvas canvas = new Canvas(bmp);
         canvas.drawColor(Color.rgb(247, 244, 239));
         Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
@@ -174,7 +355,7 @@ public final class RecordingBench {
     }
 
     /** Mirrors MiddlewareScreenshotManager.compress scaling + quality. */
-    static byte[] compress(Bitmap originalBitmap, int quality) throws Exception {
+    static byte[] compress(BitmapPool pool, Bitmap originalBitmap, int quality) throws Exception {
         try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
             int origW = originalBitmap.getWidth();
             int origH = originalBitmap.getHeight();
@@ -190,9 +371,13 @@ public final class RecordingBench {
                 newW = Math.max((int) (newH * aspect), 1);
             }
 
-            Bitmap scaled = (origW == newW && origH == newH)
-                    ? originalBitmap
-                    : Bitmap.createScaledBitmap(originalBitmap, newW, newH, true);
+            Bitmap scaled = originalBitmap;
+            if (origW != newW || origH != newH) {
+                scaled = pool.acquire(newW, newH);
+                Canvas canvas = new Canvas(scaled);
+                canvas.drawBitmap(originalBitmap, null, new Rect(0, 0, newW, newH),
+                        new Paint(Paint.FILTER_BITMAP_FLAG));
+            }
             try {
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
                     scaled.compress(Bitmap.CompressFormat.WEBP_LOSSY, quality, outputStream);
@@ -202,9 +387,9 @@ public final class RecordingBench {
                 return outputStream.toByteArray();
             } finally {
                 if (scaled != originalBitmap) {
-                    scaled.recycle();
+                    pool.release(scaled);
                 }
-                originalBitmap.recycle();
+                pool.release(originalBitmap);
             }
         }
     }
@@ -228,6 +413,201 @@ public final class RecordingBench {
         return bos.toByteArray();
     }
 
+    /**
+     * Stores {@code frames} copies of {@code frame} under {@code dir} twice: the way
+     * {@link MiddlewareScreenshotManager} used to (one file per frame, a directory listing per
+     * frame, sort + re-read + delete every {@code framesPerArchive} frames) and through
+     * {@link SegmentWriter}. I/O operations are counted as open/write/read/close/list/stat/
+     * delete/rename calls.
+     */
+    public static StorageMetrics runStorage(File dir, int frames, int framesPerArchive, byte[] frame)
+            throws IOException {
+        File legacyDir = new File(dir, "legacy");
+        File legacyArchives = new File(dir, "legacy-archives");
+        //noinspection ResultOfMethodCallIgnored
+        legacyDir.mkdirs();
+        //noinspection ResultOfMethodCallIgnored
+        legacyArchives.mkdirs();
+        long legacyOps = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            try (FileOutputStream out = new FileOutputStream(new File(legacyDir, (1_000_000L + i) + ".jpeg"))) {
+                out.write(frame);
+            }
+            legacyOps += 3;
+            File[] files = legacyDir.listFiles();
+            legacyOps++;
+            if (files != null && files.length >= framesPerArchive) {
+                legacyOps += archiveLegacy(legacyDir, new File(legacyArchives, i + ".tar.gz"));
+            }
+        }
+        double legacyMs = (System.nanoTime() - t0) / 1_000_000.0;
+
+        SegmentWriter writer = new SegmentWriter(
+                new File(dir, "segments"), new File(dir, "segment-archives"), framesPerArchive);
+        t0 = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            long ts = 1_000_000L + i;
+            writer.append("bench", "0_1_" + ts + ".jpeg", ts, frame);
+        }
+        writer.seal();
+        double segmentMs = (System.nanoTime() - t0) / 1_000_000.0;
+
+        return new StorageMetrics(
+                frames,
+                legacyOps,
+                writer.getIoOps(),
+                round3(legacyMs / Math.max(frames, 1)),
+                round3(segmentMs / Math.max(frames, 1))
+        );
+    }
+
+    /**
+     * Packs {@code frames} into one archive and builds its upload body twice: deflating the
+     * frames and gzipping the multipart request on top (the previous pipeline), and storing the
+     * frames through {@link SegmentWriter} with the request encoding left to
+     * {@link NetworkManager.GzipRequestInterceptor}. Upload bytes are the request body bytes.
+     * Timings are the best of {@code rounds} runs.
+     */
+    public static CompressionMetrics runCompression(File dir, List<byte[]> frames, int rounds)
+            throws Exception {
+        long encodedBytes = 0;
+        for (byte[] frame : frames) encodedBytes += frame.length;
+        String resourceAttributes = "{\"service.name\":\"bench\",\"os.name\":\"Android\"}";
+
+        double legacyMs = Double.MAX_VALUE;
+        long legacyBytes = 0;
+        for (int r = 0; r < rounds; r++) {
+            long t0 = System.nanoTime();
+            byte[] archive = tarGzip(frames);
+            MultipartBody body = uploadBody(resourceAttributes,
+                    RequestBody.create(archive, MediaType.parse("application/gzip")));
+            Buffer request = new Buffer();
+            BufferedSink gzipSink = Okio.buffer(new GzipSink(request));
+            body.writeTo(gzipSink);
+            gzipSink.close();
+            legacyMs = Math.min(legacyMs, (System.nanoTime() - t0) / 1_000_000.0);
+            legacyBytes = request.size();
+        }
+
+        double storedMs = Double.MAX_VALUE;
+        long storedBytes = 0;
+        boolean gzipped = false;
+        File storedArchive = null;
+        for (int r = 0; r < rounds; r++) {
+            // one frame of headroom so the segment is sealed below, not by the last append
+            SegmentWriter writer = new SegmentWriter(
+                    new File(dir, "segments"), new File(dir, "archives-" + r), frames.size() + 1);
+            long t0 = System.nanoTime();
+            for (int i = 0; i < frames.size(); i++) {
+                long ts = 1_000_000L + i;
+                writer.append("bench", "0_1_" + ts + ".jpeg", ts, frames.get(i));
+            }
+            File archive = writer.seal();
+            MultipartBody body = uploadBody(resourceAttributes,
+                    RequestBody.create(archive, MediaType.parse("application/gzip")));
+            gzipped = NetworkManager.GzipRequestInterceptor.shouldCompress(body);
+            Buffer request = new Buffer();
+            body.writeTo(request);
+            storedMs = Math.min(storedMs, (System.nanoTime() - t0) / 1_000_000.0);
+            storedBytes = request.size();
+            storedArchive = archive;
+        }
+
+        int verbatim = 0;
+        if (storedArchive != null) {
+            byte[] archive = readFully(storedArchive);
+            for (byte[] frame : frames) {
+                if (containsStoredBlock(archive, frame)) verbatim++;
+            }
+        }
+        return new CompressionMetrics(frames.size(), encodedBytes, legacyBytes, storedBytes,
+                round3(legacyMs), round3(storedMs), gzipped, verbatim);
+    }
+
+    /**
+     * Whether {@code data} (at most one stored block long) appears in {@code archive} as a
+     * non-final stored deflate block: {@code 00 LEN NLEN} followed by the bytes unchanged.
+     */
+    private static boolean containsStoredBlock(byte[] archive, byte[] data) {
+        final int len = data.length;
+        final byte[] header = {0, (byte) len, (byte) (len >>> 8), (byte) ~len, (byte) (~len >>> 8)};
+        outer:
+        for (int i = 0; i + header.length + len <= archive.length; i++) {
+            for (int j = 0; j < header.length; j++) {
+                if (archive[i + j] != header[j]) continue outer;
+            }
+            for (int j = 0; j < len; j++) {
+                if (archive[i + header.length + j] != data[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+        }
+        return bytes;
+    }
+
+    /** Same parts as {@link NetworkManager#sendImages}. */
+    private static MultipartBody uploadBody(String resourceAttributes, RequestBody batch) {
+        return new MultipartBody.Builder("Boundary-bench")
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("sessionId", "bench")
+                .addFormDataPart("resourceAttributes", resourceAttributes)
+                .addFormDataPart("batch", "bench.tar.gz", batch)
+                .build();
+    }
+
+    /** Mirrors the legacy MiddlewareScreenshotManager.archivateFolder; returns I/O ops issued. */
+    private static long archiveLegacy(File folder, File archiveFile) throws IOException {
+        long ops = 0;
+        File[] screenshots = folder.listFiles();
+        ops++;
+        if (screenshots == null) {
+            return ops;
+        }
+        Arrays.sort(screenshots, Comparator.comparingLong(File::lastModified));
+        ops += screenshots.length;
+        byte[] buf = new byte[8192];
+        try (FileOutputStream fos = new FileOutputStream(archiveFile);
+             GzipCompressorOutputStream gzos = new GzipCompressorOutputStream(fos);
+             TarArchiveOutputStream tarOs = new TarArchiveOutputStream(gzos)) {
+            ops++;
+            for (File jpeg : screenshots) {
+                TarArchiveEntry entry = new TarArchiveEntry("0_1_" + jpeg.getName());
+                entry.setSize(jpeg.length());
+                ops++;
+                tarOs.putArchiveEntry(entry);
+                try (FileInputStream fis = new FileInputStream(jpeg)) {
+                    ops += 2;
+                    int n;
+                    while ((n = fis.read(buf)) != -1) {
+                        tarOs.write(buf, 0, n);
+                        ops++;
+                    }
+                }
+                tarOs.closeArchiveEntry();
+            }
+        }
+        ops++;
+        for (File f : screenshots) {
+            //noinspection ResultOfMethodCallIgnored
+            f.delete();
+            ops++;
+        }
+        return ops;
+    }
+
     private static double avg(List<Double> values) {
         double s = 0;
         for (double v : values) s += v;
@@ -1,19 +1,50 @@
 package io.middleware.android.sdk.core.replay.v2;
 
+import io.middleware.android.sdk.core.replay.AdaptiveCaptureScheduler;
+import io.middleware.android.sdk.core.replay.ErrorReplayBuffer;
 import io.middleware.android.sdk.core.replay.RecordingFrequency;
 import io.middleware.android.sdk.core.replay.RecordingQuality;
+import io.middleware.android.sdk.core.replay.ReplayStorageManager;
 
 public class RecordingOptions {
     private final RecordingQuality quality;
     private final RecordingFrequency frequency;
     private final boolean maskAllTextInputs;
     private final boolean maskAllImages;
+    private final long maxStorageBytes;
+    private final boolean adaptiveCapture;
+    private final long captureBudgetBytesPerMinute;
+    private final boolean powerAware;
+    private final boolean errorTriggered;
+    private final long errorBufferWindowMs;
+    private final long errorPostWindowMs;
+    private final long errorBufferMaxBytes;
+    private final int errorBufferMaxFrames;
+    private final long targetBytesPerMinute;
+    private final boolean binaryFrames;
+    private final boolean tiledFrames;
+    private final boolean wireframe;
+    private final boolean wireframeScreenshotFallback;
 
     private RecordingOptions(Builder builder) {
         this.frequency = builder.frequency;
         this.quality = builder.quality;
         this.maskAllTextInputs = builder.maskAllTextInputs;
         this.maskAllImages = builder.maskAllImages;
+        this.maxStorageBytes = builder.maxStorageBytes;
+        this.adaptiveCapture = builder.adaptiveCapture;
+        this.captureBudgetBytesPerMinute = builder.captureBudgetBytesPerMinute;
+        this.powerAware = builder.powerAware;
+        this.errorTriggered = builder.errorTriggered;
+        this.errorBufferWindowMs = builder.errorBufferWindowMs;
+        this.errorPostWindowMs = builder.errorPostWindowMs;
+        this.errorBufferMaxBytes = builder.errorBufferMaxBytes;
+        this.errorBufferMaxFrames = builder.errorBufferMaxFrames;
+        this.targetBytesPerMinute = builder.targetBytesPerMinute;
+        this.binaryFrames = builder.binaryFrames;
+        this.tiledFrames = builder.tiledFrames;
+        this.wireframe = builder.wireframe;
+        this.wireframeScreenshotFallback = builder.wireframeScreenshotFallback;
     }
 
     public long getScreenshotInterval() {
@@ -32,12 +63,82 @@ public class RecordingOptions {
         return maskAllImages;
     }
 
+    public long getMaxStorageBytes() {
+        return maxStorageBytes;
+    }
+
+    public boolean isAdaptiveCapture() {
+        return adaptiveCapture;
+    }
+
+    public long getCaptureBudgetBytesPerMinute() {
+        return captureBudgetBytesPerMinute;
+    }
+
+    public boolean isPowerAware() {
+        return powerAware;
+    }
+
+    public boolean isErrorTriggered() {
+        return errorTriggered;
+    }
+
+    public long getErrorBufferWindowMs() {
+        return errorBufferWindowMs;
+    }
+
+    public long getErrorPostWindowMs() {
+        return errorPostWindowMs;
+    }
+
+    public long getErrorBufferMaxBytes() {
+        return errorBufferMaxBytes;
+    }
+
+    public int getErrorBufferMaxFrames() {
+        return errorBufferMaxFrames;
+    }
+
+    public long getTargetBytesPerMinute() {
+        return targetBytesPerMinute;
+    }
+
+    public boolean isBinaryFrames() {
+        return binaryFrames;
+    }
+
+    public boolean isTiledFrames() {
+        return tiledFrames;
+    }
+
+    public boolean isWireframe() {
+        return wireframe;
+    }
+
+    public boolean isWireframeScreenshotFallback() {
+        return wireframeScreenshotFallback;
+    }
+
     public static class Builder {
         // Default values
         private RecordingFrequency frequency = RecordingFrequency.LOW;
         private RecordingQuality quality = RecordingQuality.LOW;
         private boolean maskAllTextInputs = true;
         private boolean maskAllImages = true;
+        private long maxStorageBytes = ReplayStorageManager.DEFAULT_QUOTA_BYTES;
+        private boolean adaptiveCapture = false;
+        private long captureBudgetBytesPerMinute = AdaptiveCaptureScheduler.DEFAULT_BUDGET_BYTES_PER_MINUTE;
+        private boolean powerAware = false;
+        private boolean errorTriggered = false;
+        private long errorBufferWindowMs = ErrorReplayBuffer.DEFAULT_WINDOW_MS;
+        private long errorPostWindowMs = ErrorReplayBuffer.DEFAULT_POST_WINDOW_MS;
+        private long errorBufferMaxBytes = ErrorReplayBuffer.DEFAULT_MAX_BYTES;
+        private int errorBufferMaxFrames = ErrorReplayBuffer.DEFAULT_MAX_FRAMES;
+        private long targetBytesPerMinute = 0;
+        private boolean binaryFrames = false;
+        private boolean tiledFrames = false;
+        private boolean wireframe = false;
+        private boolean wireframeScreenshotFallback = false;
 
         public Builder() {
         }
@@ -77,6 +178,138 @@ public class RecordingOptions {
             return this;
         }
 
+        /**
+         * Caps the disk space used by recordings waiting for upload. When exceeded, the oldest
+         * recordings are deleted; the newest session is always kept. Default is 50 MB.
+         */
+        public Builder setMaxStorageBytes(long maxStorageBytes) {
+            this.maxStorageBytes = maxStorageBytes;
+            return this;
+        }
+
+        /**
+         * Captures at the configured frequency only for a few seconds after a touch, scroll or
+         * screen change, then slows down to one frame every few seconds while the screen is
+         * idle. Default is {@code false} (fixed frequency).
+         */
+        public Builder setAdaptiveCapture(boolean adaptiveCapture) {
+            this.adaptiveCapture = adaptiveCapture;
+            return this;
+        }
+
+        /**
+         * Caps encoded frame bytes per minute when adaptive capture is enabled; capture slows
+         * down rather than exceed it. {@code 0} disables the cap. Default is 1 MB.
+         */
+        public Builder setCaptureBudgetBytesPerMinute(long captureBudgetBytesPerMinute) {
+            this.captureBudgetBytesPerMinute = captureBudgetBytesPerMinute;
+            return this;
+        }
+
+        /**
+         * Lowers frequency, quality and resolution while the device is hot, in power saver or
+         * low on battery, and pauses recording when it is critically hot or almost empty.
+         * Default is {@code false}.
+         */
+        public Builder setPowerAware(boolean powerAware) {
+            this.powerAware = powerAware;
+            return this;
+        }
+
+        /**
+         * Keeps the recording in a rolling in-memory buffer and uploads it only when a crash,
+         * ANR or {@code Middleware.addException} is reported, followed by the
+         * {@link #setErrorPostWindowMs post-error window}. v3 recording only. Default is
+         * {@code false} (upload everything).
+         */
+        public Builder setErrorTriggered(boolean errorTriggered) {
+            this.errorTriggered = errorTriggered;
+            return this;
+        }
+
+        /**
+         * How much recording before an error is kept. Default is 60 seconds.
+         */
+        public Builder setErrorBufferWindowMs(long errorBufferWindowMs) {
+            this.errorBufferWindowMs = errorBufferWindowMs;
+            return this;
+        }
+
+        /**
+         * How long recording keeps uploading after an error. Default is 10 seconds.
+         */
+        public Builder setErrorPostWindowMs(long errorPostWindowMs) {
+            this.errorPostWindowMs = errorPostWindowMs;
+            return this;
+        }
+
+        /**
+         * Hard cap on buffered recording data; the oldest data goes first. Default is 2 MB.
+         */
+        public Builder setErrorBufferMaxBytes(long errorBufferMaxBytes) {
+            this.errorBufferMaxBytes = errorBufferMaxBytes;
+            return this;
+        }
+
+        /**
+         * Hard cap on buffered frames; the oldest frames go first. Default is 120.
+         */
+        public Builder setErrorBufferMaxFrames(int errorBufferMaxFrames) {
+            this.errorBufferMaxFrames = errorBufferMaxFrames;
+            return this;
+        }
+
+        /**
+         * Holds encoded frames to about this many bytes per minute by lowering quality and then
+         * resolution as the screen content gets more expensive; the configured quality is the
+         * ceiling. {@code 0} disables it. Default is {@code 0}.
+         */
+        public Builder setTargetBytesPerMinute(long targetBytesPerMinute) {
+            this.targetBytesPerMinute = targetBytesPerMinute;
+            return this;
+        }
+
+        /**
+         * Uploads v3 frame images as binary blobs addressed by their SHA-256, with the recording
+         * events referencing them instead of embedding base64 data URIs. Needs a backend and
+         * player with blob support. Default is {@code false}.
+         */
+        public Builder setBinaryFrames(boolean binaryFrames) {
+            this.binaryFrames = binaryFrames;
+            return this;
+        }
+
+        /**
+         * Splits v3 frames into a grid of tiles and, when only part of the screen changed, uploads
+         * just the changed tiles. The whole frame is still sent when most of the screen changed
+         * and at least every 30 seconds. Default is {@code false}.
+         */
+        public Builder setTiledFrames(boolean tiledFrames) {
+            this.tiledFrames = tiledFrames;
+            return this;
+        }
+
+        /**
+         * Records v3 sessions as a wireframe of the view hierarchy (layout, colours, masked text)
+         * sent as DOM mutations, instead of screenshots. Much smaller and needs no PixelCopy, but
+         * custom drawing and images are not shown. Takes precedence over binary and tiled frames.
+         * Default is {@code false}.
+         */
+        public Builder setWireframe(boolean wireframe) {
+            this.wireframe = wireframe;
+            return this;
+        }
+
+        /**
+         * In wireframe mode, fills WebView, SurfaceView, TextureView and Compose regions with a
+         * masked screenshot of their pixels, since the view hierarchy cannot describe them.
+         * Without it they are grey placeholders. Default is {@code false}.
+         */
+        public Builder setWireframeScreenshotFallback(boolean wireframeScreenshotFallback) {
+            this.wireframeScreenshotFallback = wireframeScreenshotFallback;
+            return this;
+        }
+
         public RecordingOptions build() {
             return new RecordingOptions(this);
         }
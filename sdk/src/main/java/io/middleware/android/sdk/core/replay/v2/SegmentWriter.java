@@ -0,0 +1,410 @@
+package io.middleware.android.sdk.core.replay.v2;
+
+import static io.middleware.android.sdk.utils.Constants.LOG_TAG;
+
+import android.util.Log;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Append-only store for v2 recording frames. Each segment is a single file that is already a
+ * valid {@code .tar.gz}, so sealing it is a rename into the archives folder and no separate
+ * tar step, per-frame file or directory listing is needed.
+ * <p>
+ * Layout: every frame is written as its own gzip member containing one tar entry (header,
+ * data, padding). Concatenated gzip members are a valid gzip stream, so the file inflates to
+ * an ordinary tar. Sealing appends one more member holding the tar end-of-archive blocks.
+ * <p>
+ * The in-file index is carried in each member's gzip {@code FEXTRA} field (ignored by gzip
+ * readers): subfield {@code MW} holds the member's total length and the frame timestamp.
+ * {@link #recover()} walks those headers to find where the last complete frame ends, drops a
+ * torn tail left by a crash and seals what survived, without inflating anything.
+ * <p>
+ * Frames are already WebP/JPEG, so their bytes go into the member as deflate <i>stored</i>
+ * blocks instead of being run through the compressor again; only the tar header and padding
+ * are deflated. The result is still a plain gzip stream, just without the CPU spent trying to
+ * shrink incompressible data.
+ * <p>
+ * A frame costs a single write on an open {@link FileChannel}. Not thread safe; owned by
+ * the recorder's IO thread.
+ */
+final class SegmentWriter {
+
+    static final String SEGMENT_EXTENSION = ".seg";
+    static final String ARCHIVE_EXTENSION = ".tar.gz";
+
+    private static final int TAR_BLOCK = TarConstants.DEFAULT_RCDSIZE;
+    private static final byte[] ZERO_BLOCK = new byte[TAR_BLOCK];
+
+    // gzip member header: ID1 ID2 CM FLG MTIME(4) XFL OS XLEN(2) + one FEXTRA subfield
+    private static final int FLG_FEXTRA = 0x04;
+    private static final int OS_UNKNOWN = 0xff;
+    private static final byte SUBFIELD_ID1 = 'M';
+    private static final byte SUBFIELD_ID2 = 'W';
+    /** member length (uint32) + frame timestamp (int64) */
+    private static final int SUBFIELD_LEN = 12;
+    private static final int EXTRA_LEN = 4 + SUBFIELD_LEN;
+    static final int MEMBER_HEADER_LEN = 12 + EXTRA_LEN;
+    private static final int MEMBER_TRAILER_LEN = 8;
+    /** deflate stored block: BFINAL/BTYPE byte + LEN(2) + NLEN(2), at most 65535 data bytes */
+    private static final int STORED_BLOCK_HEADER_LEN = 5;
+    private static final int STORED_BLOCK_MAX = 0xffff;
+
+    private final File segmentDir;
+    private final File archiveDir;
+    private final int framesPerSegment;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] tarHeader = new byte[TAR_BLOCK];
+    private byte[] memberBuffer = new byte[64 * 1024];
+    private int memberLength;
+    private long memberInputBytes;
+
+    private FileChannel channel;
+    private File activeFile;
+    private String activeSessionId;
+    private int activeFrames;
+    private long lastFrameTs;
+    private long ioOps;
+
+    SegmentWriter(File segmentDir, File archiveDir, int framesPerSegment) {
+        this.segmentDir = segmentDir;
+        this.archiveDir = archiveDir;
+        this.framesPerSegment = framesPerSegment;
+    }
+
+    /**
+     * Appends one encoded frame, sealing the current segment first if it belongs to another
+     * session, and afterwards if it is full.
+     *
+     * @return the sealed archive if this call completed a segment, else {@code null}.
+     */
+    File append(String sessionId, String entryName, long timestampMs, byte[] data) throws IOException {
+        File sealed = null;
+        if (channel != null && !sessionId.equals(activeSessionId)) {
+            sealed = seal();
+        }
+        if (channel == null) {
+            open(sessionId, timestampMs);
+        }
+
+        TarArchiveEntry entry = new TarArchiveEntry(entryName);
+        entry.setSize(data.length);
+        entry.setModTime(timestampMs);
+        entry.writeEntryHeader(tarHeader);
+        final int padding = (TAR_BLOCK - data.length % TAR_BLOCK) % TAR_BLOCK;
+
+        beginMember();
+        deflateMember(tarHeader, 0, TAR_BLOCK);
+        storeMember(data);
+        deflateMember(ZERO_BLOCK, 0, padding);
+        writeMember(channel, timestampMs);
+
+        activeFrames++;
+        lastFrameTs = timestampMs;
+        if (activeFrames >= framesPerSegment) {
+            sealed = seal();
+        }
+        return sealed;
+    }
+
+    /**
+     * Closes the active segment with the tar end-of-archive blocks and moves it to the archives
+     * folder as {@code <sessionId>-<lastFrameTs>.tar.gz}.
+     *
+     * @return the sealed archive, or {@code null} if there was no open segment.
+     */
+    File seal() throws IOException {
+        if (channel == null) {
+            return null;
+        }
+        try {
+            writeEndOfArchive(channel);
+        } finally {
+            closeChannel();
+        }
+        File archive = moveToArchives(activeFile, activeSessionId, lastFrameTs);
+        activeFile = null;
+        activeSessionId = null;
+        activeFrames = 0;
+        return archive;
+    }
+
+    /**
+     * Seals the active segment and releases the deflater's native memory. The writer can't be
+     * used afterwards.
+     *
+     * @return the sealed archive, or {@code null} if there was no open segment.
+     */
+    File close() throws IOException {
+        try {
+            return seal();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Seals segments left open by a previous process. A frame that was only partially written
+     * when the process died is cut off; segments without any complete frame are deleted.
+     *
+     * @return the recovered archives.
+     */
+    List<File> recover() {
+        List<File> recovered = new ArrayList<>();
+        File[] leftovers = segmentDir.listFiles((dir, name) -> name.endsWith(SEGMENT_EXTENSION));
+        ioOps++;
+        if (leftovers == null) {
+            return recovered;
+        }
+        for (File segment : leftovers) {
+            if (segment.equals(activeFile)) {
+                continue;
+            }
+            try {
+                File archive = recoverSegment(segment);
+                if (archive != null) {
+                    recovered.add(archive);
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Unable to recover segment " + segment.getName() + ": " + e.getMessage());
+                deleteSafely(segment);
+            }
+        }
+        return recovered;
+    }
+
+    /**
+     * @return number of file system operations (open, write, close, rename, list, delete,
+     * truncate) issued so far; reported by {@link RecordingBench}.
+     */
+    long getIoOps() {
+        return ioOps;
+    }
+
+    private File recoverSegment(File segment) throws IOException {
+        final String name = segment.getName();
+        final int dash = name.lastIndexOf('-');
+        if (dash <= 0) {
+            deleteSafely(segment);
+            return null;
+        }
+        final String sessionId = name.substring(0, dash);
+
+        long validLength = 0;
+        long frameTs = -1;
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            ioOps++;
+            final long length = raf.length();
+            final byte[] header = new byte[MEMBER_HEADER_LEN];
+            final ByteBuffer headerBuffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            while (validLength + MEMBER_HEADER_LEN <= length) {
+                raf.seek(validLength);
+                raf.readFully(header);
+                ioOps++;
+                if (!isMemberHeader(header)) {
+                    break;
+                }
+                final long memberLength = headerBuffer.getInt(16) & 0xffffffffL;
+                if (memberLength < MEMBER_HEADER_LEN + MEMBER_TRAILER_LEN
+                        || validLength + memberLength > length) {
+                    break;
+                }
+                frameTs = headerBuffer.getLong(20);
+                validLength += memberLength;
+            }
+            if (validLength < length) {
+                Log.d(LOG_TAG, "Dropping " + (length - validLength) + " torn bytes from " + name);
+                raf.setLength(validLength);
+                ioOps++;
+            }
+        }
+        ioOps++;
+        if (validLength == 0) {
+            deleteSafely(segment);
+            return null;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            ioOps++;
+            FileChannel segmentChannel = raf.getChannel();
+            segmentChannel.position(validLength);
+            writeEndOfArchive(segmentChannel);
+        }
+        ioOps++;
+        return moveToArchives(segment, sessionId, frameTs);
+    }
+
+    private void open(String sessionId, long firstFrameTs) throws IOException {
+        // noinspection ResultOfMethodCallIgnored
+        segmentDir.mkdirs();
+        activeFile = new File(segmentDir, sessionId + "-" + firstFrameTs + SEGMENT_EXTENSION);
+        RandomAccessFile raf = new RandomAccessFile(activeFile, "rw");
+        channel = raf.getChannel();
+        channel.position(channel.size());
+        ioOps++;
+        activeSessionId = sessionId;
+        activeFrames = 0;
+    }
+
+    private void writeEndOfArchive(FileChannel target) throws IOException {
+        beginMember();
+        deflateMember(ZERO_BLOCK, 0, TAR_BLOCK);
+        deflateMember(ZERO_BLOCK, 0, TAR_BLOCK);
+        writeMember(target, 0);
+    }
+
+    private File moveToArchives(File segment, String sessionId, long lastTs) throws IOException {
+        // noinspection ResultOfMethodCallIgnored
+        archiveDir.mkdirs();
+        File archive = new File(archiveDir, sessionId + "-" + lastTs + ARCHIVE_EXTENSION);
+        ioOps++;
+        if (!segment.renameTo(archive)) {
+            throw new IOException("Unable to move " + segment.getName() + " to " + archive.getName());
+        }
+        return archive;
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error closing segment: " + e.getMessage());
+        }
+        ioOps++;
+        channel = null;
+    }
+
+    // -------------------------------------------------------------------------
+    // gzip member encoding into memberBuffer
+    // -------------------------------------------------------------------------
+
+    private void beginMember() {
+        deflater.reset();
+        crc.reset();
+        memberLength = MEMBER_HEADER_LEN;
+        memberInputBytes = 0;
+    }
+
+    private void deflateMember(byte[] input, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        crc.update(input, offset, length);
+        memberInputBytes += length;
+        deflater.setInput(input, offset, length);
+        while (!deflater.needsInput()) {
+            drainDeflater();
+        }
+    }
+
+    /**
+     * Appends {@code data} as non-final stored blocks. The deflater is sync-flushed first so its
+     * output ends on a byte boundary, and reset afterwards so nothing it emits later refers back
+     * into bytes it never saw.
+     */
+    private void storeMember(byte[] data) {
+        int space;
+        int flushed;
+        do {
+            ensureCapacity(memberLength + 8 * 1024);
+            space = memberBuffer.length - memberLength;
+            flushed = deflater.deflate(memberBuffer, memberLength, space, Deflater.SYNC_FLUSH);
+            memberLength += flushed;
+        } while (flushed == space);
+
+        final int blocks = Math.max(1, (data.length + STORED_BLOCK_MAX - 1) / STORED_BLOCK_MAX);
+        ensureCapacity(memberLength + data.length + blocks * STORED_BLOCK_HEADER_LEN);
+        int offset = 0;
+        do {
+            final int length = Math.min(STORED_BLOCK_MAX, data.length - offset);
+            memberBuffer[memberLength] = 0; // BFINAL=0, BTYPE=00
+            memberBuffer[memberLength + 1] = (byte) length;
+            memberBuffer[memberLength + 2] = (byte) (length >>> 8);
+            memberBuffer[memberLength + 3] = (byte) ~length;
+            memberBuffer[memberLength + 4] = (byte) (~length >>> 8);
+            System.arraycopy(data, offset, memberBuffer, memberLength + STORED_BLOCK_HEADER_LEN, length);
+            memberLength += STORED_BLOCK_HEADER_LEN + length;
+            offset += length;
+        } while (offset < data.length);
+
+        crc.update(data, 0, data.length);
+        memberInputBytes += data.length;
+        deflater.reset();
+    }
+
+    private void writeMember(FileChannel target, long timestampMs) throws IOException {
+        deflater.finish();
+        while (!deflater.finished()) {
+            drainDeflater();
+        }
+        ensureCapacity(memberLength + MEMBER_TRAILER_LEN);
+        final ByteBuffer buffer = ByteBuffer.wrap(memberBuffer).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(memberLength, (int) crc.getValue());
+        buffer.putInt(memberLength + 4, (int) memberInputBytes);
+        memberLength += MEMBER_TRAILER_LEN;
+
+        buffer.put(0, (byte) 0x1f);
+        buffer.put(1, (byte) 0x8b);
+        buffer.put(2, (byte) Deflater.DEFLATED);
+        buffer.put(3, (byte) FLG_FEXTRA);
+        buffer.putInt(4, 0); // MTIME unset
+        buffer.put(8, (byte) 0); // XFL
+        buffer.put(9, (byte) OS_UNKNOWN);
+        buffer.putShort(10, (short) EXTRA_LEN);
+        buffer.put(12, SUBFIELD_ID1);
+        buffer.put(13, SUBFIELD_ID2);
+        buffer.putShort(14, (short) SUBFIELD_LEN);
+        buffer.putInt(16, memberLength);
+        buffer.putLong(20, timestampMs);
+
+        final ByteBuffer out = ByteBuffer.wrap(memberBuffer, 0, memberLength);
+        while (out.hasRemaining()) {
+            target.write(out);
+        }
+        ioOps++;
+    }
+
+    private void drainDeflater() {
+        ensureCapacity(memberLength + 8 * 1024);
+        memberLength += deflater.deflate(memberBuffer, memberLength, memberBuffer.length - memberLength);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > memberBuffer.length) {
+            byte[] grown = new byte[Math.max(capacity, memberBuffer.length * 2)];
+            System.arraycopy(memberBuffer, 0, grown, 0, memberLength);
+            memberBuffer = grown;
+        }
+    }
+
+    private static boolean isMemberHeader(byte[] header) {
+        return (header[0] & 0xff) == 0x1f
+                && (header[1] & 0xff) == 0x8b
+                && header[2] == Deflater.DEFLATED
+                && (header[3] & FLG_FEXTRA) != 0
+                && header[12] == SUBFIELD_ID1
+                && header[13] == SUBFIELD_ID2;
+    }
+
+    private void deleteSafely(File file) {
+        if (file != null && file.exists()) {
+            // noinspection ResultOfMethodCallIgnored
+            file.delete();
+            ioOps++;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package io.middleware.android.sdk.core.replay.v2;
+
+import static io.middleware.android.sdk.utils.Constants.LOG_TAG;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Uploads sealed replay archives at most once at a time each, with a cap on concurrent
+ * uploads and exponential backoff with jitter after a failure. An archive is dropped after
+ * {@link #MAX_ATTEMPTS} failures, or at once when the server rejects it with a 4xx status that
+ * won't change on retry (bad request, auth, payload too large).
+ * <p>
+ * {@link #poll()} is called on every send tick. It lists the archives folder, skips archives
+ * that are already in flight or still backing off, and starts the oldest due archives until
+ * {@code maxConcurrent} uploads are running. Upload callbacks may arrive on any thread, the
+ * main thread included; they only update in-memory state, and the next poll persists it.
+ * Deleting an uploaded or dropped archive is handed to the file executor, and the archive stays
+ * in flight until it is gone so a poll in between doesn't upload it again.
+ * <p>
+ * Retry state (attempt count and next attempt time per archive) is kept in a small JSON file
+ * so a process restart does not reset the backoff. In-flight uploads are not persisted: an
+ * upload interrupted by process death is simply due again after the restart.
+ */
+final class UploadQueue {
+
+    static final int DEFAULT_MAX_CONCURRENT = 2;
+    static final long BASE_BACKOFF_MS = 5_000L;
+    static final long MAX_BACKOFF_MS = 5 * 60_000L;
+    /** Failed uploads before an archive is dropped; about half an hour of retries at the cap. */
+    static final int MAX_ATTEMPTS = 10;
+
+    interface Uploader {
+        void upload(File archive, NetworkCallback callback);
+    }
+
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    /** Persisted per-archive retry state. */
+    static final class Retry {
+        int attempts;
+        /** Wall-clock time, so the state survives reboots as well as restarts. */
+        long nextAttemptAtMs;
+    }
+
+    private static final class State {
+        int version = 1;
+        Map<String, Retry> retries = new HashMap<>();
+    }
+
+    private final File archiveDir;
+    private final File stateFile;
+    private final Uploader uploader;
+    private final Executor fileExecutor;
+    private final int maxConcurrent;
+    private final Clock clock;
+    private final Random random;
+    private final Gson gson = new Gson();
+
+    private final Set<String> inFlight = new HashSet<>();
+    private State state;
+    private boolean dirty;
+
+    /**
+     * @param fileExecutor runs archive deletes, which must not block the thread upload callbacks
+     *                     arrive on.
+     */
+    UploadQueue(File archiveDir, File stateFile, Uploader uploader, Executor fileExecutor) {
+        this(archiveDir, stateFile, uploader, fileExecutor, DEFAULT_MAX_CONCURRENT,
+                System::currentTimeMillis, new Random());
+    }
+
+    UploadQueue(File archiveDir, File stateFile, Uploader uploader, Executor fileExecutor,
+                int maxConcurrent, Clock clock, Random random) {
+        this.archiveDir = archiveDir;
+        this.stateFile = stateFile;
+        this.uploader = uploader;
+        this.fileExecutor = fileExecutor;
+        this.maxConcurrent = maxConcurrent;
+        this.clock = clock;
+        this.random = random;
+    }
+
+    /**
+     * Starts uploads for due archives, oldest first, up to the concurrency cap, and persists
+     * any state changed since the last poll.
+     *
+     * @return number of uploads started.
+     */
+    int poll() {
+        File[] archives = archiveDir.listFiles((dir, name) -> name.endsWith(SegmentWriter.ARCHIVE_EXTENSION));
+        if (archives == null) {
+            archives = new File[0];
+        }
+        Arrays.sort(archives, Comparator.comparingLong(File::lastModified));
+
+        final long now = clock.currentTimeMillis();
+        final List<File> due = new ArrayList<>();
+        synchronized (this) {
+            loadState();
+            pruneMissing(archives);
+            for (File archive : archives) {
+                if (inFlight.size() >= maxConcurrent) {
+                    break;
+                }
+                final String name = archive.getName();
+                if (inFlight.contains(name)) {
+                    continue;
+                }
+                Retry retry = state.retries.get(name);
+                if (retry != null && retry.nextAttemptAtMs > now) {
+                    continue;
+                }
+                inFlight.add(name);
+                due.add(archive);
+            }
+        }
+        persistIfDirty();
+
+        for (File archive : due) {
+            NetworkCallback callback = new NetworkCallback() {
+                @Override
+                public void onSuccess(String response) {
+                    onUploaded(archive);
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    onFailed(archive, e);
+                }
+            };
+            try {
+                uploader.upload(archive, callback);
+            } catch (RuntimeException e) {
+                callback.onError(e);
+            }
+        }
+        return due.size();
+    }
+
+    /**
+     * @return number of uploads currently running.
+     */
+    synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * @return the retry state of {@code archiveName}, or {@code null} if it never failed.
+     */
+    synchronized Retry getRetry(String archiveName) {
+        loadState();
+        return state.retries.get(archiveName);
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": half of the capped delay is fixed, the other
+     * half random, so retries from many devices spread out but never fire immediately.
+     */
+    long backoffMs(int attempts) {
+        final int shift = Math.min(Math.max(attempts - 1, 0), 16);
+        final long cap = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << shift);
+        final long half = cap / 2;
+        synchronized (random) {
+            return half + (long) (random.nextDouble() * (cap - half));
+        }
+    }
+
+    // -------------------------------------------------------------------------
+
+    /**
+     * @return whether an upload that failed with {@code e} may succeed later: network errors,
+     * 5xx, request timeout and rate limiting. Other 4xx responses would be the same next time.
+     */
+    static boolean isRetryable(Exception e) {
+        if (!(e instanceof HttpStatusException)) {
+            return true;
+        }
+        final int status = ((HttpStatusException) e).getStatusCode();
+        return status < 400 || status >= 500 || status == 408 || status == 429;
+    }
+
+    private void onUploaded(File archive) {
+        fileExecutor.execute(() -> remove(archive, "uploaded"));
+    }
+
+    private void onFailed(File archive, Exception e) {
+        final String name = archive.getName();
+        final long now = clock.currentTimeMillis();
+        synchronized (this) {
+            loadState();
+            Retry retry = state.retries.get(name);
+            if (retry == null) {
+                retry = new Retry();
+                state.retries.put(name, retry);
+            }
+            retry.attempts++;
+            dirty = true;
+            Log.e(LOG_TAG, "Send failed for " + name + " (attempt " + retry.attempts + "): "
+                    + e.getMessage());
+            if (isRetryable(e) && retry.attempts < MAX_ATTEMPTS) {
+                retry.nextAttemptAtMs = now + backoffMs(retry.attempts);
+                inFlight.remove(name);
+                return;
+            }
+        }
+        fileExecutor.execute(() -> remove(archive, "dropped"));
+    }
+
+    /** Deletes {@code archive} and forgets it. File executor. */
+    private void remove(File archive, String reason) {
+        final String name = archive.getName();
+        if (archive.exists() && !archive.delete()) {
+            Log.w(LOG_TAG, "Unable to delete " + reason + " archive " + name);
+        }
+        synchronized (this) {
+            inFlight.remove(name);
+            if (state != null && state.retries.remove(name) != null) {
+                dirty = true;
+            }
+        }
+    }
+
+    private void pruneMissing(File[] archives) {
+        if (state.retries.isEmpty()) {
+            return;
+        }
+        Set<String> present = new HashSet<>();
+        for (File archive : archives) {
+            present.add(archive.getName());
+        }
+        Iterator<String> it = state.retries.keySet().iterator();
+        while (it.hasNext()) {
+            if (!present.contains(it.next())) {
+                it.remove();
+                dirty = true;
+            }
+        }
+    }
+
+    private void loadState() {
+        if (state != null) {
+            return;
+        }
+        state = new State();
+        if (!stateFile.exists()) {
+            return;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(stateFile), StandardCharsets.UTF_8)) {
+            State loaded = gson.fromJson(reader, State.class);
+            if (loaded != null && loaded.retries != null) {
+                state = loaded;
+            }
+        } catch (IOException | JsonParseException e) {
+            Log.w(LOG_TAG, "Discarding unreadable upload state: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the state to a temp file and renames it over the old one, so a crash mid-write
+     * leaves the previous state intact.
+     */
+    private void persistIfDirty() {
+        final String json;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            json = gson.toJson(state);
+            dirty = false;
+        }
+        File tmp = new File(stateFile.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            writer.write(json);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to persist upload state: " + e.getMessage());
+            return;
+        }
+        if (!tmp.renameTo(stateFile)) {
+            Log.e(LOG_TAG, "Unable to persist upload state: rename failed");
+        }
+    }
+}
@@ -4,10 +4,10 @@ import android.graphics.Rect
 import android.util.Log
 import android.view.View
 import androidx.compose.ui.node.RootForTest
+import androidx.compose.ui.semantics.SemanticsConfiguration
 import androidx.compose.ui.semantics.SemanticsNode
 import androidx.compose.ui.semantics.SemanticsProperties
 import androidx.compose.ui.semantics.SemanticsPropertyKey
-import androidx.compose.ui.semantics.getAllSemanticsNodes
 import io.middleware.android.sdk.utils.Constants.LOG_TAG
 
 /**
@@ -35,69 +35,62 @@ internal object ComposeMaskCollector {
     }
 
     /**
-     * Walks the semantics tree of [view] (an AndroidComposeView) and adds the
-     * window-space bounds of every node that must be masked.
+     * Walks the semantics tree of [view] (an AndroidComposeView) once, top
+     * down, and adds the window-space bounds of every node that must be
+     * masked, in rects from [pool].
      */
     fun collect(
         view: View,
         maskAllTextInputs: Boolean,
         maskAllImages: Boolean,
         out: MutableList<Rect>,
+        pool: RectPool,
     ) {
         try {
             val semanticsOwner = (view as? RootForTest)?.semanticsOwner ?: return
-            val semanticsNodes = semanticsOwner.getAllSemanticsNodes(true)
-
-            for (node in semanticsNodes) {
-                val hasText = node.config.contains(SemanticsProperties.Text)
-                val hasEditableText = node.config.contains(SemanticsProperties.EditableText)
-                val hasPassword = node.config.contains(SemanticsProperties.Password)
-                val hasImage = node.config.contains(SemanticsProperties.ContentDescription)
-
-                val isMaskEnabled = node.hasActiveModifier(MwReplayModifiers.MwReplayMask)
-                val isUnmaskEnabled = node.hasActiveModifier(MwReplayModifiers.MwReplayUnmask)
-
-                when {
-                    // unmask has precedence over everything
-                    isUnmaskEnabled -> Unit
-
-                    isMaskEnabled -> out.add(node.boundsRect())
-
-                    (hasText || hasEditableText) && (maskAllTextInputs || hasPassword) ->
-                        out.add(node.boundsRect())
-
-                    hasImage && maskAllImages ->
-                        out.add(node.boundsRect())
-                }
-            }
+            // the merged tree, like getAllSemanticsNodes(mergingEnabled = true)
+            SemanticsMaskPass.collect(
+                semanticsOwner.rootSemanticsNode, SemanticsNodeTree,
+                maskAllTextInputs, maskAllImages, out, pool,
+            )
         } catch (e: Throwable) {
             // swallow possible errors due to compose versioning, etc.
             Log.d(LOG_TAG, "Replay v3 compose mask collection failed: " + e.message)
         }
     }
 
-    /**
-     * True when the node or any ancestor carries the modifier with value true,
-     * so mask/unmask modifiers propagate to descendants.
-     */
-    private fun SemanticsNode.hasActiveModifier(key: SemanticsPropertyKey<Boolean>): Boolean {
-        var current: SemanticsNode? = this
-        while (current != null) {
-            if (current.config.contains(key) && current.config[key]) {
-                return true
+    private object SemanticsNodeTree : SemanticsMaskPass.Tree<SemanticsNode> {
+
+        // skips deactivated nodes, e.g. items a LazyColumn keeps for reuse
+        override fun children(node: SemanticsNode): List<SemanticsNode> = node.children
+
+        override fun flags(node: SemanticsNode): Int {
+            val config = node.config
+            var flags = 0
+            if (config.contains(SemanticsProperties.Text) || config.contains(SemanticsProperties.EditableText)) {
+                flags = flags or SemanticsMaskPass.TEXT
+            }
+            if (config.contains(SemanticsProperties.Password)) {
+                flags = flags or SemanticsMaskPass.PASSWORD
+            }
+            if (config.contains(SemanticsProperties.ContentDescription)) {
+                flags = flags or SemanticsMaskPass.IMAGE
+            }
+            if (config.isEnabled(MwReplayModifiers.MwReplayMask)) {
+                flags = flags or SemanticsMaskPass.MASK
             }
-            current = current.parent
+            if (config.isEnabled(MwReplayModifiers.MwReplayUnmask)) {
+                flags = flags or SemanticsMaskPass.UNMASK
+            }
+            return flags
         }
-        return false
-    }
 
-    private fun SemanticsNode.boundsRect(): Rect {
-        val bounds = boundsInWindow
-        return Rect(
-            bounds.left.toInt(),
-            bounds.top.toInt(),
-            bounds.right.toInt(),
-            bounds.bottom.toInt(),
-        )
+        private fun SemanticsConfiguration.isEnabled(key: SemanticsPropertyKey<Boolean>): Boolean =
+            contains(key) && this[key]
+
+        override fun bounds(node: SemanticsNode, out: Rect) {
+            val bounds = node.boundsInWindow
+            out.set(bounds.left.toInt(), bounds.top.toInt(), bounds.right.toInt(), bounds.bottom.toInt())
+        }
     }
 }
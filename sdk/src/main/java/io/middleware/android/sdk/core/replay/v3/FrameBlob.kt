@@ -0,0 +1,46 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import io.middleware.android.sdk.core.replay.RREvent
+import java.security.MessageDigest
+
+/**
+ * An encoded frame image uploaded once as a binary blob, addressed by the
+ * SHA-256 of its bytes. rrweb events reference it through [src] instead of
+ * carrying a base64 data URI; the player resolves the reference against the
+ * blob store.
+ */
+internal class FrameBlob(
+    val hash: String,
+    val mimeType: String,
+    val bytes: ByteArray,
+) {
+    val src: String
+        get() = SRC_PREFIX + hash
+
+    companion object {
+        const val SRC_PREFIX = "mw-blob:sha256:"
+
+        private val HEX = "0123456789abcdef".toCharArray()
+
+        fun of(bytes: ByteArray, mimeType: String): FrameBlob {
+            val digest = MessageDigest.getInstance("SHA-256").digest(bytes)
+            val hex = CharArray(digest.size * 2)
+            for (i in digest.indices) {
+                val b = digest[i].toInt() and 0xff
+                hex[i * 2] = HEX[b ushr 4]
+                hex[i * 2 + 1] = HEX[b and 0x0f]
+            }
+            return FrameBlob(String(hex), mimeType, bytes)
+        }
+    }
+}
+
+/**
+ * An rrweb event whose frame `src` references [blob]. The exporter uploads the
+ * blob before the batch holding the event.
+ */
+internal class BlobEvent(event: RREvent, val blob: FrameBlob) :
+    RREvent(event.timestamp, event.type, event.data) {
+
+    override fun getAttachedBytes(): Long = blob.bytes.size.toLong()
+}
@@ -0,0 +1,55 @@
+package io.middleware.android.sdk.core.replay.v3
+
+/**
+ * LRU of frame blobs already in the blob store, keyed by session and content
+ * hash. A frame found here is sent as a reference only, so returning to a
+ * screen seen earlier in the session costs an event, not an image.
+ *
+ * Bounded by [maxEntries] and by [maxBytes] of frame data covered; the least
+ * recently used hashes go first. Not thread safe; the exporter guards it.
+ */
+internal class FrameHashCache(
+    private val maxEntries: Int = DEFAULT_MAX_ENTRIES,
+    private val maxBytes: Long = DEFAULT_MAX_BYTES,
+) {
+    private val entries = LinkedHashMap<String, Int>(16, 0.75f, true)
+    private var bytes = 0L
+
+    var hits = 0L
+        private set
+    var bytesSaved = 0L
+        private set
+
+    /** Whether [hash] was uploaded for [sessionId]; a hit counts as a use. */
+    fun contains(sessionId: String, hash: String, size: Int): Boolean {
+        if (entries[key(sessionId, hash)] == null) {
+            return false
+        }
+        hits++
+        bytesSaved += size
+        return true
+    }
+
+    fun add(sessionId: String, hash: String, size: Int) {
+        if (size > maxBytes) {
+            return
+        }
+        val previous = entries.put(key(sessionId, hash), size)
+        bytes += size - (previous ?: 0)
+        val iterator = entries.entries.iterator()
+        while ((entries.size > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            bytes -= iterator.next().value
+            iterator.remove()
+        }
+    }
+
+    val size: Int
+        get() = entries.size
+
+    private fun key(sessionId: String, hash: String) = "$sessionId/$hash"
+
+    companion object {
+        const val DEFAULT_MAX_ENTRIES = 256
+        const val DEFAULT_MAX_BYTES = 16L * 1024 * 1024
+    }
+}
@@ -0,0 +1,179 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.graphics.Rect
+
+/**
+ * Splits the screen into a fixed grid of [tileDp] tiles so a frame in which
+ * little changed (a blinking cursor, a spinner) ships only the tiles whose
+ * pixels differ from what the replay already shows.
+ *
+ * The grid is laid out in dp when an epoch starts ([layout]) and stays put
+ * for the epoch, so it survives the governor or bitrate controller changing
+ * the capture resolution; each frame maps it onto its own bitmap.
+ *
+ * Per frame, [hash] takes an exact hash of every tile's pixels and
+ * [changedTiles] compares them with the last shipped hashes; [commit] and
+ * [commitAll] record what was actually shipped. Tile pixels are copied out
+ * by [extract] into bitmaps reused between frames.
+ *
+ * Not thread safe; owned by the capture executor.
+ */
+internal class FrameTiler(private val tileDp: Int = TILE_DP) {
+
+    /** A grid cell in the dp space of the replayed page. */
+    class Tile(val index: Int, val leftDp: Int, val topDp: Int, val widthDp: Int, val heightDp: Int)
+
+    var tiles: List<Tile> = emptyList()
+        private set
+
+    private var widthDp = 0
+    private var heightDp = 0
+    private var cols = 0
+
+    /** Pixel edges of the grid on the bitmap last hashed. */
+    private var bitmapWidth = 0
+    private var bitmapHeight = 0
+    private var colEdges = IntArray(0)
+    private var rowEdges = IntArray(0)
+    private var rowPixels = IntArray(0)
+
+    private var current = IntArray(0)
+    private var shipped = IntArray(0)
+    private var shippedWidth = -1
+    private var shippedHeight = -1
+    private var shown = BooleanArray(0)
+
+    private val tileBitmaps = HashMap<Long, Bitmap>()
+    private val tileCanvas = Canvas()
+    private val srcRect = Rect()
+    private val dstRect = Rect()
+
+    /** Starts an epoch on a [widthDp] x [heightDp] page: new grid, nothing shipped. */
+    fun layout(widthDp: Int, heightDp: Int) {
+        if (widthDp != this.widthDp || heightDp != this.heightDp) {
+            this.widthDp = widthDp
+            this.heightDp = heightDp
+            cols = (widthDp + tileDp - 1) / tileDp
+            val rows = (heightDp + tileDp - 1) / tileDp
+            tiles = List(cols * rows) { index ->
+                val left = (index % cols) * tileDp
+                val top = (index / cols) * tileDp
+                Tile(index, left, top, minOf(tileDp, widthDp - left), minOf(tileDp, heightDp - top))
+            }
+            current = IntArray(tiles.size)
+            shipped = IntArray(tiles.size)
+            shown = BooleanArray(tiles.size)
+            bitmapWidth = 0
+            bitmapHeight = 0
+        }
+        shippedWidth = -1
+        shippedHeight = -1
+        shown.fill(false)
+    }
+
+    /** Hashes every tile of [bitmap], which covers the whole page. */
+    fun hash(bitmap: Bitmap) {
+        if (tiles.isEmpty()) {
+            return
+        }
+        val w = bitmap.width
+        val h = bitmap.height
+        if (w != bitmapWidth || h != bitmapHeight) {
+            mapOnto(w, h)
+        }
+        current.fill(HASH_SEED)
+        val line = rowPixels
+        var tileRow = 0
+        for (y in 0 until h) {
+            while (y >= rowEdges[tileRow + 1]) {
+                tileRow++
+            }
+            bitmap.getPixels(line, 0, w, 0, y, w, 1)
+            val offset = tileRow * cols
+            for (col in 0 until cols) {
+                var hash = current[offset + col]
+                for (x in colEdges[col] until colEdges[col + 1]) {
+                    hash = hash * 31 + line[x]
+                }
+                current[offset + col] = hash
+            }
+        }
+    }
+
+    /**
+     * Indices of the tiles hashed different from what was last shipped, or
+     * null when the last shipped frame had another resolution and tiles can't
+     * be compared.
+     */
+    fun changedTiles(): List<Int>? {
+        if (bitmapWidth != shippedWidth || bitmapHeight != shippedHeight) {
+            return null
+        }
+        val changed = ArrayList<Int>()
+        for (i in current.indices) {
+            if (current[i] != shipped[i]) {
+                changed.add(i)
+            }
+        }
+        return changed
+    }
+
+    /** Records that tile [index] of the last hashed frame now shows over the base image. */
+    fun commit(index: Int) {
+        shipped[index] = current[index]
+        shown[index] = true
+    }
+
+    /** Records that the last hashed frame went out whole; no tile shows over it any more. */
+    fun commitAll() {
+        current.copyInto(shipped)
+        shippedWidth = bitmapWidth
+        shippedHeight = bitmapHeight
+        shown.fill(false)
+    }
+
+    /** Tiles currently shown over the base image. */
+    fun shownTiles(): List<Tile> = tiles.filter { shown[it.index] }
+
+    /**
+     * Copies [tile] of [bitmap] (the frame last hashed) into a reused bitmap
+     * of the tile's size. Valid until the next call for a tile of that size.
+     */
+    fun extract(bitmap: Bitmap, tile: Tile): Bitmap {
+        val col = tile.index % cols
+        val row = tile.index / cols
+        srcRect.set(colEdges[col], rowEdges[row], colEdges[col + 1], rowEdges[row + 1])
+        val width = srcRect.width()
+        val height = srcRect.height()
+        val key = width.toLong() shl 32 or height.toLong()
+        val out = tileBitmaps.getOrPut(key) { Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888) }
+        dstRect.set(0, 0, width, height)
+        tileCanvas.setBitmap(out)
+        tileCanvas.drawBitmap(bitmap, srcRect, dstRect, null)
+        tileCanvas.setBitmap(null)
+        return out
+    }
+
+    /** Maps the dp grid onto a [width] x [height] bitmap; tiles never lose their last px. */
+    private fun mapOnto(width: Int, height: Int) {
+        bitmapWidth = width
+        bitmapHeight = height
+        val rows = if (cols == 0) 0 else tiles.size / cols
+        colEdges = IntArray(cols + 1) { col -> edge(col * tileDp, widthDp, width) }
+        rowEdges = IntArray(rows + 1) { r -> edge(r * tileDp, heightDp, height) }
+        rowPixels = IntArray(width)
+        // sizes change with the resolution; old tile bitmaps would only leak
+        tileBitmaps.clear()
+    }
+
+    private fun edge(dp: Int, totalDp: Int, totalPx: Int): Int =
+        if (dp >= totalDp) totalPx else (dp.toLong() * totalPx / totalDp).toInt()
+
+    companion object {
+        /** Tile edge in dp: a text cursor or spinner stays within one or two tiles. */
+        const val TILE_DP = 96
+        private const val HASH_SEED = 17
+    }
+}
@@ -19,6 +19,7 @@ import android.graphics.drawable.LayerDrawable
 import android.graphics.drawable.VectorDrawable
 import io.middleware.android.sdk.core.replay.v2.SanitizableViewGroup
 import java.lang.ref.WeakReference
+import java.util.WeakHashMap
 
 /**
  * Walks a window's view tree on the main thread and collects the screen-space
@@ -37,80 +38,99 @@ import java.lang.ref.WeakReference
  *  - Compose roots: delegated to [ComposeMaskCollector];
  *  - legacy API compat: views registered via Middleware.addSanitizedElement and
  *    [SanitizableViewGroup] containers are always masked.
+ *
+ * The walk runs every frame, so once warm it allocates nothing for the view
+ * tree: rects come from a pool, the marker checks are cached per view, and
+ * the result list is reused.
  */
 internal class MaskRectCollector(
     private val maskAllTextInputs: Boolean,
     private val maskAllImages: Boolean,
 ) {
 
-    private val passwordInputTypes = setOf(
-        InputType.TYPE_TEXT_VARIATION_PASSWORD,
-        InputType.TYPE_TEXT_VARIATION_VISIBLE_PASSWORD,
-        InputType.TYPE_TEXT_VARIATION_WEB_PASSWORD,
-        InputType.TYPE_NUMBER_VARIATION_PASSWORD,
-    )
+    /**
+     * Markers of a view, valid while its tag and content description stay the
+     * same objects. Both are held weakly: a tag often references its view
+     * (`view.tag = holder`), which would keep the weak key alive forever.
+     */
+    private class ViewInfo {
+        var tag: WeakReference<Any>? = null
+        var contentDescription: WeakReference<CharSequence>? = null
+        var flags = 0
+    }
+
+    private val viewInfo = WeakHashMap<View, ViewInfo>()
 
+    private val rects = ArrayList<Rect>()
+    private val rectPool = RectPool()
+    private val visibleRect = Rect()
+
+    /**
+     * Returns the rects to mask. The list and its rects are reused by the
+     * next call, which the recorder's single capture in flight makes safe:
+     * a frame's rects are consumed before the next frame is collected.
+     */
     fun collect(root: View, sanitizedElements: List<WeakReference<View>>): List<Rect> {
-        val rects = mutableListOf<Rect>()
-        for (ref in sanitizedElements) {
-            val view = ref.get() ?: continue
-            if (view.isVisibleForMasking() && view.isAttachedToWindow && view.rootView === root.rootView) {
-                view.globalVisibleRect()?.let { rects.add(it) }
+        rects.clear()
+        rectPool.reset()
+        val rootView = root.rootView
+        for (i in sanitizedElements.indices) {
+            val view = sanitizedElements[i].get() ?: continue
+            if (view.isVisibleForMasking() && view.isAttachedToWindow && view.rootView === rootView) {
+                addGlobalVisibleRect(view)
             }
         }
-        walk(root, rects, mutableSetOf())
+        // a view has one parent, so the tree can't loop and needs no visited set
+        walk(root)
         return rects
     }
 
-    private fun walk(view: View, out: MutableList<Rect>, visited: MutableSet<Int>) {
-        val viewId = System.identityHashCode(view)
-        if (!visited.add(viewId)) {
-            return
-        }
+    private fun walk(view: View) {
         if (!view.isVisibleForMasking()) {
             return
         }
+        val flags = flagsOf(view)
 
         var walkChildren = false
 
         when {
-            ComposeMaskCollector.isComposeView(view) -> {
-                ComposeMaskCollector.collect(view, maskAllTextInputs, maskAllImages, out)
+            (flags and FLAG_COMPOSE) != 0 -> {
+                ComposeMaskCollector.collect(view, maskAllTextInputs, maskAllImages, rects, rectPool)
                 // also walk view children for interop scenarios (AndroidView etc.)
                 walkChildren = true
             }
 
-            view.isUnmasked() -> {
+            (flags and FLAG_UNMASKED) != 0 -> {
                 // mw-no-mask has precedence, skip masking (and don't descend:
                 // the marker unmasks the whole subtree)
             }
 
-            view is SanitizableViewGroup || view.isNoCapture() -> {
-                view.globalVisibleRect()?.let { out.add(it) }
+            view is SanitizableViewGroup || (flags and FLAG_NO_CAPTURE) != 0 -> {
+                addGlobalVisibleRect(view)
             }
 
             view is TextView -> {
                 val hasContent = !view.text.isNullOrEmpty() || !view.hint.isNullOrEmpty()
                 if (hasContent && view.shouldMaskTextView()) {
-                    view.textAreaGlobalVisibleRect()?.let { out.add(it) }
+                    addTextArea(view)
                 }
             }
 
             view is Spinner -> {
                 if (maskAllTextInputs) {
-                    view.globalVisibleRect()?.let { out.add(it) }
+                    addGlobalVisibleRect(view)
                 }
             }
 
             view is ImageView -> {
                 if (maskAllImages && view.drawable?.shouldMaskDrawable() == true) {
-                    view.globalVisibleRect()?.let { out.add(it) }
+                    addGlobalVisibleRect(view)
                 }
             }
 
             view is WebView -> {
                 if (maskAllTextInputs || maskAllImages) {
-                    view.globalVisibleRect()?.let { out.add(it) }
+                    addGlobalVisibleRect(view)
                 }
             }
 
@@ -122,30 +142,69 @@ internal class MaskRectCollector(
         if (walkChildren && view is ViewGroup) {
             for (i in 0 until view.childCount) {
                 val child = view.getChildAt(i) ?: continue
-                walk(child, out, visited)
+                walk(child)
             }
         }
     }
 
+    /**
+     * Marker and Compose checks, cached per view. A new tag or content
+     * description object invalidates them; the Compose check never changes.
+     */
+    private fun flagsOf(view: View): Int {
+        val tag = view.tag
+        val description = view.contentDescription
+        var info = viewInfo[view]
+        if (info == null) {
+            info = ViewInfo()
+            info.flags = if (ComposeMaskCollector.isComposeView(view)) FLAG_COMPOSE else 0
+            info.flags = info.flags or markerFlags(view)
+            viewInfo[view] = info
+        } else if (!info.tag.holds(tag) || !info.contentDescription.holds(description)) {
+            info.flags = (info.flags and FLAG_COMPOSE) or markerFlags(view)
+        } else {
+            return info.flags
+        }
+        info.tag = tag?.let { WeakReference(it) }
+        info.contentDescription = description?.let { WeakReference(it) }
+        return info.flags
+    }
+
+    /** Whether this reference (null for no value) still points at [value]. */
+    private fun WeakReference<*>?.holds(value: Any?): Boolean =
+        if (value == null) this == null else this != null && get() === value
+
+    private fun markerFlags(view: View): Int {
+        var flags = 0
+        if (view.isUnmasked()) {
+            flags = flags or FLAG_UNMASKED
+        }
+        if (view.isNoCapture()) {
+            flags = flags or FLAG_NO_CAPTURE
+        }
+        return flags
+    }
+
     private fun TextView.shouldMaskTextView(): Boolean {
-        // inputType is 0-based against the variation constants
-        return maskAllTextInputs || passwordInputTypes.contains(inputType - 1)
+        return maskAllTextInputs || isPasswordInput()
     }
 
     /**
      * For EditText/Button, shrink the mask to the text content area (excluding
      * padding and compound drawables); other TextViews mask the full view.
      */
-    private fun TextView.textAreaGlobalVisibleRect(): Rect? {
-        val fullRect = globalVisibleRect() ?: return null
-        if (this !is EditText && this !is Button) {
-            return fullRect
+    private fun addTextArea(view: TextView) {
+        val rect = addGlobalVisibleRect(view) ?: return
+        if (view !is EditText && view !is Button) {
+            return
+        }
+        val left = rect.left + view.compoundPaddingLeft
+        val top = rect.top + view.compoundPaddingTop
+        val right = rect.right - view.compoundPaddingRight
+        val bottom = rect.bottom - view.compoundPaddingBottom
+        if (right > left && bottom > top) {
+            rect.set(left, top, right, bottom)
         }
-        val left = fullRect.left + compoundPaddingLeft
-        val top = fullRect.top + compoundPaddingTop
-        val right = fullRect.right - compoundPaddingRight
-        val bottom = fullRect.bottom - compoundPaddingBottom
-        return if (right > left && bottom > top) Rect(left, top, right, bottom) else fullRect
     }
 
     private fun Drawable.shouldMaskDrawable(): Boolean {
@@ -156,22 +215,47 @@ internal class MaskRectCollector(
         }
     }
 
-    private fun View.isNoCapture(): Boolean {
-        return (tag as? String)?.contains(MwReplayModifiers.MW_NO_CAPTURE_LABEL, ignoreCase = true) == true ||
-            contentDescription?.toString()?.contains(MwReplayModifiers.MW_NO_CAPTURE_LABEL, ignoreCase = true) == true
+    private fun View.isVisibleForMasking(): Boolean {
+        return visibility == View.VISIBLE && width > 0 && height > 0
     }
 
-    private fun View.isUnmasked(): Boolean {
-        return (tag as? String)?.contains(MwReplayModifiers.MW_NO_MASK_LABEL, ignoreCase = true) == true ||
-            contentDescription?.toString()?.contains(MwReplayModifiers.MW_NO_MASK_LABEL, ignoreCase = true) == true
+    /** Adds the view's visible rect, from the pool, and returns it; null when nothing is visible. */
+    private fun addGlobalVisibleRect(view: View): Rect? {
+        val visible = visibleRect
+        if (!view.getGlobalVisibleRect(visible)) {
+            return null
+        }
+        val rect = rectPool.obtain(visible.left, visible.top, visible.right, visible.bottom)
+        rects.add(rect)
+        return rect
     }
 
-    private fun View.isVisibleForMasking(): Boolean {
-        return visibility == View.VISIBLE && width > 0 && height > 0
+    private companion object {
+        const val FLAG_COMPOSE = 1
+        const val FLAG_UNMASKED = 2
+        const val FLAG_NO_CAPTURE = 4
     }
+}
+
+// Marker and input checks shared with WireframeSerializer.
 
-    private fun View.globalVisibleRect(): Rect? {
-        val rect = Rect()
-        return if (getGlobalVisibleRect(rect)) rect else null
+internal fun TextView.isPasswordInput(): Boolean {
+    // inputType is 0-based against the variation constants
+    return when (inputType - 1) {
+        InputType.TYPE_TEXT_VARIATION_PASSWORD,
+        InputType.TYPE_TEXT_VARIATION_VISIBLE_PASSWORD,
+        InputType.TYPE_TEXT_VARIATION_WEB_PASSWORD,
+        InputType.TYPE_NUMBER_VARIATION_PASSWORD -> true
+        else -> false
     }
 }
+
+internal fun View.isNoCapture(): Boolean = hasMarker(MwReplayModifiers.MW_NO_CAPTURE_LABEL)
+
+internal fun View.isUnmasked(): Boolean = hasMarker(MwReplayModifiers.MW_NO_MASK_LABEL)
+
+private fun View.hasMarker(label: String): Boolean {
+    // contentDescription is matched as a CharSequence, without a String copy
+    return (tag as? String)?.contains(label, ignoreCase = true) == true ||
+        contentDescription?.contains(label, ignoreCase = true) == true
+}
@@ -14,7 +14,7 @@ import android.view.ViewTreeObserver
 internal class NextDrawListener(
     private val view: View,
     mainHandler: Handler,
-    throttleDelayMs: Long,
+    throttleDelayMs: () -> Long,
     private val onDirty: () -> Unit,
     private val onThrottledDraw: () -> Unit,
 ) : ViewTreeObserver.OnDrawListener {
@@ -22,6 +22,14 @@ internal class NextDrawListener(
 
     override fun onDraw() {
         onDirty()
+        requestCapture()
+    }
+
+    /**
+     * Runs [onThrottledDraw] as if the view had drawn, under the same throttle, for captures
+     * wanted before the next draw. Main thread only.
+     */
+    fun requestCapture() {
         throttler.throttle {
             onThrottledDraw()
         }
@@ -0,0 +1,97 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import com.google.gson.stream.JsonWriter
+import okhttp3.MediaType
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.RequestBody
+import okio.BufferedSink
+import okio.GzipSink
+import okio.buffer
+import java.io.OutputStreamWriter
+
+/** An rrweb event as it goes into the OTLP body. */
+internal interface OtlpEvent {
+    val type: Int
+    val timestampMs: Long
+
+    /** The event payload's JSON, shipped as a string attribute. */
+    val dataJson: String
+}
+
+/**
+ * Streams the OTLP-JSON `MetricsData` for a batch of rrweb events straight
+ * into a sink. The output is the same, byte for byte, as Gson serializing the
+ * equivalent nested maps, but no maps, body string or byte array is built:
+ * the request body gzips as OkHttp writes it to the connection.
+ *
+ * Field names are camelCase to match the browser SDK's RRWebExporter output,
+ * which this backend path was built for.
+ */
+internal object OtlpJsonWriter {
+
+    private val JSON: MediaType = "application/json".toMediaType()
+
+    /**
+     * Gzipped request body for [events]. It's written from [events] each time,
+     * so OkHttp can replay it on retry.
+     */
+    fun gzipBody(resourceAttributes: Map<String, String>, events: List<OtlpEvent>): RequestBody =
+        object : RequestBody() {
+            override fun contentType(): MediaType = JSON
+
+            override fun writeTo(sink: BufferedSink) {
+                val gzip = GzipSink(sink).buffer()
+                write(gzip, resourceAttributes, events)
+                gzip.close()
+            }
+        }
+
+    fun write(sink: BufferedSink, resourceAttributes: Map<String, String>, events: List<OtlpEvent>) {
+        val writer = JsonWriter(OutputStreamWriter(sink.outputStream(), Charsets.UTF_8))
+        writer.isHtmlSafe = true // escapes like Gson.toJson
+        writer.beginObject()
+        writer.name("resourceMetrics").beginArray().beginObject()
+
+        writer.name("resource").beginObject()
+        writer.name("attributes").beginArray()
+        for ((key, value) in resourceAttributes) {
+            attr(writer, key, value)
+        }
+        writer.endArray()
+        writer.name("droppedAttributesCount").value(0)
+        writer.endObject()
+
+        writer.name("scopeMetrics").beginArray().beginObject()
+        writer.name("scope").beginObject().endObject()
+        writer.name("metrics").beginArray()
+        for (event in events) {
+            writer.beginObject()
+            writer.name("name").value("rum_event")
+            writer.name("gauge").beginObject()
+            writer.name("dataPoints").beginArray().beginObject()
+            writer.name("attributes").beginArray()
+            attr(writer, "type", event.type.toString())
+            attr(writer, "timestamp", event.timestampMs.toString())
+            attr(writer, "data", event.dataJson)
+            writer.endArray()
+            writer.name("timeUnixNano").value((event.timestampMs * 1_000_000L).toString())
+            writer.name("asDouble").value(0)
+            writer.endObject().endArray()
+            writer.endObject()
+            writer.endObject()
+        }
+        writer.endArray()
+        writer.endObject().endArray()
+
+        writer.endObject().endArray()
+        writer.endObject()
+        writer.flush()
+    }
+
+    private fun attr(writer: JsonWriter, key: String, value: String) {
+        writer.beginObject()
+        writer.name("key").value(key)
+        writer.name("value").beginObject().name("stringValue").value(value).endObject()
+        writer.endObject()
+    }
+}
@@ -11,6 +11,15 @@ import io.middleware.android.sdk.core.replay.RREvent
  * constant — rrweb rebuilds its mirror on each FullSnapshot, so reusing them
  * across snapshots is safe.
  *
+ * In tiled mode the body also holds one hidden, absolutely positioned `<img>`
+ * per [FrameTiler.Tile] (node id [NODE_ID_FIRST_TILE] + index) on top of the
+ * screen image. [tileMutation] shows changed tiles with their new pixels;
+ * [frameMutation] replaces the whole screen image and hides them again.
+ *
+ * In wireframe mode the body holds the serialized view tree instead, rooted
+ * at [NODE_ID_SCREEN] ([wireframeSnapshot]), and frames are the tree's
+ * changes ([wireframeMutation]).
+ *
  * All coordinates and sizes are density-independent px, all timestamps epoch ms.
  */
 internal object RRWebEvents {
@@ -33,14 +42,16 @@ internal object RRWebEvents {
     private const val NODE_DOCUMENT = 0
     private const val NODE_DOCUMENT_TYPE = 1
     private const val NODE_ELEMENT = 2
+    private const val NODE_TEXT = 3
 
     // Fixed node ids of the synthetic document
     private const val NODE_ID_DOCUMENT = 1
     private const val NODE_ID_DOCTYPE = 2
     private const val NODE_ID_HTML = 3
     private const val NODE_ID_HEAD = 4
-    private const val NODE_ID_BODY = 5
+    const val NODE_ID_BODY = 5
     const val NODE_ID_SCREEN = 6
+    const val NODE_ID_FIRST_TILE = 7
 
     private const val POINTER_TYPE_TOUCH = 2
 
@@ -55,7 +66,13 @@ internal object RRWebEvents {
             )
         )
 
-    fun fullSnapshot(frameDataUri: String, widthDp: Int, heightDp: Int, timestampMs: Long): RREvent {
+    fun fullSnapshot(
+        frameDataUri: String,
+        widthDp: Int,
+        heightDp: Int,
+        timestampMs: Long,
+        tiles: List<FrameTiler.Tile> = emptyList(),
+    ): RREvent {
         val img = element(
             NODE_ID_SCREEN, "img",
             linkedMapOf(
@@ -64,11 +81,48 @@ internal object RRWebEvents {
                 "style" to "width:${widthDp}px;height:${heightDp}px;display:block;",
             )
         )
+        val screen = mutableListOf<Any>(img)
+        for (tile in tiles) {
+            screen.add(element(NODE_ID_FIRST_TILE + tile.index, "img", linkedMapOf("style" to tileStyle(tile, false))))
+        }
+        return document(screen, timestampMs)
+    }
+
+    /** A wireframe of the view tree in place of the screen image. */
+    fun wireframeSnapshot(root: WireframeNode, timestampMs: Long): RREvent =
+        document(mutableListOf(wireframeNode(root, true)), timestampMs)
+
+    /** Applies a [WireframeDiff] result. */
+    fun wireframeMutation(mutation: WireframeDiff.Mutation, timestampMs: Long): RREvent {
+        val adds = ArrayList<Any>(mutation.adds.size * 2 + mutation.textNodeAdds.size)
+        for (add in mutation.adds) {
+            adds.add(linkedMapOf("parentId" to add.parentId, "nextId" to add.nextId, "node" to wireframeNode(add.node, false)))
+            add.node.text?.let { text ->
+                adds.add(linkedMapOf("parentId" to add.node.id, "nextId" to null, "node" to textNode(add.node.textId, text)))
+            }
+        }
+        for (add in mutation.textNodeAdds) {
+            adds.add(linkedMapOf("parentId" to add.parentId, "nextId" to null, "node" to textNode(add.id, add.text)))
+        }
+        return RREvent(
+            timestampMs,
+            TYPE_INCREMENTAL_SNAPSHOT,
+            linkedMapOf<String, Any>(
+                "source" to SOURCE_MUTATION,
+                "texts" to mutation.texts.map { linkedMapOf("id" to it.id, "value" to it.value) },
+                "removes" to mutation.removes.map { linkedMapOf("parentId" to it.parentId, "id" to it.id) },
+                "adds" to adds,
+                "attributes" to mutation.attributes.map { linkedMapOf("id" to it.id, "attributes" to it.attributes) },
+            )
+        )
+    }
+
+    private fun document(screen: MutableList<Any>, timestampMs: Long): RREvent {
         val head = element(NODE_ID_HEAD, "head", linkedMapOf())
         val body = element(
             NODE_ID_BODY, "body",
             linkedMapOf("style" to "margin:0;padding:0;background:#000;overflow:hidden;"),
-            mutableListOf(img)
+            screen,
         )
         val html = element(NODE_ID_HTML, "html", linkedMapOf(), mutableListOf(head, body))
         val doctype = linkedMapOf<String, Any>(
@@ -93,7 +147,52 @@ internal object RRWebEvents {
         )
     }
 
-    fun frameMutation(frameDataUri: String, timestampMs: Long): RREvent =
+    /** Serialized element; with [withChildren] false it's added alone, as mutations require. */
+    private fun wireframeNode(node: WireframeNode, withChildren: Boolean): LinkedHashMap<String, Any> {
+        val attributes = linkedMapOf<String, Any>("style" to node.style)
+        node.src?.let { attributes["src"] = it }
+        val childNodes = mutableListOf<Any>()
+        if (withChildren) {
+            node.text?.let { childNodes.add(textNode(node.textId, it)) }
+            for (child in node.children) {
+                childNodes.add(wireframeNode(child, true))
+            }
+        }
+        return element(node.id, node.tagName, attributes, childNodes)
+    }
+
+    private fun textNode(id: Int, text: String): LinkedHashMap<String, Any> =
+        linkedMapOf("type" to NODE_TEXT, "id" to id, "textContent" to text)
+
+    /** Swaps the screen image; tiles in [hiddenTiles] showed over the old one and are hidden. */
+    fun frameMutation(
+        frameDataUri: String,
+        timestampMs: Long,
+        hiddenTiles: List<FrameTiler.Tile> = emptyList(),
+    ): RREvent {
+        val attributes = ArrayList<Any>(1 + hiddenTiles.size)
+        attributes.add(attributeChange(NODE_ID_SCREEN, linkedMapOf("src" to frameDataUri)))
+        for (tile in hiddenTiles) {
+            attributes.add(attributeChange(NODE_ID_FIRST_TILE + tile.index, linkedMapOf("style" to tileStyle(tile, false))))
+        }
+        return attributeMutation(attributes, timestampMs)
+    }
+
+    /** Shows each tile with its new image over the screen image. */
+    fun tileMutation(tiles: List<Pair<FrameTiler.Tile, String>>, timestampMs: Long): RREvent {
+        val attributes = ArrayList<Any>(tiles.size)
+        for ((tile, dataUri) in tiles) {
+            attributes.add(
+                attributeChange(
+                    NODE_ID_FIRST_TILE + tile.index,
+                    linkedMapOf("src" to dataUri, "style" to tileStyle(tile, true)),
+                )
+            )
+        }
+        return attributeMutation(attributes, timestampMs)
+    }
+
+    private fun attributeMutation(attributes: List<Any>, timestampMs: Long): RREvent =
         RREvent(
             timestampMs,
             TYPE_INCREMENTAL_SNAPSHOT,
@@ -102,15 +201,18 @@ internal object RRWebEvents {
                 "texts" to emptyList<Any>(),
                 "removes" to emptyList<Any>(),
                 "adds" to emptyList<Any>(),
-                "attributes" to listOf(
-                    linkedMapOf(
-                        "id" to NODE_ID_SCREEN,
-                        "attributes" to linkedMapOf("src" to frameDataUri),
-                    )
-                ),
+                "attributes" to attributes,
             )
         )
 
+    private fun attributeChange(id: Int, attributes: LinkedHashMap<String, Any>): LinkedHashMap<String, Any> =
+        linkedMapOf("id" to id, "attributes" to attributes)
+
+    private fun tileStyle(tile: FrameTiler.Tile, visible: Boolean): String =
+        "position:absolute;left:${tile.leftDp}px;top:${tile.topDp}px;" +
+            "width:${tile.widthDp}px;height:${tile.heightDp}px;" +
+            if (visible) "display:block;" else "display:none;"
+
     fun touch(interactionType: Int, xDp: Int, yDp: Int, timestampMs: Long): RREvent =
         RREvent(
             timestampMs,
@@ -135,6 +237,30 @@ internal object RRWebEvents {
             )
         )
 
+    fun errorCustom(reason: String, fatal: Boolean, timestampMs: Long): RREvent =
+        RREvent(
+            timestampMs,
+            TYPE_CUSTOM,
+            linkedMapOf<String, Any>(
+                "tag" to "error",
+                "payload" to linkedMapOf("reason" to reason, "fatal" to fatal),
+            )
+        )
+
+    fun governorCustom(from: String, to: String, payload: Map<String, Any>, timestampMs: Long): RREvent =
+        RREvent(
+            timestampMs,
+            TYPE_CUSTOM,
+            linkedMapOf<String, Any>(
+                "tag" to "recording_governor",
+                "payload" to LinkedHashMap<String, Any>().apply {
+                    put("from", from)
+                    put("to", to)
+                    putAll(payload)
+                },
+            )
+        )
+
     private fun element(
         id: Int,
         tagName: String,
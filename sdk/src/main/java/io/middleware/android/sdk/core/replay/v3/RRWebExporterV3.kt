@@ -6,15 +6,18 @@ import io.middleware.android.sdk.core.replay.RREvent
 import io.middleware.android.sdk.utils.Constants.BASE_ORIGIN
 import io.middleware.android.sdk.utils.Constants.LOG_TAG
 import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.MultipartBody
 import okhttp3.OkHttpClient
 import okhttp3.Request
+import okhttp3.RequestBody
 import okhttp3.RequestBody.Companion.toRequestBody
-import java.io.ByteArrayOutputStream
+import java.io.File
+import java.util.concurrent.Callable
 import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
 import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
-import java.util.zip.GZIPOutputStream
 
 /**
  * Buffers v3 rrweb events and ships them through the metrics endpoint using the
@@ -22,21 +25,34 @@ import java.util.zip.GZIPOutputStream
  * `MetricsData` whose metrics are `rum_event` gauges with datapoint attributes
  * `type` / `timestamp` / `data`, POSTed gzip-compressed to `{target}/v1/metrics`.
  *
- * Buffering policy (in-memory only):
+ * Buffering policy (in memory, mirrored to a [ReplayJournal] under
+ * [journalDir] when one is given):
  *  - flush every [FLUSH_INTERVAL_MS], or immediately once the buffer holds
  *    [FLUSH_THRESHOLD_BYTES] of serialized event data;
  *  - failed batches are retried up to [MAX_RETRIES] times on later flush ticks;
- *  - when the buffer exceeds [MAX_BUFFER_BYTES] / [MAX_BUFFER_EVENTS], the oldest
- *    incremental events are dropped first — Meta and FullSnapshot events are kept
- *    because the frames that follow them are unplayable without them.
+ *  - when the buffer exceeds [MAX_BUFFER_BYTES] (UTF-8 bytes on the wire) /
+ *    [MAX_BUFFER_EVENTS], the oldest incremental events are dropped first — Meta
+ *    and FullSnapshot events are kept because the frames that follow them are
+ *    unplayable without them. [ReplayEventBuffer] queues the two kinds apart,
+ *    so each eviction is O(1);
+ *  - events journaled by a process that died before sending them are
+ *    recovered, under the same caps, at the front of the next process's buffer.
+ *
+ * Frames recorded as [BlobEvent]s carry their image separately: before a
+ * session's events are sent, the distinct blobs they reference are POSTed
+ * once as a multipart request to `{target}/v1/rum/blobs`, and the batch waits
+ * for the next tick if that fails. Hashes uploaded for a session are kept in a
+ * [FrameHashCache]; a frame already there is enqueued as a reference only.
  */
 internal open class RRWebExporterV3(
     target: String,
     private val token: String,
     private val resourceAttributesProvider: (sessionId: String) -> Map<String, String>,
+    journalDir: File? = null,
 ) {
     private val gson = Gson()
     private val endpoint = "$target/v1/metrics"
+    private val blobEndpoint = "$target/v1/rum/blobs"
 
     private val httpClient = OkHttpClient.Builder()
         .connectTimeout(15, TimeUnit.SECONDS)
@@ -45,19 +61,50 @@ internal open class RRWebExporterV3(
         .build()
 
     private class PendingEvent(
+        val id: Long,
         val sessionId: String,
-        val type: Int,
-        val timestampMs: Long,
-        val dataJson: String,
+        override val type: Int,
+        override val timestampMs: Long,
+        override val dataJson: String,
+        val blob: FrameBlob?,
         var retries: Int = 0,
-    ) {
-        val isKeyframe: Boolean
+    ) : OtlpEvent, ReplayEventBuffer.Item {
+        /** Set once [blob] is in the blob store, so a retried event doesn't upload it again. */
+        var blobSent = false
+
+        override var seq = 0L
+
+        override val isKeyframe: Boolean
             get() = type == RRWebEvents.TYPE_FULL_SNAPSHOT || type == RRWebEvents.TYPE_META
+
+        override val bytes: Long = ReplayEventBuffer.utf8Length(dataJson) + (blob?.bytes?.size ?: 0)
+
+        fun toJournalEntry() = ReplayJournal.Entry(id, sessionId, type, timestampMs, dataJson, blob)
     }
 
     private val lock = Any()
-    private val buffer = ArrayDeque<PendingEvent>()
-    private var bufferBytes = 0L
+    private val buffer = ReplayEventBuffer<PendingEvent>()
+    private var retriedEvents = 0L
+    private var droppedEvents = 0L
+    private val uploadedFrames = FrameHashCache()
+    private var nextId = 1L
+
+    /**
+     * Written only on the scheduler: changes are queued under [lock] as
+     * [JournalOp]s, in buffer order, and applied by [drainJournal], so no
+     * caller (touch events come from the UI thread) waits on disk. Events
+     * enqueued before [journalReady] reach it by compaction.
+     */
+    private val journal: ReplayJournal? = journalDir?.let { ReplayJournal(it) }
+    private var journalReady = false
+    private val journalOps = ArrayList<JournalOp>()
+    private var journalDrainScheduled = false
+
+    private sealed class JournalOp {
+        class Append(val entry: ReplayJournal.Entry) : JournalOp()
+        class Remove(val ids: List<Long>) : JournalOp()
+        class Compact(val live: List<ReplayJournal.Entry>) : JournalOp()
+    }
 
     private val shutdown = AtomicBoolean(false)
     private val flushInFlight = AtomicBoolean(false)
@@ -71,6 +118,9 @@ internal open class RRWebExporterV3(
         }
 
     init {
+        if (journal != null) {
+            scheduler.execute { recoverJournal(journal) }
+        }
         scheduler.scheduleWithFixedDelay(
             { flushInternal() },
             FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS
@@ -81,18 +131,19 @@ internal open class RRWebExporterV3(
         if (shutdown.get()) {
             return
         }
-        val pending = PendingEvent(
-            sessionId,
-            event.type,
-            event.timestamp,
-            gson.toJson(event.data)
-        )
+        val blob = (event as? BlobEvent)?.blob?.takeUnless { blob ->
+            synchronized(lock) { uploadedFrames.contains(sessionId, blob.hash, blob.bytes.size) }
+        }
+        val dataJson = gson.toJson(event.data)
         val shouldFlushNow: Boolean
         synchronized(lock) {
+            val pending = PendingEvent(nextId++, sessionId, event.type, event.timestamp, dataJson, blob)
+            if (journalReady) {
+                queueJournalOpLocked(JournalOp.Append(pending.toJournalEntry()))
+            }
             buffer.addLast(pending)
-            bufferBytes += pending.dataJson.length
             evictIfNeededLocked()
-            shouldFlushNow = bufferBytes >= FLUSH_THRESHOLD_BYTES
+            shouldFlushNow = buffer.bytes >= FLUSH_THRESHOLD_BYTES
         }
         if (shouldFlushNow) {
             scheduler.execute { flushInternal() }
@@ -106,11 +157,75 @@ internal open class RRWebExporterV3(
         }
     }
 
+    /**
+     * Flushes everything buffered and waits up to [timeoutMs] for it to be sent, for callers
+     * about to lose the process. Waits out a flush already in flight, and flushes again for
+     * events enqueued meanwhile, until the buffer is empty or a send fails.
+     */
+    open fun flushAndWait(timeoutMs: Long) {
+        if (shutdown.get()) {
+            return
+        }
+        val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs)
+        // flushInternal syncs the journal first: whatever doesn't make it out
+        // in time is at least on disk
+        try {
+            while (true) {
+                val remaining = deadline - System.nanoTime()
+                if (remaining <= 0) {
+                    Log.w(LOG_TAG, "Replay v3 flush did not complete in ${timeoutMs}ms")
+                    return
+                }
+                val sent = scheduler.submit(Callable { flushInternal() }).get(remaining, TimeUnit.NANOSECONDS)
+                if (!sent || synchronized(lock) { buffer.isEmpty() }) {
+                    return
+                }
+            }
+        } catch (e: Exception) {
+            Log.w(LOG_TAG, "Replay v3 flush did not complete: " + e.message)
+        }
+    }
+
+    /**
+     * Events that will never be sent: evicted from the full buffer or dropped
+     * after [MAX_RETRIES] failed sends. The recorder compares it between frames
+     * to know when a diff-based stream has lost a step and needs a keyframe.
+     */
+    open fun lostEvents(): Long = synchronized(lock) { buffer.evictedEvents + droppedEvents }
+
+    /** Buffer, export, frame dedup and journal counters. */
+    open fun getStats(): Map<String, Long> = synchronized(lock) {
+        val stats = linkedMapOf(
+            STAT_BUFFER_EVENTS to buffer.size.toLong(),
+            STAT_BUFFER_KEYFRAMES to buffer.keyframeCount.toLong(),
+            STAT_BUFFER_BYTES to buffer.bytes,
+            STAT_EVICTED_EVENTS to buffer.evictedEvents,
+            STAT_EVICTED_KEYFRAMES to buffer.evictedKeyframes,
+            STAT_EVICTED_BYTES to buffer.evictedBytes,
+            STAT_RETRIED_EVENTS to retriedEvents,
+            STAT_DROPPED_EVENTS to droppedEvents,
+            STAT_FRAME_CACHE_ENTRIES to uploadedFrames.size.toLong(),
+            STAT_FRAME_CACHE_HITS to uploadedFrames.hits,
+            STAT_FRAME_CACHE_BYTES_SAVED to uploadedFrames.bytesSaved,
+        )
+        journal?.let {
+            stats[ReplayJournal.STAT_BYTES] = it.totalBytes()
+            stats[ReplayJournal.STAT_FSYNCS] = it.fsyncs
+            stats[ReplayJournal.STAT_RECOVERED_EVENTS] = it.recoveredEvents
+            stats[ReplayJournal.STAT_CORRUPT_RECORDS] = it.corruptRecords
+        }
+        stats
+    }
+
     /** Flushes remaining events and stops the scheduler. */
     fun shutdown() {
         if (shutdown.compareAndSet(false, true)) {
             try {
-                scheduler.execute { flushInternal() }
+                scheduler.execute {
+                    flushInternal()
+                    drainJournal()
+                    journal?.close()
+                }
             } catch (ignored: Exception) {
                 // scheduler already stopped
             }
@@ -119,118 +234,156 @@ internal open class RRWebExporterV3(
     }
 
     private fun evictIfNeededLocked() {
-        while (buffer.size > MAX_BUFFER_EVENTS || bufferBytes > MAX_BUFFER_BYTES) {
-            val victim = buffer.firstOrNull { !it.isKeyframe } ?: buffer.firstOrNull() ?: return
-            buffer.remove(victim)
-            bufferBytes -= victim.dataJson.length
+        var evicted: MutableList<Long>? = null
+        while (buffer.size > MAX_BUFFER_EVENTS || buffer.bytes > MAX_BUFFER_BYTES) {
+            val victim = buffer.evictOldest() ?: break
+            (evicted ?: ArrayList<Long>().also { evicted = it }).add(victim.id)
             Log.d(LOG_TAG, "Replay v3 buffer full - dropped a type=" + victim.type + " event")
         }
+        evicted?.let { if (journalReady) queueJournalOpLocked(JournalOp.Remove(it)) }
+    }
+
+    private fun queueJournalOpLocked(op: JournalOp) {
+        journalOps.add(op)
+        if (!journalDrainScheduled) {
+            journalDrainScheduled = true
+            try {
+                scheduler.execute { drainJournal() }
+            } catch (e: RejectedExecutionException) {
+                // shutting down: the final flush task drains what's left
+            }
+        }
+    }
+
+    private fun queueJournalOp(op: JournalOp) {
+        synchronized(lock) {
+            if (journalReady) {
+                queueJournalOpLocked(op)
+            }
+        }
+    }
+
+    /** Applies the queued journal changes in order; scheduler only. */
+    private fun drainJournal() {
+        val journal = journal ?: return
+        while (true) {
+            val ops = synchronized(lock) {
+                if (journalOps.isEmpty()) {
+                    journalDrainScheduled = false
+                    return
+                }
+                ArrayList(journalOps).also { journalOps.clear() }
+            }
+            for (op in ops) {
+                when (op) {
+                    is JournalOp.Append -> journal.append(op.entry)
+                    is JournalOp.Remove -> journal.remove(op.ids)
+                    is JournalOp.Compact -> journal.compact(op.live)
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts what a previous process journaled in front of anything enqueued
+     * since, under the usual caps, and rewrites the journal from the result.
+     */
+    private fun recoverJournal(journal: ReplayJournal) {
+        val recovered = journal.recover()
+        synchronized(lock) {
+            // fresh ids: the journal is rewritten below, so only uniqueness within it matters
+            buffer.addAllFirst(
+                recovered.map { entry ->
+                    PendingEvent(nextId++, entry.sessionId, entry.type, entry.timestampMs, entry.dataJson, entry.blob)
+                }
+            )
+            // ahead of every other journal change, which needs journalReady
+            queueJournalOpLocked(JournalOp.Compact(buffer.toList().map { it.toJournalEntry() }))
+            journalReady = true
+            evictIfNeededLocked()
+        }
+        drainJournal()
+        if (recovered.isNotEmpty()) {
+            Log.i(LOG_TAG, "Replay v3 recovered ${recovered.size} journaled events")
+        }
     }
 
-    private fun flushInternal() {
+    /**
+     * @return false if a batch failed to send and was requeued; true otherwise,
+     * including when another flush was already in flight.
+     */
+    private fun flushInternal(): Boolean {
+        drainJournal()
+        journal?.sync() // bounds the fsync batch in time when appends stop
         if (!flushInFlight.compareAndSet(false, true)) {
-            return
+            return true
         }
+        var sent = true
         try {
             val batch: List<PendingEvent>
             synchronized(lock) {
                 if (buffer.isEmpty()) {
-                    return
+                    return true
                 }
-                batch = buffer.toList()
-                buffer.clear()
-                bufferBytes = 0
+                batch = buffer.drain()
             }
             // Keep per-session streams intact: one payload per session id.
             for ((sessionId, events) in batch.groupBy { it.sessionId }) {
-                val body = buildOtlpBody(sessionId, events)
-                if (!send(body)) {
+                if (!sendBlobs(sessionId, events)) {
+                    requeue(events)
+                    sent = false
+                    continue
+                }
+                if (send(OtlpJsonWriter.gzipBody(resourceAttributesProvider(sessionId), events))) {
+                    queueJournalOp(JournalOp.Remove(events.map { it.id }))
+                } else {
                     requeue(events)
+                    sent = false
                 }
             }
+            if (journal?.needsCompaction() == true) {
+                synchronized(lock) {
+                    queueJournalOpLocked(JournalOp.Compact(buffer.toList().map { it.toJournalEntry() }))
+                }
+            }
+            drainJournal()
         } catch (e: Exception) {
             Log.e(LOG_TAG, "Replay v3 flush failed: " + e.message)
+            sent = false
         } finally {
             flushInFlight.set(false)
         }
+        return sent
     }
 
     private fun requeue(events: List<PendingEvent>) {
-        val retryable = events.filter { it.retries < MAX_RETRIES }
-        val dropped = events.size - retryable.size
-        if (dropped > 0) {
-            Log.w(LOG_TAG, "Replay v3 dropped $dropped events after $MAX_RETRIES failed sends")
-        }
-        if (retryable.isEmpty()) {
-            return
+        val (retryable, dropped) = events.partition { it.retries < MAX_RETRIES }
+        if (dropped.isNotEmpty()) {
+            Log.w(LOG_TAG, "Replay v3 dropped ${dropped.size} events after $MAX_RETRIES failed sends")
         }
         synchronized(lock) {
-            for (event in retryable.asReversed()) {
-                event.retries++
-                buffer.addFirst(event)
-                bufferBytes += event.dataJson.length
+            if (dropped.isNotEmpty() && journalReady) {
+                queueJournalOpLocked(JournalOp.Remove(dropped.map { it.id }))
+            }
+            droppedEvents += dropped.size
+            if (retryable.isEmpty()) {
+                return
             }
+            retriedEvents += retryable.size
+            retryable.forEach { it.retries++ }
+            buffer.addAllFirst(retryable)
             evictIfNeededLocked()
         }
     }
 
-    /**
-     * Builds the OTLP-JSON payload. Field names are camelCase to match the
-     * browser SDK's RRWebExporter output, which this backend path was built for.
-     */
-    private fun buildOtlpBody(sessionId: String, events: List<PendingEvent>): String {
-        val resourceAttributes = resourceAttributesProvider(sessionId).map { (key, value) ->
-            linkedMapOf("key" to key, "value" to linkedMapOf("stringValue" to value))
-        }
-        val metrics = events.map { event ->
-            linkedMapOf(
-                "name" to "rum_event",
-                "gauge" to linkedMapOf(
-                    "dataPoints" to listOf(
-                        linkedMapOf(
-                            "attributes" to listOf(
-                                attr("type", event.type.toString()),
-                                attr("timestamp", event.timestampMs.toString()),
-                                // data is the event payload's JSON, shipped as a string
-                                attr("data", event.dataJson),
-                            ),
-                            "timeUnixNano" to (event.timestampMs * 1_000_000L).toString(),
-                            "asDouble" to 0,
-                        )
-                    )
-                ),
-            )
-        }
-        val payload = linkedMapOf(
-            "resourceMetrics" to listOf(
-                linkedMapOf(
-                    "resource" to linkedMapOf(
-                        "attributes" to resourceAttributes,
-                        "droppedAttributesCount" to 0,
-                    ),
-                    "scopeMetrics" to listOf(
-                        linkedMapOf(
-                            "scope" to emptyMap<String, Any>(),
-                            "metrics" to metrics,
-                        )
-                    ),
-                )
-            )
-        )
-        return gson.toJson(payload)
-    }
-
-    private fun attr(key: String, value: String): Map<String, Any> =
-        linkedMapOf("key" to key, "value" to linkedMapOf("stringValue" to value))
-
-    private fun send(body: String): Boolean {
+    private fun send(body: RequestBody): Boolean {
         return try {
             val request = Request.Builder()
                 .url(endpoint)
                 .header("Origin", BASE_ORIGIN)
                 .header("Authorization", token)
                 .header("Content-Encoding", "gzip")
-                .post(gzip(body).toRequestBody("application/json".toMediaType()))
+                .post(body)
                 .build()
             httpClient.newCall(request).execute().use { response ->
                 if (!response.isSuccessful) {
@@ -244,13 +397,61 @@ internal open class RRWebExporterV3(
         }
     }
 
-    private fun gzip(body: String): ByteArray {
-        val out = ByteArrayOutputStream()
-        GZIPOutputStream(out).use { it.write(body.toByteArray(Charsets.UTF_8)) }
-        return out.toByteArray()
+    /**
+     * Uploads the distinct blobs [events] reference and haven't sent yet.
+     * Images are already compressed, so the request isn't gzipped.
+     */
+    private fun sendBlobs(sessionId: String, events: List<PendingEvent>): Boolean {
+        val unsent = events.filter { it.blob != null && !it.blobSent }
+        if (unsent.isEmpty()) {
+            return true
+        }
+        val multipart = MultipartBody.Builder()
+            .setType(MultipartBody.FORM)
+            .addFormDataPart("sessionId", sessionId)
+        val blobs = unsent.mapNotNull { it.blob }.distinctBy { it.hash }
+        for (blob in blobs) {
+            multipart.addFormDataPart("blob", blob.hash, blob.bytes.toRequestBody(blob.mimeType.toMediaType()))
+        }
+        val sent = try {
+            val request = Request.Builder()
+                .url(blobEndpoint)
+                .header("Origin", BASE_ORIGIN)
+                .header("Authorization", token)
+                .post(multipart.build())
+                .build()
+            httpClient.newCall(request).execute().use { response ->
+                if (!response.isSuccessful) {
+                    Log.w(LOG_TAG, "Replay v3 blob upload failed with status " + response.code)
+                }
+                response.isSuccessful
+            }
+        } catch (e: Exception) {
+            Log.w(LOG_TAG, "Replay v3 blob upload failed: " + e.message)
+            false
+        }
+        if (sent) {
+            unsent.forEach { it.blobSent = true }
+            synchronized(lock) {
+                blobs.forEach { uploadedFrames.add(sessionId, it.hash, it.bytes.size) }
+            }
+        }
+        return sent
     }
 
     companion object {
+        const val STAT_BUFFER_EVENTS = "buffer.events"
+        const val STAT_BUFFER_KEYFRAMES = "buffer.keyframes"
+        const val STAT_BUFFER_BYTES = "buffer.bytes"
+        const val STAT_EVICTED_EVENTS = "buffer.evicted_events"
+        const val STAT_EVICTED_KEYFRAMES = "buffer.evicted_keyframes"
+        const val STAT_EVICTED_BYTES = "buffer.evicted_bytes"
+        const val STAT_RETRIED_EVENTS = "export.retried_events"
+        const val STAT_DROPPED_EVENTS = "export.dropped_events"
+        const val STAT_FRAME_CACHE_ENTRIES = "frame_cache.entries"
+        const val STAT_FRAME_CACHE_HITS = "frame_cache.hits"
+        const val STAT_FRAME_CACHE_BYTES_SAVED = "frame_cache.bytes_saved"
+
         private const val FLUSH_INTERVAL_MS = 5_000L
         private const val FLUSH_THRESHOLD_BYTES = 512 * 1024L
         private const val MAX_BUFFER_BYTES = 3 * 1024 * 1024L
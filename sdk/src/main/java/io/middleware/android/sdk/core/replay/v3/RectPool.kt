@@ -0,0 +1,26 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import android.graphics.Rect
+
+/**
+ * Rects handed out while a frame's masks are collected and all taken back by
+ * [reset] when the next frame starts, so steady-state frames allocate none.
+ * Main thread only.
+ */
+internal class RectPool {
+    private val rects = ArrayList<Rect>()
+    private var inUse = 0
+
+    fun obtain(left: Int, top: Int, right: Int, bottom: Int): Rect {
+        if (inUse == rects.size) {
+            rects.add(Rect())
+        }
+        val rect = rects[inUse++]
+        rect.set(left, top, right, bottom)
+        return rect
+    }
+
+    fun reset() {
+        inUse = 0
+    }
+}
@@ -0,0 +1,134 @@
+package io.middleware.android.sdk.core.replay.v3
+
+/**
+ * The exporter's pending events, held as two queues: keyframes (Meta and
+ * FullSnapshot events) and incremental events. Every event gets a sequence
+ * number when it is added, at the back or, for retries and recovered events,
+ * at the front, so each queue stays in order and [toList] merges them back
+ * into the order they were recorded in.
+ *
+ * Eviction takes the oldest incremental event, or the oldest keyframe once
+ * only keyframes are left, from the head of its queue in O(1). [bytes] is the
+ * UTF-8 size of the event data plus any blob, as it goes over the wire.
+ *
+ * Not thread safe; the exporter guards it with its lock.
+ */
+internal class ReplayEventBuffer<E : ReplayEventBuffer.Item> {
+
+    interface Item {
+        val isKeyframe: Boolean
+
+        /** Wire size; must not change while the item is buffered. */
+        val bytes: Long
+
+        /** Position in the buffer, assigned when added. */
+        var seq: Long
+    }
+
+    private val keyframes = ArrayDeque<E>()
+    private val incremental = ArrayDeque<E>()
+    private var frontSeq = 0L
+    private var backSeq = 0L
+
+    var bytes = 0L
+        private set
+
+    var evictedEvents = 0L
+        private set
+    var evictedKeyframes = 0L
+        private set
+    var evictedBytes = 0L
+        private set
+
+    val size: Int
+        get() = keyframes.size + incremental.size
+
+    val keyframeCount: Int
+        get() = keyframes.size
+
+    fun isEmpty(): Boolean = size == 0
+
+    fun addLast(item: E) {
+        item.seq = backSeq++
+        queueOf(item).addLast(item)
+        bytes += item.bytes
+    }
+
+    /** Puts [items], in their order, ahead of everything buffered. */
+    fun addAllFirst(items: List<E>) {
+        for (i in items.indices.reversed()) {
+            val item = items[i]
+            item.seq = --frontSeq
+            queueOf(item).addFirst(item)
+            bytes += item.bytes
+        }
+    }
+
+    /** Removes and returns the oldest incremental event, else the oldest keyframe; null when empty. */
+    fun evictOldest(): E? {
+        val victim = incremental.removeFirstOrNull() ?: keyframes.removeFirstOrNull() ?: return null
+        bytes -= victim.bytes
+        evictedEvents++
+        evictedBytes += victim.bytes
+        if (victim.isKeyframe) {
+            evictedKeyframes++
+        }
+        return victim
+    }
+
+    /** Everything buffered, in recording order. */
+    fun toList(): List<E> {
+        val out = ArrayList<E>(size)
+        var k = 0
+        var i = 0
+        while (k < keyframes.size && i < incremental.size) {
+            out.add(if (keyframes[k].seq < incremental[i].seq) keyframes[k++] else incremental[i++])
+        }
+        while (k < keyframes.size) {
+            out.add(keyframes[k++])
+        }
+        while (i < incremental.size) {
+            out.add(incremental[i++])
+        }
+        return out
+    }
+
+    /** Removes and returns everything buffered, in recording order. */
+    fun drain(): List<E> {
+        val out = toList()
+        clear()
+        return out
+    }
+
+    fun clear() {
+        keyframes.clear()
+        incremental.clear()
+        bytes = 0
+    }
+
+    private fun queueOf(item: E): ArrayDeque<E> = if (item.isKeyframe) keyframes else incremental
+
+    companion object {
+        /** UTF-8 length of [text] without encoding it. */
+        fun utf8Length(text: CharSequence): Long {
+            var length = 0L
+            var i = 0
+            val n = text.length
+            while (i < n) {
+                val c = text[i]
+                length += when {
+                    c.code < 0x80 -> 1
+                    c.code < 0x800 -> 2
+                    Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text[i + 1]) -> {
+                        i++
+                        4
+                    }
+                    Character.isSurrogate(c) -> 1 // encoded as '?'
+                    else -> 3
+                }
+                i++
+            }
+            return length
+        }
+    }
+}
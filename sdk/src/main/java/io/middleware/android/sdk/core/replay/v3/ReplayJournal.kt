@@ -0,0 +1,449 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import android.util.Log
+import io.middleware.android.sdk.utils.Constants.LOG_TAG
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.zip.CRC32
+
+/**
+ * Append-only on-disk journal of the v3 events waiting for export, so a
+ * process that dies with events still buffered ships them on the next start.
+ *
+ * Layout: numbered `.journal` files in [dir], written in order. Each record is
+ * `kind (1) | payload length (4) | CRC32 of payload (4) | payload`. An EVENT
+ * record holds one pending event with its blob; a REMOVE record lists ids that
+ * were sent, dropped or evicted. The live events are the ones appended and not
+ * removed. [recover] replays every file, stops a file at its first torn or
+ * corrupt record and returns what is still live.
+ *
+ * Writes go to the active file's channel; `fsync` is batched to at most one
+ * per [fsyncIntervalMs] (plus [sync]), so a crash loses at most that much.
+ * The active file rotates at [maxFileBytes]. A REMOVE record can cancel events
+ * in any older file, so files are only deleted oldest first: a rotated file
+ * goes once none of its events is live and every file before it is gone.
+ * Since the caller's buffer already bounds the
+ * live events, [needsCompaction] only has to catch files kept alive by a few
+ * old events: [compact] rewrites the live set into a fresh file.
+ *
+ * Thread safe. I/O errors are logged and disable the journal; the exporter
+ * carries on in memory.
+ */
+internal class ReplayJournal(
+    private val dir: File,
+    private val maxFileBytes: Long = DEFAULT_MAX_FILE_BYTES,
+    private val maxJournalBytes: Long = DEFAULT_MAX_JOURNAL_BYTES,
+    private val fsyncIntervalMs: Long = DEFAULT_FSYNC_INTERVAL_MS,
+    private val clock: () -> Long = { System.nanoTime() / 1_000_000L },
+) {
+    class Entry(
+        val id: Long,
+        val sessionId: String,
+        val type: Int,
+        val timestampMs: Long,
+        val dataJson: String,
+        val blob: FrameBlob?,
+    )
+
+    private val crc = CRC32()
+    private val payload = ByteArrayOutputStream(4 * 1024)
+    private val header = ByteBuffer.allocate(HEADER_LEN)
+
+    private var channel: FileChannel? = null
+    private var activeSeq = 0L
+    private var activeBytes = 0L
+    private var dirty = false
+    private var lastSyncMs = 0L
+    private var failed = false
+    /** Set while [compact] rewrites the live set; the files it replaces must outlive the rewrite. */
+    private var compacting = false
+
+    /** id -> file seq of every live event; live count per file. */
+    private val liveFile = HashMap<Long, Long>()
+    private val liveCount = HashMap<Long, Int>()
+    private val fileBytes = HashMap<Long, Long>()
+
+    /** File each event returned by [recover] was read from; only used while recovering. */
+    private val recoveredSeq = HashMap<Long, Long>()
+
+    /** Counters are readable without the journal's monitor, e.g. while it compacts. */
+    @Volatile
+    var fsyncs = 0L
+        private set
+    @Volatile
+    var recoveredEvents = 0L
+        private set
+    @Volatile
+    var corruptRecords = 0L
+        private set
+
+    @Volatile
+    private var bytesOnDisk = 0L
+
+    /**
+     * Reads what a previous process left behind, oldest first. The files stay
+     * until [compact] replaces them. Call once, before the first [append].
+     */
+    @Synchronized
+    fun recover(): List<Entry> {
+        val live = LinkedHashMap<Long, Entry>()
+        for ((seq, file) in journalFiles()) {
+            activeSeq = maxOf(activeSeq, seq)
+            setFileBytes(seq, file.length())
+            try {
+                readFile(file, live)
+            } catch (e: IOException) {
+                Log.w(LOG_TAG, "Replay v3 journal ${file.name} unreadable: " + e.message)
+                corruptRecords++
+            }
+        }
+        for (entry in live.values) {
+            track(entry.id, seqOf(entry))
+        }
+        recoveredEvents += live.size
+        return live.values.toList()
+    }
+
+    @Synchronized
+    fun append(entry: Entry) {
+        if (failed) {
+            return
+        }
+        try {
+            payload.reset()
+            DataOutputStream(payload).use { out ->
+                out.writeLong(entry.id)
+                out.writeUTF(entry.sessionId)
+                out.writeInt(entry.type)
+                out.writeLong(entry.timestampMs)
+                val data = entry.dataJson.toByteArray(Charsets.UTF_8)
+                out.writeInt(data.size)
+                out.write(data)
+                val blob = entry.blob
+                out.writeBoolean(blob != null)
+                if (blob != null) {
+                    out.writeUTF(blob.hash)
+                    out.writeUTF(blob.mimeType)
+                    out.writeInt(blob.bytes.size)
+                    out.write(blob.bytes)
+                }
+            }
+            if (channel == null || activeBytes >= maxFileBytes) {
+                rotate()
+            }
+            writeRecord(KIND_EVENT)
+            track(entry.id, activeSeq)
+            setFileBytes(activeSeq, activeBytes)
+            syncIfDue()
+        } catch (e: IOException) {
+            fail(e)
+        }
+    }
+
+    /** Marks [ids] as no longer pending; drained files at the front of the journal are deleted. */
+    @Synchronized
+    fun remove(ids: Collection<Long>) {
+        if (failed || ids.isEmpty()) {
+            return
+        }
+        val known = ids.filter { liveFile.containsKey(it) }
+        if (known.isEmpty()) {
+            return
+        }
+        try {
+            payload.reset()
+            DataOutputStream(payload).use { out ->
+                out.writeInt(known.size)
+                for (id in known) {
+                    out.writeLong(id)
+                }
+            }
+            if (channel == null) {
+                rotate()
+            }
+            writeRecord(KIND_REMOVE)
+            setFileBytes(activeSeq, activeBytes)
+            for (id in known) {
+                val seq = liveFile.remove(id) ?: continue
+                val left = (liveCount[seq] ?: 1) - 1
+                if (left > 0) {
+                    liveCount[seq] = left
+                } else {
+                    liveCount.remove(seq)
+                }
+            }
+            syncIfDue()
+            deleteDrainedFiles()
+        } catch (e: IOException) {
+            fail(e)
+        }
+    }
+
+    /** Forces written records to disk if any are pending. */
+    @Synchronized
+    fun sync() {
+        if (!dirty || failed) {
+            return
+        }
+        try {
+            channel?.force(false)
+            fsyncs++
+            dirty = false
+            lastSyncMs = clock()
+        } catch (e: IOException) {
+            fail(e)
+        }
+    }
+
+    /** Whether dead records take up enough space for [compact] to be worth it. */
+    @Synchronized
+    fun needsCompaction(): Boolean = !failed && totalBytes() > maxJournalBytes
+
+    /**
+     * Replaces the journal with a fresh file holding exactly [live], which
+     * must be every event still pending.
+     */
+    @Synchronized
+    fun compact(live: List<Entry>) {
+        if (failed) {
+            return
+        }
+        val previous = fileBytes.keys.toList()
+        liveFile.clear()
+        liveCount.clear()
+        closeChannel()
+        channel = null
+        compacting = true
+        try {
+            for (entry in live) {
+                append(entry)
+            }
+        } finally {
+            compacting = false
+        }
+        if (failed) {
+            return
+        }
+        if (channel == null) {
+            try {
+                rotate()
+            } catch (e: IOException) {
+                fail(e)
+                return
+            }
+        }
+        sync()
+        for (seq in previous) {
+            if (seq != activeSeq) {
+                deleteFile(seq)
+            }
+        }
+    }
+
+    @Synchronized
+    fun close() {
+        sync()
+        closeChannel()
+        channel = null
+    }
+
+    fun totalBytes(): Long = bytesOnDisk
+
+    private fun setFileBytes(seq: Long, bytes: Long) {
+        fileBytes[seq] = bytes
+        bytesOnDisk = fileBytes.values.sum()
+    }
+
+    private fun writeRecord(kind: Int) {
+        val bytes = payload.toByteArray()
+        crc.reset()
+        crc.update(bytes)
+        header.clear()
+        header.put(kind.toByte()).putInt(bytes.size).putInt(crc.value.toInt())
+        header.flip()
+        val out = channel ?: throw IOException("journal closed")
+        val record = arrayOf(header, ByteBuffer.wrap(bytes))
+        while (record[1].hasRemaining()) {
+            out.write(record)
+        }
+        activeBytes += HEADER_LEN + bytes.size
+        dirty = true
+    }
+
+    private fun syncIfDue() {
+        if (clock() - lastSyncMs >= fsyncIntervalMs) {
+            sync()
+        }
+    }
+
+    private fun rotate() {
+        val rotating = channel != null
+        if (rotating) {
+            sync()
+            closeChannel()
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw IOException("cannot create " + dir)
+        }
+        activeSeq++
+        channel = FileChannel.open(
+            fileFor(activeSeq).toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+        )
+        activeBytes = 0
+        setFileBytes(activeSeq, 0)
+        if (rotating) {
+            deleteDrainedFiles()
+        }
+    }
+
+    /**
+     * Deletes files from the oldest on while they hold no live event. A drained
+     * file behind a live one stays: its REMOVE records may be all that cancels
+     * events in the older file. Stops at the active file.
+     */
+    private fun deleteDrainedFiles() {
+        if (compacting) {
+            return
+        }
+        for (seq in fileBytes.keys.sorted()) {
+            if (seq == activeSeq || liveCount.containsKey(seq)) {
+                return
+            }
+            deleteFile(seq)
+        }
+    }
+
+    private fun track(id: Long, seq: Long) {
+        liveFile[id] = seq
+        liveCount[seq] = (liveCount[seq] ?: 0) + 1
+    }
+
+    private fun seqOf(entry: Entry): Long = recoveredSeq.remove(entry.id) ?: activeSeq
+
+    private fun readFile(file: File, live: LinkedHashMap<Long, Entry>) {
+        val seq = seqFromName(file.name) ?: return
+        val bytes = file.readBytes()
+        val input = ByteBuffer.wrap(bytes)
+        var valid = 0
+        while (input.remaining() >= HEADER_LEN) {
+            val kind = input.get().toInt() and 0xff
+            val size = input.getInt()
+            val expectedCrc = input.getInt()
+            if (size < 0 || size > input.remaining()) {
+                break
+            }
+            crc.reset()
+            crc.update(bytes, input.position(), size)
+            if (crc.value.toInt() != expectedCrc ||
+                !apply(kind, DataInputStream(bytes.inputStream(input.position(), size)), seq, live)
+            ) {
+                break
+            }
+            input.position(input.position() + size)
+            valid = input.position()
+        }
+        if (valid < bytes.size) {
+            // torn or corrupt tail: keep everything before it
+            corruptRecords++
+            RandomAccessFile(file, "rw").use { it.setLength(valid.toLong()) }
+            setFileBytes(seq, valid.toLong())
+        }
+    }
+
+    private fun apply(kind: Int, input: DataInputStream, seq: Long, live: LinkedHashMap<Long, Entry>): Boolean {
+        return try {
+            when (kind) {
+                KIND_EVENT -> {
+                    val id = input.readLong()
+                    val sessionId = input.readUTF()
+                    val type = input.readInt()
+                    val timestampMs = input.readLong()
+                    val data = ByteArray(input.readInt())
+                    input.readFully(data)
+                    val blob = if (input.readBoolean()) {
+                        val hash = input.readUTF()
+                        val mimeType = input.readUTF()
+                        val blobBytes = ByteArray(input.readInt())
+                        input.readFully(blobBytes)
+                        FrameBlob(hash, mimeType, blobBytes)
+                    } else {
+                        null
+                    }
+                    live[id] = Entry(id, sessionId, type, timestampMs, String(data, Charsets.UTF_8), blob)
+                    recoveredSeq[id] = seq
+                    true
+                }
+                KIND_REMOVE -> {
+                    repeat(input.readInt()) {
+                        val id = input.readLong()
+                        live.remove(id)
+                        recoveredSeq.remove(id)
+                    }
+                    true
+                }
+                else -> false
+            }
+        } catch (e: IOException) {
+            false
+        }
+    }
+
+    private fun journalFiles(): List<Pair<Long, File>> =
+        (dir.listFiles() ?: emptyArray())
+            .mapNotNull { file -> seqFromName(file.name)?.let { it to file } }
+            .sortedBy { it.first }
+
+    private fun seqFromName(name: String): Long? =
+        if (name.endsWith(EXTENSION)) name.removeSuffix(EXTENSION).toLongOrNull() else null
+
+    private fun fileFor(seq: Long) = File(dir, "$seq$EXTENSION")
+
+    private fun deleteFile(seq: Long) {
+        fileBytes.remove(seq)
+        bytesOnDisk = fileBytes.values.sum()
+        val file = fileFor(seq)
+        if (file.exists() && !file.delete()) {
+            Log.w(LOG_TAG, "Replay v3 journal could not delete " + file.name)
+        }
+    }
+
+    private fun closeChannel() {
+        try {
+            channel?.close()
+        } catch (ignored: IOException) {
+            // nothing left to save
+        }
+    }
+
+    private fun fail(e: IOException) {
+        Log.e(LOG_TAG, "Replay v3 journal disabled: " + e.message)
+        failed = true
+        closeChannel()
+        channel = null
+    }
+
+    companion object {
+        const val DEFAULT_MAX_FILE_BYTES = 1024 * 1024L
+        /** Twice the exporter's buffer cap: room for the live events plus as much dead weight. */
+        const val DEFAULT_MAX_JOURNAL_BYTES = 6 * 1024 * 1024L
+        const val DEFAULT_FSYNC_INTERVAL_MS = 1_000L
+
+        const val STAT_BYTES = "journal.bytes"
+        const val STAT_FSYNCS = "journal.fsyncs"
+        const val STAT_RECOVERED_EVENTS = "journal.recovered_events"
+        const val STAT_CORRUPT_RECORDS = "journal.corrupt_records"
+
+        private const val EXTENSION = ".journal"
+        private const val HEADER_LEN = 9
+        private const val KIND_EVENT = 1
+        private const val KIND_REMOVE = 2
+    }
+}
@@ -2,13 +2,23 @@ package io.middleware.android.sdk.core.replay.v3
 
 import android.app.Activity
 import android.app.Application
+import android.graphics.Bitmap
+import android.graphics.Rect
 import android.os.Bundle
 import android.os.Handler
 import android.os.Looper
+import android.os.SystemClock
 import android.util.Log
 import android.view.View
 import io.middleware.android.sdk.builders.MiddlewareBuilder
+import io.middleware.android.sdk.core.replay.AdaptiveCaptureScheduler
+import io.middleware.android.sdk.core.replay.BitrateController
+import io.middleware.android.sdk.core.replay.ErrorReplayBuffer
+import io.middleware.android.sdk.core.replay.InteractionTracker
+import io.middleware.android.sdk.core.replay.RREvent
+import io.middleware.android.sdk.core.replay.RecordingGovernor
 import io.middleware.android.sdk.core.replay.SessionRecorder
+import io.middleware.android.sdk.core.replay.v2.FrameFingerprint
 import io.middleware.android.sdk.core.replay.v2.LifecycleManager
 import io.middleware.android.sdk.utils.Constants.LOG_TAG
 import java.lang.ref.WeakReference
@@ -27,6 +37,20 @@ import java.util.concurrent.atomic.AtomicBoolean
  * An "epoch" — Meta + FullSnapshot pair — restarts when the recorder starts,
  * the session id rotates, the viewport size changes (rotation/multi-window),
  * or the app returns to the foreground.
+ *
+ * In wireframe mode the view tree itself is recorded ([WireframeSerializer]):
+ * no screenshots unless regions the tree can't describe get the fallback,
+ * and frames are DOM mutations from a [WireframeDiff]. Each mutation builds on
+ * the one before, so a full wireframe snapshot goes out every
+ * [FULL_FRAME_INTERVAL_MS] and after the exporter lost an event. It replaces
+ * the image modes below.
+ *
+ * In tiled mode ([FrameTiler]) a frame in which little changed swaps only the
+ * changed tiles over the screen image instead of the whole image.
+ *
+ * In error-triggered mode events go to an [ErrorReplayBuffer] instead of the
+ * exporter; [onError] ships the buffer and keeps exporting for the post-error
+ * window. The buffer needs periodic epochs to stay playable after eviction.
  */
 internal class ReplayRecorderV3(
     private val application: Application,
@@ -45,6 +69,63 @@ internal class ReplayRecorderV3(
     )
     private val touchTracker = TouchEventTracker(::onTouchEvent)
 
+    /**
+     * Adaptive capture (opt-in): the draw throttle follows [AdaptiveCaptureScheduler]
+     * instead of the fixed frequency. Touches are forwarded from [touchTracker], so the
+     * interaction tracker doesn't wrap the window callback a second time.
+     */
+    private val adaptiveScheduler: AdaptiveCaptureScheduler? =
+        if (recordingOptions.isAdaptiveCapture) {
+            AdaptiveCaptureScheduler(
+                recordingOptions.screenshotInterval,
+                AdaptiveCaptureScheduler.DEFAULT_IDLE_INTERVAL_MS,
+                recordingOptions.captureBudgetBytesPerMinute,
+            )
+        } else {
+            null
+        }
+    private val interactionTracker: InteractionTracker? = adaptiveScheduler?.let {
+        InteractionTracker(it, false) {
+            // don't wait out the idle-rate window, but stay behind the (now shorter) draw
+            // throttle so a burst of touches doesn't capture back to back
+            mainHandler.post {
+                val decorView = lifecycleManager.currentActivity?.window?.peekDecorView()
+                decorView?.let { view -> drawListeners[view]?.requestCapture() }
+            }
+        }
+    }
+
+    /**
+     * Thermal/battery governor (on unless disabled): stretches the draw throttle, lowers
+     * quality and resolution or pauses capture. Transitions go into the stream as custom events.
+     */
+    private val governor: RecordingGovernor? =
+        if (recordingOptions.isPowerAware) RecordingGovernor(application, ::onGovernorLevelChanged) else null
+
+    /** Picks quality and resolution per frame when a bytes-per-minute target is set. */
+    private val bitrateController: BitrateController? =
+        if (recordingOptions.targetBytesPerMinute > 0) {
+            BitrateController(recordingOptions.targetBytesPerMinute, recordingOptions.qualityValue)
+        } else {
+            null
+        }
+
+    /** Error-triggered mode only; guarded by itself together with [liveUntilMs]. */
+    private val errorBuffer: ErrorReplayBuffer? =
+        if (recordingOptions.isErrorTriggered) {
+            ErrorReplayBuffer(
+                recordingOptions.errorBufferWindowMs,
+                recordingOptions.errorBufferMaxBytes,
+                recordingOptions.errorBufferMaxFrames,
+            )
+        } else {
+            null
+        }
+
+    /** Events stamped before this go straight to the exporter (post-error window). */
+    @Volatile
+    private var liveUntilMs = 0L
+
     private val sanitizedElements = CopyOnWriteArrayList<WeakReference<View>>()
     private val drawListeners = WeakHashMap<View, NextDrawListener>()
 
@@ -64,8 +145,31 @@ internal class ReplayRecorderV3(
     @Volatile
     private var lastMetaHeightDp = -1
 
+    /** Capture executor only; compares masked pixels so unchanged frames skip the encode. */
+    private val frameFingerprint = FrameFingerprint()
+
+    @Volatile
+    private var unchangedFrames = 0L
+
+    /** Tiled mode only; capture executor only. */
+    private val frameTiler: FrameTiler? = if (recordingOptions.isTiledFrames) FrameTiler() else null
+
+    /** When the screen image or wireframe was last replaced whole; capture executor only. */
+    private var lastFullFrameMs = 0L
+
+    /** [RRWebExporterV3.lostEvents] when the last whole frame shipped; capture executor only. */
+    private var lostEventsAtFullFrame = 0L
+
+    /** When a frame or tiles were last shipped, i.e. the fingerprint's reference; capture executor only. */
+    private var lastShippedFrameMs = 0L
+
     @Volatile
-    private var lastFrameHash = 0
+    private var tiledFrames = 0L
+
+    /** Wireframe mode only: the tree is serialized on the main thread, diffed on the capture executor. */
+    private val wireframeSerializer: WireframeSerializer? =
+        if (recordingOptions.isWireframe) WireframeSerializer(recordingOptions.isMaskAllTextInputs) else null
+    private val wireframeDiff: WireframeDiff? = if (recordingOptions.isWireframe) WireframeDiff() else null
 
     @Volatile
     private var lastSessionId: String? = null
@@ -88,8 +192,14 @@ internal class ReplayRecorderV3(
             }
         }
         application.registerActivityLifecycleCallbacks(this)
+        interactionTracker?.let { application.registerActivityLifecycleCallbacks(it) }
+        governor?.start()
         mainHandler.post {
-            lifecycleManager.currentActivity?.let { attach(it) }
+            lifecycleManager.currentActivity?.let {
+                interactionTracker?.signal(AdaptiveCaptureScheduler.Signal.NAVIGATION)
+                interactionTracker?.attach(it)
+                attach(it)
+            }
         }
         Log.d(LOG_TAG, "Replay v3 recording started")
     }
@@ -99,7 +209,10 @@ internal class ReplayRecorderV3(
             return
         }
         application.unregisterActivityLifecycleCallbacks(this)
+        interactionTracker?.let { application.unregisterActivityLifecycleCallbacks(it) }
+        governor?.stop()
         mainHandler.post {
+            interactionTracker?.detach()
             for ((_, listener) in drawListeners) {
                 listener.unregister()
             }
@@ -115,6 +228,39 @@ internal class ReplayRecorderV3(
 
     override fun isRunning(): Boolean = running.get()
 
+    override fun getStats(): Map<String, Long> {
+        val stats = LinkedHashMap<String, Long>()
+        errorBuffer?.let { stats.putAll(it.stats) }
+        stats.putAll(exporter.getStats())
+        bitrateController?.let { stats.putAll(it.stats) }
+        stats[STAT_UNCHANGED_FRAMES] = unchangedFrames
+        if (frameTiler != null) {
+            stats[STAT_TILED_FRAMES] = tiledFrames
+        }
+        return stats
+    }
+
+    override fun onError(reason: String, fatal: Boolean) {
+        val buffer = errorBuffer ?: return
+        if (!running.get()) {
+            return
+        }
+        val now = System.currentTimeMillis()
+        synchronized(buffer) {
+            liveUntilMs = maxOf(liveUntilMs, now + recordingOptions.errorPostWindowMs)
+            for (buffered in buffer.drain()) {
+                exporter.enqueue(buffered.event, buffered.sessionId)
+            }
+            lastSessionId?.let { exporter.enqueue(RRWebEvents.errorCustom(reason, fatal, now), it) }
+        }
+        Log.d(LOG_TAG, "Replay v3 error-triggered upload: $reason")
+        if (fatal) {
+            exporter.flushAndWait(FATAL_FLUSH_TIMEOUT_MS)
+        } else {
+            exporter.flush()
+        }
+    }
+
     override fun setViewForBlur(view: View) {
         sanitizedElements.add(WeakReference(view))
     }
@@ -170,7 +316,7 @@ internal class ReplayRecorderV3(
             val listener = NextDrawListener(
                 decorView,
                 mainHandler,
-                recordingOptions.screenshotInterval,
+                ::captureIntervalMs,
                 onDirty = {},
                 onThrottledDraw = { captureFrame(activity) },
             )
@@ -181,6 +327,13 @@ internal class ReplayRecorderV3(
         mainHandler.post { captureFrame(activity) }
     }
 
+    private fun captureIntervalMs(): Long {
+        val interval = adaptiveScheduler?.nextIntervalMs(SystemClock.uptimeMillis()) ?: recordingOptions.screenshotInterval
+        return interval * governorLevel().intervalMultiplier
+    }
+
+    private fun governorLevel(): RecordingGovernor.Level = governor?.level ?: RecordingGovernor.Level.NORMAL
+
     private fun detach(activity: Activity) {
         val decorView = activity.window?.peekDecorView()
         if (decorView != null) {
@@ -194,7 +347,10 @@ internal class ReplayRecorderV3(
     // ---------------------------------------------------------------------
 
     private fun captureFrame(activity: Activity) {
-        if (!running.get() || activity.isFinishing || activity.isDestroyed) {
+        if (!running.get() || activity.isFinishing || activity.isDestroyed || governorLevel().isPaused) {
+            return
+        }
+        if (bitrateController?.admit(SystemClock.uptimeMillis()) == false) {
             return
         }
         if (!captureInFlight.compareAndSet(false, true)) {
@@ -223,34 +379,51 @@ internal class ReplayRecorderV3(
             }
 
             val density = activity.resources.displayMetrics.density
+            val sourceWidth = decorView.width
+            val sourceHeight = decorView.height
             val widthDp = (decorView.width / density).toInt()
             val heightDp = (decorView.height / density).toInt()
-            val needsMeta = !sentMeta || widthDp != lastMetaWidthDp || heightDp != lastMetaHeightDp
+            val needsMeta = !sentMeta || widthDp != lastMetaWidthDp || heightDp != lastMetaHeightDp ||
+                needsBufferKeyframe()
             val href = "android-app://" + activity.packageName + "/" + activity.javaClass.simpleName
             val screenName = activity.javaClass.simpleName
 
+            val wireframe = wireframeSerializer
+            if (wireframe != null) {
+                // main thread, like the mask walk below
+                val snapshot = wireframe.serialize(decorView, density, sanitizedElements)
+                if (recordingOptions.isWireframeScreenshotFallback && snapshot.fallbackRegions.isNotEmpty()) {
+                    val maskRects = maskRectCollector.collect(decorView, sanitizedElements)
+                    screenshotCapturer.capture(activity.window, decorView, governorLevel(), bitrateController) { bitmap ->
+                        runOnCaptureExecutor {
+                            if (bitmap != null) {
+                                fillFallbackRegions(snapshot, bitmap, maskRects, sourceWidth, sourceHeight)
+                            }
+                            processWireframe(snapshot, needsMeta, widthDp, heightDp, href, screenName, sessionId)
+                        }
+                    }
+                } else {
+                    runOnCaptureExecutor {
+                        processWireframe(snapshot, needsMeta, widthDp, heightDp, href, screenName, sessionId)
+                    }
+                }
+                released = true // ownership passed to the executor task
+                return
+            }
+
             // main thread: the view tree can't change while we walk it
             val maskRects = maskRectCollector.collect(decorView, sanitizedElements)
 
-            screenshotCapturer.capture(activity.window, decorView) { bitmap ->
+            screenshotCapturer.capture(activity.window, decorView, governorLevel(), bitrateController) { bitmap ->
                 if (bitmap == null) {
                     captureInFlight.set(false)
                     return@capture
                 }
-                val executor = captureExecutor
-                if (executor == null || executor.isShutdown || !running.get()) {
-                    bitmap.recycle()
-                    captureInFlight.set(false)
-                    return@capture
-                }
-                executor.execute {
-                    try {
-                        processFrame(bitmap, maskRects, needsMeta, widthDp, heightDp, href, screenName, sessionId)
-                    } catch (e: Throwable) {
-                        Log.d(LOG_TAG, "Replay v3 frame failed: " + e.message)
-                    } finally {
-                        captureInFlight.set(false)
-                    }
+                runOnCaptureExecutor {
+                    processFrame(
+                        bitmap, maskRects, sourceWidth, sourceHeight, needsMeta,
+                        widthDp, heightDp, href, screenName, sessionId,
+                    )
                 }
             }
             released = true // ownership passed to the capture callback
@@ -261,10 +434,75 @@ internal class ReplayRecorderV3(
         }
     }
 
+    /** Runs [task] on the capture executor and ends the capture in flight after it. */
+    private fun runOnCaptureExecutor(task: () -> Unit) {
+        val executor = captureExecutor
+        if (executor == null || executor.isShutdown || !running.get()) {
+            captureInFlight.set(false)
+            return
+        }
+        executor.execute {
+            try {
+                task()
+            } catch (e: Throwable) {
+                Log.d(LOG_TAG, "Replay v3 frame failed: " + e.message)
+            } finally {
+                captureInFlight.set(false)
+            }
+        }
+    }
+
     /** Runs on the capture executor. */
     private fun processFrame(
-        bitmap: android.graphics.Bitmap,
-        maskRects: List<android.graphics.Rect>,
+        bitmap: Bitmap,
+        maskRects: List<Rect>,
+        sourceWidth: Int,
+        sourceHeight: Int,
+        needsMeta: Boolean,
+        widthDp: Int,
+        heightDp: Int,
+        href: String,
+        screenName: String,
+        sessionId: String,
+    ) {
+        if (!screenshotCapturer.mask(bitmap, maskRects, sourceWidth, sourceHeight)) {
+            return
+        }
+        // compared with the last frame shipped, so slow drift adds up until it shows
+        val unchanged = frameFingerprint.matches(bitmap)
+        if (unchanged && !needsMeta && SystemClock.uptimeMillis() - lastShippedFrameMs < UNCHANGED_MAX_INTERVAL_MS) {
+            unchangedFrames++
+            return // looks like the last shipped frame, nothing to encode or ship
+        }
+        val tiler = frameTiler
+        if (tiler != null) {
+            if (needsMeta) {
+                tiler.layout(widthDp, heightDp)
+            }
+            tiler.hash(bitmap)
+        }
+        val tiledBytes = if (tiler != null && !needsMeta) shipTiles(tiler, bitmap, sessionId) else null
+        val encodedBytes = tiledBytes ?: shipFullFrame(bitmap, needsMeta, widthDp, heightDp, href, sessionId)
+        if (encodedBytes >= 0) {
+            frameFingerprint.commit()
+            lastShippedFrameMs = SystemClock.uptimeMillis()
+            onFrameShipped(encodedBytes, screenName, sessionId)
+        }
+    }
+
+    private fun onFrameShipped(bytes: Long, screenName: String, sessionId: String) {
+        adaptiveScheduler?.onFrameCaptured(bytes, SystemClock.uptimeMillis())
+        bitrateController?.onFrameEncoded(bytes, SystemClock.uptimeMillis())
+
+        if (screenName != lastScreenName) {
+            lastScreenName = screenName
+            emit(RRWebEvents.screenCustom(screenName, System.currentTimeMillis()), sessionId, ErrorReplayBuffer.Kind.OTHER)
+        }
+    }
+
+    /** Wireframe mode; runs on the capture executor. */
+    private fun processWireframe(
+        snapshot: WireframeSerializer.Snapshot,
         needsMeta: Boolean,
         widthDp: Int,
         heightDp: Int,
@@ -272,27 +510,184 @@ internal class ReplayRecorderV3(
         screenName: String,
         sessionId: String,
     ) {
-        val dataUri = screenshotCapturer.toMaskedDataUri(bitmap, maskRects) ?: return
-        val frameHash = dataUri.hashCode()
-        if (!needsMeta && frameHash == lastFrameHash) {
-            return // identical frame, nothing to ship
+        val diff = wireframeDiff ?: return
+        val timestamp = System.currentTimeMillis()
+        val bytes: Long
+        if (needsMeta || fullFrameDue()) {
+            emit(RRWebEvents.meta(href, widthDp, heightDp, timestamp), sessionId, ErrorReplayBuffer.Kind.KEYFRAME)
+            emit(RRWebEvents.wireframeSnapshot(snapshot.root, timestamp), sessionId, ErrorReplayBuffer.Kind.FRAME)
+            diff.reset(snapshot.root)
+            sentMeta = true
+            lastMetaWidthDp = widthDp
+            lastMetaHeightDp = heightDp
+            onFullFrameShipped()
+            bytes = WireframeDiff.approximateBytes(snapshot.root)
+        } else {
+            val mutation = diff.diff(snapshot.root)
+            if (mutation == null) {
+                unchangedFrames++
+                return
+            }
+            emit(RRWebEvents.wireframeMutation(mutation, timestamp), sessionId, ErrorReplayBuffer.Kind.FRAME)
+            bytes = mutation.approximateBytes
+        }
+        onFrameShipped(bytes, screenName, sessionId)
+    }
+
+    /**
+     * Wireframe fallback: gives each region the view tree can't describe its
+     * own pixels, cropped from the masked screenshot.
+     */
+    private fun fillFallbackRegions(
+        snapshot: WireframeSerializer.Snapshot,
+        bitmap: Bitmap,
+        maskRects: List<Rect>,
+        sourceWidth: Int,
+        sourceHeight: Int,
+    ) {
+        if (!screenshotCapturer.mask(bitmap, maskRects, sourceWidth, sourceHeight)) {
+            return
+        }
+        val scaleX = bitmap.width.toFloat() / sourceWidth
+        val scaleY = bitmap.height.toFloat() / sourceHeight
+        for (region in snapshot.fallbackRegions) {
+            val left = (region.rect.left * scaleX).toInt().coerceIn(0, bitmap.width)
+            val top = (region.rect.top * scaleY).toInt().coerceIn(0, bitmap.height)
+            val right = (region.rect.right * scaleX).toInt().coerceIn(0, bitmap.width)
+            val bottom = (region.rect.bottom * scaleY).toInt().coerceIn(0, bitmap.height)
+            if (right <= left || bottom <= top) {
+                continue
+            }
+            val crop = Bitmap.createBitmap(bitmap, left, top, right - left, bottom - top)
+            try {
+                region.node.src = screenshotCapturer.encode(crop, governorLevel(), bitrateController)?.toDataUri()
+            } finally {
+                if (crop !== bitmap) {
+                    crop.recycle()
+                }
+            }
         }
+    }
+
+    /**
+     * Replaces the whole screen image (a FullSnapshot when an epoch starts).
+     * Returns the bytes shipped, or -1 when the encode failed.
+     */
+    private fun shipFullFrame(
+        bitmap: Bitmap,
+        needsMeta: Boolean,
+        widthDp: Int,
+        heightDp: Int,
+        href: String,
+        sessionId: String,
+    ): Long {
+        val frame = screenshotCapturer.encode(bitmap, governorLevel(), bitrateController) ?: return -1
+        // binary mode references the image by content hash; otherwise it travels inline
+        val blob = if (recordingOptions.isBinaryFrames) FrameBlob.of(frame.bytes, frame.mimeType) else null
+        val src = blob?.src ?: frame.toDataUri()
 
         val timestamp = System.currentTimeMillis()
+        val tiler = frameTiler
         if (needsMeta) {
-            exporter.enqueue(RRWebEvents.meta(href, widthDp, heightDp, timestamp), sessionId)
-            exporter.enqueue(RRWebEvents.fullSnapshot(dataUri, widthDp, heightDp, timestamp), sessionId)
+            emit(RRWebEvents.meta(href, widthDp, heightDp, timestamp), sessionId, ErrorReplayBuffer.Kind.KEYFRAME)
+            emit(
+                withBlob(RRWebEvents.fullSnapshot(src, widthDp, heightDp, timestamp, tiler?.tiles.orEmpty()), blob),
+                sessionId, ErrorReplayBuffer.Kind.FRAME,
+            )
             sentMeta = true
             lastMetaWidthDp = widthDp
             lastMetaHeightDp = heightDp
         } else {
-            exporter.enqueue(RRWebEvents.frameMutation(dataUri, timestamp), sessionId)
+            val hidden = tiler?.shownTiles().orEmpty()
+            emit(
+                withBlob(RRWebEvents.frameMutation(src, timestamp, hidden), blob),
+                sessionId, ErrorReplayBuffer.Kind.FRAME,
+            )
         }
-        lastFrameHash = frameHash
+        tiler?.commitAll()
+        onFullFrameShipped()
+        return blob?.bytes?.size?.toLong() ?: src.length.toLong()
+    }
 
-        if (screenName != lastScreenName) {
-            lastScreenName = screenName
-            exporter.enqueue(RRWebEvents.screenCustom(screenName, timestamp), sessionId)
+    /**
+     * Tiled mode: ships only the tiles that changed since they were last
+     * shipped and returns the bytes shipped. Returns null when the frame
+     * should go out whole instead: the resolution changed, too much of the
+     * screen changed for tiles to pay off, or the periodic full frame is due
+     * or the exporter lost an event, which may have been a tile update.
+     */
+    private fun shipTiles(tiler: FrameTiler, bitmap: Bitmap, sessionId: String): Long? {
+        if (fullFrameDue()) {
+            return null
+        }
+        val changed = tiler.changedTiles() ?: return null
+        if (changed.size > tiler.tiles.size * TILED_MAX_CHANGED_FRACTION) {
+            return null
+        }
+        val updates = ArrayList<Pair<FrameTiler.Tile, String>>(changed.size)
+        var bytes = 0L
+        for (index in changed) {
+            val tile = tiler.tiles[index]
+            val frame = screenshotCapturer.encode(tiler.extract(bitmap, tile), governorLevel(), bitrateController)
+                ?: continue // left uncommitted, so it's retried with the next frame
+            val src = frame.toDataUri()
+            updates.add(tile to src)
+            bytes += src.length
+        }
+        if (updates.isNotEmpty()) {
+            emit(RRWebEvents.tileMutation(updates, System.currentTimeMillis()), sessionId, ErrorReplayBuffer.Kind.FRAME)
+            for ((tile, _) in updates) {
+                tiler.commit(tile.index)
+            }
+            tiledFrames++
+        }
+        return bytes
+    }
+
+    /**
+     * Diff-based frames (tiles, wireframe mutations) build on what was shipped
+     * before: replace the frame whole once in a while, and as soon as the
+     * exporter lost an event, so a lost step doesn't stay wrong for the rest
+     * of the session. Capture executor only.
+     */
+    private fun fullFrameDue(): Boolean =
+        SystemClock.uptimeMillis() - lastFullFrameMs >= FULL_FRAME_INTERVAL_MS ||
+            exporter.lostEvents() != lostEventsAtFullFrame
+
+    private fun onFullFrameShipped() {
+        lastFullFrameMs = SystemClock.uptimeMillis()
+        lostEventsAtFullFrame = exporter.lostEvents()
+    }
+
+    // ---------------------------------------------------------------------
+    // Governor
+    // ---------------------------------------------------------------------
+
+    private fun onGovernorLevelChanged(
+        from: RecordingGovernor.Level,
+        to: RecordingGovernor.Level,
+        conditions: RecordingGovernor.Conditions,
+    ) {
+        if (!running.get()) {
+            return
+        }
+        // before the first frame there is no stream yet; the level still applies
+        lastSessionId?.let { sessionId ->
+            val payload = linkedMapOf<String, Any>(
+                "thermalStatus" to conditions.thermalStatus,
+                "batteryPercent" to conditions.batteryPercent,
+                "charging" to conditions.charging,
+                "powerSave" to conditions.powerSave,
+            )
+            emit(
+                RRWebEvents.governorCustom(from.name, to.name, payload, System.currentTimeMillis()),
+                sessionId,
+                ErrorReplayBuffer.Kind.OTHER,
+            )
+        }
+        if (from.isPaused) {
+            // a static screen won't redraw on its own after the pause
+            mainHandler.post { lifecycleManager.currentActivity?.let { captureFrame(it) } }
         }
     }
 
@@ -301,6 +696,9 @@ internal class ReplayRecorderV3(
     // ---------------------------------------------------------------------
 
     private fun onTouchEvent(interactionType: Int, xPx: Float, yPx: Float, timestampMs: Long) {
+        if (interactionType == RRWebEvents.MOUSE_INTERACTION_TOUCH_START) {
+            interactionTracker?.signal(AdaptiveCaptureScheduler.Signal.TOUCH)
+        }
         if (!running.get() || !sentMeta) {
             return // touches before the first FullSnapshot are unplayable
         }
@@ -313,14 +711,59 @@ internal class ReplayRecorderV3(
             (yPx / density).toInt(),
             timestampMs,
         )
-        exporter.enqueue(event, sessionId)
+        emit(event, sessionId, ErrorReplayBuffer.Kind.OTHER)
+    }
+
+    // ---------------------------------------------------------------------
+    // Error-triggered buffering
+    // ---------------------------------------------------------------------
+
+    private fun withBlob(event: RREvent, blob: FrameBlob?): RREvent =
+        if (blob != null) BlobEvent(event, blob) else event
+
+    private fun emit(event: RREvent, sessionId: String, kind: ErrorReplayBuffer.Kind) {
+        val buffer = errorBuffer
+        if (buffer == null) {
+            exporter.enqueue(event, sessionId)
+            return
+        }
+        synchronized(buffer) {
+            if (event.timestamp < liveUntilMs) {
+                exporter.enqueue(event, sessionId)
+            } else {
+                buffer.add(event, sessionId, kind)
+            }
+        }
+    }
+
+    /** Buffered mode: start a new epoch when the buffer is due a checkpoint or ran empty. */
+    private fun needsBufferKeyframe(): Boolean {
+        val buffer = errorBuffer ?: return false
+        val now = System.currentTimeMillis()
+        return now >= liveUntilMs && buffer.needsKeyframe(now)
     }
 
     private fun resetEpoch() {
         sentMeta = false
         lastMetaWidthDp = -1
         lastMetaHeightDp = -1
-        lastFrameHash = 0
         lastScreenName = null
     }
+
+    companion object {
+        const val STAT_UNCHANGED_FRAMES = "frames.unchanged_skipped"
+        const val STAT_TILED_FRAMES = "frames.tiled"
+
+        /** Tiled and wireframe modes: the frame is replaced whole at least this often. */
+        private const val FULL_FRAME_INTERVAL_MS = 30_000L
+
+        /** Frames matching the last shipped one still ship this often, as a heartbeat. */
+        private const val UNCHANGED_MAX_INTERVAL_MS = 30_000L
+
+        /** Tiled mode: past this share of changed tiles, one full frame is cheaper. */
+        private const val TILED_MAX_CHANGED_FRACTION = 0.5
+
+        /** How long a crashing thread waits for the buffered replay to go out. */
+        private const val FATAL_FLUSH_TIMEOUT_MS = 5_000L
+    }
 }
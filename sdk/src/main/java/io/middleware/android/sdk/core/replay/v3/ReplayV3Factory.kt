@@ -6,6 +6,7 @@ import io.middleware.android.sdk.builders.MiddlewareBuilder
 import io.middleware.android.sdk.core.replay.SessionRecorder
 import io.middleware.android.sdk.core.replay.v2.LifecycleManager
 import io.middleware.android.sdk.utils.Constants.BASE_ORIGIN
+import java.io.File
 
 /**
  * Assembles the v3 recorder with its exporter. The resource attributes are
@@ -14,6 +15,8 @@ import io.middleware.android.sdk.utils.Constants.BASE_ORIGIN
  */
 internal object ReplayV3Factory {
 
+    private const val JOURNAL_DIR = "mw-replay-v3-journal"
+
     @JvmStatic
     fun create(
         application: Application,
@@ -23,7 +26,9 @@ internal object ReplayV3Factory {
         val exporter = RRWebExporterV3(
             builder.target,
             builder.rumAccessToken,
-        ) { sessionId -> resourceAttributes(sessionId) }
+            { sessionId -> resourceAttributes(sessionId) },
+            File(application.filesDir, JOURNAL_DIR),
+        )
         return ReplayRecorderV3(application, builder, lifecycleManager, exporter) {
             Middleware.getInstance().rumSessionId ?: ""
         }
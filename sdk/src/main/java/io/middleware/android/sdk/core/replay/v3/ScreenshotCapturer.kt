@@ -14,6 +14,8 @@ import android.util.Log
 import android.view.PixelCopy
 import android.view.View
 import android.view.Window
+import io.middleware.android.sdk.core.replay.BitrateController
+import io.middleware.android.sdk.core.replay.RecordingGovernor
 import io.middleware.android.sdk.utils.Constants.LOG_TAG
 import java.io.ByteArrayOutputStream
 
@@ -22,8 +24,14 @@ import java.io.ByteArrayOutputStream
  *
  * [capture] must be called on the main thread; the resulting bitmap is handed
  * to [onResult] on the PixelCopy handler thread (API >= 26) or synchronously on
- * the main thread (View.draw fallback). [toMaskedDataUri] is CPU-bound and
+ * the main thread (View.draw fallback). [mask] and [encode] are CPU-bound and
  * should run on the capture executor.
+ *
+ * Frames are copied straight at output resolution into one destination bitmap
+ * that is reused from frame to frame, so the window is never held at full
+ * size. The bitmap belongs to the capturer: callers must be done with it
+ * before the next [capture], which the recorder's one-capture-in-flight rule
+ * already guarantees, and must not recycle it.
  */
 internal class ScreenshotCapturer(private val quality: Int) {
 
@@ -34,6 +42,11 @@ internal class ScreenshotCapturer(private val quality: Int) {
         color = Color.BLACK
         style = Paint.Style.FILL
     }
+    private val scaledMask = RectF()
+
+    /** Reused capture target; touched only by the frame in flight. */
+    @Volatile
+    private var destination: Bitmap? = null
 
     @Synchronized
     private fun ensurePixelCopyHandler(): Handler {
@@ -54,45 +67,81 @@ internal class ScreenshotCapturer(private val quality: Int) {
         pixelCopyThread?.quitSafely()
         pixelCopyThread = null
         pixelCopyHandler = null
+        // a frame may still be encoding from it; let the GC have it afterwards
+        destination = null
     }
 
     /**
-     * Grabs the current window content. Calls [onResult] with null when the
+     * Grabs the current window content scaled to the output resolution:
+     * [SHORT_EDGE_PX] short edge, lowered as [level] asks and, when set, as
+     * [bitrate] picked for the budget. Calls [onResult] with null when the
      * capture failed; the caller simply skips the frame.
      */
-    fun capture(window: Window, decorView: View, onResult: (Bitmap?) -> Unit) {
+    fun capture(
+        window: Window,
+        decorView: View,
+        level: RecordingGovernor.Level = RecordingGovernor.Level.NORMAL,
+        bitrate: BitrateController? = null,
+        onResult: (Bitmap?) -> Unit,
+    ) {
         val width = decorView.width
         val height = decorView.height
         if (width <= 0 || height <= 0) {
             onResult(null)
             return
         }
+        val shortEdge = level.shortEdgePx(bitrate?.shortEdgePx(SHORT_EDGE_PX) ?: SHORT_EDGE_PX)
+        val bitmap = try {
+            obtainDestination(outputWidth(width, height, shortEdge), outputHeight(width, height, shortEdge))
+        } catch (e: Throwable) {
+            Log.d(LOG_TAG, "Replay v3 capture bitmap failed: " + e.message)
+            onResult(null)
+            return
+        }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            val bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
             try {
+                // PixelCopy scales the window to fill the destination
                 PixelCopy.request(window, bitmap, { copyResult ->
                     if (copyResult == PixelCopy.SUCCESS) {
                         onResult(bitmap)
                     } else {
                         Log.d(LOG_TAG, "Replay v3 PixelCopy failed: $copyResult")
-                        bitmap.recycle()
                         onResult(null)
                     }
                 }, ensurePixelCopyHandler())
             } catch (e: Throwable) {
                 Log.d(LOG_TAG, "Replay v3 PixelCopy failed: " + e.message)
-                bitmap.recycle()
                 onResult(null)
             }
         } else {
-            onResult(drawViewToBitmap(decorView))
+            onResult(drawViewToBitmap(decorView, bitmap))
         }
     }
 
-    private fun drawViewToBitmap(view: View): Bitmap? {
+    /**
+     * Returns the reused destination at [width] x [height], reconfiguring it
+     * in place when its allocation is big enough (e.g. after a rotation).
+     */
+    private fun obtainDestination(width: Int, height: Int): Bitmap {
+        val current = destination
+        if (current != null && !current.isRecycled) {
+            if (current.width == width && current.height == height) {
+                return current
+            }
+            if (current.isMutable && current.allocationByteCount >= width * height * BYTES_PER_PIXEL) {
+                current.reconfigure(width, height, Bitmap.Config.ARGB_8888)
+                return current
+            }
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888).also { destination = it }
+    }
+
+    private fun drawViewToBitmap(view: View, bitmap: Bitmap): Bitmap? {
         return try {
-            val bitmap = Bitmap.createBitmap(view.width, view.height, Bitmap.Config.ARGB_8888)
-            view.draw(Canvas(bitmap))
+            bitmap.eraseColor(Color.TRANSPARENT) // the reused bitmap still holds the last frame
+            val canvas = Canvas(bitmap)
+            canvas.scale(bitmap.width.toFloat() / view.width, bitmap.height.toFloat() / view.height)
+            view.draw(canvas)
             bitmap
         } catch (e: Throwable) {
             Log.d(LOG_TAG, "Replay v3 View.draw fallback failed: " + e.message)
@@ -100,51 +149,69 @@ internal class ScreenshotCapturer(private val quality: Int) {
         }
     }
 
+    /** An encoded frame image. */
+    class EncodedFrame(val bytes: ByteArray, val mimeType: String) {
+        fun toDataUri(): String =
+            "data:$mimeType;base64," + Base64.encodeToString(bytes, Base64.NO_WRAP)
+    }
+
+    /** [mask] then [encode]; null on failure. */
+    fun toMaskedFrame(
+        bitmap: Bitmap,
+        maskRects: List<Rect>,
+        sourceWidth: Int,
+        sourceHeight: Int,
+        level: RecordingGovernor.Level = RecordingGovernor.Level.NORMAL,
+        bitrate: BitrateController? = null,
+    ): EncodedFrame? =
+        if (mask(bitmap, maskRects, sourceWidth, sourceHeight)) encode(bitmap, level, bitrate) else null
+
     /**
-     * Draws the mask rects (device px), downscales to [SHORT_EDGE_PX] short
-     * edge and compresses. Recycles [bitmap]. Returns null on failure.
+     * Draws the mask rects (device px of a [sourceWidth] x [sourceHeight]
+     * window, scaled to the bitmap) into [bitmap]. Returns false on failure;
+     * the frame must not be shipped then.
      */
-    fun toMaskedDataUri(bitmap: Bitmap, maskRects: List<Rect>): String? {
-        try {
+    fun mask(bitmap: Bitmap, maskRects: List<Rect>, sourceWidth: Int, sourceHeight: Int): Boolean {
+        return try {
+            val scaleX = bitmap.width.toFloat() / sourceWidth
+            val scaleY = bitmap.height.toFloat() / sourceHeight
+            val radius = MASK_CORNER_RADIUS * scaleX
             val canvas = Canvas(bitmap)
             for (rect in maskRects) {
-                canvas.drawRoundRect(RectF(rect), MASK_CORNER_RADIUS, MASK_CORNER_RADIUS, maskPaint)
-            }
-
-            val width = bitmap.width
-            val height = bitmap.height
-            val scale = SHORT_EDGE_PX.toFloat() / minOf(width, height)
-            val scaled = if (scale < 1f) {
-                val scaledBitmap = Bitmap.createScaledBitmap(
-                    bitmap,
-                    (width * scale).toInt().coerceAtLeast(1),
-                    (height * scale).toInt().coerceAtLeast(1),
-                    true
-                )
-                bitmap.recycle()
-                scaledBitmap
-            } else {
-                bitmap
+                scaledMask.set(rect.left * scaleX, rect.top * scaleY, rect.right * scaleX, rect.bottom * scaleY)
+                canvas.drawRoundRect(scaledMask, radius, radius, maskPaint)
             }
+            true
+        } catch (e: Throwable) {
+            Log.d(LOG_TAG, "Replay v3 frame masking failed: " + e.message)
+            false
+        }
+    }
 
+    /**
+     * Compresses an already masked [bitmap] at the configured quality, lowered
+     * as [level] asks and, when set, as [bitrate] picked for the budget.
+     * Returns null on failure.
+     */
+    fun encode(
+        bitmap: Bitmap,
+        level: RecordingGovernor.Level = RecordingGovernor.Level.NORMAL,
+        bitrate: BitrateController? = null,
+    ): EncodedFrame? {
+        try {
             val output = ByteArrayOutputStream()
+            val encodeQuality = level.quality(bitrate?.quality ?: quality)
             val mimeType: String
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-                scaled.compress(Bitmap.CompressFormat.WEBP_LOSSY, quality, output)
+                bitmap.compress(Bitmap.CompressFormat.WEBP_LOSSY, encodeQuality, output)
                 mimeType = "image/webp"
             } else {
-                scaled.compress(Bitmap.CompressFormat.JPEG, quality, output)
+                bitmap.compress(Bitmap.CompressFormat.JPEG, encodeQuality, output)
                 mimeType = "image/jpeg"
             }
-            scaled.recycle()
-
-            val base64 = Base64.encodeToString(output.toByteArray(), Base64.NO_WRAP)
-            return "data:$mimeType;base64,$base64"
+            return EncodedFrame(output.toByteArray(), mimeType)
         } catch (e: Throwable) {
-            Log.d(LOG_TAG, "Replay v3 frame processing failed: " + e.message)
-            if (!bitmap.isRecycled) {
-                bitmap.recycle()
-            }
+            Log.d(LOG_TAG, "Replay v3 frame encoding failed: " + e.message)
             return null
         }
     }
@@ -153,5 +220,17 @@ internal class ScreenshotCapturer(private val quality: Int) {
         /** Target resolution of the shorter screen edge in the replayed frame. */
         private const val SHORT_EDGE_PX = 640
         private const val MASK_CORNER_RADIUS = 10f
+        private const val BYTES_PER_PIXEL = 4
+
+        /** Output width for a [width] x [height] window; never upscales. */
+        fun outputWidth(width: Int, height: Int, shortEdgePx: Int): Int =
+            scaled(width, minOf(width, height), shortEdgePx)
+
+        /** Output height for a [width] x [height] window; never upscales. */
+        fun outputHeight(width: Int, height: Int, shortEdgePx: Int): Int =
+            scaled(height, minOf(width, height), shortEdgePx)
+
+        private fun scaled(edge: Int, shortEdge: Int, shortEdgePx: Int): Int =
+            if (shortEdge <= shortEdgePx) edge else (edge.toLong() * shortEdgePx / shortEdge).toInt().coerceAtLeast(1)
     }
 }
@@ -0,0 +1,86 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import android.graphics.Rect
+
+/**
+ * The Compose masking rules as a single top-down pass over a semantics tree.
+ *
+ * Mask and unmask modifiers apply to a node's whole subtree, so instead of
+ * looking up every node's ancestors the pass carries them down: an unmasked
+ * node ends its branch (unmask has precedence over everything below it), and
+ * below a masked node every node is masked. A node whose bounds lie inside
+ * the last rect added above it adds nothing, since the pixels are already
+ * covered; its children are still visited, as they may draw outside it.
+ *
+ * The tree is read through [Tree] so the pass can be exercised without a
+ * Compose runtime. Main thread only.
+ */
+internal object SemanticsMaskPass {
+
+    const val TEXT = 1
+    const val PASSWORD = 2
+    const val IMAGE = 4
+    const val MASK = 8
+    const val UNMASK = 16
+
+    interface Tree<N> {
+        fun children(node: N): List<N>
+
+        /** The [TEXT], [PASSWORD], [IMAGE], [MASK] and [UNMASK] bits of [node]. */
+        fun flags(node: N): Int
+
+        /** Writes the window-space bounds of [node] into [out]. */
+        fun bounds(node: N, out: Rect)
+    }
+
+    private val bounds = Rect()
+
+    fun <N> collect(
+        root: N,
+        tree: Tree<N>,
+        maskAllTextInputs: Boolean,
+        maskAllImages: Boolean,
+        out: MutableList<Rect>,
+        pool: RectPool,
+    ) {
+        visit(root, tree, maskAllTextInputs, maskAllImages, masked = false, cover = null, out, pool)
+    }
+
+    private fun <N> visit(
+        node: N,
+        tree: Tree<N>,
+        maskAllTextInputs: Boolean,
+        maskAllImages: Boolean,
+        masked: Boolean,
+        cover: Rect?,
+        out: MutableList<Rect>,
+        pool: RectPool,
+    ) {
+        val flags = tree.flags(node)
+        if ((flags and UNMASK) != 0) {
+            return
+        }
+        val subtreeMasked = masked || (flags and MASK) != 0
+        var childCover = cover
+        if (subtreeMasked || shouldMask(flags, maskAllTextInputs, maskAllImages)) {
+            val b = bounds
+            tree.bounds(node, b)
+            if (!b.isEmpty && (cover == null || !cover.contains(b))) {
+                val rect = pool.obtain(b.left, b.top, b.right, b.bottom)
+                out.add(rect)
+                childCover = rect
+            }
+        }
+        val children = tree.children(node)
+        for (i in children.indices) {
+            visit(children[i], tree, maskAllTextInputs, maskAllImages, subtreeMasked, childCover, out, pool)
+        }
+    }
+
+    private fun shouldMask(flags: Int, maskAllTextInputs: Boolean, maskAllImages: Boolean): Boolean {
+        if ((flags and TEXT) != 0 && (maskAllTextInputs || (flags and PASSWORD) != 0)) {
+            return true
+        }
+        return (flags and IMAGE) != 0 && maskAllImages
+    }
+}
@@ -9,18 +9,21 @@ import java.util.concurrent.atomic.AtomicBoolean
  * passed since the last run, otherwise schedules a single trailing run on
  * [handler] for when the window ends. Extra calls inside the window are dropped.
  *
+ * The delay is read on every call, so an adaptive capture rate takes effect on
+ * the next draw.
+ *
  * Adapted from PostHog Android's replay Throttler (MIT licensed).
  */
 internal class Throttler(
     private val handler: Handler,
-    throttleDelayMs: Long,
+    private val throttleDelayMs: () -> Long,
 ) {
     private var lastCall = 0L
-    private val delayNs = TimeUnit.MILLISECONDS.toNanos(throttleDelayMs)
     private val isThrottling = AtomicBoolean(false)
 
     internal fun throttle(runnable: Runnable) {
         val currentTime = System.nanoTime()
+        val delayNs = TimeUnit.MILLISECONDS.toNanos(throttleDelayMs())
 
         val timeSinceLastExecution = currentTime - lastCall
         if (timeSinceLastExecution >= delayNs) {
@@ -0,0 +1,185 @@
+package io.middleware.android.sdk.core.replay.v3
+
+/**
+ * Diffs consecutive wireframes into the add/remove/attribute/text changes of
+ * an rrweb mutation.
+ *
+ * Nodes are matched by id. A node that is new, moved to another parent or
+ * whose siblings were reordered is removed (if it existed) and added again
+ * with its whole subtree, because the rrweb player adds nodes one at a time.
+ * Adds are listed parent first and each parent's children last to first, so
+ * every add's next sibling is already in place. Nodes kept in place only
+ * report what changed: their style or src, or their text.
+ *
+ * Not thread safe; owned by the capture executor.
+ */
+internal class WireframeDiff {
+
+    class Add(val parentId: Int, val nextId: Int?, val node: WireframeNode)
+    class Remove(val parentId: Int, val id: Int)
+    class AttributeChange(val id: Int, val attributes: Map<String, String>)
+    class TextChange(val id: Int, val value: String)
+
+    /** A node's text appearing or disappearing, as an add or remove of its text node. */
+    class TextNodeAdd(val parentId: Int, val id: Int, val text: String)
+
+    class Mutation(
+        val adds: List<Add>,
+        val textNodeAdds: List<TextNodeAdd>,
+        val removes: List<Remove>,
+        val attributes: List<AttributeChange>,
+        val texts: List<TextChange>,
+    ) {
+        /** Rough serialized size, for the capture schedulers; not exact. */
+        val approximateBytes: Long
+            get() {
+                var bytes = 0L
+                for (add in adds) {
+                    bytes += NODE_OVERHEAD + add.node.style.length + (add.node.text?.length ?: 0) + (add.node.src?.length ?: 0)
+                }
+                for (add in textNodeAdds) {
+                    bytes += NODE_OVERHEAD + add.text.length
+                }
+                bytes += removes.size * CHANGE_OVERHEAD
+                for (change in attributes) {
+                    bytes += CHANGE_OVERHEAD + change.attributes.values.sumOf { it.length }
+                }
+                for (change in texts) {
+                    bytes += CHANGE_OVERHEAD + change.value.length
+                }
+                return bytes
+            }
+    }
+
+    private class Placed(val node: WireframeNode, val parentId: Int)
+
+    private var previous = HashMap<Int, Placed>()
+
+    /** Makes [root] the reference, e.g. after it went out in a FullSnapshot. */
+    fun reset(root: WireframeNode) {
+        previous = index(root)
+    }
+
+    /** Changes from the reference to [root], which becomes the reference; null when there are none. */
+    fun diff(root: WireframeNode): Mutation? {
+        val current = index(root)
+        val reordered = HashSet<Int>()
+        for (placed in current.values) {
+            val before = previous[placed.node.id] ?: continue
+            if (before.parentId == placed.parentId && childOrderChanged(before.node, placed.node, current)) {
+                placed.node.children.mapTo(reordered) { it.id }
+            }
+        }
+
+        val adds = ArrayList<Add>()
+        val textNodeAdds = ArrayList<TextNodeAdd>()
+        val removes = ArrayList<Remove>()
+        val attributes = ArrayList<AttributeChange>()
+        val texts = ArrayList<TextChange>()
+        val readded = HashSet<Int>()
+
+        fun visit(node: WireframeNode, parentId: Int, nextId: Int?, parentAdded: Boolean) {
+            val before = previous[node.id]
+            val added = parentAdded || before == null || before.parentId != parentId || node.id in reordered
+            if (added) {
+                adds.add(Add(parentId, nextId, node))
+                if (before != null) {
+                    readded.add(node.id)
+                }
+            } else {
+                diffNode(before!!.node, node, attributes, texts, textNodeAdds, removes)
+            }
+            val children = node.children
+            for (i in children.indices.reversed()) {
+                visit(children[i], node.id, children.getOrNull(i + 1)?.id, added)
+            }
+        }
+        visit(root, RRWebEvents.NODE_ID_BODY, null, parentAdded = false)
+
+        // a node that went away or is added again leaves its old parent, unless
+        // that parent is going too and takes it along
+        for ((id, placed) in previous) {
+            if (current.containsKey(id) && id !in readded) {
+                continue
+            }
+            val parent = placed.parentId
+            if (parent == RRWebEvents.NODE_ID_BODY || (current.containsKey(parent) && parent !in readded)) {
+                removes.add(Remove(parent, id))
+            }
+        }
+
+        previous = current
+        if (adds.isEmpty() && textNodeAdds.isEmpty() && removes.isEmpty() && attributes.isEmpty() && texts.isEmpty()) {
+            return null
+        }
+        return Mutation(adds, textNodeAdds, removes, attributes, texts)
+    }
+
+    private fun diffNode(
+        before: WireframeNode,
+        after: WireframeNode,
+        attributes: MutableList<AttributeChange>,
+        texts: MutableList<TextChange>,
+        textNodeAdds: MutableList<TextNodeAdd>,
+        removes: MutableList<Remove>,
+    ) {
+        var changed: LinkedHashMap<String, String>? = null
+        if (before.style != after.style) {
+            changed = linkedMapOf("style" to after.style)
+        }
+        val src = after.src
+        if (src != null && src != before.src) {
+            (changed ?: LinkedHashMap<String, String>().also { changed = it })["src"] = src
+        }
+        changed?.let { attributes.add(AttributeChange(after.id, it)) }
+
+        val text = after.text
+        when {
+            text == before.text -> Unit
+            text == null -> removes.add(Remove(after.id, after.textId))
+            before.text == null -> textNodeAdds.add(TextNodeAdd(after.id, after.textId, text))
+            else -> texts.add(TextChange(after.textId, text))
+        }
+    }
+
+    /** Whether the children that [before] and [after] share appear in another order. */
+    private fun childOrderChanged(before: WireframeNode, after: WireframeNode, current: Map<Int, Placed>): Boolean {
+        val parentId = after.id
+        val kept = before.children.filter { current[it.id]?.parentId == parentId }
+        var k = 0
+        for (child in after.children) {
+            if (k < kept.size && kept[k].id == child.id) {
+                k++
+            } else if (previous[child.id]?.parentId == parentId) {
+                return true // was a child before, but not where it is now
+            }
+        }
+        return k != kept.size
+    }
+
+    private fun index(root: WireframeNode): HashMap<Int, Placed> {
+        val out = HashMap<Int, Placed>()
+        fun walk(node: WireframeNode, parentId: Int) {
+            out[node.id] = Placed(node, parentId)
+            for (child in node.children) {
+                walk(child, node.id)
+            }
+        }
+        walk(root, RRWebEvents.NODE_ID_BODY)
+        return out
+    }
+
+    companion object {
+        private const val NODE_OVERHEAD = 80
+        private const val CHANGE_OVERHEAD = 30
+
+        /** Rough serialized size of the tree under [root]. */
+        fun approximateBytes(root: WireframeNode): Long {
+            var bytes = NODE_OVERHEAD + root.style.length.toLong() + (root.text?.length ?: 0) + (root.src?.length ?: 0)
+            for (child in root.children) {
+                bytes += approximateBytes(child)
+            }
+            return bytes
+        }
+    }
+}
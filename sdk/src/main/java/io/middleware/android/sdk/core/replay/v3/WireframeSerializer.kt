@@ -0,0 +1,239 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import android.graphics.Color
+import android.graphics.Rect
+import android.graphics.drawable.ColorDrawable
+import android.graphics.drawable.Drawable
+import android.graphics.drawable.GradientDrawable
+import android.os.Build
+import android.view.Gravity
+import android.view.SurfaceView
+import android.view.TextureView
+import android.view.View
+import android.view.ViewGroup
+import android.webkit.WebView
+import android.widget.ImageView
+import android.widget.TextView
+import io.middleware.android.sdk.core.replay.v2.SanitizableViewGroup
+import java.lang.ref.WeakReference
+import java.util.IdentityHashMap
+import java.util.WeakHashMap
+import kotlin.math.roundToInt
+
+/**
+ * One view of a wireframe: an absolutely positioned element (dp, relative to
+ * its parent) with its CSS, the text it shows (already masked) and its
+ * children. [src] is only set on fallback regions that got a screenshot.
+ */
+internal class WireframeNode(
+    val id: Int,
+    val tagName: String,
+    val style: String,
+    val text: String?,
+    val children: List<WireframeNode>,
+) {
+    /** Screenshot of a fallback region; set on the capture executor before diffing. */
+    var src: String? = null
+
+    /** Id of the text node holding [text]. */
+    val textId: Int
+        get() = id + 1
+}
+
+/**
+ * Serializes a window's view tree into [WireframeNode]s on the main thread:
+ * positions and sizes, background colours and corner radii, text colour,
+ * size, weight and alignment. Nothing is rendered, so no PixelCopy is needed.
+ *
+ * Masking follows [MaskRectCollector]: masked text keeps its length and
+ * whitespace but every other character becomes `*`; `mw-no-capture`,
+ * [SanitizableViewGroup] and sanitized views become black boxes without
+ * children; `mw-no-mask` unmasks its subtree. Images are grey placeholders.
+ *
+ * WebViews, SurfaceViews, TextureViews and Compose roots draw content the
+ * view tree doesn't describe. They become `<img>` placeholders and are
+ * reported as fallback regions, which the recorder can fill from a masked
+ * screenshot.
+ *
+ * Each view keeps its node id for as long as it lives, so [WireframeDiff]
+ * can match frames; the root is always [RRWebEvents.NODE_ID_SCREEN].
+ */
+internal class WireframeSerializer(
+    private val maskAllTextInputs: Boolean,
+) {
+    /** A node whose pixels only a screenshot can show, in window px. */
+    class FallbackRegion(val node: WireframeNode, val rect: Rect)
+
+    class Snapshot(val root: WireframeNode, val fallbackRegions: List<FallbackRegion>)
+
+    private val ids = WeakHashMap<View, Int>()
+    private var nextId = FIRST_NODE_ID
+    private val location = IntArray(2)
+    private val style = StringBuilder(256)
+
+    fun serialize(root: View, density: Float, sanitizedElements: List<WeakReference<View>>): Snapshot {
+        val sanitized = IdentityHashMap<View, Boolean>()
+        for (ref in sanitizedElements) {
+            ref.get()?.let { sanitized[it] = true }
+        }
+        val regions = ArrayList<FallbackRegion>()
+        val node = serializeView(root, null, density, sanitized, regions, unmasked = false)
+            ?: WireframeNode(RRWebEvents.NODE_ID_SCREEN, "div", "", null, emptyList())
+        return Snapshot(node, regions)
+    }
+
+    private fun serializeView(
+        view: View,
+        parent: ViewGroup?,
+        density: Float,
+        sanitized: IdentityHashMap<View, Boolean>,
+        regions: MutableList<FallbackRegion>,
+        unmasked: Boolean,
+    ): WireframeNode? {
+        if (view.visibility != View.VISIBLE || view.width <= 0 || view.height <= 0) {
+            return null
+        }
+        val id = if (parent == null) RRWebEvents.NODE_ID_SCREEN else idOf(view)
+        val subtreeUnmasked = unmasked || view.isUnmasked()
+
+        style.setLength(0)
+        appendBox(view, parent, density)
+
+        if (!subtreeUnmasked && (view is SanitizableViewGroup || view.isNoCapture() || sanitized.containsKey(view))) {
+            style.append("background:#000;")
+            return WireframeNode(id, "div", style.toString(), null, emptyList())
+        }
+        appendBackground(view.background, density)
+
+        if (isFallbackRegion(view)) {
+            style.append("background-color:").append(PLACEHOLDER_COLOR).append(';')
+            val node = WireframeNode(id, "img", style.toString(), null, emptyList())
+            view.getLocationInWindow(location)
+            regions.add(FallbackRegion(node, Rect(location[0], location[1], location[0] + view.width, location[1] + view.height)))
+            return node
+        }
+
+        var text: String? = null
+        when (view) {
+            is TextView -> {
+                text = textOf(view, subtreeUnmasked)
+                appendTextStyle(view, density)
+            }
+            is ImageView -> if (view.drawable != null && view.drawable !is ColorDrawable) {
+                style.append("background-color:").append(PLACEHOLDER_COLOR).append(';')
+            }
+        }
+        val ownStyle = style.toString()
+
+        val children = if (view is ViewGroup && view.childCount > 0) {
+            val list = ArrayList<WireframeNode>(view.childCount)
+            for (i in 0 until view.childCount) {
+                val child = view.getChildAt(i) ?: continue
+                serializeView(child, view, density, sanitized, regions, subtreeUnmasked)?.let { list.add(it) }
+            }
+            list
+        } else {
+            emptyList()
+        }
+        return WireframeNode(id, "div", ownStyle, text, children)
+    }
+
+    private fun idOf(view: View): Int =
+        ids.getOrPut(view) {
+            val id = nextId
+            nextId += 2 // the odd id is the node's text
+            id
+        }
+
+    /** Position relative to the parent's scrolled content, size, clipping and opacity. */
+    private fun appendBox(view: View, parent: ViewGroup?, density: Float) {
+        val left = if (parent == null) 0f else view.left - parent.scrollX + view.translationX
+        val top = if (parent == null) 0f else view.top - parent.scrollY + view.translationY
+        style.append("position:absolute;left:").append(dp(left, density))
+            .append("px;top:").append(dp(top, density))
+            .append("px;width:").append(dp(view.width.toFloat(), density))
+            .append("px;height:").append(dp(view.height.toFloat(), density))
+            .append("px;")
+        if (view is ViewGroup) {
+            style.append("overflow:hidden;")
+        }
+        if (view.alpha < 1f) {
+            style.append("opacity:").append((view.alpha * 100).roundToInt() / 100f).append(';')
+        }
+    }
+
+    private fun appendBackground(background: Drawable?, density: Float) {
+        when (background) {
+            is ColorDrawable -> appendColor("background-color", background.color)
+            is GradientDrawable -> {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                    background.color?.defaultColor?.let { appendColor("background-color", it) }
+                }
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && background.cornerRadius > 0f) {
+                    style.append("border-radius:").append(dp(background.cornerRadius, density)).append("px;")
+                }
+            }
+        }
+    }
+
+    private fun appendTextStyle(view: TextView, density: Float) {
+        appendColor("color", view.currentTextColor)
+        style.append("font-size:").append(dp(view.textSize, density)).append("px;")
+        if (view.typeface?.isBold == true) {
+            style.append("font-weight:bold;")
+        }
+        val horizontal = view.gravity and Gravity.HORIZONTAL_GRAVITY_MASK
+        if (horizontal == Gravity.CENTER_HORIZONTAL) {
+            style.append("text-align:center;")
+        } else if (horizontal == Gravity.RIGHT || horizontal == Gravity.END) {
+            style.append("text-align:right;")
+        }
+        style.append("padding:").append(dp(view.compoundPaddingTop.toFloat(), density))
+            .append("px ").append(dp(view.compoundPaddingRight.toFloat(), density))
+            .append("px ").append(dp(view.compoundPaddingBottom.toFloat(), density))
+            .append("px ").append(dp(view.compoundPaddingLeft.toFloat(), density))
+            .append("px;box-sizing:border-box;white-space:pre-wrap;overflow:hidden;")
+    }
+
+    private fun appendColor(property: String, argb: Int) {
+        val alpha = Color.alpha(argb)
+        if (alpha == 0) {
+            return
+        }
+        style.append(property).append(':')
+        if (alpha == 0xff) {
+            style.append('#').append(String.format("%06x", argb and 0xffffff))
+        } else {
+            style.append("rgba(").append(Color.red(argb)).append(',').append(Color.green(argb)).append(',')
+                .append(Color.blue(argb)).append(',').append((alpha / 255f * 100).roundToInt() / 100f).append(')')
+        }
+        style.append(';')
+    }
+
+    private fun textOf(view: TextView, unmasked: Boolean): String? {
+        val content = view.text?.takeIf { it.isNotEmpty() } ?: view.hint?.takeIf { it.isNotEmpty() } ?: return null
+        return if (unmasked || !(maskAllTextInputs || view.isPasswordInput())) content.toString() else mask(content)
+    }
+
+    private fun isFallbackRegion(view: View): Boolean =
+        view is WebView || view is SurfaceView || view is TextureView || ComposeMaskCollector.isComposeView(view)
+
+    private fun dp(px: Float, density: Float): Int = (px / density).roundToInt()
+
+    companion object {
+        /** First id handed to a view; everything below is the fixed document. */
+        const val FIRST_NODE_ID = 100
+
+        private const val PLACEHOLDER_COLOR = "#d9d9d9"
+
+        /** Keeps length and line breaks, hides everything else. */
+        fun mask(text: CharSequence): String {
+            val out = CharArray(text.length)
+            for (i in text.indices) {
+                val c = text[i]
+                out[i] = if (Character.isWhitespace(c)) c else '*'
+            }
+            return String(out)
+        }
+    }
+}
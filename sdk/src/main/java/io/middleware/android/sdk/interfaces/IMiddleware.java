@@ -1,6 +1,8 @@
 package io.middleware.android.sdk.interfaces;
 
+import android.app.Activity;
 import android.location.Location;
+import android.view.View;
 import android.webkit.WebView;
 
 import androidx.annotation.Nullable;
@@ -26,6 +28,12 @@ public interface IMiddleware {
 
     void addException(Throwable throwable, Attributes attributes);
 
+    void reportFullyDrawn(Activity activity);
+
+    void reportFullyDrawn(String screenName);
+
+    void startScreenLoad(String screenName, View view);
+
     <T> void setGlobalAttribute(AttributeKey<T> key, T value);
 
     OpenTelemetry getOpenTelemetry();
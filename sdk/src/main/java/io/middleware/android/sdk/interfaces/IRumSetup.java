@@ -33,6 +33,16 @@ public interface IRumSetup {
 
     void setUIInstrumentation();
 
+    void setScreenLoadInstrumentation();
+
+    void setScreenSessionSummary();
+
+    void setErrorReplayTrigger();
+
+    void setMetrics();
+
+    void setProcessMetrics();
+
     void setResource(Resource resource);
     Resource getResource();
     String getResourceAttributes();
@@ -31,6 +31,7 @@ class NoOpMiddlewareTest {
         });
         instance.setGlobalAttribute(AttributeKey.stringKey("foo"), "bar");
         instance.flushSpans();
+        instance.reportFullyDrawn("screen");
 
         instance.integrateWithBrowserRum(mock(WebView.class));
 
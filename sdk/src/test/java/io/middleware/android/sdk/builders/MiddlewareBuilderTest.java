@@ -108,4 +108,10 @@ class MiddlewareBuilderTest {
         assertFalse(middlewareBuilder.isRecordingV3Enabled());
         assertFalse(middlewareBuilder.isRecordingEnabled());
     }
+
+    @Test
+    void screenSessionSummaryIsOptIn() {
+        assertFalse(Middleware.builder().isScreenSessionSummaryEnabled());
+        assertTrue(Middleware.builder().enableScreenSessionSummary().isScreenSessionSummaryEnabled());
+    }
 }
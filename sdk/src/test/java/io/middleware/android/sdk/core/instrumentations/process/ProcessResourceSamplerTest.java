@@ -0,0 +1,87 @@
+package io.middleware.android.sdk.core.instrumentations.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ProcessResourceSamplerTest {
+
+    private static final int WARMUP_SAMPLES = 10;
+    private static final int BENCH_SAMPLES = 200;
+
+    @Test
+    public void reportsSamplerOverhead() {
+        // every sample reads the ticker twice, 25 ms apart
+        final long stepNanos = TimeUnit.MILLISECONDS.toNanos(25);
+        final long[] now = {0};
+        ProcessResourceSampler sampler = new ProcessResourceSampler(() -> {
+            final long t = now[0];
+            now[0] += stepNanos;
+            return t;
+        });
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(stepNanos, sampler.sample().costNanos);
+        }
+        // a 25 ms sample fits the 0.1% budget at one every 25 s, exactly on budget
+        long intervalMs = ProcessMetricsInstrumentation.nextIntervalMs(true, stepNanos);
+        assertEquals(TimeUnit.SECONDS.toMillis(25), intervalMs);
+        assertEquals(ProcessMetricsInstrumentation.OVERHEAD_BUDGET,
+                TimeUnit.NANOSECONDS.toMillis(stepNanos) / (double) intervalMs, 1e-12);
+    }
+
+    @Test
+    public void benchmarkSamplerCost() {
+        ProcessResourceSampler sampler = new ProcessResourceSampler();
+        for (int i = 0; i < WARMUP_SAMPLES; i++) {
+            sampler.sample();
+        }
+        long totalCostNanos = 0;
+        long maxCostNanos = 0;
+        for (int i = 0; i < BENCH_SAMPLES; i++) {
+            long costNanos = sampler.sample().costNanos;
+            totalCostNanos += costNanos;
+            maxCostNanos = Math.max(maxCostNanos, costNanos);
+        }
+        double avgCostMs = totalCostNanos / (double) BENCH_SAMPLES / 1_000_000.0;
+        double overhead = avgCostMs / ProcessMetricsInstrumentation.FOREGROUND_INTERVAL_MS;
+        // wall-clock cost depends on the host, so it is only reported
+        System.out.println("MW_BENCH process_sampler avg_ms=" + avgCostMs
+                + " max_ms=" + maxCostNanos / 1_000_000.0
+                + " foreground_overhead=" + overhead
+                + " budget=" + ProcessMetricsInstrumentation.OVERHEAD_BUDGET);
+    }
+
+    @Test
+    public void secondSampleReportsDeltas() {
+        ProcessResourceSampler sampler = new ProcessResourceSampler();
+        ProcessResourceSampler.Sample first = sampler.sample();
+        ProcessResourceSampler.Sample second = sampler.sample();
+        assertEquals(-1, first.cpuUtilization, 0.0);
+        assertTrue(second.heapUsedBytes > 0);
+        assertTrue(second.heapMaxBytes >= second.heapUsedBytes);
+        // PSS is only refreshed every few samples; in between the last value is carried over
+        assertEquals(first.pssKb, second.pssKb);
+    }
+
+    @Test
+    public void intervalBacksOffInBackgroundAndWhenOverBudget() {
+        assertEquals(ProcessMetricsInstrumentation.FOREGROUND_INTERVAL_MS,
+                ProcessMetricsInstrumentation.nextIntervalMs(true, TimeUnit.MILLISECONDS.toNanos(1)));
+        assertEquals(ProcessMetricsInstrumentation.BACKGROUND_INTERVAL_MS,
+                ProcessMetricsInstrumentation.nextIntervalMs(false, TimeUnit.MILLISECONDS.toNanos(1)));
+        // a 20 ms sample only fits the 0.1% budget every 20 s
+        assertEquals(TimeUnit.SECONDS.toMillis(20),
+                ProcessMetricsInstrumentation.nextIntervalMs(true, TimeUnit.MILLISECONDS.toNanos(20)));
+        assertEquals(ProcessMetricsInstrumentation.MAX_INTERVAL_MS,
+                ProcessMetricsInstrumentation.nextIntervalMs(true, TimeUnit.SECONDS.toNanos(10)));
+    }
+}
@@ -0,0 +1,123 @@
+package io.middleware.android.sdk.core.instrumentations.screen
+
+import android.app.Activity
+import android.app.Application
+import android.os.Looper
+import androidx.test.core.app.ApplicationProvider
+import io.opentelemetry.api.common.AttributeKey
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter
+import io.opentelemetry.sdk.trace.SdkTracerProvider
+import io.opentelemetry.sdk.trace.data.SpanData
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.android.controller.ActivityController
+import org.robolectric.annotation.Config
+import java.time.Duration
+
+/** Runs on SDK 28, so loads start in `onActivityCreated` (no pre-created callback). */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class ScreenLoadInstrumentationTest {
+
+    private val exporter = InMemorySpanExporter.create()
+    private val instrumentation = ScreenLoadInstrumentation()
+
+    @Before
+    fun setup() {
+        val application: Application = ApplicationProvider.getApplicationContext()
+        val tracerProvider = SdkTracerProvider.builder()
+            .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+            .build()
+        instrumentation.install(application, tracerProvider.get("test"))
+    }
+
+    /** Creates and shows an activity, then lets its first frame draw. */
+    private fun launch(): ActivityController<Activity> {
+        val controller = Robolectric.buildActivity(Activity::class.java).setup()
+        idleFor(100)
+        return controller
+    }
+
+    private fun idleFor(millis: Long) {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(millis))
+    }
+
+    private fun screenLoads(): List<SpanData> = exporter.finishedSpanItems.filter { it.name == "screen_load" }
+
+    private fun SpanData.long(key: String): Long? = attributes.get(AttributeKey.longKey(key))
+
+    private fun SpanData.boolean(key: String): Boolean? = attributes.get(AttributeKey.booleanKey(key))
+
+    @Test
+    fun firstDrawRecordsTtidAndWaitsForFullyDrawn() {
+        launch()
+        // drawn, but the screen may still report fully drawn
+        assertTrue(screenLoads().isEmpty())
+
+        idleFor(30_000)
+
+        val span = screenLoads().single()
+        assertEquals("Activity", span.attributes.get(AttributeKey.stringKey("screen.name")))
+        assertEquals("activity", span.attributes.get(AttributeKey.stringKey("screen.type")))
+        assertTrue(span.long("screen.ttid_ms")!! >= 0)
+        assertEquals(false, span.boolean("screen.fully_drawn"))
+        assertNull(span.long("screen.ttfd_ms"))
+    }
+
+    @Test
+    fun reportFullyDrawnRecordsTtfd() {
+        val controller = launch()
+        idleFor(500)
+
+        instrumentation.reportFullyDrawn(controller.get())
+        shadowOf(Looper.getMainLooper()).idle()
+
+        val span = screenLoads().single()
+        assertEquals(true, span.boolean("screen.fully_drawn"))
+        val ttid = span.long("screen.ttid_ms")!!
+        val ttfd = span.long("screen.ttfd_ms")!!
+        assertTrue("ttfd $ttfd < ttid $ttid", ttfd >= ttid)
+        assertEquals(ttfd, (span.endEpochNanos - span.startEpochNanos) / 1_000_000)
+    }
+
+    @Test
+    fun screenStoppedWithoutFullyDrawnEndsAtTtid() {
+        val controller = launch()
+
+        controller.pause().stop()
+
+        val span = screenLoads().single()
+        assertEquals(false, span.boolean("screen.fully_drawn"))
+        assertNull(span.long("screen.ttfd_ms"))
+        assertEquals(span.long("screen.ttid_ms"), (span.endEpochNanos - span.startEpochNanos) / 1_000_000)
+
+        // nothing is left to report when the timeout would have fired
+        idleFor(30_000)
+        assertEquals(1, screenLoads().size)
+    }
+
+    @Test
+    fun instancesOfTheSameActivityAreTrackedSeparately() {
+        val first = launch()
+        val second = launch()
+        assertTrue(screenLoads().isEmpty())
+
+        instrumentation.reportFullyDrawn(first.get())
+        shadowOf(Looper.getMainLooper()).idle()
+
+        assertEquals(true, screenLoads().single().boolean("screen.fully_drawn"))
+
+        instrumentation.reportFullyDrawn(second.get())
+        shadowOf(Looper.getMainLooper()).idle()
+
+        assertEquals(listOf(true, true), screenLoads().map { it.boolean("screen.fully_drawn") })
+    }
+}
@@ -0,0 +1,154 @@
+package io.middleware.android.sdk.core.instrumentations.screen
+
+import android.app.Activity
+import android.app.Application
+import androidx.test.core.app.ApplicationProvider
+import io.middleware.android.sdk.utils.Constants.COMPONENT_CRASH
+import io.middleware.android.sdk.utils.Constants.COMPONENT_ERROR
+import io.middleware.android.sdk.utils.Constants.COMPONENT_KEY
+import io.middleware.android.sdk.utils.Constants.ERROR_TYPE_KEY
+import io.middleware.android.sdk.utils.Constants.EVENT_TYPE
+import io.opentelemetry.api.common.AttributeKey
+import io.opentelemetry.api.trace.SpanBuilder
+import io.opentelemetry.api.trace.SpanKind
+import io.opentelemetry.api.trace.Tracer
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter
+import io.opentelemetry.sdk.trace.SdkTracerProvider
+import io.opentelemetry.sdk.trace.data.SpanData
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class ScreenSessionAggregatorTest {
+
+    private val exporter = InMemorySpanExporter.create()
+    private val aggregator = ScreenSessionAggregator()
+    private lateinit var tracerProvider: SdkTracerProvider
+    private lateinit var tracer: Tracer
+
+    @Before
+    fun setup() {
+        tracerProvider = SdkTracerProvider.builder()
+            .addSpanProcessor(aggregator)
+            .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+            .build()
+        tracer = tracerProvider.get("test")
+        aggregator.install(ApplicationProvider.getApplicationContext<Application>(), tracer)
+    }
+
+    @After
+    fun teardown() {
+        tracerProvider.shutdown().join(5, TimeUnit.SECONDS)
+    }
+
+    private fun screenSessions(): List<SpanData> =
+        exporter.finishedSpanItems.filter { it.name == "screen_session" }
+
+    private fun SpanData.long(key: String): Long? = attributes.get(AttributeKey.longKey(key))
+
+    private fun http(requestBytes: Long, responseBytes: Long) {
+        tracer.spanBuilder("GET")
+            .setSpanKind(SpanKind.CLIENT)
+            .setAttribute("http.request.method", "GET")
+            .setAttribute("http.request.body.size", requestBytes)
+            .setAttribute("http.response.body.size", responseBytes)
+            .startSpan()
+            .end()
+    }
+
+    private fun span(configure: SpanBuilder.() -> Unit = {}) {
+        tracer.spanBuilder("span").apply(configure).startSpan().end()
+    }
+
+    @Test
+    fun visitIsSummarizedOnPause() {
+        val controller = Robolectric.buildActivity(Activity::class.java).setup()
+
+        http(100, 2_000)
+        http(0, 500)
+        span { setAttribute(EVENT_TYPE, "tap") }
+        span { setAttribute(COMPONENT_KEY, COMPONENT_ERROR) }
+        span { setAttribute(COMPONENT_KEY, COMPONENT_CRASH) }
+        span { setAttribute(ERROR_TYPE_KEY, "java.io.IOException") }
+        span()
+        // a client span without an HTTP method isn't an HTTP call
+        span { setSpanKind(SpanKind.CLIENT) }
+        assertTrue(screenSessions().isEmpty())
+
+        controller.pause()
+
+        val summary = screenSessions().single()
+        assertEquals("Activity", summary.attributes.get(AttributeKey.stringKey("screen.name")))
+        assertEquals(2L, summary.long("screen.http.count"))
+        assertEquals(2_600L, summary.long("screen.http.bytes"))
+        assertEquals(3L, summary.long("screen.error.count"))
+        assertEquals(1L, summary.long("screen.tap.count"))
+        assertTrue(summary.long("screen.time_on_screen_ms")!! >= 0)
+    }
+
+    @Test
+    fun spansOutsideAVisitAreNotCounted() {
+        val controller = Robolectric.buildActivity(Activity::class.java).setup()
+        controller.pause()
+        http(10, 10)
+
+        controller.resume()
+        span { setAttribute(EVENT_TYPE, "tap") }
+        controller.pause()
+
+        val second = screenSessions()[1]
+        assertEquals(0L, second.long("screen.http.count"))
+        assertEquals(1L, second.long("screen.tap.count"))
+    }
+
+    @Test
+    fun summarySpansAreNotCountedInTheNextVisit() {
+        val controller = Robolectric.buildActivity(Activity::class.java).setup()
+        controller.pause()
+        controller.resume()
+        controller.pause()
+
+        assertEquals(listOf(0L, 0L), screenSessions().map { it.long("screen.error.count") })
+    }
+
+    @Test
+    fun pausingAnotherInstanceOfTheScreenKeepsTheVisit() {
+        val first = Robolectric.buildActivity(Activity::class.java).setup()
+        // resumed alongside the first one, as in multi-window
+        val second = Robolectric.buildActivity(Activity::class.java).setup()
+        assertEquals(1, screenSessions().size)
+
+        first.pause()
+        span { setAttribute(EVENT_TYPE, "tap") }
+        assertEquals(1, screenSessions().size)
+
+        second.pause()
+        assertEquals(listOf(0L, 1L), screenSessions().map { it.long("screen.tap.count") })
+    }
+
+    @Test
+    fun shutdownQuitsFrameMetricsThread() {
+        val before = frameThreads()
+        Robolectric.buildActivity(Activity::class.java).setup()
+        val frameThread = (frameThreads() - before).single()
+
+        tracerProvider.shutdown().join(5, TimeUnit.SECONDS)
+        frameThread.join(5_000)
+
+        assertFalse(frameThread.isAlive)
+    }
+
+    private fun frameThreads(): Set<Thread> =
+        Thread.getAllStackTraces().keys.filter { it.name == "mw-screen-frames" && it.isAlive }.toSet()
+}
@@ -0,0 +1,66 @@
+package io.middleware.android.sdk.core.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptiveCaptureSchedulerTest {
+
+    private static final long ACTIVE = 330;
+    private static final long IDLE = 5_000;
+
+    @Test
+    void startsIdleAndBoostsOnSignal() {
+        AdaptiveCaptureScheduler scheduler = new AdaptiveCaptureScheduler(ACTIVE, IDLE, 0);
+        assertEquals(IDLE, scheduler.nextIntervalMs(10_000));
+
+        assertTrue(scheduler.onSignal(AdaptiveCaptureScheduler.Signal.TOUCH, 10_000));
+        assertEquals(ACTIVE, scheduler.nextIntervalMs(10_000));
+        assertEquals(ACTIVE, scheduler.nextIntervalMs(12_999));
+        // already at the active rate, nothing to pull forward
+        assertFalse(scheduler.onSignal(AdaptiveCaptureScheduler.Signal.SCROLL, 11_000));
+    }
+
+    @Test
+    void decaysByDoublingToIdle() {
+        AdaptiveCaptureScheduler scheduler = new AdaptiveCaptureScheduler(ACTIVE, IDLE, 0);
+        scheduler.onSignal(AdaptiveCaptureScheduler.Signal.NAVIGATION, 0);
+
+        long window = AdaptiveCaptureScheduler.BOOST_WINDOW_MS;
+        long step = AdaptiveCaptureScheduler.DECAY_STEP_MS;
+        assertEquals(ACTIVE * 2, scheduler.nextIntervalMs(window));
+        assertEquals(ACTIVE * 4, scheduler.nextIntervalMs(window + step));
+        assertEquals(ACTIVE * 8, scheduler.nextIntervalMs(window + 2 * step));
+        assertEquals(IDLE, scheduler.nextIntervalMs(window + 4 * step));
+        assertEquals(IDLE, scheduler.nextIntervalMs(window + 1_000 * step));
+    }
+
+    @Test
+    void budgetStretchesIntervalToSustainableRate() {
+        // 60 KB frames against 600 KB/min: at most one frame every 6 s
+        AdaptiveCaptureScheduler scheduler = new AdaptiveCaptureScheduler(ACTIVE, IDLE, 600 * 1024);
+        scheduler.onSignal(AdaptiveCaptureScheduler.Signal.TOUCH, 0);
+        scheduler.onFrameCaptured(60 * 1024, 0);
+
+        assertEquals(6_000, scheduler.nextIntervalMs(100));
+    }
+
+    @Test
+    void spentBudgetFallsBackToIdleUntilItFreesUp() {
+        AdaptiveCaptureScheduler scheduler = new AdaptiveCaptureScheduler(100, IDLE, 100 * 1024);
+        for (int i = 0; i < 100; i++) {
+            scheduler.onFrameCaptured(1024, i * 100L);
+        }
+        scheduler.onSignal(AdaptiveCaptureScheduler.Signal.TOUCH, 10_000);
+        assertEquals(100 * 1024, scheduler.bytesInLastMinute(10_000));
+        assertEquals(IDLE, scheduler.nextIntervalMs(10_000));
+
+        // a minute later the spend has rolled out of the window
+        scheduler.onSignal(AdaptiveCaptureScheduler.Signal.TOUCH, 70_000);
+        assertEquals(0, scheduler.bytesInLastMinute(70_000));
+        // still bounded by the average frame size: 1 KB frames at 100 KB/min
+        assertEquals(600, scheduler.nextIntervalMs(70_000));
+    }
+}
@@ -0,0 +1,84 @@
+package io.middleware.android.sdk.core.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class BitrateControllerTest {
+
+    @Test
+    void ladderGetsCheaperAndLowersQualityFirst() {
+        List<BitrateController.Rung> ladder = BitrateController.buildLadder(75);
+        assertEquals(75, ladder.get(0).quality);
+        assertEquals(1f, ladder.get(0).scale);
+        for (int i = 1; i < ladder.size(); i++) {
+            assertTrue(ladder.get(i).cost < ladder.get(i - 1).cost);
+            if (ladder.get(i).quality > BitrateController.MIN_PREFERRED_QUALITY) {
+                assertEquals(1f, ladder.get(i).scale);
+            }
+        }
+        BitrateController.Rung last = ladder.get(ladder.size() - 1);
+        assertEquals(BitrateController.MIN_QUALITY, last.quality);
+        assertEquals(BitrateController.MIN_SCALE, last.scale, 1e-3f);
+    }
+
+    @Test
+    void cheapContentStaysAtTopRung() {
+        BitrateController controller = new BitrateController(1_000_000, 75);
+        for (long now = 0; now < 120_000; now += 1_000) {
+            assertTrue(controller.admit(now));
+            controller.onFrameEncoded(2_000, now);
+        }
+        assertEquals(0, controller.getRung());
+        assertEquals(75, controller.getQuality());
+    }
+
+    @Test
+    void expensiveContentStepsDownAndBackUp() {
+        BitrateController controller = new BitrateController(600_000, 75);
+        long now = 0;
+        for (; now < 60_000; now += 500) {
+            if (controller.admit(now)) {
+                // bytes follow the nominal cost of the chosen setting
+                controller.onFrameEncoded(Math.round(40_000 * costOf(controller)), now);
+            }
+        }
+        final int loaded = controller.getRung();
+        assertTrue(loaded > 0);
+
+        for (; now < 180_000; now += 500) {
+            if (controller.admit(now)) {
+                controller.onFrameEncoded(Math.round(2_000 * costOf(controller)), now);
+            }
+        }
+        assertTrue(controller.getRung() < loaded);
+    }
+
+    @Test
+    void bottomRungSkipsFramesWhileInDebt() {
+        BitrateController controller = new BitrateController(60_000, 75);
+        long sent = 0;
+        int skipped = 0;
+        for (long now = 0; now < 120_000; now += 100) {
+            if (!controller.admit(now)) {
+                skipped++;
+                continue;
+            }
+            controller.onFrameEncoded(20_000, now);
+            sent += 20_000;
+        }
+        assertEquals(controller.getLadderSize() - 1, controller.getRung());
+        assertTrue(skipped > 0);
+        assertEquals((long) skipped, controller.getStats().get(BitrateController.STAT_SKIPPED_FRAMES));
+        // two minutes of budget, plus the first frame and the bucket's burst allowance
+        assertTrue(sent <= 2 * 60_000 + 20_000 + 10_000, "sent " + sent);
+    }
+
+    private static double costOf(BitrateController controller) {
+        float scale = controller.getScale();
+        return scale * scale * (0.25 + controller.getQuality() / 100.0);
+    }
+}
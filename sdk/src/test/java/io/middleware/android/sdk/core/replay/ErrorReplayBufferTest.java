@@ -0,0 +1,89 @@
+package io.middleware.android.sdk.core.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+class ErrorReplayBufferTest {
+
+    private static final ErrorReplayBuffer.Kind KEYFRAME = ErrorReplayBuffer.Kind.KEYFRAME;
+    private static final ErrorReplayBuffer.Kind FRAME = ErrorReplayBuffer.Kind.FRAME;
+
+    private static RREvent event(long timestampMs, int payloadChars) {
+        return new RREvent(timestampMs, 3,
+                Collections.singletonMap("src", new String(new char[payloadChars])));
+    }
+
+    @Test
+    void streamMustStartWithKeyframe() {
+        ErrorReplayBuffer buffer = new ErrorReplayBuffer(60_000, 1 << 20, 100);
+        assertFalse(buffer.add(event(0, 10), "s", FRAME));
+        assertTrue(buffer.needsKeyframe(0));
+
+        assertTrue(buffer.add(event(0, 10), "s", KEYFRAME));
+        assertTrue(buffer.add(event(100, 10), "s", FRAME));
+        assertFalse(buffer.needsKeyframe(100));
+        assertTrue(buffer.needsKeyframe(ErrorReplayBuffer.CHECKPOINT_INTERVAL_MS));
+    }
+
+    @Test
+    void windowEvictsUpToNextKeyframe() {
+        ErrorReplayBuffer buffer = new ErrorReplayBuffer(20_000, 1 << 20, 100);
+        buffer.add(event(0, 10), "s", KEYFRAME);
+        buffer.add(event(5_000, 10), "s", FRAME);
+        RREvent checkpoint = event(10_000, 10);
+        buffer.add(checkpoint, "s", KEYFRAME);
+        buffer.add(event(15_000, 10), "s", FRAME);
+
+        buffer.add(event(25_000, 10), "s", FRAME);
+
+        List<ErrorReplayBuffer.Buffered> drained = buffer.drain();
+        assertEquals(3, drained.size());
+        assertSame(checkpoint, drained.get(0).event);
+        assertEquals(2L, buffer.getStats().get(ErrorReplayBuffer.STAT_EVICTED_EVENTS));
+    }
+
+    @Test
+    void byteAndFrameCapsAreStrict() {
+        ErrorReplayBuffer bytes = new ErrorReplayBuffer(60_000, 10_000, 100);
+        ErrorReplayBuffer frames = new ErrorReplayBuffer(60_000, 1 << 20, 5);
+        for (int i = 0; i < 50; i++) {
+            ErrorReplayBuffer.Kind kind = i % 3 == 0 ? KEYFRAME : FRAME;
+            bytes.add(event(i * 100L, 1_000), "s", kind);
+            frames.add(event(i * 100L, 10), "s", kind);
+            assertTrue(bytes.getStats().get(ErrorReplayBuffer.STAT_BYTES) <= 10_000);
+            assertTrue(frames.getStats().get(ErrorReplayBuffer.STAT_FRAMES) <= 5);
+        }
+    }
+
+    @Test
+    void oversizedEventEmptiesBuffer() {
+        ErrorReplayBuffer buffer = new ErrorReplayBuffer(60_000, 1_000, 100);
+        buffer.add(event(0, 10), "s", KEYFRAME);
+        assertFalse(buffer.add(event(100, 5_000), "s", FRAME));
+        assertEquals(0L, buffer.getStats().get(ErrorReplayBuffer.STAT_BYTES));
+        assertTrue(buffer.needsKeyframe(100));
+    }
+
+    @Test
+    void drainKeepsOrderAndSessions() {
+        ErrorReplayBuffer buffer = new ErrorReplayBuffer(60_000, 1 << 20, 100);
+        buffer.add(event(0, 10), "a", KEYFRAME);
+        buffer.add(event(100, 10), "a", FRAME);
+        buffer.add(event(200, 10), "b", KEYFRAME);
+
+        List<ErrorReplayBuffer.Buffered> drained = buffer.drain();
+        assertEquals(3, drained.size());
+        assertEquals("a", drained.get(0).sessionId);
+        assertEquals(100L, drained.get(1).event.getTimestamp());
+        assertEquals("b", drained.get(2).sessionId);
+        assertTrue(buffer.drain().isEmpty());
+        assertEquals(2L, buffer.getStats().get(ErrorReplayBuffer.STAT_DRAINS));
+    }
+}
@@ -0,0 +1,81 @@
+package io.middleware.android.sdk.core.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import android.os.PowerManager;
+
+import org.junit.jupiter.api.Test;
+
+class RecordingGovernorTest {
+
+    private static RecordingGovernor.Conditions battery(int percent, boolean charging) {
+        return new RecordingGovernor.Conditions(PowerManager.THERMAL_STATUS_NONE, percent, charging, false);
+    }
+
+    private static RecordingGovernor.Conditions thermal(int status) {
+        return new RecordingGovernor.Conditions(status, 100, false, false);
+    }
+
+    @Test
+    void thermalStatusStepsDown() {
+        assertEquals(RecordingGovernor.Level.NORMAL,
+                RecordingGovernor.evaluate(thermal(PowerManager.THERMAL_STATUS_LIGHT), 0));
+        assertEquals(RecordingGovernor.Level.REDUCED,
+                RecordingGovernor.evaluate(thermal(PowerManager.THERMAL_STATUS_MODERATE), 0));
+        assertEquals(RecordingGovernor.Level.CONSTRAINED,
+                RecordingGovernor.evaluate(thermal(PowerManager.THERMAL_STATUS_SEVERE), 0));
+        assertEquals(RecordingGovernor.Level.PAUSED,
+                RecordingGovernor.evaluate(thermal(PowerManager.THERMAL_STATUS_CRITICAL), 0));
+        assertEquals(RecordingGovernor.Level.PAUSED,
+                RecordingGovernor.evaluate(thermal(PowerManager.THERMAL_STATUS_SHUTDOWN), 0));
+    }
+
+    @Test
+    void batteryAndPowerSaveStepDown() {
+        assertEquals(RecordingGovernor.Level.NORMAL, RecordingGovernor.evaluate(battery(80, false), 0));
+        assertEquals(RecordingGovernor.Level.REDUCED, RecordingGovernor.evaluate(battery(30, false), 0));
+        assertEquals(RecordingGovernor.Level.CONSTRAINED, RecordingGovernor.evaluate(battery(15, false), 0));
+        assertEquals(RecordingGovernor.Level.PAUSED, RecordingGovernor.evaluate(battery(5, false), 0));
+        assertEquals(RecordingGovernor.Level.REDUCED, RecordingGovernor.evaluate(
+                new RecordingGovernor.Conditions(PowerManager.THERMAL_STATUS_NONE, 90, false, true), 0));
+    }
+
+    @Test
+    void chargingOrUnknownBatteryIsIgnored() {
+        assertEquals(RecordingGovernor.Level.NORMAL, RecordingGovernor.evaluate(battery(3, true), 0));
+        assertEquals(RecordingGovernor.Level.NORMAL, RecordingGovernor.evaluate(battery(-1, false), 0));
+    }
+
+    @Test
+    void steppingUpNeedsBatteryMargin() {
+        RecordingGovernor.Level level = RecordingGovernor.next(RecordingGovernor.Level.NORMAL, battery(14, false));
+        assertEquals(RecordingGovernor.Level.CONSTRAINED, level);
+
+        // back over the threshold but inside the margin: stay
+        level = RecordingGovernor.next(level, battery(18, false));
+        assertEquals(RecordingGovernor.Level.CONSTRAINED, level);
+
+        // clears the constrained margin but not the reduced one
+        level = RecordingGovernor.next(level, battery(21, false));
+        assertEquals(RecordingGovernor.Level.REDUCED, level);
+
+        level = RecordingGovernor.next(level, battery(36, false));
+        assertEquals(RecordingGovernor.Level.NORMAL, level);
+
+        // plugging in lifts everything at once
+        level = RecordingGovernor.next(RecordingGovernor.Level.PAUSED, battery(4, true));
+        assertEquals(RecordingGovernor.Level.NORMAL, level);
+    }
+
+    @Test
+    void levelsLowerQualityAndResolution() {
+        assertEquals(RecordingQuality.LOW.getValue(),
+                RecordingGovernor.Level.CONSTRAINED.quality(RecordingQuality.HIGH.getValue()));
+        assertEquals(RecordingQuality.LOW.getValue(),
+                RecordingGovernor.Level.REDUCED.quality(RecordingQuality.LOW.getValue()));
+        assertEquals(320, RecordingGovernor.Level.NORMAL.shortEdgePx(320));
+        assertEquals(160, RecordingGovernor.Level.CONSTRAINED.shortEdgePx(320));
+        assertTrue(RecordingGovernor.Level.PAUSED.isPaused());
+    }
+}
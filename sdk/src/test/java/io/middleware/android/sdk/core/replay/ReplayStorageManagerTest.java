@@ -0,0 +1,106 @@
+package io.middleware.android.sdk.core.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+class ReplayStorageManagerTest {
+
+    @TempDir
+    File tempDir;
+
+    private File archives;
+    private File segments;
+
+    @BeforeEach
+    void setup() {
+        archives = new File(tempDir, "archives");
+        segments = new File(tempDir, "segments");
+        assertTrue(archives.mkdirs());
+        assertTrue(segments.mkdirs());
+    }
+
+    @Test
+    void evictsOldestFirstAndKeepsNewestSession() throws IOException {
+        File oldest = file(archives, "a-1.tar.gz", 400, 1);
+        File older = file(archives, "b-2.tar.gz", 400, 2);
+        File newestArchive = file(archives, "c-3.tar.gz", 400, 3);
+        File newestSegment = file(segments, "c-4.seg", 400, 4);
+        ReplayStorageManager storage = manager(1000);
+
+        assertEquals(800, storage.enforceQuota(""));
+
+        assertFalse(oldest.exists());
+        assertFalse(older.exists());
+        assertTrue(newestArchive.exists());
+        assertTrue(newestSegment.exists());
+        Map<String, Long> stats = storage.getStats();
+        assertEquals(800L, stats.get(ReplayStorageManager.STAT_USAGE_BYTES));
+        assertEquals(2L, stats.get(ReplayStorageManager.STAT_EVICTED_FILES));
+        assertEquals(800L, stats.get(ReplayStorageManager.STAT_EVICTED_BYTES));
+    }
+
+    @Test
+    void activeSessionIsNeverEvicted() throws IOException {
+        File active = file(archives, "active-1.tar.gz", 600, 1);
+        File other = file(archives, "other-2.tar.gz", 600, 2);
+        File newest = file(segments, "newest-3.seg", 100, 3);
+
+        manager(1000).enforceQuota("active");
+
+        assertTrue(active.exists());
+        assertFalse(other.exists());
+        assertTrue(newest.exists());
+    }
+
+    @Test
+    void underQuotaNothingIsEvicted() throws IOException {
+        File archive = file(archives, "a-1.tar.gz", 400, 1);
+        ReplayStorageManager storage = manager(1000);
+
+        assertEquals(0, storage.enforceQuota("a"));
+        assertTrue(archive.exists());
+        assertEquals(400L, storage.getStats().get(ReplayStorageManager.STAT_USAGE_BYTES));
+    }
+
+    @Test
+    void removesOrphans() throws IOException {
+        File archive = file(archives, "a-1.tar.gz", 10, 1);
+        File empty = file(archives, "a-2.tar.gz", 0, 2);
+        File temp = file(archives, "a-3.tar.gz.tmp", 10, 3);
+        File stray = file(segments, "notes.txt", 10, 4);
+        ReplayStorageManager storage = manager(1000);
+
+        assertEquals(3, storage.removeOrphans());
+
+        assertTrue(archive.exists());
+        assertFalse(empty.exists());
+        assertFalse(temp.exists());
+        assertFalse(stray.exists());
+        assertEquals(3L, storage.getStats().get(ReplayStorageManager.STAT_ORPHANS_REMOVED));
+    }
+
+    private ReplayStorageManager manager(long quota) {
+        return new ReplayStorageManager(quota)
+                .watch(segments, ".seg")
+                .watch(archives, ".tar.gz");
+    }
+
+    private static File file(File dir, String name, int size, long modifiedSeconds) throws IOException {
+        File file = new File(dir, name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[size]);
+        }
+        assertTrue(file.setLastModified(modifiedSeconds * 1000));
+        return file;
+    }
+}
@@ -0,0 +1,115 @@
+package io.middleware.android.sdk.core.replay.v2;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class FrameFingerprintTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 568;
+
+    @Test
+    public void firstFrameNeverMatches() {
+        FrameFingerprint fingerprint = new FrameFingerprint();
+        assertFalse(fingerprint.matches(frame(Color.WHITE)));
+    }
+
+    @Test
+    public void identicalFramesMatch() {
+        FrameFingerprint fingerprint = new FrameFingerprint();
+        encoded(fingerprint, frame(Color.WHITE));
+        assertTrue(fingerprint.matches(frame(Color.WHITE)));
+        assertTrue(fingerprint.matches(frame(Color.WHITE)));
+    }
+
+    @Test
+    public void noiseWithinToleranceMatches() {
+        FrameFingerprint fingerprint = new FrameFingerprint();
+        encoded(fingerprint, frame(Color.rgb(200, 200, 200)));
+        assertTrue(fingerprint.matches(frame(Color.rgb(202, 201, 200))));
+    }
+
+    @Test
+    public void smallRegionChangeDoesNotMatch() {
+        FrameFingerprint fingerprint = new FrameFingerprint();
+        encoded(fingerprint, frame(Color.WHITE));
+
+        Bitmap changed = frame(Color.WHITE);
+        // a 16x16 label somewhere in the middle of the screen
+        fill(changed, 150, 300, 16, 16, Color.BLACK);
+        assertFalse(fingerprint.matches(changed));
+        fingerprint.commit();
+        // and the change, once encoded, is the reference
+        Bitmap same = frame(Color.WHITE);
+        fill(same, 150, 300, 16, 16, Color.BLACK);
+        assertTrue(fingerprint.matches(same));
+    }
+
+    @Test
+    public void gradualDriftIsComparedWithTheLastEncodedFrame() {
+        FrameFingerprint fingerprint = new FrameFingerprint();
+        encoded(fingerprint, frame(Color.rgb(100, 100, 100)));
+        // a slow fade: each frame is within tolerance of the one before it
+        int shipped = 0;
+        for (int level = 102; level <= 140; level += 2) {
+            if (!fingerprint.matches(frame(Color.rgb(level, level, level)))) {
+                fingerprint.commit();
+                shipped++;
+            }
+        }
+        assertTrue(shipped >= 5);
+        assertTrue(fingerprint.matches(frame(Color.rgb(140, 140, 140))));
+    }
+
+    @Test
+    public void uncommittedFrameIsNotTheReference() {
+        FrameFingerprint fingerprint = new FrameFingerprint();
+        encoded(fingerprint, frame(Color.WHITE));
+        Bitmap changed = frame(Color.WHITE);
+        fill(changed, 150, 300, 16, 16, Color.BLACK);
+        assertFalse(fingerprint.matches(changed));
+        // not encoded, so the same change still doesn't match
+        assertFalse(fingerprint.matches(changed));
+        assertTrue(fingerprint.matches(frame(Color.WHITE)));
+    }
+
+    @Test
+    public void sizeChangeAndResetDoNotMatch() {
+        FrameFingerprint fingerprint = new FrameFingerprint();
+        encoded(fingerprint, frame(Color.WHITE));
+        assertFalse(fingerprint.matches(Bitmap.createBitmap(HEIGHT, WIDTH, Bitmap.Config.ARGB_8888)));
+
+        encoded(fingerprint, frame(Color.WHITE));
+        fingerprint.reset();
+        assertFalse(fingerprint.matches(frame(Color.WHITE)));
+    }
+
+    private static void encoded(FrameFingerprint fingerprint, Bitmap bitmap) {
+        fingerprint.matches(bitmap);
+        fingerprint.commit();
+    }
+
+    private static Bitmap frame(int color) {
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        return bitmap;
+    }
+
+    private static void fill(Bitmap bitmap, int left, int top, int width, int height, int color) {
+        for (int y = top; y < top + height; y++) {
+            for (int x = left; x < left + width; x++) {
+                bitmap.setPixel(x, y, color);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package io.middleware.android.sdk.core.replay.v2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Activity;
+import android.os.Looper;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MaskRectIndexTest {
+
+    private final CopyOnWriteArrayList<WeakReference<View>> sanitized = new CopyOnWriteArrayList<>();
+    private final MaskRectIndex index = new MaskRectIndex(sanitized);
+
+    private Activity activity;
+    private FrameLayout content;
+    private View root;
+
+    @Before
+    public void setup() {
+        activity = Robolectric.buildActivity(Activity.class).setup().get();
+        content = new FrameLayout(activity);
+        content.addView(new SanitizableViewGroup(activity), new FrameLayout.LayoutParams(200, 100));
+        activity.setContentView(content);
+        shadowOf(Looper.getMainLooper()).idle();
+        root = activity.getWindow().getDecorView().getRootView();
+    }
+
+    @Test
+    public void unchangedTreeIsNotWalkedAgain() {
+        List<int[]> first = index.snapshot(root);
+        assertEquals(1, first.size());
+        assertEquals(200, first.get(0)[2]);
+        assertEquals(100, first.get(0)[3]);
+
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(first.get(0), index.snapshot(root).get(0));
+        }
+        assertEquals(1, index.getRebuildCount());
+        assertEquals(10, index.getRefreshCount());
+    }
+
+    @Test
+    public void layoutRebuildsIndex() {
+        index.snapshot(root);
+
+        content.addView(new SanitizableViewGroup(activity), new FrameLayout.LayoutParams(50, 50));
+        root.getViewTreeObserver().dispatchOnGlobalLayout();
+
+        assertEquals(2, index.snapshot(root).size());
+        assertEquals(2, index.getRebuildCount());
+    }
+
+    @Test
+    public void viewAddedIsMaskedInItsFirstFrame() {
+        index.snapshot(root);
+
+        content.addView(new SanitizableViewGroup(activity), new FrameLayout.LayoutParams(50, 50));
+        // the frame that draws the new view lays it out first
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(2, index.snapshot(root).size());
+        assertEquals(2, index.getRebuildCount());
+    }
+
+    @Test
+    public void scrollRebuildsIndex() {
+        index.snapshot(root);
+
+        root.getViewTreeObserver().dispatchOnScrollChanged();
+
+        assertEquals(1, index.snapshot(root).size());
+        assertEquals(2, index.getRebuildCount());
+    }
+
+    @Test
+    public void sanitizedElementsInvalidate() {
+        index.snapshot(root);
+        TextView secret = new TextView(activity);
+        content.addView(secret, new FrameLayout.LayoutParams(300, 40));
+        shadowOf(Looper.getMainLooper()).idle();
+
+        sanitized.add(new WeakReference<>(secret));
+        index.invalidate();
+
+        List<int[]> rects = index.snapshot(root);
+        assertEquals(2, rects.size());
+        assertArrayEquals(new int[]{300, 40}, new int[]{rects.get(0)[2], rects.get(0)[3]});
+    }
+
+    @Test
+    public void translatedViewIsFollowedWithoutLayout() {
+        int x = index.snapshot(root).get(0)[0];
+
+        // a translation animation neither lays out nor scrolls
+        content.getChildAt(0).setTranslationX(120f);
+
+        assertEquals(x + 120, index.snapshot(root).get(0)[0]);
+        assertEquals(1, index.getRebuildCount());
+    }
+
+    @Test
+    public void viewTurningVisibleIsMaskedImmediately() {
+        View group = content.getChildAt(0);
+        group.setVisibility(View.INVISIBLE);
+        shadowOf(Looper.getMainLooper()).idle();
+        assertTrue(index.snapshot(root).isEmpty());
+
+        // INVISIBLE -> VISIBLE keeps the view's size, so there's no layout pass
+        group.setVisibility(View.VISIBLE);
+
+        assertEquals(1, index.snapshot(root).size());
+        assertEquals(1, index.getRebuildCount());
+    }
+
+    @Test
+    public void newRootIsTracked() {
+        index.snapshot(root);
+        index.detach();
+        assertEquals(1, index.snapshot(root).size());
+        assertEquals(2, index.getRebuildCount());
+    }
+}
@@ -9,15 +9,19 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import io.middleware.android.sdk.core.replay.RecordingFrequency;
 import io.middleware.android.sdk.core.replay.RecordingQuality;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(RobolectricTestRunner.class)
@@ -75,6 +79,99 @@ public class RecordingBenchTest {
         assertTrue(out.exists() && out.length() > 50);
     }
 
+    @Test
+    public void bitmapPoolCutsAllocationRate() throws Exception {
+        RecordingBench.Metrics unpooled = RecordingBench.run(
+                "stress_unpooled", 30, RecordingFrequency.HIGH, RecordingQuality.HIGH, true, 1080, 1920, false);
+        RecordingBench.Metrics pooled = RecordingBench.run(
+                "stress_pooled", 30, RecordingFrequency.HIGH, RecordingQuality.HIGH, true, 1080, 1920, true);
+        System.out.println("MW_BENCH bitmap_pool unpooled_alloc_mb_per_sec=" + unpooled.bitmapAllocMbPerSec
+                + " pooled_alloc_mb_per_sec=" + pooled.bitmapAllocMbPerSec
+                + " unpooled_peak_bytes=" + unpooled.peakBitmapBytes
+                + " pooled_peak_bytes=" + pooled.peakBitmapBytes);
+
+        // only the first capture and the first scaled bitmap are allocated with the pool
+        long captureBytes = 1080L * 1920 * 4;
+        assertTrue(pooled.bitmapAllocatedBytes < 2 * captureBytes);
+        assertTrue(unpooled.bitmapAllocatedBytes >= 30 * captureBytes);
+        assertTrue(pooled.peakBitmapBytes <= unpooled.peakBitmapBytes);
+    }
+
+    @Test
+    public void bitrateControllerHoldsBudgetAcrossContent() {
+        long target = 1024 * 1024;
+        RecordingBench.FrameEncoder text = RecordingBench.content(0.6, 1);
+        RecordingBench.FrameEncoder photos = RecordingBench.content(3.0, 2);
+        RecordingBench.FrameEncoder mixed = (frame, quality, width, height) ->
+                // a photo grid for 20 s, then a text screen for 20 s, at ~3 FPS
+                (frame / 60 % 2 == 0 ? photos : text).encodedBytes(frame, quality, width, height);
+
+        Object[][] scenarios = new Object[][]{
+                {"text_low", RecordingFrequency.LOW, text},
+                {"photo_grid_standard", RecordingFrequency.STANDARD, photos},
+                {"text_high", RecordingFrequency.HIGH, text},
+                {"photo_grid_high", RecordingFrequency.HIGH, photos},
+                {"mixed_standard", RecordingFrequency.STANDARD, mixed},
+        };
+        for (Object[] row : scenarios) {
+            RecordingBench.BitrateMetrics m = RecordingBench.runBitrate((String) row[0], target,
+                    (RecordingFrequency) row[1], RecordingQuality.HIGH, 300_000,
+                    (RecordingBench.FrameEncoder) row[2]);
+            System.out.println("MW_BENCH bitrate scenario=" + m.scenario
+                    + " target_bytes_per_min=" + m.targetBytesPerMinute
+                    + " bytes_per_min=" + m.bytesPerMinute
+                    + " frames=" + m.frames
+                    + " skipped_frames=" + m.skippedFrames
+                    + " quality=" + m.finalQuality
+                    + " scale_percent=" + m.finalScalePercent);
+
+            assertTrue(m.scenario, m.bytesPerMinute <= target * 1.05);
+            // the budget is used, not undershot by sitting at the cheapest setting
+            assertTrue(m.scenario, m.bytesPerMinute >= target * 0.85);
+        }
+    }
+
+    @Test
+    public void segmentStoreCutsIoPerFrame() throws Exception {
+        File dir = Files.createTempDirectory("mw-storage-bench").toFile();
+        byte[] frame = new byte[40 * 1024];
+        new Random(7).nextBytes(frame);
+
+        RecordingBench.StorageMetrics m = RecordingBench.runStorage(dir, 200, 10, frame);
+        System.out.println("MW_BENCH storage legacy_io_ops_per_frame=" + (double) m.legacyIoOps / m.frames
+                + " segment_io_ops_per_frame=" + (double) m.segmentIoOps / m.frames
+                + " legacy_ms_per_frame=" + m.legacyMsPerFrame
+                + " segment_ms_per_frame=" + m.segmentMsPerFrame);
+
+        assertTrue(m.segmentIoOps * 4 < m.legacyIoOps);
+    }
+
+    @Test
+    public void storedFramesSkipRecompression() throws Exception {
+        File dir = Files.createTempDirectory("mw-compression-bench").toFile();
+        List<byte[]> frames = new ArrayList<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 10; i++) {
+            byte[] frame = new byte[40 * 1024];
+            random.nextBytes(frame);
+            frames.add(frame);
+        }
+
+        RecordingBench.CompressionMetrics m = RecordingBench.runCompression(dir, frames, 5);
+        System.out.println("MW_BENCH compression legacy_cpu_ms=" + m.legacyCpuMs
+                + " stored_cpu_ms=" + m.storedCpuMs
+                + " legacy_upload_bytes=" + m.legacyUploadBytes
+                + " stored_upload_bytes=" + m.storedUploadBytes
+                + " encoded_bytes=" + m.encodedBytes);
+
+        assertFalse(m.storedRequestGzipped);
+        // every frame went into the archive as a stored block, untouched by the deflater
+        assertEquals(frames.size(), m.verbatimFrames);
+        // stored blocks and tar headers cost well under 2% over the encoded frames
+        assertTrue(m.storedUploadBytes < m.encodedBytes * 1.02);
+        assertTrue(m.storedUploadBytes <= m.legacyUploadBytes);
+    }
+
     private static Map<String, Object> toSchemaReport(RecordingBench.Metrics m) {
         List<String> failed = gate(m);
         String baseline = m.sanitizeEnabled ? "recording_on" : "recording_off";
@@ -98,6 +195,9 @@ public class RecordingBenchTest {
         Map<String, Object> runtime = new LinkedHashMap<>();
         runtime.put("duration_ms", m.durationMs);
         runtime.put("cpu_proxy_longtasks_ms", m.p95CaptureMs);
+        runtime.put("peak_bitmap_bytes", m.peakBitmapBytes);
+        runtime.put("bitmap_alloc_mb_per_sec", m.bitmapAllocMbPerSec);
+        runtime.put("bitmap_pool", m.bitmapPoolEnabled);
         report.put("runtime", runtime);
 
         report.put("startup", mapOf("sdk_init_ms", null));
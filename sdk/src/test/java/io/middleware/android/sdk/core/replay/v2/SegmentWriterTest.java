@@ -0,0 +1,157 @@
+package io.middleware.android.sdk.core.replay.v2;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+class SegmentWriterTest {
+
+    @TempDir
+    File tempDir;
+
+    private File segments;
+    private File archives;
+
+    @BeforeEach
+    void setup() {
+        segments = new File(tempDir, "segments");
+        archives = new File(tempDir, "archives");
+    }
+
+    @Test
+    void fullSegmentIsSealedIntoReadableTarGz() throws IOException {
+        SegmentWriter writer = new SegmentWriter(segments, archives, 3);
+        assertNull(writer.append("session", "1_1_100.jpeg", 100, frame(700, 1)));
+        assertNull(writer.append("session", "1_1_200.jpeg", 200, frame(512, 2)));
+        File archive = writer.append("session", "1_1_300.jpeg", 300, frame(3, 3));
+
+        assertNotNull(archive);
+        assertEquals("session-300.tar.gz", archive.getName());
+        assertEquals(0, listSegments().length);
+
+        List<TarArchiveEntry> entries = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+        readArchive(archive, entries, contents);
+        assertEquals(3, entries.size());
+        assertEquals("1_1_100.jpeg", entries.get(0).getName());
+        assertEquals("1_1_300.jpeg", entries.get(2).getName());
+        assertArrayEquals(frame(700, 1), contents.get(0));
+        assertArrayEquals(frame(512, 2), contents.get(1));
+        assertArrayEquals(frame(3, 3), contents.get(2));
+    }
+
+    @Test
+    void sessionChangeSealsPreviousSegment() throws IOException {
+        SegmentWriter writer = new SegmentWriter(segments, archives, 10);
+        writer.append("first", "a.jpeg", 100, frame(10, 1));
+        File sealed = writer.append("second", "b.jpeg", 200, frame(10, 2));
+
+        assertNotNull(sealed);
+        assertEquals("first-100.tar.gz", sealed.getName());
+        assertEquals("second-200.tar.gz", writer.seal().getName());
+        assertNull(writer.seal());
+    }
+
+    @Test
+    void recoverDropsTornFrameAndSealsTheRest() throws IOException {
+        SegmentWriter crashed = new SegmentWriter(segments, archives, 10);
+        crashed.append("session", "a.jpeg", 100, frame(2000, 1));
+        crashed.append("session", "b.jpeg", 200, frame(2000, 2));
+        crashed.append("session", "c.jpeg", 300, frame(2000, 3));
+        // the process dies halfway through writing the last frame
+        File segment = listSegments()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.setLength(raf.length() - 100);
+        }
+
+        List<File> recovered = new SegmentWriter(segments, archives, 10).recover();
+
+        assertEquals(1, recovered.size());
+        assertEquals("session-200.tar.gz", recovered.get(0).getName());
+        assertEquals(0, listSegments().length);
+        List<TarArchiveEntry> entries = new ArrayList<>();
+        readArchive(recovered.get(0), entries, new ArrayList<>());
+        assertEquals(2, entries.size());
+    }
+
+    @Test
+    void recoverDeletesSegmentWithoutCompleteFrame() throws IOException {
+        assertTrue(segments.mkdirs());
+        File empty = new File(segments, "session-100" + SegmentWriter.SEGMENT_EXTENSION);
+        try (RandomAccessFile raf = new RandomAccessFile(empty, "rw")) {
+            raf.write(new byte[]{0x1f, (byte) 0x8b, 8});
+        }
+
+        assertTrue(new SegmentWriter(segments, archives, 10).recover().isEmpty());
+        assertFalse(empty.exists());
+    }
+
+    @Test
+    void closeSealsActiveSegment() throws IOException {
+        SegmentWriter writer = new SegmentWriter(segments, archives, 10);
+        writer.append("session", "0.jpeg", 5, frame(4000, 0));
+
+        File archive = writer.close();
+
+        assertNotNull(archive);
+        assertEquals("session-5" + SegmentWriter.ARCHIVE_EXTENSION, archive.getName());
+        assertEquals(0, listSegments().length);
+        List<TarArchiveEntry> entries = new ArrayList<>();
+        readArchive(archive, entries, new ArrayList<>());
+        assertEquals(1, entries.size());
+    }
+
+    @Test
+    void segmentUsesFewIoOpsPerFrame() throws IOException {
+        SegmentWriter writer = new SegmentWriter(segments, archives, 10);
+        for (int i = 0; i < 100; i++) {
+            writer.append("session", i + ".jpeg", i, frame(4000, i));
+        }
+        // one write per frame plus open, end-of-archive, close and rename per segment
+        assertEquals(100 + 10 * 4, writer.getIoOps());
+    }
+
+    private File[] listSegments() {
+        File[] files = segments.listFiles();
+        return files != null ? files : new File[0];
+    }
+
+    /** Reads with the JDK gzip stream, which like server-side readers follows concatenated members. */
+    private static void readArchive(File archive, List<TarArchiveEntry> entries, List<byte[]> contents)
+            throws IOException {
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(
+                new GZIPInputStream(new FileInputStream(archive)))) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                entries.add(entry);
+                contents.add(IOUtils.toByteArray(tar));
+            }
+        }
+    }
+
+    /** Incompressible, like an encoded image. */
+    private static byte[] frame(int size, int seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,193 @@
+package io.middleware.android.sdk.core.replay.v2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+class UploadQueueTest {
+
+    @TempDir
+    File tempDir;
+
+    private File archives;
+    private File stateFile;
+    private long now = 1_000_000L;
+    private final List<File> uploaded = new ArrayList<>();
+    private final List<NetworkCallback> callbacks = new ArrayList<>();
+    private Executor fileExecutor = Runnable::run;
+
+    @BeforeEach
+    void setup() {
+        archives = new File(tempDir, "archives");
+        assertTrue(archives.mkdirs());
+        stateFile = new File(tempDir, "upload-state.json");
+    }
+
+    @Test
+    void inFlightArchivesAreNotUploadedAgainAndConcurrencyIsCapped() throws IOException {
+        File first = archive("s-1", 1);
+        archive("s-2", 2);
+        File third = archive("s-3", 3);
+        UploadQueue queue = queue();
+
+        assertEquals(2, queue.poll());
+        assertEquals(0, queue.poll());
+        assertEquals(2, queue.getInFlightCount());
+        assertEquals("s-1.tar.gz", uploaded.get(0).getName());
+        assertEquals("s-2.tar.gz", uploaded.get(1).getName());
+
+        callbacks.get(0).onSuccess("");
+        assertFalse(first.exists());
+        assertEquals(1, queue.poll());
+        assertEquals(third, uploaded.get(2));
+    }
+
+    @Test
+    void failedUploadBacksOffBeforeRetrying() throws IOException {
+        archive("s-1", 1);
+        UploadQueue queue = queue();
+
+        queue.poll();
+        callbacks.get(0).onError(new IOException("Error in call: 503"));
+        UploadQueue.Retry retry = queue.getRetry("s-1.tar.gz");
+        assertNotNull(retry);
+        assertEquals(1, retry.attempts);
+        assertEquals(0, queue.poll());
+
+        now = retry.nextAttemptAtMs;
+        assertEquals(1, queue.poll());
+        callbacks.get(1).onSuccess("");
+        queue.poll();
+        assertNull(queue.getRetry("s-1.tar.gz"));
+    }
+
+    @Test
+    void nonRetryableRejectionDropsArchive() throws IOException {
+        File archive = archive("s-1", 1);
+        UploadQueue queue = queue();
+
+        queue.poll();
+        callbacks.get(0).onError(new HttpStatusException(413));
+
+        assertFalse(archive.exists());
+        assertEquals(0, queue.getInFlightCount());
+        assertNull(queue.getRetry("s-1.tar.gz"));
+    }
+
+    @Test
+    void rateLimitedUploadIsRetried() throws IOException {
+        File archive = archive("s-1", 1);
+        UploadQueue queue = queue();
+
+        queue.poll();
+        callbacks.get(0).onError(new HttpStatusException(429));
+
+        assertTrue(archive.exists());
+        assertEquals(1, queue.getRetry("s-1.tar.gz").attempts);
+    }
+
+    @Test
+    void archiveIsDroppedAfterMaxAttempts() throws IOException {
+        File archive = archive("s-1", 1);
+        UploadQueue queue = queue();
+
+        for (int attempt = 1; attempt < UploadQueue.MAX_ATTEMPTS; attempt++) {
+            now += UploadQueue.MAX_BACKOFF_MS;
+            assertEquals(1, queue.poll());
+            callbacks.get(callbacks.size() - 1).onError(new HttpStatusException(503));
+            assertTrue(archive.exists(), "attempt " + attempt);
+        }
+        now += UploadQueue.MAX_BACKOFF_MS;
+        assertEquals(1, queue.poll());
+        callbacks.get(callbacks.size() - 1).onError(new IOException("timeout"));
+
+        assertFalse(archive.exists());
+        assertEquals(0, queue.poll());
+    }
+
+    @Test
+    void archiveStaysInFlightUntilDeletedOnFileExecutor() throws IOException {
+        List<Runnable> fileTasks = new ArrayList<>();
+        fileExecutor = fileTasks::add;
+        File archive = archive("s-1", 1);
+        UploadQueue queue = queue();
+
+        queue.poll();
+        callbacks.get(0).onSuccess("");
+
+        // not deleted on the callback thread, and not uploaded again in the meantime
+        assertTrue(archive.exists());
+        assertEquals(0, queue.poll());
+        assertEquals(1, fileTasks.size());
+
+        fileTasks.get(0).run();
+        assertFalse(archive.exists());
+        assertEquals(0, queue.getInFlightCount());
+    }
+
+    @Test
+    void backoffGrowsWithJitterUpToTheCap() {
+        UploadQueue queue = queue();
+        for (int attempts = 1; attempts <= 20; attempts++) {
+            long cap = Math.min(UploadQueue.MAX_BACKOFF_MS, UploadQueue.BASE_BACKOFF_MS << Math.min(attempts - 1, 16));
+            long delay = queue.backoffMs(attempts);
+            assertTrue(delay >= cap / 2, "attempt " + attempts + ": " + delay);
+            assertTrue(delay <= cap, "attempt " + attempts + ": " + delay);
+        }
+    }
+
+    @Test
+    void retryStateSurvivesRestart() throws IOException {
+        archive("s-1", 1);
+        UploadQueue crashed = queue();
+        crashed.poll();
+        callbacks.get(0).onError(new IOException("timeout"));
+        // persisted by the next tick
+        crashed.poll();
+
+        UploadQueue restarted = queue();
+        assertEquals(0, restarted.poll());
+        UploadQueue.Retry retry = restarted.getRetry("s-1.tar.gz");
+        assertNotNull(retry);
+        assertEquals(1, retry.attempts);
+    }
+
+    @Test
+    void stateOfDeletedArchivesIsDropped() throws IOException {
+        File archive = archive("s-1", 1);
+        UploadQueue queue = queue();
+        queue.poll();
+        callbacks.get(0).onError(new IOException("timeout"));
+        assertTrue(archive.delete());
+
+        queue.poll();
+        assertNull(queue().getRetry("s-1.tar.gz"));
+    }
+
+    private UploadQueue queue() {
+        return new UploadQueue(archives, stateFile, (archive, callback) -> {
+            uploaded.add(archive);
+            callbacks.add(callback);
+        }, fileExecutor, 2, () -> now, new Random(3));
+    }
+
+    private File archive(String name, long modified) throws IOException {
+        File file = new File(archives, name + SegmentWriter.ARCHIVE_EXTENSION);
+        assertTrue(file.createNewFile());
+        assertTrue(file.setLastModified(modified * 1000));
+        return file;
+    }
+}
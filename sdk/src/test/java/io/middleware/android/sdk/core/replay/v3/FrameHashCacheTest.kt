@@ -0,0 +1,49 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class FrameHashCacheTest {
+
+    @Test
+    fun hitsAreScopedToSession() {
+        val cache = FrameHashCache()
+        cache.add("s1", "menu", 1_000)
+
+        assertTrue(cache.contains("s1", "menu", 1_000))
+        assertFalse(cache.contains("s2", "menu", 1_000))
+        assertEquals(1L, cache.hits)
+        assertEquals(1_000L, cache.bytesSaved)
+    }
+
+    @Test
+    fun evictsLeastRecentlyUsedOverEntryCap() {
+        val cache = FrameHashCache(maxEntries = 2, maxBytes = 1_000_000)
+        cache.add("s", "a", 10)
+        cache.add("s", "b", 10)
+        cache.contains("s", "a", 10) // a is now the most recent
+        cache.add("s", "c", 10)
+
+        assertEquals(2, cache.size)
+        assertTrue(cache.contains("s", "a", 10))
+        assertFalse(cache.contains("s", "b", 10))
+        assertTrue(cache.contains("s", "c", 10))
+    }
+
+    @Test
+    fun evictsOverByteCap() {
+        val cache = FrameHashCache(maxEntries = 100, maxBytes = 250)
+        cache.add("s", "a", 100)
+        cache.add("s", "b", 100)
+        cache.add("s", "c", 100)
+
+        assertEquals(2, cache.size)
+        assertFalse(cache.contains("s", "a", 100))
+
+        cache.add("s", "huge", 1_000)
+        assertFalse(cache.contains("s", "huge", 1_000))
+        assertEquals(2, cache.size)
+    }
+}
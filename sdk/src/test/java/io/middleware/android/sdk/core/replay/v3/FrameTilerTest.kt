@@ -0,0 +1,144 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import android.graphics.Bitmap
+import android.graphics.Color
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class FrameTilerTest {
+
+    private val widthDp = 400
+    private val heightDp = 860
+
+    @Test
+    fun gridCoversThePage() {
+        val tiler = FrameTiler()
+        tiler.layout(widthDp, heightDp)
+
+        // 400 / 96 -> 5 columns, 860 / 96 -> 9 rows; the last ones are cut short
+        assertEquals(45, tiler.tiles.size)
+        val last = tiler.tiles.last()
+        assertEquals(384, last.leftDp)
+        assertEquals(768, last.topDp)
+        assertEquals(16, last.widthDp)
+        assertEquals(92, last.heightDp)
+        assertEquals(widthDp * heightDp, tiler.tiles.sumOf { it.widthDp * it.heightDp })
+    }
+
+    @Test
+    fun onlyTheTileUnderAChangeIsReported() {
+        val tiler = FrameTiler()
+        tiler.layout(widthDp, heightDp)
+        tiler.hash(frame())
+        tiler.commitAll()
+
+        val caret = frame()
+        fill(caret, 200, 200, 2, 30, Color.BLACK)
+        tiler.hash(caret)
+        val changed = tiler.changedTiles()!!
+        assertEquals(1, changed.size)
+        val tile = tiler.tiles[changed[0]]
+        // 640 px for 400 dp: 200 px -> 125 dp
+        assertTrue(tile.leftDp <= 125 && 125 < tile.leftDp + tile.widthDp)
+        assertTrue(tile.topDp <= 125 && 125 < tile.topDp + tile.heightDp)
+
+        tiler.commit(changed[0])
+        assertEquals(listOf(tile), tiler.shownTiles())
+        tiler.hash(caret)
+        assertTrue(tiler.changedTiles()!!.isEmpty())
+
+        // a whole frame replaces the tiles
+        tiler.commitAll()
+        assertTrue(tiler.shownTiles().isEmpty())
+    }
+
+    @Test
+    fun resolutionChangeCannotBeCompared() {
+        val tiler = FrameTiler()
+        tiler.layout(widthDp, heightDp)
+        tiler.hash(frame())
+        tiler.commitAll()
+
+        tiler.hash(Bitmap.createBitmap(320, 688, Bitmap.Config.ARGB_8888).apply { eraseColor(Color.WHITE) })
+        assertNull(tiler.changedTiles())
+    }
+
+    @Test
+    fun newEpochForgetsShippedTiles() {
+        val tiler = FrameTiler()
+        tiler.layout(widthDp, heightDp)
+        tiler.hash(frame())
+        tiler.commitAll()
+
+        tiler.layout(widthDp, heightDp)
+        tiler.hash(frame())
+        assertNull(tiler.changedTiles())
+    }
+
+    @Test
+    fun extractedTileMatchesItsPixelRect() {
+        val tiler = FrameTiler()
+        tiler.layout(widthDp, heightDp)
+        val bitmap = frame()
+        tiler.hash(bitmap)
+
+        val first = tiler.extract(bitmap, tiler.tiles.first())
+        assertEquals(153, first.width) // 96 dp of 400 on 640 px
+        assertEquals(153, first.height)
+        val last = tiler.extract(bitmap, tiler.tiles.last())
+        assertEquals(640 - 614, last.width)
+        assertEquals(FRAME_HEIGHT - 1228, last.height)
+    }
+
+    /**
+     * A caret blinking once a second for a minute on an otherwise static
+     * screen: whole frames ship the full area every blink, tiles one tile.
+     */
+    @Test
+    fun caretBlinkShipsAFractionOfTheScreen() {
+        val tiler = FrameTiler()
+        tiler.layout(widthDp, heightDp)
+        tiler.hash(frame())
+        tiler.commitAll()
+
+        var tilePixels = 0L
+        var framePixels = 0L
+        repeat(60) { second ->
+            val bitmap = frame()
+            if (second % 2 == 0) {
+                fill(bitmap, 200, 200, 2, 30, Color.BLACK)
+            }
+            tiler.hash(bitmap)
+            for (index in tiler.changedTiles()!!) {
+                val tile = tiler.extract(bitmap, tiler.tiles[index])
+                tilePixels += tile.width * tile.height
+                tiler.commit(index)
+            }
+            framePixels += bitmap.width * bitmap.height
+        }
+        println("MW_BENCH frame_tiles caret_blink tile_px=$tilePixels frame_px=$framePixels")
+        assertTrue(tilePixels * 20 < framePixels)
+    }
+
+    private fun frame(): Bitmap =
+        Bitmap.createBitmap(640, FRAME_HEIGHT, Bitmap.Config.ARGB_8888).apply { eraseColor(Color.WHITE) }
+
+    private fun fill(bitmap: Bitmap, left: Int, top: Int, width: Int, height: Int, color: Int) {
+        for (y in top until top + height) {
+            for (x in left until left + width) {
+                bitmap.setPixel(x, y, color)
+            }
+        }
+    }
+
+    private companion object {
+        const val FRAME_HEIGHT = 1376
+    }
+}
@@ -6,10 +6,12 @@ import android.view.View
 import android.widget.EditText
 import android.widget.FrameLayout
 import android.widget.ImageView
+import android.widget.LinearLayout
 import android.widget.TextView
 import androidx.test.core.app.ApplicationProvider
 import io.middleware.android.sdk.core.replay.v2.SanitizableViewGroup
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
 import org.junit.Assert.assertTrue
 import org.junit.Test
 import org.junit.runner.RunWith
@@ -125,4 +127,60 @@ class MaskRectCollectorTest {
         val rects = collector.collect(rootWith(hidden), emptyList())
         assertTrue(rects.isEmpty())
     }
+
+    @Test
+    fun rectsAreReusedAcrossFrames() {
+        val root = rootWith(TextView(context).apply { text = "hello" })
+        val collector = MaskRectCollector(maskAllTextInputs = true, maskAllImages = false)
+        val first = collector.collect(root, emptyList())
+        val rect = first[0]
+        val second = collector.collect(root, emptyList())
+        assertSame(first, second)
+        assertSame(rect, second[0])
+        assertEquals(1, second.size)
+    }
+
+    @Test
+    fun markerChangeIsPickedUpOnTheNextFrame() {
+        val label = TextView(context).apply { text = "hello" }
+        val root = rootWith(label)
+        val collector = MaskRectCollector(maskAllTextInputs = true, maskAllImages = false)
+        assertEquals(1, collector.collect(root, emptyList()).size)
+
+        label.tag = MwReplayModifiers.MW_NO_MASK_LABEL
+        assertTrue(collector.collect(root, emptyList()).isEmpty())
+
+        label.tag = null
+        assertEquals(1, collector.collect(root, emptyList()).size)
+    }
+
+    /** Main-thread cost per frame of the walk over a 1,000-view hierarchy. */
+    @Test
+    fun walksAThousandViewsPerFrame() {
+        val root = FrameLayout(context)
+        repeat(100) { row ->
+            val group = LinearLayout(context)
+            repeat(9) { i ->
+                val child = when (i % 3) {
+                    0 -> TextView(context).apply { text = "Row $row item $i" }
+                    1 -> ImageView(context)
+                    else -> View(context)
+                }
+                group.addView(child, LinearLayout.LayoutParams(10, 10))
+            }
+            root.addView(group, FrameLayout.LayoutParams(90, 10).apply { topMargin = row * 10 })
+        }
+        layoutRoot(root)
+        val collector = MaskRectCollector(maskAllTextInputs = true, maskAllImages = true)
+
+        repeat(200) { collector.collect(root, emptyList()) } // warm up
+        val frames = 1_000
+        val start = System.nanoTime()
+        var masked = 0
+        repeat(frames) { masked = collector.collect(root, emptyList()).size }
+        val usPerFrame = (System.nanoTime() - start) / 1_000.0 / frames
+
+        println("MW_BENCH mask_rects views=1001 us_per_frame=" + String.format("%.1f", usPerFrame))
+        assertEquals(100, masked) // the TextViews; ImageViews without a drawable stay visible
+    }
 }
@@ -0,0 +1,39 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import android.os.Handler
+import android.os.Looper
+import android.view.View
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.Config
+import java.time.Duration
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class NextDrawListenerTest {
+
+    @Test
+    fun requestedCapturesShareTheDrawThrottle() {
+        var captures = 0
+        val listener = NextDrawListener(
+            View(ApplicationProvider.getApplicationContext()),
+            Handler(Looper.getMainLooper()),
+            { 60_000L },
+            onDirty = {},
+            onThrottledDraw = { captures++ },
+        )
+
+        listener.onDraw()
+        // a burst of touches waking capture inside the same window
+        repeat(5) { listener.requestCapture() }
+        assertEquals(1, captures)
+
+        // one trailing capture once the window ends
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMinutes(1))
+        assertEquals(2, captures)
+    }
+}
@@ -0,0 +1,163 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import com.google.gson.Gson
+import okio.Buffer
+import okio.BufferedSink
+import okio.GzipSource
+import okio.blackholeSink
+import okio.buffer
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.io.ByteArrayOutputStream
+import java.lang.management.ManagementFactory
+import java.util.zip.GZIPOutputStream
+
+class OtlpJsonWriterTest {
+
+    private class Event(
+        override val type: Int,
+        override val timestampMs: Long,
+        override val dataJson: String,
+    ) : OtlpEvent
+
+    private val gson = Gson()
+    private val resource = linkedMapOf("session.id" to "s-1", "service.name" to "app <bench> & co")
+
+    @Test
+    fun matchesGsonOutputByteForByte() {
+        val events = listOf(
+            Event(4, 1_000L, gson.toJson(RRWebEvents.meta("android-app://x/Main", 400, 800, 1_000L).data)),
+            Event(3, 2_000L, gson.toJson(RRWebEvents.frameMutation("data:image/webp;base64,AA==", 2_000L).data)),
+            Event(5, 3_000L, "{\"tag\":\"screen\",\"payload\":{\"name\":\"Café \\\"menu\\\"\"}}"),
+        )
+        val streamed = Buffer()
+        OtlpJsonWriter.write(streamed, resource, events)
+
+        assertEquals(legacyJson(resource, events), streamed.readUtf8())
+    }
+
+    @Test
+    fun gzipBodyIsRepeatable() {
+        val events = listOf(Event(3, 1L, "{}"))
+        val body = OtlpJsonWriter.gzipBody(resource, events)
+        val first = Buffer().also { body.writeTo(it) }
+        val second = Buffer().also { body.writeTo(it) }
+
+        val json = GzipSource(first).buffer().readUtf8()
+        assertEquals(legacyJson(resource, events), json)
+        assertEquals(json, GzipSource(second).buffer().readUtf8())
+    }
+
+    /**
+     * Peak heap and CPU for one full (3 MB) batch: nested maps + Gson string +
+     * UTF-8 array + gzip array, vs streaming into the gzip sink.
+     */
+    @Test
+    fun streamingCutsAllocationPerBatch() {
+        val frameJson = gson.toJson(RRWebEvents.frameMutation("data:image/webp;base64," + "Qk".repeat(5_000), 0L).data)
+        val events = (0 until 300).map { Event(3, 1_000L + it, frameJson) }
+
+        repeat(3) { // warm up both paths
+            legacyGzip(resource, events)
+            streamGzip(resource, events, blackholeSink().buffer())
+        }
+
+        var legacyBytes = 0
+        val legacy = measure {
+            val json = legacyJson(resource, events)
+            val utf8 = json.toByteArray(Charsets.UTF_8)
+            val gzipped = gzip(utf8)
+            // all three are live before the request is built (Latin-1 string: a byte per char)
+            legacyBytes = json.length + utf8.size + gzipped.size
+        }
+        val streamedOut = Buffer()
+        val streamed = measure { streamGzip(resource, events, streamedOut) }
+
+        println(
+            "MW_BENCH otlp_body batch_events=" + events.size +
+                " batch_json_bytes=" + legacyJson(resource, events).length +
+                " legacy_allocated_bytes=" + legacy.allocatedBytes +
+                " streamed_allocated_bytes=" + streamed.allocatedBytes +
+                " legacy_peak_body_bytes=" + legacyBytes +
+                " streamed_peak_body_bytes=" + streamedOut.size +
+                " legacy_cpu_ms=" + legacy.cpuMs +
+                " streamed_cpu_ms=" + streamed.cpuMs
+        )
+
+        assertTrue(streamedOut.size * 3 < legacyBytes)
+        if (legacy.allocatedBytes > 0) {
+            assertTrue(streamed.allocatedBytes * 2 < legacy.allocatedBytes)
+        }
+    }
+
+    private class Measurement(val allocatedBytes: Long, val cpuMs: Double)
+
+    private fun measure(block: () -> Unit): Measurement {
+        val threads = ManagementFactory.getThreadMXBean()
+        val allocations = threads as? com.sun.management.ThreadMXBean
+        val threadId = Thread.currentThread().id
+        val allocatedBefore = allocations?.getThreadAllocatedBytes(threadId) ?: 0L
+        val cpuBefore = threads.currentThreadCpuTime
+        block()
+        val cpuNs = threads.currentThreadCpuTime - cpuBefore
+        val allocated = (allocations?.getThreadAllocatedBytes(threadId) ?: 0L) - allocatedBefore
+        return Measurement(allocated, cpuNs / 1_000_000.0)
+    }
+
+    private fun streamGzip(resource: Map<String, String>, events: List<OtlpEvent>, sink: BufferedSink) {
+        OtlpJsonWriter.gzipBody(resource, events).writeTo(sink)
+    }
+
+    private fun legacyGzip(resource: Map<String, String>, events: List<OtlpEvent>): ByteArray =
+        gzip(legacyJson(resource, events).toByteArray(Charsets.UTF_8))
+
+    private fun gzip(bytes: ByteArray): ByteArray {
+        val out = ByteArrayOutputStream()
+        GZIPOutputStream(out).use { it.write(bytes) }
+        return out.toByteArray()
+    }
+
+    /** The body as RRWebExporterV3 built it before streaming: nested maps through Gson. */
+    private fun legacyJson(resource: Map<String, String>, events: List<OtlpEvent>): String {
+        val resourceAttributes = resource.map { (key, value) -> attr(key, value) }
+        val metrics = events.map { event ->
+            linkedMapOf(
+                "name" to "rum_event",
+                "gauge" to linkedMapOf(
+                    "dataPoints" to listOf(
+                        linkedMapOf(
+                            "attributes" to listOf(
+                                attr("type", event.type.toString()),
+                                attr("timestamp", event.timestampMs.toString()),
+                                attr("data", event.dataJson),
+                            ),
+                            "timeUnixNano" to (event.timestampMs * 1_000_000L).toString(),
+                            "asDouble" to 0,
+                        )
+                    )
+                ),
+            )
+        }
+        val payload = linkedMapOf(
+            "resourceMetrics" to listOf(
+                linkedMapOf(
+                    "resource" to linkedMapOf(
+                        "attributes" to resourceAttributes,
+                        "droppedAttributesCount" to 0,
+                    ),
+                    "scopeMetrics" to listOf(
+                        linkedMapOf(
+                            "scope" to emptyMap<String, Any>(),
+                            "metrics" to metrics,
+                        )
+                    ),
+                )
+            )
+        )
+        return gson.toJson(payload)
+    }
+
+    private fun attr(key: String, value: String): Map<String, Any> =
+        linkedMapOf("key" to key, "value" to linkedMapOf("stringValue" to value))
+}
@@ -2,6 +2,7 @@ package io.middleware.android.sdk.core.replay.v3
 
 import com.google.gson.Gson
 import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Test
 
 /**
@@ -49,6 +50,63 @@ class RRWebEventsTest {
         )
     }
 
+    @Test
+    fun tiledFullSnapshotAddsHiddenTiles() {
+        val tiles = listOf(FrameTiler.Tile(0, 0, 0, 96, 96), FrameTiler.Tile(1, 96, 0, 16, 96))
+        val event = RRWebEvents.fullSnapshot("data:image/webp;base64,AAAA", 112, 96, 1750000000001L, tiles)
+        val json = gson.toJson(event.data)
+        val screen = """{"type":2,"id":6,"tagName":"img","attributes":{"id":"mw-screen","src":"data:image/webp;base64,AAAA","style":"width:112px;height:96px;display:block;"},"childNodes":[]}"""
+        val tile0 = """{"type":2,"id":7,"tagName":"img","attributes":{"style":"position:absolute;left:0px;top:0px;width:96px;height:96px;display:none;"},"childNodes":[]}"""
+        val tile1 = """{"type":2,"id":8,"tagName":"img","attributes":{"style":"position:absolute;left:96px;top:0px;width:16px;height:96px;display:none;"},"childNodes":[]}"""
+        assertTrue(json.contains("$screen,$tile0,$tile1]"), json)
+    }
+
+    @Test
+    fun tileMutationShowsChangedTiles() {
+        val tile = FrameTiler.Tile(3, 96, 96, 96, 96)
+        val event = RRWebEvents.tileMutation(listOf(tile to "data:image/webp;base64,CC"), 1750000001000L)
+        assertEquals(3, event.type)
+        assertEquals(
+            """{"source":0,"texts":[],"removes":[],"adds":[],""" +
+                """"attributes":[{"id":10,"attributes":{"src":"data:image/webp;base64,CC",""" +
+                """"style":"position:absolute;left:96px;top:96px;width:96px;height:96px;display:block;"}}]}""",
+            gson.toJson(event.data)
+        )
+    }
+
+    @Test
+    fun frameMutationHidesShownTiles() {
+        val tile = FrameTiler.Tile(3, 96, 96, 96, 96)
+        val event = RRWebEvents.frameMutation("data:image/webp;base64,BBBB", 1750000001000L, listOf(tile))
+        assertEquals(
+            """{"source":0,"texts":[],"removes":[],"adds":[],""" +
+                """"attributes":[{"id":6,"attributes":{"src":"data:image/webp;base64,BBBB"}},""" +
+                """{"id":10,"attributes":{"style":"position:absolute;left:96px;top:96px;width:96px;height:96px;display:none;"}}]}""",
+            gson.toJson(event.data)
+        )
+    }
+
+    @Test
+    fun wireframeMutationShape() {
+        val label = WireframeNode(100, "div", "position:absolute;left:16px;top:40px;", "****", emptyList())
+        val mutation = WireframeDiff.Mutation(
+            adds = listOf(WireframeDiff.Add(6, 102, label)),
+            textNodeAdds = emptyList(),
+            removes = listOf(WireframeDiff.Remove(6, 104)),
+            attributes = emptyList(),
+            texts = listOf(WireframeDiff.TextChange(107, "Total")),
+        )
+        val event = RRWebEvents.wireframeMutation(mutation, 1750000001000L)
+        assertEquals(3, event.type)
+        assertEquals(
+            """{"source":0,"texts":[{"id":107,"value":"Total"}],"removes":[{"parentId":6,"id":104}],""" +
+                """"adds":[{"parentId":6,"nextId":102,"node":{"type":2,"id":100,"tagName":"div",""" +
+                """"attributes":{"style":"position:absolute;left:16px;top:40px;"},"childNodes":[]}},""" +
+                """{"parentId":100,"node":{"type":3,"id":101,"textContent":"****"}}],"attributes":[]}""",
+            gson.toJson(event.data)
+        )
+    }
+
     @Test
     fun touchEventShape() {
         val event = RRWebEvents.touch(RRWebEvents.MOUSE_INTERACTION_TOUCH_START, 210, 480, 1750000001234L)
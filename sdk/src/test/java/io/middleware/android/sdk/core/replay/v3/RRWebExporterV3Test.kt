@@ -11,6 +11,8 @@ import org.junit.jupiter.api.Assertions.assertNull
 import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.io.File
 import java.util.concurrent.TimeUnit
 import java.util.zip.GZIPInputStream
 
@@ -19,21 +21,28 @@ class RRWebExporterV3Test {
     private lateinit var server: MockWebServer
     private lateinit var exporter: RRWebExporterV3
 
+    @TempDir
+    lateinit var journalDir: File
+
     @BeforeEach
     fun setup() {
         server = MockWebServer()
         server.start()
-        exporter = RRWebExporterV3(
-            server.url("/").toString().removeSuffix("/"),
-            "test-token",
-        ) { sessionId ->
+        exporter = newExporter(null)
+    }
+
+    private fun newExporter(journalDir: File?) = RRWebExporterV3(
+        server.url("/").toString().removeSuffix("/"),
+        "test-token",
+        { sessionId ->
             linkedMapOf(
                 "mw.rum" to "true",
                 "recordingV3" to "1",
                 "session.id" to sessionId,
             )
-        }
-    }
+        },
+        journalDir,
+    )
 
     @AfterEach
     fun teardown() {
@@ -145,6 +154,30 @@ class RRWebExporterV3Test {
         exporter.flush()
         val request = server.takeRequest(1, TimeUnit.SECONDS)
         assertNull(request, "batch should be dropped after max retries")
+        assertEquals(3L, exporter.getStats()[RRWebExporterV3.STAT_RETRIED_EVENTS])
+        assertEquals(1L, exporter.getStats()[RRWebExporterV3.STAT_DROPPED_EVENTS])
+    }
+
+    @Test
+    fun flushAndWaitSendsEventsEnqueuedWhileFlushing() {
+        repeat(3) {
+            server.enqueue(MockResponse().setResponseCode(200).setHeadersDelay(300, TimeUnit.MILLISECONDS))
+        }
+
+        exporter.enqueue(RRWebEvents.frameMutation("data:image/webp;base64,AA", 1L), "session-1")
+        exporter.flush()
+        takeRequestBody() // in flight until the response arrives
+
+        // drained from the error buffer on a crash while that flush is running
+        exporter.enqueue(RRWebEvents.frameMutation("data:image/webp;base64,BB", 2L), "session-1")
+        val waiter = Thread { exporter.flushAndWait(10_000) }
+        waiter.start()
+        takeRequestBody()
+        exporter.enqueue(RRWebEvents.frameMutation("data:image/webp;base64,CC", 3L), "session-1")
+        waiter.join(10_000)
+
+        assertEquals(3, server.requestCount)
+        assertEquals(0L, exporter.getStats()[RRWebExporterV3.STAT_BUFFER_EVENTS])
     }
 
     @Test
@@ -156,6 +189,10 @@ class RRWebExporterV3Test {
         repeat(400) { index ->
             exporter.enqueue(RRWebEvents.frameMutation("data:image/webp;base64,F$index", 10L + index), "s")
         }
+        val stats = exporter.getStats()
+        assertEquals(300L, stats[RRWebExporterV3.STAT_BUFFER_EVENTS])
+        assertEquals(102L, stats[RRWebExporterV3.STAT_EVICTED_EVENTS])
+        assertEquals(0L, stats[RRWebExporterV3.STAT_EVICTED_KEYFRAMES])
 
         server.enqueue(MockResponse().setResponseCode(200))
         exporter.flush()
@@ -175,4 +212,88 @@ class RRWebExporterV3Test {
         assertTrue(types.contains("4"), "meta event must survive eviction")
         assertTrue(types.contains("2"), "full snapshot must survive eviction")
     }
+
+    @Test
+    fun uploadsEachBlobOnceBeforeEvents() {
+        server.enqueue(MockResponse().setResponseCode(200))
+        server.enqueue(MockResponse().setResponseCode(200))
+
+        val blob = FrameBlob.of(byteArrayOf(1, 2, 3, 4), "image/webp")
+        exporter.enqueue(BlobEvent(RRWebEvents.fullSnapshot(blob.src, 400, 800, 1L), blob), "session-1")
+        exporter.enqueue(BlobEvent(RRWebEvents.frameMutation(blob.src, 2L), blob), "session-1")
+        exporter.flush()
+
+        val upload = server.takeRequest(10, TimeUnit.SECONDS)
+        assertNotNull(upload, "expected a blob upload")
+        assertEquals("/v1/rum/blobs", upload!!.path)
+        assertNull(upload.getHeader("Content-Encoding"))
+        val multipart = upload.body.readUtf8()
+        assertEquals(1, Regex("filename=\"${blob.hash}\"").findAll(multipart).count())
+
+        val body = takeRequestBody().toString()
+        assertTrue(body.contains(FrameBlob.SRC_PREFIX + blob.hash))
+        assertTrue(!body.contains("base64"))
+    }
+
+    @Test
+    fun failedBlobUploadHoldsBackEvents() {
+        server.enqueue(MockResponse().setResponseCode(500))
+        server.enqueue(MockResponse().setResponseCode(200))
+        server.enqueue(MockResponse().setResponseCode(200))
+
+        val blob = FrameBlob.of(byteArrayOf(9, 8, 7), "image/jpeg")
+        exporter.enqueue(BlobEvent(RRWebEvents.frameMutation(blob.src, 1L), blob), "session-1")
+        exporter.flush()
+        assertEquals("/v1/rum/blobs", server.takeRequest(10, TimeUnit.SECONDS)!!.path)
+        Thread.sleep(300) // let the failed batch requeue before flushing again
+
+        exporter.flush()
+        assertEquals("/v1/rum/blobs", server.takeRequest(10, TimeUnit.SECONDS)!!.path)
+        takeRequestBody()
+    }
+
+    @Test
+    fun repeatedFrameIsSentAsReferenceOnly() {
+        repeat(3) { server.enqueue(MockResponse().setResponseCode(200)) }
+
+        val menu = FrameBlob.of(byteArrayOf(5, 5, 5), "image/webp")
+        exporter.enqueue(BlobEvent(RRWebEvents.frameMutation(menu.src, 1L), menu), "session-1")
+        exporter.flush()
+        assertEquals("/v1/rum/blobs", server.takeRequest(10, TimeUnit.SECONDS)!!.path)
+        takeRequestBody()
+
+        // back on the same screen later in the session
+        exporter.enqueue(BlobEvent(RRWebEvents.frameMutation(menu.src, 5_000L), menu), "session-1")
+        exporter.flush()
+        assertTrue(takeRequestBody().toString().contains(menu.src))
+        assertEquals(1L, exporter.getStats()[RRWebExporterV3.STAT_FRAME_CACHE_HITS])
+        assertEquals(3L, exporter.getStats()[RRWebExporterV3.STAT_FRAME_CACHE_BYTES_SAVED])
+    }
+
+    @Test
+    fun resendsJournaledEventsAfterRestart() {
+        server.enqueue(MockResponse().setResponseCode(500))
+        server.enqueue(MockResponse().setResponseCode(200))
+        server.enqueue(MockResponse().setResponseCode(200))
+
+        val crashed = newExporter(journalDir)
+        crashed.enqueue(RRWebEvents.meta("app://x", 400, 800, 1L), "session-1")
+        crashed.enqueue(RRWebEvents.frameMutation("data:image/webp;base64,AA", 2L), "session-1")
+        crashed.flush()
+        takeRequestBody() // fails; both events stay pending
+        Thread.sleep(300) // let the failed batch requeue
+
+        val restarted = newExporter(journalDir)
+        try {
+            restarted.flush()
+            val metrics = takeRequestBody().getAsJsonArray("resourceMetrics")[0].asJsonObject
+                .getAsJsonArray("scopeMetrics")[0].asJsonObject
+                .getAsJsonArray("metrics")
+            assertEquals(2, metrics.size())
+            assertEquals(2L, restarted.getStats()[ReplayJournal.STAT_RECOVERED_EVENTS])
+        } finally {
+            restarted.shutdown()
+            crashed.shutdown()
+        }
+    }
 }
@@ -0,0 +1,93 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class ReplayEventBufferTest {
+
+    private class Event(val name: String, override val isKeyframe: Boolean = false, override val bytes: Long = 10) :
+        ReplayEventBuffer.Item {
+        override var seq = 0L
+    }
+
+    private fun names(buffer: ReplayEventBuffer<Event>) = buffer.toList().map { it.name }
+
+    @Test
+    fun keepsRecordingOrderAcrossQueues() {
+        val buffer = ReplayEventBuffer<Event>()
+        buffer.addLast(Event("meta", isKeyframe = true))
+        buffer.addLast(Event("full", isKeyframe = true))
+        buffer.addLast(Event("f1"))
+        buffer.addLast(Event("meta2", isKeyframe = true))
+        buffer.addLast(Event("f2"))
+        assertEquals(listOf("meta", "full", "f1", "meta2", "f2"), names(buffer))
+        assertEquals(50L, buffer.bytes)
+    }
+
+    @Test
+    fun addedFirstGoAheadInTheirOrder() {
+        val buffer = ReplayEventBuffer<Event>()
+        buffer.addLast(Event("new"))
+        buffer.addAllFirst(listOf(Event("retry-meta", isKeyframe = true), Event("retry-frame")))
+        buffer.addAllFirst(listOf(Event("recovered")))
+        assertEquals(listOf("recovered", "retry-meta", "retry-frame", "new"), names(buffer))
+    }
+
+    @Test
+    fun evictsIncrementalEventsBeforeKeyframes() {
+        val buffer = ReplayEventBuffer<Event>()
+        buffer.addLast(Event("meta", isKeyframe = true, bytes = 5))
+        buffer.addLast(Event("f1", bytes = 7))
+        buffer.addLast(Event("f2", bytes = 7))
+
+        assertEquals("f1", buffer.evictOldest()!!.name)
+        assertEquals("f2", buffer.evictOldest()!!.name)
+        assertEquals("meta", buffer.evictOldest()!!.name)
+        assertNull(buffer.evictOldest())
+
+        assertTrue(buffer.isEmpty())
+        assertEquals(0L, buffer.bytes)
+        assertEquals(3L, buffer.evictedEvents)
+        assertEquals(1L, buffer.evictedKeyframes)
+        assertEquals(19L, buffer.evictedBytes)
+    }
+
+    @Test
+    fun drainEmptiesTheBuffer() {
+        val buffer = ReplayEventBuffer<Event>()
+        buffer.addLast(Event("meta", isKeyframe = true))
+        buffer.addLast(Event("f1"))
+        assertEquals(listOf("meta", "f1"), buffer.drain().map { it.name })
+        assertTrue(buffer.isEmpty())
+        assertEquals(0L, buffer.bytes)
+    }
+
+    @Test
+    fun utf8LengthCountsEncodedBytes() {
+        val text = "aé€😀" // 1 + 2 + 3 + 4 bytes
+        assertEquals(text.toByteArray(Charsets.UTF_8).size.toLong(), ReplayEventBuffer.utf8Length(text))
+        assertEquals(10L, ReplayEventBuffer.utf8Length(text))
+    }
+
+    /** Eviction under pressure stays linear: a full buffer of frames evicted one by one. */
+    @Test
+    fun evictionUnderPressure() {
+        val buffer = ReplayEventBuffer<Event>()
+        buffer.addLast(Event("meta", isKeyframe = true))
+        val frames = 200_000
+        val start = System.nanoTime()
+        repeat(frames) { i ->
+            buffer.addLast(Event("f$i"))
+            while (buffer.size > 300) {
+                buffer.evictOldest()
+            }
+        }
+        val nsPerEvent = (System.nanoTime() - start) / frames
+        println("MW_BENCH replay_buffer evict_under_pressure events=$frames ns_per_event=$nsPerEvent")
+        assertEquals(300, buffer.size)
+        assertEquals(1, buffer.keyframeCount)
+        assertEquals(frames - 299L, buffer.evictedEvents)
+    }
+}
@@ -0,0 +1,189 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.io.File
+import java.io.RandomAccessFile
+
+class ReplayJournalTest {
+
+    @TempDir
+    lateinit var dir: File
+
+    private var now = 0L
+
+    private fun journal(maxFileBytes: Long = 1024 * 1024L, maxJournalBytes: Long = 6 * 1024 * 1024L) =
+        ReplayJournal(dir, maxFileBytes, maxJournalBytes, fsyncIntervalMs = 1_000L, clock = { now })
+
+    private fun entry(id: Long, blob: FrameBlob? = null) =
+        ReplayJournal.Entry(id, "session-1", 3, 1_000L + id, "{\"n\":$id,\"text\":\"café\"}", blob)
+
+    private fun files() = dir.listFiles()!!.filter { it.name.endsWith(".journal") }
+
+    @Test
+    fun recoversWhatWasNotRemoved() {
+        val blob = FrameBlob.of(byteArrayOf(1, 2, 3), "image/webp")
+        val first = journal()
+        first.recover()
+        first.append(entry(1))
+        first.append(entry(2, blob))
+        first.append(entry(3))
+        first.remove(listOf(1L, 3L))
+        first.close()
+
+        val recovered = journal().recover()
+        assertEquals(listOf(2L), recovered.map { it.id })
+        val event = recovered[0]
+        assertEquals("session-1", event.sessionId)
+        assertEquals(1_002L, event.timestampMs)
+        assertEquals("{\"n\":2,\"text\":\"café\"}", event.dataJson)
+        assertEquals(blob.hash, event.blob!!.hash)
+        assertArrayEquals(blob.bytes, event.blob!!.bytes)
+    }
+
+    @Test
+    fun tornTailIsTruncated() {
+        val first = journal()
+        first.recover()
+        first.append(entry(1))
+        first.append(entry(2))
+        first.close()
+        val file = files().single()
+        RandomAccessFile(file, "rw").use { it.setLength(it.length() - 3) } // died mid-write
+
+        val second = journal()
+        assertEquals(listOf(1L), second.recover().map { it.id })
+        assertEquals(1L, second.corruptRecords)
+        second.append(entry(3))
+        second.close()
+
+        assertEquals(listOf(1L, 3L), journal().recover().map { it.id })
+    }
+
+    @Test
+    fun corruptRecordEndsItsFile() {
+        val first = journal()
+        first.recover()
+        first.append(entry(1))
+        first.append(entry(2))
+        first.close()
+        val file = files().single()
+        val bytes = file.readBytes()
+        bytes[bytes.size - 2] = (bytes[bytes.size - 2].toInt() xor 0x55).toByte()
+        file.writeBytes(bytes)
+
+        val second = journal()
+        assertEquals(listOf(1L), second.recover().map { it.id })
+        assertEquals(1L, second.corruptRecords)
+    }
+
+    @Test
+    fun rotatedFileIsDeletedOnceNothingInItIsLive() {
+        val journal = journal(maxFileBytes = 200)
+        journal.recover()
+        for (id in 1L..6L) {
+            journal.append(entry(id))
+        }
+        assertTrue(files().size > 1)
+
+        journal.remove((1L..5L).toList())
+        assertEquals(1, files().size)
+        journal.close()
+
+        assertEquals(listOf(6L), journal().recover().map { it.id })
+    }
+
+    @Test
+    fun drainedFileIsKeptWhileItCancelsEventsInAnOlderFile() {
+        val journal = journal(maxFileBytes = 200)
+        journal.recover()
+        for (id in 1L..6L) {
+            journal.append(entry(id)) // 1..3 in the first file, 4..6 in the second
+        }
+        assertEquals(2, files().size)
+
+        journal.remove(listOf(1L, 2L)) // tombstone lands in the second file
+        journal.remove(listOf(4L, 5L, 6L)) // the second file drains while the first is live
+        journal.append(entry(7)) // rotates the second file out
+        assertEquals(3, files().size)
+        journal.close()
+
+        assertEquals(listOf(3L, 7L), journal().recover().map { it.id })
+    }
+
+    @Test
+    fun drainedFilesGoOnceTheOlderOnesDo() {
+        val journal = journal(maxFileBytes = 200)
+        journal.recover()
+        for (id in 1L..7L) {
+            journal.append(entry(id))
+        }
+        journal.remove(listOf(4L, 5L, 6L))
+        assertEquals(3, files().size)
+
+        journal.remove(listOf(1L, 2L, 3L))
+        assertEquals(1, files().size)
+        journal.close()
+
+        assertEquals(listOf(7L), journal().recover().map { it.id })
+    }
+
+    @Test
+    fun compactionKeepsOnlyLiveEvents() {
+        val journal = journal(maxFileBytes = 200, maxJournalBytes = 400)
+        journal.recover()
+        for (id in 1L..20L) {
+            journal.append(entry(id))
+        }
+        journal.remove((1L..19L).filter { it % 4L != 0L }) // every fourth pins its file
+        assertTrue(journal.needsCompaction())
+
+        journal.compact(listOf(entry(4), entry(8), entry(12), entry(16), entry(20)))
+        assertFalse(journal.needsCompaction())
+        journal.close()
+
+        assertEquals(listOf(4L, 8L, 12L, 16L, 20L), journal().recover().map { it.id })
+    }
+
+    @Test
+    fun fsyncIsBatchedByInterval() {
+        val journal = journal()
+        journal.recover()
+        now = 5_000L
+        journal.append(entry(1)) // first write syncs
+        for (id in 2L..50L) {
+            now += 10
+            journal.append(entry(id))
+        }
+        assertEquals(1L, journal.fsyncs)
+
+        now += 1_000
+        journal.append(entry(51))
+        assertEquals(2L, journal.fsyncs)
+
+        journal.sync()
+        journal.sync() // nothing new to force
+        assertEquals(2L, journal.fsyncs)
+    }
+
+    @Test
+    fun recoveryStartsAfterExistingFiles() {
+        val first = journal()
+        first.recover()
+        first.append(entry(1))
+        first.close()
+
+        val second = journal()
+        val recovered = second.recover()
+        second.compact(recovered)
+        second.append(entry(2))
+        second.close()
+
+        assertEquals(1, files().size)
+        assertEquals(listOf(1L, 2L), journal().recover().map { it.id })
+    }
+}
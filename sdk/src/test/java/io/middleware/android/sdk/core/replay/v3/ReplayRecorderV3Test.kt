@@ -7,6 +7,7 @@ import androidx.test.core.app.ApplicationProvider
 import io.middleware.android.sdk.builders.MiddlewareBuilder
 import io.middleware.android.sdk.core.replay.RREvent
 import io.middleware.android.sdk.core.replay.v2.LifecycleManager
+import io.middleware.android.sdk.core.replay.v2.RecordingOptions
 import org.junit.After
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertFalse
@@ -32,6 +33,11 @@ class ReplayRecorderV3Test {
     private class FakeExporter : RRWebExporterV3("http://localhost:1", "token", { emptyMap() }) {
         val events = CopyOnWriteArrayList<Pair<RREvent, String>>()
 
+        @Volatile
+        var lost = 0L
+
+        override fun lostEvents(): Long = lost
+
         override fun enqueue(event: RREvent, sessionId: String) {
             events.add(Pair(event, sessionId))
         }
@@ -128,6 +134,63 @@ class ReplayRecorderV3Test {
         )
     }
 
+    @Test
+    fun unchangedFramesSkipEncoding() {
+        controller.setup()
+        recorder.start(System.currentTimeMillis())
+        shadowOf(Looper.getMainLooper()).idle()
+        recorder.onActivityResumed(controller.get())
+        awaitEvents(2)
+
+        // the screen doesn't change: each capture should stop at the fingerprint
+        val deadline = System.currentTimeMillis() + 5000
+        while (System.currentTimeMillis() < deadline &&
+            recorder.getStats()[ReplayRecorderV3.STAT_UNCHANGED_FRAMES]!! < 2L
+        ) {
+            recorder.onActivityResumed(controller.get())
+            shadowOf(Looper.getMainLooper()).idle()
+            Thread.sleep(50)
+        }
+        assertTrue(recorder.getStats()[ReplayRecorderV3.STAT_UNCHANGED_FRAMES]!! >= 2L)
+        assertTrue(exporter.events.none { it.first.type == RRWebEvents.TYPE_INCREMENTAL_SNAPSHOT })
+    }
+
+    @Test
+    fun wireframeSnapshotIsResentAfterExporterLostAnEvent() {
+        val application: Application = ApplicationProvider.getApplicationContext()
+        val builder = MiddlewareBuilder()
+            .setRecordingOptions(RecordingOptions.Builder().setWireframe(true).build())
+        recorder = ReplayRecorderV3(
+            application,
+            builder,
+            LifecycleManager(application, controller.get()),
+            exporter,
+        ) { sessionId }
+        controller.setup()
+        recorder.start(System.currentTimeMillis())
+        shadowOf(Looper.getMainLooper()).idle()
+        recorder.onActivityResumed(controller.get())
+        awaitEvents(2)
+
+        // nothing changed and nothing lost: no diff to ship
+        val deadline = System.currentTimeMillis() + 5000
+        while (System.currentTimeMillis() < deadline &&
+            recorder.getStats()[ReplayRecorderV3.STAT_UNCHANGED_FRAMES]!! < 1L
+        ) {
+            recorder.onActivityResumed(controller.get())
+            shadowOf(Looper.getMainLooper()).idle()
+            Thread.sleep(50)
+        }
+        assertEquals(2, exporter.events.size)
+
+        // a mutation was evicted: the next frame has to rebuild the whole tree
+        exporter.lost = 1
+        recorder.onActivityResumed(controller.get())
+        val events = awaitEvents(4).map { it.first }
+        assertEquals(RRWebEvents.TYPE_META, events[2].type)
+        assertEquals(RRWebEvents.TYPE_FULL_SNAPSHOT, events[3].type)
+    }
+
     @Test
     fun stopPreventsFurtherCaptures() {
         controller.setup()
@@ -0,0 +1,31 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+
+class ScreenshotCapturerTest {
+
+    @Test
+    fun portraitWindowScalesToShortEdge() {
+        assertEquals(640, ScreenshotCapturer.outputWidth(1080, 2400, 640))
+        assertEquals(1422, ScreenshotCapturer.outputHeight(1080, 2400, 640))
+    }
+
+    @Test
+    fun landscapeWindowScalesToShortEdge() {
+        assertEquals(1422, ScreenshotCapturer.outputWidth(2400, 1080, 640))
+        assertEquals(640, ScreenshotCapturer.outputHeight(2400, 1080, 640))
+    }
+
+    @Test
+    fun smallWindowIsNotUpscaled() {
+        assertEquals(480, ScreenshotCapturer.outputWidth(480, 800, 640))
+        assertEquals(800, ScreenshotCapturer.outputHeight(480, 800, 640))
+    }
+
+    @Test
+    fun governorShortEdgeShrinksOutput() {
+        assertEquals(320, ScreenshotCapturer.outputWidth(1080, 1920, 320))
+        assertEquals(568, ScreenshotCapturer.outputHeight(1080, 1920, 320))
+    }
+}
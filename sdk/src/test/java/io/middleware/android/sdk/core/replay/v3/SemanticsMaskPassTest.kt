@@ -0,0 +1,155 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import android.graphics.Rect
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class SemanticsMaskPassTest {
+
+    private class Node(val flags: Int, val rect: Rect, val children: List<Node> = emptyList()) {
+        var parent: Node? = null
+
+        init {
+            children.forEach { it.parent = this }
+        }
+    }
+
+    private object FakeTree : SemanticsMaskPass.Tree<Node> {
+        override fun children(node: Node): List<Node> = node.children
+        override fun flags(node: Node): Int = node.flags
+        override fun bounds(node: Node, out: Rect) = out.set(node.rect)
+    }
+
+    private val pool = RectPool()
+
+    private fun collect(root: Node, maskAllTextInputs: Boolean = false, maskAllImages: Boolean = false): List<Rect> {
+        val out = ArrayList<Rect>()
+        pool.reset()
+        SemanticsMaskPass.collect(root, FakeTree, maskAllTextInputs, maskAllImages, out, pool)
+        return out
+    }
+
+    private fun screen(vararg children: Node) = Node(0, Rect(0, 0, 1080, 1920), children.toList())
+
+    @Test
+    fun textAndImageRules() {
+        val root = screen(
+            Node(SemanticsMaskPass.TEXT, Rect(0, 0, 100, 50)),
+            Node(SemanticsMaskPass.TEXT or SemanticsMaskPass.PASSWORD, Rect(0, 50, 100, 100)),
+            Node(SemanticsMaskPass.IMAGE, Rect(0, 100, 100, 200)),
+        )
+        assertEquals(listOf(Rect(0, 50, 100, 100)), collect(root))
+        assertEquals(2, collect(root, maskAllTextInputs = true).size)
+        assertEquals(2, collect(root, maskAllImages = true).size)
+    }
+
+    @Test
+    fun maskCoversTheSubtreeAndOnlyOverflowAddsRects() {
+        val root = screen(
+            Node(
+                SemanticsMaskPass.MASK, Rect(0, 0, 500, 500),
+                listOf(
+                    Node(0, Rect(10, 10, 100, 100)),
+                    Node(0, Rect(400, 400, 600, 600)), // drawn past its parent
+                ),
+            ),
+        )
+        assertEquals(listOf(Rect(0, 0, 500, 500), Rect(400, 400, 600, 600)), collect(root))
+    }
+
+    @Test
+    fun unmaskEndsItsBranch() {
+        val root = screen(
+            Node(
+                SemanticsMaskPass.UNMASK, Rect(0, 0, 500, 500),
+                listOf(Node(SemanticsMaskPass.MASK, Rect(0, 0, 100, 100)), Node(SemanticsMaskPass.TEXT, Rect(0, 100, 100, 200))),
+            ),
+            Node(SemanticsMaskPass.TEXT, Rect(0, 600, 100, 700)),
+        )
+        assertEquals(listOf(Rect(0, 600, 100, 700)), collect(root, maskAllTextInputs = true))
+    }
+
+    @Test
+    fun emptyBoundsAddNothing() {
+        assertTrue(collect(screen(Node(SemanticsMaskPass.TEXT, Rect(0, 0, 0, 40))), maskAllTextInputs = true).isEmpty())
+    }
+
+    /**
+     * A LazyColumn screen: scaffold wrappers, then 40 visible items that each
+     * nest their text and icon 12 levels deep. Compares the single pass with
+     * the previous flat node list plus two ancestor walks per node.
+     */
+    @Test
+    fun deepLazyColumnInOnePass() {
+        fun wrap(depth: Int, rect: Rect, leaf: () -> List<Node>): Node =
+            if (depth == 0) Node(0, rect, leaf()) else Node(0, rect, listOf(wrap(depth - 1, rect, leaf)))
+
+        val items = (0 until 40).map { row ->
+            val rect = Rect(0, row * 48, 1080, row * 48 + 48)
+            wrap(12, rect) {
+                listOf(
+                    Node(SemanticsMaskPass.TEXT, Rect(72, rect.top, 1000, rect.bottom)),
+                    Node(SemanticsMaskPass.IMAGE, Rect(16, rect.top + 8, 48, rect.bottom - 8)),
+                )
+            }
+        }
+        val list = Node(0, Rect(0, 0, 1080, 1920), items)
+        val root = screen(wrap(6, Rect(0, 0, 1080, 1920)) { listOf(list) })
+        val nodes = flatten(root)
+
+        val frames = 500
+        repeat(100) { collect(root, maskAllTextInputs = true, maskAllImages = true) } // warm up
+        var start = System.nanoTime()
+        var rects = emptyList<Rect>()
+        repeat(frames) { rects = collect(root, maskAllTextInputs = true, maskAllImages = true) }
+        val passUs = (System.nanoTime() - start) / 1_000.0 / frames
+
+        repeat(100) { flatWithAncestorWalks(nodes) }
+        start = System.nanoTime()
+        var flatRects = emptyList<Rect>()
+        repeat(frames) { flatRects = flatWithAncestorWalks(nodes) }
+        val flatUs = (System.nanoTime() - start) / 1_000.0 / frames
+
+        println(
+            "MW_BENCH compose_mask lazy_column nodes=" + nodes.size +
+                " single_pass_us=" + String.format("%.1f", passUs) +
+                " flat_us=" + String.format("%.1f", flatUs)
+        )
+        assertEquals(80, rects.size)
+        assertEquals(flatRects, rects)
+    }
+
+    private fun flatten(node: Node): List<Node> = listOf(node) + node.children.flatMap { flatten(it) }
+
+    /** The rules as applied before: every node, modifiers looked up on its ancestors. */
+    private fun flatWithAncestorWalks(nodes: List<Node>): List<Rect> {
+        val out = ArrayList<Rect>()
+        for (node in nodes) {
+            val unmasked = hasAncestorFlag(node, SemanticsMaskPass.UNMASK)
+            val masked = hasAncestorFlag(node, SemanticsMaskPass.MASK)
+            val text = (node.flags and SemanticsMaskPass.TEXT) != 0
+            val image = (node.flags and SemanticsMaskPass.IMAGE) != 0
+            if (!unmasked && (masked || text || image)) {
+                out.add(Rect(node.rect))
+            }
+        }
+        return out
+    }
+
+    private fun hasAncestorFlag(node: Node, flag: Int): Boolean {
+        var current: Node? = node
+        while (current != null) {
+            if ((current.flags and flag) != 0) {
+                return true
+            }
+            current = current.parent
+        }
+        return false
+    }
+}
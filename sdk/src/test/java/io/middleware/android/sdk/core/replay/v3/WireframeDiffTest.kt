@@ -0,0 +1,107 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class WireframeDiffTest {
+
+    private fun node(id: Int, style: String = "s$id", text: String? = null, vararg children: WireframeNode) =
+        WireframeNode(id, "div", style, text, children.toList())
+
+    private fun screen(vararg children: WireframeNode) = node(RRWebEvents.NODE_ID_SCREEN, "screen", null, *children)
+
+    private fun diffFrom(before: WireframeNode, after: WireframeNode): WireframeDiff.Mutation? {
+        val diff = WireframeDiff()
+        diff.reset(before)
+        return diff.diff(after)
+    }
+
+    @Test
+    fun unchangedTreeHasNoMutation() {
+        val diff = WireframeDiff()
+        diff.reset(screen(node(100, text = "Hello"), node(102)))
+        assertNull(diff.diff(screen(node(100, text = "Hello"), node(102))))
+    }
+
+    @Test
+    fun styleAndTextChangesStayInPlace() {
+        val mutation = diffFrom(
+            screen(node(100, text = "Hello"), node(102)),
+            screen(node(100, text = "World"), node(102, style = "moved")),
+        )!!
+        assertTrue(mutation.adds.isEmpty())
+        assertTrue(mutation.removes.isEmpty())
+        assertEquals(listOf(102 to mapOf("style" to "moved")), mutation.attributes.map { it.id to it.attributes })
+        assertEquals(listOf(101 to "World"), mutation.texts.map { it.id to it.value })
+    }
+
+    @Test
+    fun textAppearingAndDisappearingAddsAndRemovesItsNode() {
+        val mutation = diffFrom(
+            screen(node(100, text = "Hello"), node(102)),
+            screen(node(100), node(102, text = "Hi")),
+        )!!
+        assertEquals(listOf(100 to 101), mutation.removes.map { it.parentId to it.id })
+        assertEquals(listOf(Triple(102, 103, "Hi")), mutation.textNodeAdds.map { Triple(it.parentId, it.id, it.text) })
+    }
+
+    @Test
+    fun newChildIsAddedBeforeItsNextSibling() {
+        val mutation = diffFrom(
+            screen(node(100), node(102)),
+            screen(node(100), node(104, "s104", "New", node(106)), node(102)),
+        )!!
+        // parent first, so the player has it before its child
+        assertEquals(
+            listOf(Triple(RRWebEvents.NODE_ID_SCREEN, 102, 104), Triple(104, null, 106)),
+            mutation.adds.map { Triple(it.parentId, it.nextId, it.node.id) }
+        )
+        assertTrue(mutation.removes.isEmpty())
+    }
+
+    @Test
+    fun removedSubtreeIsRemovedOnce() {
+        val mutation = diffFrom(
+            screen(node(100, "s100", null, node(102), node(104)), node(106)),
+            screen(node(106)),
+        )!!
+        assertEquals(listOf(RRWebEvents.NODE_ID_SCREEN to 100), mutation.removes.map { it.parentId to it.id })
+        assertTrue(mutation.adds.isEmpty())
+    }
+
+    @Test
+    fun reparentedNodeIsRemovedAndAddedWithItsSubtree() {
+        val mutation = diffFrom(
+            screen(node(100, "s100", null, node(104, "s104", null, node(106))), node(102)),
+            screen(node(100), node(102, "s102", null, node(104, "s104", null, node(106)))),
+        )!!
+        assertEquals(listOf(100 to 104), mutation.removes.map { it.parentId to it.id })
+        assertEquals(listOf(102 to 104, 104 to 106), mutation.adds.map { it.parentId to it.node.id })
+    }
+
+    @Test
+    fun reorderedSiblingsAreAddedAgain() {
+        val mutation = diffFrom(
+            screen(node(100), node(102), node(104)),
+            screen(node(104), node(100), node(102)),
+        )!!
+        assertEquals(setOf(100, 102, 104), mutation.removes.map { it.id }.toSet())
+        // children are added last to first, each before the one already added
+        assertEquals(
+            listOf(102 to null, 100 to 102, 104 to 100),
+            mutation.adds.map { it.node.id to it.nextId }
+        )
+    }
+
+    @Test
+    fun mutationIsMuchSmallerThanTheTree() {
+        val rows = (0 until 50).map { node(200 + it * 2, text = "Row $it") }
+        val before = screen(*rows.toTypedArray())
+        val after = screen(*rows.mapIndexed { i, row -> if (i == 7) node(row.id, text = "Row 7!") else row }.toTypedArray())
+        val mutation = diffFrom(before, after)!!
+        assertEquals(1, mutation.texts.size)
+        assertTrue(mutation.approximateBytes * 50 < WireframeDiff.approximateBytes(after))
+    }
+}
@@ -0,0 +1,116 @@
+package io.middleware.android.sdk.core.replay.v3
+
+import android.app.Application
+import android.text.InputType
+import android.view.View
+import android.widget.EditText
+import android.widget.FrameLayout
+import android.widget.TextView
+import androidx.test.core.app.ApplicationProvider
+import io.middleware.android.sdk.core.replay.v2.SanitizableViewGroup
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.lang.ref.WeakReference
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class WireframeSerializerTest {
+
+    private val context: Application = ApplicationProvider.getApplicationContext()
+
+    private fun rootWith(vararg children: View): FrameLayout {
+        val root = FrameLayout(context)
+        for (child in children) {
+            root.addView(child, FrameLayout.LayoutParams(200, 100))
+        }
+        root.measure(
+            View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+            View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.EXACTLY),
+        )
+        root.layout(0, 0, 1080, 1920)
+        return root
+    }
+
+    private fun serialize(root: View, maskAllTextInputs: Boolean = false, sanitized: List<View> = emptyList()) =
+        WireframeSerializer(maskAllTextInputs).serialize(root, 2f, sanitized.map { WeakReference(it) }).root
+
+    private fun texts(node: WireframeNode): List<String> =
+        listOfNotNull(node.text) + node.children.flatMap { texts(it) }
+
+    @Test
+    fun plainTextIsKeptWhenMaskingIsOff() {
+        val root = rootWith(TextView(context).apply { text = "Total" })
+        assertEquals(listOf("Total"), texts(serialize(root)))
+    }
+
+    @Test
+    fun maskAllTextInputsMasksEveryCharacterButWhitespace() {
+        val root = rootWith(TextView(context).apply { text = "Jane Doe" })
+        assertEquals(listOf("**** ***"), texts(serialize(root, maskAllTextInputs = true)))
+    }
+
+    @Test
+    fun passwordFieldNeverSerializesItsText() {
+        val password = EditText(context).apply {
+            inputType = InputType.TYPE_CLASS_TEXT or InputType.TYPE_TEXT_VARIATION_PASSWORD
+            setText("secret")
+        }
+        val serialized = texts(serialize(rootWith(password)))
+        assertEquals(listOf("******"), serialized)
+    }
+
+    @Test
+    fun sanitizableViewGroupIsABlackBox() {
+        val group = SanitizableViewGroup(context)
+        group.addView(TextView(context).apply { text = "4111 1111" })
+        val node = serialize(rootWith(group)).children.single()
+        assertTrue(texts(node).isEmpty())
+        assertTrue(node.children.isEmpty())
+        assertTrue(node.style.contains("background:#000;"))
+    }
+
+    @Test
+    fun noCaptureViewNeverSerializesItsText() {
+        val label = TextView(context).apply {
+            text = "secret"
+            tag = MwReplayModifiers.MW_NO_CAPTURE_LABEL
+        }
+        val node = serialize(rootWith(label)).children.single()
+        assertTrue(texts(node).isEmpty())
+        assertTrue(node.style.contains("background:#000;"))
+    }
+
+    @Test
+    fun sanitizedElementNeverSerializesItsText() {
+        val label = TextView(context).apply { text = "secret" }
+        val node = serialize(rootWith(label), sanitized = listOf(label)).children.single()
+        assertTrue(texts(node).isEmpty())
+        assertTrue(node.style.contains("background:#000;"))
+    }
+
+    @Test
+    fun noMaskMarkerUnmasksTheSubtree() {
+        val label = TextView(context).apply {
+            text = "Total"
+            tag = MwReplayModifiers.MW_NO_MASK_LABEL
+        }
+        assertEquals(listOf("Total"), texts(serialize(rootWith(label), maskAllTextInputs = true)))
+    }
+
+    @Test
+    fun viewsKeepTheirIdsAcrossFrames() {
+        val label = TextView(context).apply { text = "Total" }
+        val root = rootWith(label)
+        val serializer = WireframeSerializer(false)
+        val first = serializer.serialize(root, 2f, emptyList()).root
+        val second = serializer.serialize(root, 2f, emptyList()).root
+        assertEquals(RRWebEvents.NODE_ID_SCREEN, first.id)
+        assertEquals(first.children.single().id, second.children.single().id)
+        assertFalse(first.children.single().id == RRWebEvents.NODE_ID_SCREEN)
+    }
+}